@@ -0,0 +1,74 @@
+package com.chencraft.ntu.bench;
+
+import com.chencraft.ntu.model.MessageType;
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.util.Converter;
+import com.chencraft.ntu.util.WireWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decoding int, double and string responses with {@link Converter}, in place from a
+ * buffer as the receiver thread does and from a {@code byte[]} slice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    private ByteBuffer intResponse;
+    private ByteBuffer doubleResponse;
+    private ByteBuffer stringResponse;
+    private byte[] intResponseBytes;
+
+    @Setup
+    public void setUp() {
+        intResponse = response(OpCode.OpOpen, writer -> writer.writeInt(168496141));
+        doubleResponse = response(OpCode.OpBalance, writer -> writer.writeDouble(1234.5));
+        stringResponse = response(OpCode.OpClose, writer -> writer.writeString("Account 1 closed successfully"));
+        intResponseBytes = new byte[intResponse.remaining()];
+        intResponse.get(intResponse.position(), intResponseBytes);
+    }
+
+    @Benchmark
+    public Integer toInt() {
+        return Converter.toInt(intResponse);
+    }
+
+    @Benchmark
+    public Double toDouble() {
+        return Converter.toDouble(doubleResponse);
+    }
+
+    @Benchmark
+    public String toStringResponse() {
+        return Converter.toString(stringResponse);
+    }
+
+    @Benchmark
+    public Integer toIntFromArraySlice() {
+        return Converter.toInt(intResponseBytes, 0, intResponseBytes.length);
+    }
+
+    private static ByteBuffer response(OpCode opCode, java.util.function.Consumer<WireWriter> body) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        WireWriter writer = new WireWriter(buffer).writeEnum(MessageType.MsgResponse)
+                                                  .writeInt(1)
+                                                  .writeByte(opCode.getValue());
+        body.accept(writer);
+        return buffer.limit(writer.position());
+    }
+}
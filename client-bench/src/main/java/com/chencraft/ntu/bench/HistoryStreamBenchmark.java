@@ -0,0 +1,117 @@
+package com.chencraft.ntu.bench;
+
+import com.chencraft.ntu.model.AccountTransaction;
+import com.chencraft.ntu.server.BankServer;
+import com.chencraft.ntu.server.ServerOptions;
+import com.chencraft.ntu.service.BalanceCache;
+import com.chencraft.ntu.service.BankingService;
+import com.chencraft.ntu.service.IdGenerator;
+import com.chencraft.ntu.service.RequestCoalescer;
+import com.chencraft.ntu.service.SocketService;
+import com.chencraft.ntu.service.SocketSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transactions per second streamed by {@link BankingService#streamHistory} from an
+ * in-process {@link BankServer} holding a history of a million synthetic transactions, by page size
+ * and number of pages read ahead. 30 transactions fill one datagram; larger pages are fragmented.
+ * Every invocation reads the whole history, so the reported throughput is in transactions.
+ * Transactions are delivered on virtual threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class HistoryStreamBenchmark {
+    private static final int HISTORY = 1_000_000;
+
+    @Param({"30", "256", "1024"})
+    public int pageSize;
+
+    @Param({"1", "4", "16"})
+    public int window;
+
+    private BankServer server;
+    private SocketService socketService;
+    private ExecutorService executor;
+    private BankingService bankingService;
+    private int account;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = BankServer.start(ServerOptions.builder().port(0).syntheticHistory(HISTORY).build());
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().host("127.0.0.1").port(server.port())
+                                                        .timeoutMillis(1000).maxRetries(3).build(),
+                                          meterRegistry);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        bankingService = new BankingService(socketService, RequestCoalescer.disabled(socketService, meterRegistry),
+                                            BalanceCache.disabled(meterRegistry), pageSize, window, executor);
+        account = socketService.sendAndReceiveInt(Requests.of("open"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        socketService.shutdown();
+        server.close();
+        executor.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HISTORY + 1)
+    public long stream() {
+        Counter counter = new Counter();
+        bankingService.streamHistory("John Doe", account, "qwer1234", 0).subscribe(counter);
+        return counter.done.join();
+    }
+
+    private static final class Counter implements Flow.Subscriber<AccountTransaction> {
+        private final CompletableFuture<Long> done = new CompletableFuture<>();
+        private long count;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(AccountTransaction item) {
+            count++;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(count);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.chencraft.ntu.bench;
+
+import com.chencraft.ntu.service.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link IdGenerator#getNextId()} with every available core contending on one
+ * generator, in memory and backed by a lease file. Use {@code -t} to vary the thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class IdGeneratorBenchmark {
+    @Param({"memory", "file"})
+    public String storage;
+
+    private Path stateFile;
+    private IdGenerator idGenerator;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (storage.equals("file")) {
+            stateFile = Files.createTempFile("request-ids", ".dat");
+            Files.delete(stateFile);
+            idGenerator = new IdGenerator(stateFile.toString(), 10_000, 0);
+        } else {
+            idGenerator = new IdGenerator();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        idGenerator.close();
+        if (stateFile != null) {
+            Files.deleteIfExists(stateFile);
+        }
+    }
+
+    @Benchmark
+    public int getNextId() {
+        return idGenerator.getNextId();
+    }
+}
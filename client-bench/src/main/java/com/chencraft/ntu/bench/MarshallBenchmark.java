@@ -0,0 +1,54 @@
+package com.chencraft.ntu.bench;
+
+import com.chencraft.ntu.model.MySerializable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link MySerializable#marshall} per request type, both into a fresh array and into a
+ * reused buffer as {@code SocketService} does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallBenchmark {
+    @Param({"open", "close", "balance", "deposit", "transfer", "monitor"})
+    public String requestType;
+
+    private MySerializable request;
+    private ByteBuffer buffer;
+    private int requestId;
+
+    @Setup
+    public void setUp() {
+        request = Requests.of(requestType);
+        buffer = ByteBuffer.allocate(1024);
+    }
+
+    @Benchmark
+    public byte[] marshallToArray() {
+        return request.marshall(requestId++);
+    }
+
+    @Benchmark
+    public ByteBuffer marshallIntoBuffer() {
+        buffer.clear();
+        request.marshall(requestId++, buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,73 @@
+package com.chencraft.ntu.bench;
+
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.MySerializable;
+import com.chencraft.ntu.model.request.CloseAccountRequest;
+import com.chencraft.ntu.model.request.GetBalanceRequest;
+import com.chencraft.ntu.model.request.MonitorRequest;
+import com.chencraft.ntu.model.request.OpenAccountRequest;
+import com.chencraft.ntu.model.request.TransferRequest;
+import com.chencraft.ntu.model.request.UpdateBalanceRequest;
+
+/**
+ * Representative, fully populated instances of every request type.
+ */
+final class Requests {
+    private Requests() {
+    }
+
+    static MySerializable of(String type) {
+        return switch (type) {
+            case "open" -> {
+                OpenAccountRequest request = new OpenAccountRequest();
+                request.setName("John Doe");
+                request.setPassword("qwer1234");
+                request.setCurrency(Currency.SGD);
+                request.setInitialBalance(100.0);
+                yield request;
+            }
+            case "close" -> {
+                CloseAccountRequest request = new CloseAccountRequest();
+                request.setName("John Doe");
+                request.setPassword("qwer1234");
+                request.setAccountNumber(1);
+                yield request;
+            }
+            case "balance" -> {
+                GetBalanceRequest request = new GetBalanceRequest();
+                request.setName("John Doe");
+                request.setPassword("qwer1234");
+                request.setAccountNumber(1);
+                yield request;
+            }
+            case "deposit" -> {
+                UpdateBalanceRequest request = new UpdateBalanceRequest();
+                request.setName("John Doe");
+                request.setPassword("qwer1234");
+                request.setAccountNumber(1);
+                request.setCurrency(Currency.SGD);
+                request.setAmount(25.0);
+                request.setDepositFlag(true);
+                yield request;
+            }
+            case "transfer" -> {
+                TransferRequest request = new TransferRequest();
+                request.setName("John Doe");
+                request.setPassword("qwer1234");
+                request.setAccountNumber(1);
+                request.setDestAccountNumber(2);
+                request.setCurrency(Currency.SGD);
+                request.setAmount(25.0);
+                yield request;
+            }
+            case "monitor" -> monitor(60);
+            default -> throw new IllegalArgumentException("Unknown request type: " + type);
+        };
+    }
+
+    static MonitorRequest monitor(int interval) {
+        MonitorRequest request = new MonitorRequest();
+        request.setMonitorInterval(interval);
+        return request;
+    }
+}
@@ -0,0 +1,68 @@
+package com.chencraft.ntu.bench;
+
+import com.chencraft.ntu.model.MySerializable;
+import com.chencraft.ntu.server.BankServer;
+import com.chencraft.ntu.server.ServerOptions;
+import com.chencraft.ntu.service.IdGenerator;
+import com.chencraft.ntu.service.SocketService;
+import com.chencraft.ntu.service.SocketSettings;
+import com.chencraft.ntu.service.transport.TransportType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a full request/response round trip through {@link SocketService} over loopback,
+ * against an in-process {@link BankServer}, using balance enquiries on an account opened during
+ * setup. Run with {@code -t} greater than 1 to measure pipelined callers sharing one socket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+    @Param({"BLOCKING", "NIO"})
+    public TransportType transport;
+
+    private BankServer server;
+    private SocketService socketService;
+    private MySerializable request;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = BankServer.start(ServerOptions.builder().port(0).build());
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().host("127.0.0.1").port(server.port())
+                                                        .timeoutMillis(1000).maxRetries(3).transport(transport).build(),
+                                          new SimpleMeterRegistry());
+        socketService.sendAndReceiveInt(Requests.of("open"));
+        request = Requests.of("balance");
+    }
+
+    @TearDown
+    public void tearDown() {
+        socketService.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public Double roundTrip() {
+        return socketService.sendAndReceiveDouble(request);
+    }
+}
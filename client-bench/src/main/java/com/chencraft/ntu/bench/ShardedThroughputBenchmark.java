@@ -0,0 +1,85 @@
+package com.chencraft.ntu.bench;
+
+import com.chencraft.ntu.model.MySerializable;
+import com.chencraft.ntu.server.BankServer;
+import com.chencraft.ntu.server.ServerOptions;
+import com.chencraft.ntu.service.IdGenerator;
+import com.chencraft.ntu.service.SocketService;
+import com.chencraft.ntu.service.SocketSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second through a {@link SocketService} spread over 1 to 16 sockets
+ * ({@code socket.shards}), with 32 callers making blocking balance enquiries. The stand-in
+ * {@link BankServer} answers from a single thread, so there are as many in-process servers as
+ * shards, listed in {@code socket.servers} and taken in turn, for the server side to keep up as the
+ * client's shards grow. Every shard has a socket to every server, each with its own receiver, so
+ * the run needs several cores to show anything but the cost of the extra threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class ShardedThroughputBenchmark {
+    @Param({"1", "2", "4", "8", "16"})
+    public int shards;
+
+    private final List<BankServer> servers = new ArrayList<>();
+    private SocketService socketService;
+    private MySerializable request;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            BankServer server = BankServer.start(ServerOptions.builder().port(0).build());
+            servers.add(server);
+            addresses.add("127.0.0.1:" + server.port());
+        }
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().servers(String.join(",", addresses))
+                                                        .timeoutMillis(1000).maxRetries(3).shards(shards).build(),
+                                          meterRegistry);
+        // Every server holds the same account, as the first one opened on each is number 1
+        for (int i = 0; i < shards; i++) {
+            socketService.sendAndReceiveInt(Requests.of("open"));
+        }
+        request = Requests.of("balance");
+    }
+
+    @TearDown
+    public void tearDown() {
+        socketService.shutdown();
+        servers.forEach(BankServer::close);
+        servers.clear();
+    }
+
+    @Benchmark
+    public Double balance() {
+        return socketService.sendAndReceiveDouble(request);
+    }
+}
@@ -1,6 +1,7 @@
 package com.chencraft.ntu;
 
 import com.chencraft.ntu.cli.BankingCli;
+import com.chencraft.ntu.loadgen.LoadGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -11,24 +12,34 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 /**
  * Main application class for the Distributed Banking System.
  * Bootstraps the Spring Boot application and provides a command-line runner hook
- * to launch the interactive CLI.
+ * to launch the interactive CLI, the load generator with {@code --mode=loadgen}, or a script of CLI
+ * commands with {@code --script=<file>} ({@code --script=-} for standard input).
  */
 @SpringBootApplication
 public class Application implements CommandLineRunner {
 
     private final BankingCli bankingCli;
+    private final LoadGenerator loadGenerator;
 
     @Value("${banking.cli.enabled:false}")
     private boolean cliEnabled;
 
+    @Value("${mode:cli}")
+    private String mode;
+
+    @Value("${script:}")
+    private String script;
+
     /**
      * Constructor for Application.
      *
-     * @param bankingCli the CLI interface to be launched
+     * @param bankingCli    the CLI interface to be launched
+     * @param loadGenerator the load generator run in {@code loadgen} mode
      */
     @Autowired
-    public Application(BankingCli bankingCli) {
+    public Application(BankingCli bankingCli, LoadGenerator loadGenerator) {
         this.bankingCli = bankingCli;
+        this.loadGenerator = loadGenerator;
     }
 
     /**
@@ -42,7 +53,11 @@ public class Application implements CommandLineRunner {
         if (arg0.length > 0 && arg0[0].equals("exitcode")) {
             throw new ExitException();
         }
-        if (cliEnabled) {
+        if (mode.equals("loadgen")) {
+            loadGenerator.run();
+        } else if (!script.isEmpty()) {
+            bankingCli.runScript(script);
+        } else if (cliEnabled) {
             bankingCli.start();
         }
     }
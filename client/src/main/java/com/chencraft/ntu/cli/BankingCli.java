@@ -4,24 +4,51 @@ import com.chencraft.ntu.exception.OperationFailedException;
 import com.chencraft.ntu.model.Currency;
 import com.chencraft.ntu.model.request.*;
 import com.chencraft.ntu.service.BankingService;
+import com.chencraft.ntu.service.callback.CallbackListener;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Scanner;
+import java.util.concurrent.Flow;
 
 /**
  * Command Line Interface for the Distributed Banking System.
  * Provides a user-friendly way to interact with banking services via console.
+ * <p>
+ * The same commands can be run from a file or a pipe with {@link #runScript(String)}, which runs
+ * them concurrently instead of one round trip at a time.
  */
 @Slf4j
 @Component
 public class BankingCli {
     private final BankingService bankingService;
+    private final CallbackListener callbackListener;
 
+    private final int scriptParallelism;
+
+    private Flow.Subscription monitorUpdates;
+
+    /**
+     * @param scriptParallelism largest number of script commands in flight at once
+     */
     @Autowired
-    public BankingCli(BankingService bankingService) {
+    public BankingCli(BankingService bankingService, CallbackListener callbackListener,
+                      @Value("${banking.cli.script.parallelism:64}") int scriptParallelism) {
         this.bankingService = bankingService;
+        this.callbackListener = callbackListener;
+        this.scriptParallelism = scriptParallelism;
     }
 
     /**
@@ -42,21 +69,16 @@ public class BankingCli {
 
             try {
                 switch (command) {
-                    case "open" -> handleOpen(parts);
-                    case "close" -> handleClose(parts);
-                    case "deposit" -> handleDeposit(parts);
-                    case "withdraw" -> handleWithdraw(parts);
-                    case "balance" -> handleBalance(parts);
-                    case "transfer" -> handleTransfer(parts);
                     case "monitor" -> handleMonitor(parts);
                     case "help" -> printHelp();
                     case "exit", "quit" -> {
                         System.out.println("Exiting CLI...");
                         return;
                     }
-                    default ->
-                            System.out.println("Unknown command: " + command + ". Type 'help' for available commands.");
+                    default -> System.out.println(execute(parts));
                 }
+            } catch (UsageException e) {
+                System.out.println(e.getMessage());
             } catch (OperationFailedException e) {
                 System.out.println("[Operation Failed] " + e.getMessage());
             } catch (Exception e) {
@@ -65,6 +87,41 @@ public class BankingCli {
         }
     }
 
+    /**
+     * Runs the commands of a script non-interactively with a {@link ScriptRunner}, writing their
+     * results to standard output in the order of the script and a summary to standard error.
+     *
+     * @param source path of the script, or {@code -} for standard input
+     */
+    public void runScript(String source) {
+        try (BufferedReader in = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(source), StandardCharsets.UTF_8)) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            new ScriptRunner(this::execute, scriptParallelism).run(in, out).print(System.err);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to run script " + source, e);
+        }
+    }
+
+    /**
+     * Runs one account command and returns what it reports.
+     *
+     * @throws UsageException if the command is unknown or its arguments are missing
+     */
+    String execute(String[] parts) {
+        String command = parts[0].toLowerCase();
+        return switch (command) {
+            case "open" -> handleOpen(parts);
+            case "close" -> handleClose(parts);
+            case "deposit" -> handleDeposit(parts);
+            case "withdraw" -> handleWithdraw(parts);
+            case "balance" -> handleBalance(parts);
+            case "transfer" -> handleTransfer(parts);
+            default -> throw new UsageException("Unknown command: " + command + ". Type 'help' for available commands.");
+        };
+    }
+
     private void printHeader() {
         System.out.println("=================================================");
         System.out.println("   Distributed Banking System CLI Interface      ");
@@ -80,15 +137,15 @@ public class BankingCli {
         System.out.println("  withdraw <name> <accountNumber> <password> <currency> <amount>");
         System.out.println("  balance <name> <accountNumber> <password>");
         System.out.println("  transfer <name> <fromAccountNumber> <password> <toAccountNumber> <amount>");
-        System.out.println("  monitor <interval>");
+        System.out.println("  monitor <interval> - Print account updates, renewing every interval (seconds)");
+        System.out.println("  monitor stop");
         System.out.println("  help - Show this help message");
         System.out.println("  exit/quit - Exit the application");
     }
 
-    private void handleOpen(String[] parts) {
+    private String handleOpen(String[] parts) {
         if (parts.length != 5) {
-            System.out.println("Usage: open <name> <password> <currency> <initialBalance>");
-            return;
+            throw new UsageException("Usage: open <name> <password> <currency> <initialBalance>");
         }
         OpenAccountRequest request = new OpenAccountRequest();
         request.setName(parts[1]);
@@ -97,13 +154,12 @@ public class BankingCli {
         request.setInitialBalance(Double.parseDouble(parts[4]));
 
         Integer accountNumber = bankingService.openAccount(request);
-        System.out.println("[SUCCESS] Account opened successfully. Account Number: " + accountNumber);
+        return "[SUCCESS] Account opened successfully. Account Number: " + accountNumber;
     }
 
-    private void handleClose(String[] parts) {
+    private String handleClose(String[] parts) {
         if (parts.length != 4) {
-            System.out.println("Usage: close <name> <accountNumber> <password>");
-            return;
+            throw new UsageException("Usage: close <name> <accountNumber> <password>");
         }
         CloseAccountRequest request = new CloseAccountRequest();
         request.setName(parts[1]);
@@ -111,13 +167,12 @@ public class BankingCli {
         request.setPassword(parts[3]);
 
         String msg = bankingService.closeAccount(request);
-        System.out.println("[SUCCESS] " + msg);
+        return "[SUCCESS] " + msg;
     }
 
-    private void handleDeposit(String[] parts) {
+    private String handleDeposit(String[] parts) {
         if (parts.length != 6) {
-            System.out.println("Usage: deposit <name> <accountNumber> <password> <currency> <amount>");
-            return;
+            throw new UsageException("Usage: deposit <name> <accountNumber> <password> <currency> <amount>");
         }
         UpdateBalanceRequest request = new UpdateBalanceRequest();
         request.setName(parts[1]);
@@ -128,13 +183,12 @@ public class BankingCli {
         request.setDepositFlag(true);
 
         Double newBalance = bankingService.deposit(request);
-        System.out.println("[SUCCESS] Deposit successful. New Balance: " + newBalance);
+        return "[SUCCESS] Deposit successful. New Balance: " + newBalance;
     }
 
-    private void handleWithdraw(String[] parts) {
+    private String handleWithdraw(String[] parts) {
         if (parts.length != 6) {
-            System.out.println("Usage: withdraw <name> <accountNumber> <password> <currency> <amount>");
-            return;
+            throw new UsageException("Usage: withdraw <name> <accountNumber> <password> <currency> <amount>");
         }
         UpdateBalanceRequest request = new UpdateBalanceRequest();
         request.setName(parts[1]);
@@ -145,13 +199,12 @@ public class BankingCli {
         request.setDepositFlag(false);
 
         Double newBalance = bankingService.withdrawal(request);
-        System.out.println("[SUCCESS] Withdrawal successful. New Balance: " + newBalance);
+        return "[SUCCESS] Withdrawal successful. New Balance: " + newBalance;
     }
 
-    private void handleBalance(String[] parts) {
+    private String handleBalance(String[] parts) {
         if (parts.length != 4) {
-            System.out.println("Usage: balance <name> <accountNumber> <password>");
-            return;
+            throw new UsageException("Usage: balance <name> <accountNumber> <password>");
         }
         GetBalanceRequest request = new GetBalanceRequest();
         request.setName(parts[1]);
@@ -159,13 +212,12 @@ public class BankingCli {
         request.setPassword(parts[3]);
 
         Double balance = bankingService.getBalance(request);
-        System.out.println("[SUCCESS] Current Balance: " + balance);
+        return "[SUCCESS] Current Balance: " + balance;
     }
 
-    private void handleTransfer(String[] parts) {
+    private String handleTransfer(String[] parts) {
         if (parts.length != 7) {
-            System.out.println("Usage: transfer <name> <fromAccountNumber> <password> <toAccountNumber> <currency> <amount>");
-            return;
+            throw new UsageException("Usage: transfer <name> <fromAccountNumber> <password> <toAccountNumber> <currency> <amount>");
         }
         TransferRequest request = new TransferRequest();
         request.setName(parts[1]);
@@ -176,33 +228,42 @@ public class BankingCli {
         request.setAmount(Double.parseDouble(parts[6]));
 
         Double response = bankingService.transfer(request);
-        System.out.println("[SUCCESS] Transfer successful.");
-        System.out.println("  Source Account (" + request.getAccountNumber() + ") New Balance: " + request.getCurrency() + " " + response);
+        return "[SUCCESS] Transfer successful.\n"
+                + "  Source Account (" + request.getAccountNumber() + ") New Balance: " + request.getCurrency() + " " + response;
     }
 
     private void handleMonitor(String[] parts) {
         if (parts.length != 2) {
-            System.out.println("Usage: monitor <interval>");
+            System.out.println("Usage: monitor <interval> | monitor stop");
+            return;
+        }
+        if (parts[1].equalsIgnoreCase("stop")) {
+            if (!callbackListener.isMonitoring()) {
+                System.out.println("Not monitoring.");
+                return;
+            }
+            callbackListener.stopMonitoring();
+            System.out.println("[SUCCESS] Monitoring stops when the current interval expires.");
             return;
         }
-        MonitorRequest request = new MonitorRequest();
-        request.setMonitorInterval(Integer.parseInt(parts[1]));
 
-        String msg = bankingService.registerMonitor(request);
+        int interval = Integer.parseInt(parts[1]);
+        if (monitorUpdates == null) {
+            monitorUpdates = callbackListener.subscribe(
+                    callback -> System.out.print("\n[MONITOR UPDATE] " + callback + "\nBANKING-CLI> "));
+        }
+        String msg = callbackListener.startMonitoring(interval);
         System.out.println("Server Response: " + msg);
-        System.out.println("[SUCCESS] Monitoring registered for " + parts[1] + " seconds.");
-        System.out.println("Waiting for updates... (CLI will be blocked during this period)");
-        System.out.println("Press Ctrl+C if you really want to force exit.");
-
-        long intervalMillis = Long.parseLong(parts[1]) * 1000;
-        long startTime = System.currentTimeMillis();
+        System.out.println("[SUCCESS] Monitoring registered for " + interval + " seconds and renewed automatically.");
+        System.out.println("Updates are printed as they arrive; other commands keep working. Use 'monitor stop' to stop.");
+    }
 
-        while (System.currentTimeMillis() - startTime < intervalMillis) {
-            String callback = bankingService.receiveCallback(500); // Check every 500ms
-            if (callback != null) {
-                System.out.println("\n[MONITOR UPDATE] " + callback);
-            }
+    /**
+     * A command that is unknown or malformed; its message tells the user how to call it.
+     */
+    static final class UsageException extends IllegalArgumentException {
+        UsageException(String message) {
+            super(message);
         }
-        System.out.println("\nMonitoring interval expired.");
     }
 }
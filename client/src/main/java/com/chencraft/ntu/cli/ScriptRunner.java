@@ -0,0 +1,206 @@
+package com.chencraft.ntu.cli;
+
+import com.chencraft.ntu.exception.OperationFailedException;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a script of {@link BankingCli} commands, one per line, with bounded parallelism.
+ * <p>
+ * Lines are read and parsed as a stream, and each command is started on its own virtual thread as
+ * soon as the commands it depends on have finished: a command that names an account waits for the
+ * previous command on that account (a transfer for those on both of its accounts), so writes to one
+ * account keep the order of the script while commands on different accounts overlap their round
+ * trips. Opening an account names none and depends on nothing.
+ * <p>
+ * At most {@code parallelism} commands are running or waiting for their result to be written at
+ * once; reading pauses until the oldest is written. Results, and errors in the same form as the
+ * interactive CLI prints them, are written in the order of the script, each prefixed with its line
+ * number. Blank lines and lines starting with {@code #} are skipped, and {@code exit} or
+ * {@code quit} ends the script.
+ */
+final class ScriptRunner {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Command command;
+    private final int parallelism;
+
+    /**
+     * Runs a single parsed command and returns what it reports, or throws if it fails.
+     */
+    @FunctionalInterface
+    interface Command {
+        String run(String[] parts) throws Exception;
+    }
+
+    ScriptRunner(Command command, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("banking.cli.script.parallelism must be positive");
+        }
+        this.command = command;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Runs every command read from {@code in}, writing the results to {@code out}, which is flushed
+     * but not closed.
+     */
+    Summary run(BufferedReader in, Writer out) throws IOException {
+        long startNanos = System.nanoTime();
+        Histogram latency = new ConcurrentHistogram(1, HIGHEST_TRACKABLE_MICROS, 3);
+        LongAdder failures = new LongAdder();
+        Map<Integer, CompletableFuture<String>> lastOnAccount = new ConcurrentHashMap<>();
+        ArrayDeque<CompletableFuture<String>> pending = new ArrayDeque<>();
+        long commands = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = trimmed.split("\\s+");
+                String name = parts[0].toLowerCase(Locale.ROOT);
+                if (name.equals("exit") || name.equals("quit")) {
+                    break;
+                }
+                if (pending.size() >= parallelism) {
+                    write(pending.poll(), out);
+                }
+
+                int currentLine = lineNumber;
+                List<Integer> accounts = accountsOf(parts);
+                List<CompletableFuture<String>> predecessors = new ArrayList<>(accounts.size());
+                for (Integer account : accounts) {
+                    CompletableFuture<String> previous = lastOnAccount.get(account);
+                    if (previous != null) {
+                        predecessors.add(previous);
+                    }
+                }
+                CompletableFuture<String> result = CompletableFuture
+                        .allOf(predecessors.toArray(CompletableFuture[]::new))
+                        .thenApplyAsync(ignored -> execute(currentLine, parts, latency, failures), executor);
+                for (Integer account : accounts) {
+                    lastOnAccount.put(account, result);
+                    result.whenComplete((output, failure) -> lastOnAccount.remove(account, result));
+                }
+                pending.add(result);
+                commands++;
+
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    write(pending.poll(), out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), out);
+            }
+        } finally {
+            out.flush();
+        }
+        return new Summary(commands, failures.sum(), (System.nanoTime() - startNanos) / 1e9, latency);
+    }
+
+    private String execute(int lineNumber, String[] parts, Histogram latency, LongAdder failures) {
+        long startNanos = System.nanoTime();
+        String output;
+        try {
+            output = command.run(parts);
+        } catch (OperationFailedException e) {
+            failures.increment();
+            output = "[Operation Failed] " + e.getMessage();
+        } catch (Exception e) {
+            failures.increment();
+            output = "[ERROR] " + e.getMessage();
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        latency.recordValue(Math.min(Math.max(micros, 1), HIGHEST_TRACKABLE_MICROS));
+        return lineNumber + ": " + output;
+    }
+
+    /**
+     * Writes the result of the oldest pending command, flushing first if it has to be waited for.
+     */
+    private static void write(CompletableFuture<String> result, Writer out) throws IOException {
+        if (!result.isDone()) {
+            out.flush();
+        }
+        out.write(result.join());
+        out.write(System.lineSeparator());
+    }
+
+    /**
+     * Accounts whose earlier commands a command must wait for: the account it names, and for a
+     * transfer the destination as well.
+     */
+    static List<Integer> accountsOf(String[] parts) {
+        String name = parts[0].toLowerCase(Locale.ROOT);
+        List<Integer> accounts = new ArrayList<>(2);
+        switch (name) {
+            case "close", "deposit", "withdraw", "balance" -> addAccount(accounts, parts, 2);
+            case "transfer" -> {
+                addAccount(accounts, parts, 2);
+                addAccount(accounts, parts, 4);
+            }
+            default -> {
+            }
+        }
+        return accounts;
+    }
+
+    private static void addAccount(List<Integer> accounts, String[] parts, int index) {
+        if (parts.length <= index) {
+            return;
+        }
+        try {
+            Integer account = Integer.valueOf(parts[index]);
+            if (!accounts.contains(account)) {
+                accounts.add(account);
+            }
+        } catch (NumberFormatException e) {
+            // The command fails on its own
+        }
+    }
+
+    /**
+     * Outcome of a script run.
+     *
+     * @param commands       number of commands run
+     * @param failures       number of commands that failed
+     * @param elapsedSeconds time from reading the first line to writing the last result
+     * @param latency        time each command took to run, in microseconds, not counting the wait for
+     *                       the commands before it on the same account
+     */
+    record Summary(long commands, long failures, double elapsedSeconds, Histogram latency) {
+        double throughput() {
+            return elapsedSeconds > 0 ? commands / elapsedSeconds : 0;
+        }
+
+        void print(PrintStream out) {
+            out.printf(Locale.ROOT, "Script: %d commands in %.1f s, %.1f commands/s, %d failed%n",
+                       commands, elapsedSeconds, throughput(), failures);
+            out.printf(Locale.ROOT, "Latency ms: p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n",
+                       latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(90) / 1e3,
+                       latency.getValueAtPercentile(99) / 1e3, latency.getValueAtPercentile(99.9) / 1e3,
+                       latency.getMaxValue() / 1e3);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.chencraft.ntu.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides an in-memory {@link MeterRegistry} for the client's metrics when no other registry
+ * (e.g. one contributed by a monitoring backend) has been configured.
+ */
+@Configuration
+public class MetricsConfig {
+    @Bean
+    @ConditionalOnMissingBean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+}
@@ -0,0 +1,18 @@
+package com.chencraft.ntu.config;
+
+import com.chencraft.ntu.service.SocketSettings;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Reads the {@code socket.*} properties into the {@link SocketSettings} the
+ * {@link com.chencraft.ntu.service.SocketService} is created with.
+ */
+@Configuration
+public class SocketConfig {
+    @Bean
+    public SocketSettings socketSettings(Environment environment) {
+        return SocketSettings.fromProperties(environment);
+    }
+}
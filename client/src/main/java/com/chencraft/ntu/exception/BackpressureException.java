@@ -0,0 +1,21 @@
+package com.chencraft.ntu.exception;
+
+import lombok.ToString;
+
+/**
+ * Thrown when a request is refused before being sent because the client already has as many
+ * requests outstanding as the server appears able to handle, and the queue for the next free slot
+ * is full or was waited on for too long. Nothing reached the server, so the request can be retried
+ * later as is.
+ */
+@ToString(callSuper = true)
+public class BackpressureException extends OperationFailedException {
+    /**
+     * Constructor for BackpressureException.
+     *
+     * @param errorMessage descriptive error message
+     */
+    public BackpressureException(String errorMessage) {
+        super(errorMessage);
+    }
+}
@@ -0,0 +1,37 @@
+package com.chencraft.ntu.exception;
+
+import com.chencraft.ntu.model.OpCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Thrown when a non-idempotent operation gets no response in time, so the client cannot tell
+ * whether the server applied it. Blindly re-issuing the operation risks applying it twice; the
+ * request ID can be used to look up a late response in the client's request journal.
+ */
+@Getter
+@ToString(callSuper = true)
+public class OutcomeUnknownException extends RequestTimeoutException {
+    /**
+     * ID of the request whose outcome is unknown.
+     */
+    private final int requestId;
+
+    /**
+     * Operation of the request whose outcome is unknown.
+     */
+    private final OpCode opCode;
+
+    /**
+     * Constructor for OutcomeUnknownException.
+     *
+     * @param errorMessage descriptive error message
+     * @param requestId    ID of the request
+     * @param opCode       operation of the request
+     */
+    public OutcomeUnknownException(String errorMessage, int requestId, OpCode opCode) {
+        super(errorMessage);
+        this.requestId = requestId;
+        this.opCode = opCode;
+    }
+}
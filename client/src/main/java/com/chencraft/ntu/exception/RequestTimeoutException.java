@@ -0,0 +1,19 @@
+package com.chencraft.ntu.exception;
+
+import lombok.ToString;
+
+/**
+ * Thrown when a request gets no response within its retries and deadline, as opposed to the
+ * server rejecting it with an error message.
+ */
+@ToString(callSuper = true)
+public class RequestTimeoutException extends OperationFailedException {
+    /**
+     * Constructor for RequestTimeoutException.
+     *
+     * @param errorMessage descriptive error message
+     */
+    public RequestTimeoutException(String errorMessage) {
+        super(errorMessage);
+    }
+}
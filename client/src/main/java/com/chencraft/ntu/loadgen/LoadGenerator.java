@@ -0,0 +1,249 @@
+package com.chencraft.ntu.loadgen;
+
+import com.chencraft.ntu.exception.BackpressureException;
+import com.chencraft.ntu.exception.OperationFailedException;
+import com.chencraft.ntu.exception.RequestTimeoutException;
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.request.GetBalanceRequest;
+import com.chencraft.ntu.model.request.OpenAccountRequest;
+import com.chencraft.ntu.model.request.TransferRequest;
+import com.chencraft.ntu.model.request.UpdateBalanceRequest;
+import com.chencraft.ntu.service.BankingService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives {@link BankingService} with a weighted mix of operations and reports latency percentiles
+ * per operation code. Started with {@code --mode=loadgen}; configured by the {@code loadgen.*} properties.
+ * <p>
+ * Two load models are supported:
+ * - {@code open}: requests are issued at {@code loadgen.rate} per second regardless of how fast the
+ * server answers, each on its own virtual thread. Latency is measured from the time a request
+ * was due to be sent rather than when it actually was, so a stalled client or server shows up in
+ * the percentiles instead of silently lowering the offered load (coordinated omission).
+ * - {@code closed}: {@code loadgen.concurrency} virtual threads each issue a request as soon as the
+ * previous one completes, which measures the throughput a fixed number of callers can reach.
+ * <p>
+ * Before the run, {@code loadgen.accounts} accounts are opened for the other operations to use, and
+ * the first {@code loadgen.warmup} seconds are discarded. The summary is printed and written as
+ * JSON to {@code loadgen.summary-file}.
+ */
+@Slf4j
+@Component
+public class LoadGenerator {
+    private static final String PASSWORD = "loadgen";
+    private static final Currency CURRENCY = Currency.SGD;
+    private static final double INITIAL_BALANCE = 1_000_000;
+    private static final double AMOUNT = 1;
+
+    private final BankingService bankingService;
+    private final MeterRegistry meterRegistry;
+    private final String loop;
+    private final double rate;
+    private final int concurrency;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int accountCount;
+    private final OperationMix mix;
+    private final String summaryFile;
+
+    private int[] accounts;
+
+    @Autowired
+    public LoadGenerator(BankingService bankingService, MeterRegistry meterRegistry,
+                         @Value("${loadgen.loop:closed}") String loop,
+                         @Value("${loadgen.rate:1000}") double rate,
+                         @Value("${loadgen.concurrency:16}") int concurrency,
+                         @Value("${loadgen.duration:30}") long duration,
+                         @Value("${loadgen.warmup:5}") long warmup,
+                         @Value("${loadgen.accounts:100}") int accountCount,
+                         @Value("${loadgen.mix:open:5,deposit:30,withdraw:20,balance:35,transfer:10}") String mix,
+                         @Value("${loadgen.summary-file:loadgen-summary.json}") String summaryFile) {
+        this.loop = loop.toLowerCase(Locale.ROOT);
+        if (!this.loop.equals("open") && !this.loop.equals("closed")) {
+            throw new IllegalArgumentException("loadgen.loop must be 'open' or 'closed' but was: " + loop);
+        }
+        if (rate <= 0 || concurrency <= 0 || accountCount < 2) {
+            throw new IllegalArgumentException("Require loadgen.rate > 0, loadgen.concurrency > 0 and loadgen.accounts >= 2");
+        }
+        this.bankingService = bankingService;
+        this.meterRegistry = meterRegistry;
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(duration);
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmup);
+        this.accountCount = accountCount;
+        this.mix = OperationMix.parse(mix);
+        this.summaryFile = summaryFile;
+    }
+
+    /**
+     * Runs the configured load, prints the summary and writes it to the summary file.
+     */
+    public LoadSummary run() {
+        log.info("Opening {} accounts", accountCount);
+        accounts = new int[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = bankingService.openAccount(openRequest(i));
+        }
+
+        if (warmupNanos > 0) {
+            log.info("Warming up for {} s", TimeUnit.NANOSECONDS.toSeconds(warmupNanos));
+            drive(warmupNanos, newSummary());
+        }
+
+        LoadSummary summary = newSummary();
+        log.info("Running {}-loop load for {} s", loop, TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        double retransmissionsBefore = retransmissions();
+        long start = System.nanoTime();
+        drive(durationNanos, summary);
+        summary.finish((System.nanoTime() - start) / 1e9, (long) (retransmissions() - retransmissionsBefore),
+                       concurrencyLimit());
+
+        summary.print(System.out);
+        if (!summaryFile.isBlank()) {
+            try {
+                Files.writeString(Path.of(summaryFile), summary.toJson());
+                log.info("Summary written to {}", summaryFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write summary to " + summaryFile, e);
+            }
+        }
+        return summary;
+    }
+
+    private LoadSummary newSummary() {
+        return new LoadSummary(loop, loop.equals("open") ? rate : 0, loop.equals("closed") ? concurrency : 0);
+    }
+
+    private void drive(long durationNanos, LoadSummary summary) {
+        // Closing the executor waits for requests still in flight
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            if (loop.equals("open")) {
+                double intervalNanos = 1e9 / rate;
+                for (long i = 0; ; i++) {
+                    long intendedStart = start + (long) (i * intervalNanos);
+                    if (intendedStart - start >= durationNanos) {
+                        break;
+                    }
+                    long wait = intendedStart - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    workers.execute(() -> execute(mix.next(), intendedStart, summary));
+                }
+            } else {
+                long end = start + durationNanos;
+                for (int i = 0; i < concurrency; i++) {
+                    workers.execute(() -> {
+                        while (System.nanoTime() - end < 0) {
+                            execute(mix.next(), System.nanoTime(), summary);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private void execute(Operation operation, long startNanos, LoadSummary summary) {
+        try {
+            invoke(operation);
+            summary.recordSuccess(operation.getOpCode(), System.nanoTime() - startNanos);
+        } catch (RequestTimeoutException e) {
+            summary.recordTimeout(operation.getOpCode());
+        } catch (BackpressureException e) {
+            summary.recordRejection(operation.getOpCode());
+        } catch (OperationFailedException e) {
+            summary.recordError(operation.getOpCode(), System.nanoTime() - startNanos);
+        } catch (RuntimeException e) {
+            log.warn("{} failed: {}", operation, e.toString());
+            summary.recordError(operation.getOpCode(), System.nanoTime() - startNanos);
+        }
+    }
+
+    private void invoke(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index = random.nextInt(accounts.length);
+        switch (operation) {
+            case OPEN -> bankingService.openAccount(openRequest(accounts.length + random.nextInt(1_000_000)));
+            case DEPOSIT -> bankingService.deposit(updateRequest(index, true));
+            case WITHDRAW -> bankingService.withdrawal(updateRequest(index, false));
+            case BALANCE -> {
+                GetBalanceRequest request = new GetBalanceRequest();
+                request.setName(name(index));
+                request.setAccountNumber(accounts[index]);
+                request.setPassword(PASSWORD);
+                bankingService.getBalance(request);
+            }
+            case TRANSFER -> {
+                int destination = (index + 1 + random.nextInt(accounts.length - 1)) % accounts.length;
+                TransferRequest request = new TransferRequest();
+                request.setName(name(index));
+                request.setAccountNumber(accounts[index]);
+                request.setPassword(PASSWORD);
+                request.setDestAccountNumber(accounts[destination]);
+                request.setCurrency(CURRENCY);
+                request.setAmount(AMOUNT);
+                bankingService.transfer(request);
+            }
+        }
+    }
+
+    private OpenAccountRequest openRequest(int index) {
+        OpenAccountRequest request = new OpenAccountRequest();
+        request.setName(name(index));
+        request.setPassword(PASSWORD);
+        request.setCurrency(CURRENCY);
+        request.setInitialBalance(INITIAL_BALANCE);
+        return request;
+    }
+
+    private UpdateBalanceRequest updateRequest(int index, boolean deposit) {
+        UpdateBalanceRequest request = new UpdateBalanceRequest();
+        request.setName(name(index));
+        request.setAccountNumber(accounts[index]);
+        request.setPassword(PASSWORD);
+        request.setCurrency(CURRENCY);
+        request.setAmount(AMOUNT);
+        request.setDepositFlag(deposit);
+        return request;
+    }
+
+    /**
+     * Holder name of the account opened i-th during setup, {@code accounts[i]}.
+     */
+    private static String name(int index) {
+        return "loadgen-" + index;
+    }
+
+    /**
+     * Returns the client's concurrency limit, or NaN if it is not limited.
+     */
+    private double concurrencyLimit() {
+        Gauge limit = meterRegistry.find("socket.limit").gauge();
+        return limit == null || limit.value() >= Integer.MAX_VALUE ? Double.NaN : limit.value();
+    }
+
+    private double retransmissions() {
+        return meterRegistry.find("socket.requests.retransmitted").counters().stream()
+                            .mapToDouble(Counter::count)
+                            .sum();
+    }
+}
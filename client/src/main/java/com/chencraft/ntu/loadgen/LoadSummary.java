@@ -0,0 +1,181 @@
+package com.chencraft.ntu.loadgen;
+
+import com.chencraft.ntu.model.OpCode;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of a load run: an HdrHistogram of round-trip latency per {@link OpCode}, with success,
+ * error, timeout and rejection counts, plus run-wide throughput, retransmissions and the
+ * concurrency limit the client settled on.
+ * <p>
+ * Latencies are recorded in microseconds. Server errors ({@code MsgError}) are complete round trips
+ * and are included in the histograms; timeouts and requests rejected by the client's concurrency
+ * limiter are only counted.
+ */
+public final class LoadSummary {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_KEYS = {"p50", "p90", "p99", "p999"};
+
+    private final String loop;
+    private final double targetRate;
+    private final int concurrency;
+    private final Map<OpCode, OperationStats> stats = new EnumMap<>(OpCode.class);
+
+    private double elapsedSeconds;
+    private long retransmissions;
+    private double concurrencyLimit;
+
+    LoadSummary(String loop, double targetRate, int concurrency) {
+        this.loop = loop;
+        this.targetRate = targetRate;
+        this.concurrency = concurrency;
+        for (Operation operation : Operation.values()) {
+            stats.put(operation.getOpCode(), new OperationStats());
+        }
+    }
+
+    void recordSuccess(OpCode opCode, long latencyNanos) {
+        OperationStats operationStats = stats.get(opCode);
+        operationStats.histogram.recordValue(toMicros(latencyNanos));
+        operationStats.successes.increment();
+    }
+
+    void recordError(OpCode opCode, long latencyNanos) {
+        OperationStats operationStats = stats.get(opCode);
+        operationStats.histogram.recordValue(toMicros(latencyNanos));
+        operationStats.errors.increment();
+    }
+
+    void recordTimeout(OpCode opCode) {
+        stats.get(opCode).timeouts.increment();
+    }
+
+    void recordRejection(OpCode opCode) {
+        stats.get(opCode).rejections.increment();
+    }
+
+    /**
+     * @param concurrencyLimit the client's concurrency limit at the end of the run, or NaN if none
+     */
+    void finish(double elapsedSeconds, long retransmissions, double concurrencyLimit) {
+        this.elapsedSeconds = elapsedSeconds;
+        this.retransmissions = retransmissions;
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public long completed() {
+        return stats.values().stream().mapToLong(s -> s.successes.sum() + s.errors.sum()).sum();
+    }
+
+    public long errors() {
+        return stats.values().stream().mapToLong(s -> s.errors.sum()).sum();
+    }
+
+    public long timeouts() {
+        return stats.values().stream().mapToLong(s -> s.timeouts.sum()).sum();
+    }
+
+    public long rejections() {
+        return stats.values().stream().mapToLong(s -> s.rejections.sum()).sum();
+    }
+
+    public long retransmissions() {
+        return retransmissions;
+    }
+
+    public double throughput() {
+        return elapsedSeconds > 0 ? completed() / elapsedSeconds : 0;
+    }
+
+    /**
+     * Returns the latency histogram (microseconds) of an operation.
+     */
+    public Histogram histogram(OpCode opCode) {
+        return stats.get(opCode).histogram;
+    }
+
+    /**
+     * Prints a human-readable table of the results.
+     */
+    public void print(PrintStream out) {
+        out.printf(Locale.ROOT, "%n%s-loop load: %.1f s, %d completed, %.1f ops/s, %d errors, %d timeouts, %d rejected, %d retransmissions%n",
+                   loop, elapsedSeconds, completed(), throughput(), errors(), timeouts(), rejections(), retransmissions);
+        if (!Double.isNaN(concurrencyLimit)) {
+            out.printf(Locale.ROOT, "Concurrency limit at end of run: %.0f%n", concurrencyLimit);
+        }
+        out.printf(Locale.ROOT, "%-11s %9s %7s %8s %8s %10s %10s %10s %10s %10s%n",
+                   "OpCode", "count", "errors", "timeouts", "rejected", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        stats.forEach((opCode, s) -> {
+            Histogram h = s.histogram;
+            out.printf(Locale.ROOT, "%-11s %9d %7d %8d %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                       opCode, h.getTotalCount(), s.errors.sum(), s.timeouts.sum(), s.rejections.sum(),
+                       h.getValueAtPercentile(50) / 1e3, h.getValueAtPercentile(90) / 1e3,
+                       h.getValueAtPercentile(99) / 1e3, h.getValueAtPercentile(99.9) / 1e3, h.getMaxValue() / 1e3);
+        });
+    }
+
+    /**
+     * Renders the results as a JSON object.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"loop\": \"").append(loop).append("\",\n");
+        json.append("  \"targetRate\": ").append(number(targetRate)).append(",\n");
+        json.append("  \"concurrency\": ").append(concurrency).append(",\n");
+        json.append("  \"elapsedSeconds\": ").append(number(elapsedSeconds)).append(",\n");
+        json.append("  \"completed\": ").append(completed()).append(",\n");
+        json.append("  \"throughput\": ").append(number(throughput())).append(",\n");
+        json.append("  \"errors\": ").append(errors()).append(",\n");
+        json.append("  \"timeouts\": ").append(timeouts()).append(",\n");
+        json.append("  \"rejections\": ").append(rejections()).append(",\n");
+        json.append("  \"retransmissions\": ").append(retransmissions).append(",\n");
+        if (!Double.isNaN(concurrencyLimit)) {
+            json.append("  \"concurrencyLimit\": ").append(number(concurrencyLimit)).append(",\n");
+        }
+        json.append("  \"operations\": {");
+        String separator = "\n";
+        for (Map.Entry<OpCode, OperationStats> entry : stats.entrySet()) {
+            OperationStats s = entry.getValue();
+            Histogram h = s.histogram;
+            json.append(separator).append("    \"").append(entry.getKey()).append("\": {");
+            json.append("\"count\": ").append(h.getTotalCount());
+            json.append(", \"errors\": ").append(s.errors.sum());
+            json.append(", \"timeouts\": ").append(s.timeouts.sum());
+            json.append(", \"rejections\": ").append(s.rejections.sum());
+            json.append(", \"latencyMicros\": {\"mean\": ").append(number(h.getMean()));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                json.append(", \"").append(PERCENTILE_KEYS[i]).append("\": ").append(h.getValueAtPercentile(PERCENTILES[i]));
+            }
+            json.append(", \"max\": ").append(h.getMaxValue()).append("}}");
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    private static long toMicros(long nanos) {
+        return Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 1), HIGHEST_TRACKABLE_MICROS);
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static final class OperationStats {
+        private final Histogram histogram = new ConcurrentHistogram(1, HIGHEST_TRACKABLE_MICROS, 3);
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+    }
+}
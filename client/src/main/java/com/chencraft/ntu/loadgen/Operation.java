@@ -0,0 +1,22 @@
+package com.chencraft.ntu.loadgen;
+
+import com.chencraft.ntu.model.OpCode;
+import lombok.Getter;
+
+/**
+ * Banking operations the load generator can issue.
+ */
+@Getter
+public enum Operation {
+    OPEN(OpCode.OpOpen),
+    DEPOSIT(OpCode.OpDeposit),
+    WITHDRAW(OpCode.OpWithdraw),
+    BALANCE(OpCode.OpBalance),
+    TRANSFER(OpCode.OpTransfer);
+
+    private final OpCode opCode;
+
+    Operation(OpCode opCode) {
+        this.opCode = opCode;
+    }
+}
@@ -0,0 +1,65 @@
+package com.chencraft.ntu.loadgen;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted mix of {@link Operation}s, e.g. {@code open:5,deposit:30,withdraw:20,balance:35,transfer:10}.
+ * Weights are relative and need not add up to 100.
+ */
+public final class OperationMix {
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private OperationMix(Map<Operation, Integer> weights) {
+        List<Operation> selected = new ArrayList<>();
+        List<Integer> cumulative = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            if (entry.getValue() > 0) {
+                total += entry.getValue();
+                selected.add(entry.getKey());
+                cumulative.add(total);
+            }
+        }
+        if (selected.isEmpty()) {
+            throw new IllegalArgumentException("Operation mix must have at least one positive weight");
+        }
+        this.operations = selected.toArray(Operation[]::new);
+        this.cumulativeWeights = cumulative.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static OperationMix parse(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected <operation>:<weight> but got: " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight must not be negative: " + entry);
+            }
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)), weight);
+        }
+        return new OperationMix(weights);
+    }
+
+    /**
+     * Picks an operation at random according to the weights.
+     */
+    public Operation next() {
+        int total = cumulativeWeights[cumulativeWeights.length - 1];
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,14 @@
+package com.chencraft.ntu.model;
+
+/**
+ * A request that operates on one existing account, identified by its account number.
+ * <p>
+ * Lets transport-level code route such requests by account (e.g. to keep every request for an
+ * account on the same socket or server) without knowing the concrete request type.
+ */
+public interface AccountScoped {
+    /**
+     * @return the account operated on, or {@code null} if not yet set
+     */
+    Integer getAccountNumber();
+}
@@ -0,0 +1,52 @@
+package com.chencraft.ntu.model;
+
+import com.chencraft.ntu.util.WireReader;
+import com.chencraft.ntu.util.WireWriter;
+
+/**
+ * One entry of an account's transaction history, as carried by a {@link HistoryPage}.
+ * <p>
+ * On the wire a transaction takes {@link #SIZE} bytes:
+ * - Byte 0-7: sequence number
+ * - Byte 8: operation code
+ * - Byte 9-16: amount
+ * - Byte 17-24: balance after the transaction
+ * - Byte 25-32: server time of the transaction, in milliseconds since the epoch
+ * <p>
+ * The currency is that of the account and is carried once per page.
+ *
+ * @param sequence  position in the account's history, from 1
+ * @param opCode    operation that made the transaction; a transfer appears in the history of both accounts
+ * @param currency  currency of the account
+ * @param amount    change to the balance: positive for money in, negative for money out; the initial
+ *                  balance for {@code OpOpen}
+ * @param balance   balance after the transaction
+ * @param timestamp server time of the transaction, in milliseconds since the epoch
+ */
+public record AccountTransaction(long sequence, OpCode opCode, Currency currency, double amount, double balance,
+                                 long timestamp) {
+    /**
+     * Size of a transaction on the wire.
+     */
+    public static final int SIZE = 8 + 1 + 8 + 8 + 8;
+
+    /**
+     * Reads a transaction of an account holding {@code currency} at the reader's cursor.
+     */
+    public static AccountTransaction read(WireReader in, Currency currency) {
+        long sequence = in.readLong();
+        OpCode opCode = OpCode.fromByte(in.readByte());
+        return new AccountTransaction(sequence, opCode, currency, in.readDouble(), in.readDouble(), in.readLong());
+    }
+
+    /**
+     * Writes this transaction, without its currency, at the writer's cursor.
+     */
+    public void write(WireWriter out) {
+        out.writeLong(sequence)
+           .writeByte(opCode.getValue())
+           .writeDouble(amount)
+           .writeDouble(balance)
+           .writeLong(timestamp);
+    }
+}
@@ -0,0 +1,94 @@
+package com.chencraft.ntu.model;
+
+import com.chencraft.ntu.util.Converter;
+import com.chencraft.ntu.util.WireReader;
+import com.chencraft.ntu.util.WireWriter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An account update reported by a {@code MsgCallback}.
+ * <p>
+ * Binary callbacks carry the operation that caused the update in the header's operation code field
+ * and the request ID field holds the low 32 bits of {@code sequence}. The body is
+ * - Byte 6-9: account number
+ * - Byte 10: currency
+ * - Byte 11-18: balance after the update
+ * - Byte 19-26: server time of the update, in milliseconds since the epoch
+ * - Byte 27-34: server-wide callback sequence number, incremented by one per callback
+ * <p>
+ * Callbacks whose operation code is {@code OpMonitor} are legacy callbacks whose body is a
+ * free-text description instead (see {@link #isBinary(ByteBuffer)}).
+ *
+ * @param accountNumber account whose balance changed
+ * @param opCode        operation that changed it; a transfer reports both accounts
+ * @param currency      currency of the account
+ * @param balance       balance after the update (0 for a closed account)
+ * @param timestamp     server time of the update, in milliseconds since the epoch
+ * @param sequence      callback sequence number, used to detect lost callbacks
+ */
+public record AccountUpdateEvent(int accountNumber, OpCode opCode, Currency currency, double balance,
+                                 long timestamp, long sequence) {
+    /**
+     * Size of a binary callback, header included.
+     */
+    public static final int SIZE = Converter.HEADER_SIZE + 4 + 1 + 8 + 8 + 8;
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    /**
+     * Returns whether the callback starting at the buffer's position is binary rather than legacy text.
+     */
+    public static boolean isBinary(ByteBuffer callback) {
+        return callback.get(callback.position() + 5) != OpCode.OpMonitor.getValue();
+    }
+
+    /**
+     * Decodes a binary callback spanning the buffer's position to its limit.
+     *
+     * @throws IllegalArgumentException if the callback is truncated or holds an unknown code
+     */
+    public static AccountUpdateEvent decode(ByteBuffer callback) {
+        if (callback.remaining() < SIZE) {
+            throw new IllegalArgumentException("Callback of " + callback.remaining() + " bytes is too short");
+        }
+        WireReader reader = new WireReader(callback).skip(5);
+        OpCode opCode = OpCode.fromByte(reader.readByte());
+        return new AccountUpdateEvent(reader.readInt(), opCode, reader.readEnum(CURRENCIES), reader.readDouble(),
+                                      reader.readLong(), reader.readLong());
+    }
+
+    /**
+     * Encodes this event as a binary callback at the writer's cursor.
+     */
+    public void encode(WireWriter out) {
+        out.writeEnum(MessageType.MsgCallback)
+           .writeInt((int) sequence)
+           .writeByte(opCode.getValue())
+           .writeInt(accountNumber)
+           .writeEnum(currency)
+           .writeDouble(balance)
+           .writeLong(timestamp)
+           .writeLong(sequence);
+    }
+
+    /**
+     * One-line description, as shown to users of the text callback API.
+     */
+    @Override
+    public String toString() {
+        return String.format("Account %d %s, balance %.2f %s (#%d)", accountNumber, describe(opCode), balance,
+                             currency, sequence);
+    }
+
+    private static String describe(OpCode opCode) {
+        return switch (opCode) {
+            case OpOpen -> "opened";
+            case OpClose -> "closed";
+            case OpDeposit -> "deposit";
+            case OpWithdraw -> "withdrawal";
+            case OpTransfer -> "transfer";
+            default -> opCode.name();
+        };
+    }
+}
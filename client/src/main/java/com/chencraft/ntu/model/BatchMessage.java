@@ -0,0 +1,75 @@
+package com.chencraft.ntu.model;
+
+import com.chencraft.ntu.util.Converter;
+import com.chencraft.ntu.util.WireReader;
+import com.chencraft.ntu.util.WireWriter;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Wire layout of {@link OpCode#OpBatch} messages, which pack several complete messages into one datagram.
+ * <p>
+ * A batch is a regular header (type, request ID of the envelope, {@code OpBatch}) followed by
+ * - Byte 6-9: number of items
+ * - per item: its length as an int, then the item itself, a complete message with its own header
+ * <p>
+ * A batch request carries {@code MsgRequest} items, each with its own request ID and operation code.
+ * The server answers with one or more {@code MsgResponse} batches whose items are the individual
+ * {@code MsgResponse} or {@code MsgError} replies, so every item is matched to its request by ID
+ * exactly as if it had been sent on its own. The envelope's request ID is informational only.
+ */
+public final class BatchMessage {
+    /**
+     * Size of the envelope before the first item.
+     */
+    public static final int HEADER_SIZE = Converter.HEADER_SIZE + 4;
+
+    /**
+     * Bytes added per item on top of the item itself.
+     */
+    public static final int ITEM_OVERHEAD = 4;
+
+    private BatchMessage() {
+    }
+
+    /**
+     * Returns whether the message starting at the buffer's position is a batch.
+     */
+    public static boolean isBatch(ByteBuffer message) {
+        return message.remaining() >= HEADER_SIZE && message.get(message.position() + 5) == OpCode.OpBatch.getValue();
+    }
+
+    /**
+     * Writes a batch envelope header; the items follow with {@link #writeItem(WireWriter, ByteBuffer)}.
+     */
+    public static void writeHeader(WireWriter out, MessageType type, int requestId, int itemCount) {
+        out.writeEnum(type).writeInt(requestId).writeByte(OpCode.OpBatch.getValue()).writeInt(itemCount);
+    }
+
+    /**
+     * Writes the remaining bytes of {@code item} as the next item of a batch.
+     */
+    public static void writeItem(WireWriter out, ByteBuffer item) {
+        out.writeInt(item.remaining()).writeBytes(item);
+    }
+
+    /**
+     * Hands each item of a batch to {@code consumer} as a view spanning exactly that item.
+     *
+     * @throws IllegalArgumentException if the batch is truncated
+     */
+    public static void forEachItem(ByteBuffer batch, Consumer<ByteBuffer> consumer) {
+        WireReader reader = new WireReader(batch).skip(Converter.HEADER_SIZE);
+        int count = reader.readInt();
+        for (int i = 0; i < count; i++) {
+            int length = reader.readInt();
+            int offset = reader.position();
+            if (length < 0 || length > reader.remaining()) {
+                throw new IllegalArgumentException("Invalid batch: item " + i + " is truncated");
+            }
+            reader.skip(length);
+            consumer.accept(batch.duplicate().limit(offset + length).position(offset));
+        }
+    }
+}
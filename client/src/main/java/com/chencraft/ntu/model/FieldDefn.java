@@ -11,7 +11,9 @@ public enum FieldDefn {
     INITIAL_BALANCE("initialBalance", Double.class),
     MONITOR_INTERVAL("monitorInterval", Integer.class),
     DEST_ACCOUNT_NO("destAccountNumber", Integer.class),
-    AMOUNT("amount", Double.class);
+    AMOUNT("amount", Double.class),
+    SINCE("since", Long.class),
+    LIMIT("limit", Integer.class);
 
     private final String fieldName;
     private final Class<?> fieldType;
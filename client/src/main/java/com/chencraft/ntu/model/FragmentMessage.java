@@ -0,0 +1,152 @@
+package com.chencraft.ntu.model;
+
+import com.chencraft.ntu.util.Converter;
+import com.chencraft.ntu.util.WireReader;
+import com.chencraft.ntu.util.WireWriter;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * Wire layout of {@link OpCode#OpFragment} and {@link OpCode#OpNack} messages, which carry a message
+ * too large for one datagram as several fragments, and ask for the fragments that went missing.
+ * <p>
+ * A message of more than {@link #MAX_DATAGRAM_SIZE} bytes is cut into slices of
+ * {@link #PAYLOAD_SIZE} bytes, the last one shorter. Each slice is sent as a
+ * fragment: a regular header carrying the type and request ID of the whole message, with the
+ * operation code {@code OpFragment}, followed by
+ * - Byte 6-9: index of the fragment, from 0
+ * - Byte 10-13: number of fragments
+ * - Byte 14-17: length of the whole message
+ * - Byte 18-: the slice
+ * <p>
+ * The receiver reassembles the message and handles it as if it had arrived in one datagram. If
+ * fragments stop arriving before the message is complete, it sends a NACK: a header carrying the
+ * type and request ID of the incomplete message, with the operation code {@code OpNack}, followed by
+ * - Byte 6-9: number of missing fragments
+ * - per missing fragment: its index as an int
+ * <p>
+ * and the sender sends just those fragments again, if it still has the message.
+ */
+public final class FragmentMessage {
+    /**
+     * Largest datagram either side sends; larger messages are fragmented.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 1024;
+
+    /**
+     * Size of a fragment before its slice of the message.
+     */
+    public static final int HEADER_SIZE = Converter.HEADER_SIZE + 12;
+
+    /**
+     * Size of the slice of the message carried by every fragment but the last.
+     */
+    public static final int PAYLOAD_SIZE = MAX_DATAGRAM_SIZE - HEADER_SIZE;
+
+    /**
+     * Largest number of indices one NACK carries.
+     */
+    public static final int MAX_NACK_INDICES = (MAX_DATAGRAM_SIZE - Converter.HEADER_SIZE - 4) / 4;
+
+    private FragmentMessage() {
+    }
+
+    /**
+     * Returns whether the message starting at the buffer's position is a fragment.
+     */
+    public static boolean isFragment(ByteBuffer message) {
+        return message.remaining() >= HEADER_SIZE
+                && message.get(message.position() + 5) == OpCode.OpFragment.getValue();
+    }
+
+    /**
+     * Returns whether the message starting at the buffer's position is a NACK.
+     */
+    public static boolean isNack(ByteBuffer message) {
+        return message.remaining() >= Converter.HEADER_SIZE + 4
+                && message.get(message.position() + 5) == OpCode.OpNack.getValue();
+    }
+
+    /**
+     * Number of fragments a message of {@code length} bytes is cut into, or 1 if it fits in a datagram.
+     */
+    public static int fragmentCount(int length) {
+        if (length <= MAX_DATAGRAM_SIZE) {
+            return 1;
+        }
+        return (length + PAYLOAD_SIZE - 1) / PAYLOAD_SIZE;
+    }
+
+    /**
+     * Writes fragment {@code index} of the message spanning the remaining bytes of {@code message},
+     * leaving its position untouched.
+     */
+    public static void writeFragment(WireWriter out, ByteBuffer message, int index) {
+        int length = message.remaining();
+        int offset = index * PAYLOAD_SIZE;
+        out.writeByte(message.get(message.position()))
+           .writeInt(message.getInt(message.position() + 1))
+           .writeByte(OpCode.OpFragment.getValue())
+           .writeInt(index)
+           .writeInt(fragmentCount(length))
+           .writeInt(length)
+           .writeBytes(message.slice(message.position() + offset, Math.min(PAYLOAD_SIZE, length - offset)));
+    }
+
+    public static int index(ByteBuffer fragment) {
+        return fragment.getInt(fragment.position() + Converter.HEADER_SIZE);
+    }
+
+    public static int count(ByteBuffer fragment) {
+        return fragment.getInt(fragment.position() + Converter.HEADER_SIZE + 4);
+    }
+
+    /**
+     * Length of the whole message the fragment belongs to.
+     */
+    public static int messageLength(ByteBuffer fragment) {
+        return fragment.getInt(fragment.position() + Converter.HEADER_SIZE + 8);
+    }
+
+    /**
+     * Offset within the whole message of the fragment's slice.
+     */
+    public static int offset(ByteBuffer fragment) {
+        return index(fragment) * PAYLOAD_SIZE;
+    }
+
+    /**
+     * Returns the fragment's slice of the message as a view.
+     */
+    public static ByteBuffer payload(ByteBuffer fragment) {
+        return fragment.slice(fragment.position() + HEADER_SIZE, fragment.remaining() - HEADER_SIZE);
+    }
+
+    /**
+     * Writes a NACK for up to {@link #MAX_NACK_INDICES} of the given fragment indices.
+     */
+    public static void writeNack(WireWriter out, byte type, int messageId, int[] missing, int missingCount) {
+        int n = Math.min(missingCount, MAX_NACK_INDICES);
+        out.writeByte(type).writeInt(messageId).writeByte(OpCode.OpNack.getValue()).writeInt(n);
+        for (int i = 0; i < n; i++) {
+            out.writeInt(missing[i]);
+        }
+    }
+
+    /**
+     * Hands each fragment index listed in a NACK to {@code consumer}.
+     *
+     * @throws IllegalArgumentException if the NACK is truncated
+     */
+    public static void forEachMissing(ByteBuffer nack, IntConsumer consumer) {
+        WireReader reader = new WireReader(nack).skip(Converter.HEADER_SIZE);
+        int n = reader.readInt();
+        if (n < 0 || n > reader.remaining() / 4) {
+            throw new IllegalArgumentException("Invalid NACK: " + n + " indices");
+        }
+        for (int i = 0; i < n; i++) {
+            consumer.accept(reader.readInt());
+        }
+    }
+}
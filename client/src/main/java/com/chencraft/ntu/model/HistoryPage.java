@@ -0,0 +1,83 @@
+package com.chencraft.ntu.model;
+
+import com.chencraft.ntu.util.Converter;
+import com.chencraft.ntu.util.WireReader;
+import com.chencraft.ntu.util.WireWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The reply to an {@link OpCode#OpHistory} request: one page of an account's transaction history.
+ * <p>
+ * After the regular response header, a page is
+ * - Byte 6: currency of the account
+ * - Byte 7-14: sequence number of the account's latest transaction when the page was read
+ * - Byte 15-18: number of transactions in the page
+ * - per transaction: an {@link AccountTransaction}, in sequence order
+ * <p>
+ * A page large enough to need it is sent in fragments like any other message. Replies are at most
+ * 1 MiB, so a page holds at most {@link #MAX_TRANSACTIONS} transactions, however many were asked for.
+ *
+ * @param currency       currency of the account
+ * @param latestSequence sequence number of the account's latest transaction, 0 if it has none
+ * @param transactions   the transactions in the page, in sequence order
+ */
+public record HistoryPage(Currency currency, long latestSequence, List<AccountTransaction> transactions) {
+    /**
+     * Size of a page with no transactions, header included.
+     */
+    public static final int HEADER_SIZE = Converter.HEADER_SIZE + 1 + 8 + 4;
+
+    /**
+     * Most transactions the server puts in one page.
+     */
+    public static final int MAX_TRANSACTIONS = maxTransactions(1 << 20);
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    /**
+     * Largest number of transactions a page of at most {@code messageSize} bytes holds.
+     */
+    public static int maxTransactions(int messageSize) {
+        return Math.max(0, (messageSize - HEADER_SIZE) / AccountTransaction.SIZE);
+    }
+
+    /**
+     * Reads the body of a page at the reader's cursor, just after the header.
+     *
+     * @throws IllegalArgumentException if the page is truncated
+     */
+    public static HistoryPage read(WireReader in) {
+        Currency currency = in.readEnum(CURRENCIES);
+        long latestSequence = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > in.remaining() / AccountTransaction.SIZE) {
+            throw new IllegalArgumentException("Invalid history page: " + count + " transactions");
+        }
+        List<AccountTransaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(AccountTransaction.read(in, currency));
+        }
+        return new HistoryPage(currency, latestSequence, transactions);
+    }
+
+    /**
+     * Writes the body of this page at the writer's cursor, just after the header.
+     */
+    public void writeBody(WireWriter out) {
+        out.writeEnum(currency).writeLong(latestSequence).writeInt(transactions.size());
+        for (AccountTransaction transaction : transactions) {
+            transaction.write(out);
+        }
+    }
+
+    /**
+     * Returns whether this page, requested with {@code since}, reaches the end of the history as it
+     * stood when the page was read. A page with fewer transactions than asked for does not by itself,
+     * since the server caps the size of a page.
+     */
+    public boolean reachesEnd(long since) {
+        return since + transactions.size() >= latestSequence;
+    }
+}
@@ -4,5 +4,14 @@ public enum MessageType {
     MsgRequest,
     MsgResponse,
     MsgError,
-    MsgCallback
+    MsgCallback;
+
+    private static final MessageType[] VALUES = values();
+
+    public static MessageType fromByte(byte value) {
+        if (value < 0 || value >= VALUES.length) {
+            throw new IllegalArgumentException("Invalid MessageType value: " + value);
+        }
+        return VALUES[value];
+    }
 }
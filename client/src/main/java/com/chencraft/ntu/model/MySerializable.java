@@ -1,9 +1,8 @@
 package com.chencraft.ntu.model;
 
-import com.chencraft.ntu.util.Converter;
+import com.chencraft.ntu.util.WireWriter;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -11,21 +10,21 @@ import java.util.List;
  * a byte array representation. Implementing classes must contain fields
  * that support serialization to ensure proper functionality.
  * <p>
- * The default implementation of the {@code marshall} method uses
- * reflection to inspect the fields of the implementing class and convert
- * their values into byte arrays. Supported field types include:
+ * The default implementation of the {@code marshall} method is driven by
+ * the {@link FieldDefn} list returned from {@code getFieldDefs()}. The list
+ * is compiled once per implementing class into a cached encoder that binds
+ * each field to its accessor, so no reflection happens while marshalling.
+ * Supported field types include:
  * - {@code String}
  * - {@code Integer} (both primitive and wrapper types)
+ * - {@code Long} (both primitive and wrapper types)
  * - {@code Double} (both primitive and wrapper types)
- * - Other classes implementing the {@code MySerializable} interface
+ * - {@code Currency}
  * <p>
  * Unsupported field types will result in an {@code UnsupportedOperationException}.
  * <p>
- * Reflection-based access ensures that private, protected, or package-private
- * fields are also processed by the serialization logic.
- * <p>
- * Any {@code IllegalAccessException} encountered during the serialization
- * process will result in a {@code RuntimeException}.
+ * Fields are read through their public getter when one exists; otherwise
+ * private, protected, or package-private fields are accessed directly.
  * <p>
  * Classes implementing this interface should ensure that fields expected
  * to be serialized are properly initialized to prevent unintended behavior.
@@ -35,60 +34,46 @@ public interface MySerializable {
 
     List<FieldDefn> getFieldDefs();
 
+    /**
+     * Marshalls this request into a newly allocated, exactly sized byte array.
+     *
+     * @param requestId ID placed in the message header
+     * @return the encoded message
+     */
     default byte[] marshall(int requestId) {
-        List<byte[]> pieces = new ArrayList<>();
-        int totalLength = 0;
-
-        // Message Type value
-        byte[] typeBytes = Converter.toByteArray(MessageType.MsgRequest);
-        pieces.add(typeBytes);
-        totalLength += typeBytes.length;
-
-        // Request Id
-        byte[] idBytes = Converter.toByteArray(requestId);
-        pieces.add(idBytes);
-        totalLength += idBytes.length;
-
-        // Operation Code
-        byte[] opCodeBytes = new byte[]{getOpCode().getValue()};
-        pieces.add(opCodeBytes);
-        totalLength += opCodeBytes.length;
+        RequestEncoder encoder = RequestEncoder.of(this);
+        byte[] result = new byte[encoder.size(this)];
+        encoder.encode(this, requestId, new WireWriter(ByteBuffer.wrap(result)));
+        return result;
+    }
 
-        // Body
-        for (FieldDefn fieldDefn : getFieldDefs()) {
-            try {
-                String fieldName = fieldDefn.getFieldName();
-                Class<?> fieldType = fieldDefn.getFieldType();
-                Field field = this.getClass().getDeclaredField(fieldName);
-                field.setAccessible(true);
+    /**
+     * Marshalls this request at the current position of a caller-supplied buffer
+     * and advances the position past the encoded message.
+     *
+     * @param requestId ID placed in the message header
+     * @param out       buffer with at least {@link #marshalledSize()} bytes remaining
+     */
+    default void marshall(int requestId, ByteBuffer out) {
+        WireWriter writer = new WireWriter(out);
+        marshall(requestId, writer);
+        out.position(writer.position());
+    }
 
-                byte[] fieldBytes;
-                if (fieldType.equals(String.class)) {
-                    fieldBytes = Converter.toByteArray((String) field.get(this));
-                } else if (fieldType.equals(Double.class)) {
-                    fieldBytes = Converter.toByteArray((Double) field.get(this));
-                } else if (fieldType.equals(Integer.class)) {
-                    fieldBytes = Converter.toByteArray((Integer) field.get(this));
-                } else if (fieldType.equals(Currency.class)) {
-                    fieldBytes = Converter.toByteArray((Currency) field.get(this));
-                } else {
-                    throw new UnsupportedOperationException("Unsupported type: " + fieldType.getSimpleName());
-                }
-                pieces.add(fieldBytes);
-                totalLength += fieldBytes.length;
-            } catch (NoSuchFieldException | IllegalAccessException e) {
-                throw new RuntimeException("Failed to marshall field: " + fieldDefn.getFieldName()
-                                                   + " for class: " + this.getClass()
-                                                                          .getSimpleName(), e);
-            }
-        }
+    /**
+     * Marshalls this request at the cursor of a caller-supplied writer.
+     *
+     * @param requestId ID placed in the message header
+     * @param out       writer with at least {@link #marshalledSize()} bytes of room
+     */
+    default void marshall(int requestId, WireWriter out) {
+        RequestEncoder.of(this).encode(this, requestId, out);
+    }
 
-        byte[] result = new byte[totalLength];
-        int currentPos = 0;
-        for (byte[] piece : pieces) {
-            System.arraycopy(piece, 0, result, currentPos, piece.length);
-            currentPos += piece.length;
-        }
-        return result;
+    /**
+     * Returns the number of bytes this request occupies on the wire, header included.
+     */
+    default int marshalledSize() {
+        return RequestEncoder.of(this).size(this);
     }
 }
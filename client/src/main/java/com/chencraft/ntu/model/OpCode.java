@@ -4,25 +4,55 @@ import lombok.Getter;
 
 @Getter
 public enum OpCode {
-    OpOpen(0x01),
-    OpClose(0x02),
-    OpDeposit(0x03),
-    OpWithdraw(0x04),
-    OpMonitor(0x05),
-    OpBalance(0x06),
-    OpTransfer(0x07);
+    OpOpen(0x01, false),
+    OpClose(0x02, false),
+    OpDeposit(0x03, false),
+    OpWithdraw(0x04, false),
+    OpMonitor(0x05, true),
+    OpBalance(0x06, true),
+    OpTransfer(0x07, false),
+    /**
+     * Envelope carrying several complete request messages in one datagram; see {@link BatchMessage}.
+     */
+    OpBatch(0x08, false),
+    /**
+     * One fragment of a message too large for a datagram; see {@link FragmentMessage}.
+     */
+    OpFragment(0x09, false),
+    /**
+     * Request to resend the missing fragments of a message; see {@link FragmentMessage}.
+     */
+    OpNack(0x0A, false),
+    /**
+     * One page of an account's transaction history; see {@link HistoryPage}.
+     */
+    OpHistory(0x0B, true);
+
+    private static final OpCode[] BY_VALUE = new OpCode[128];
+
+    static {
+        for (OpCode opCode : values()) {
+            BY_VALUE[opCode.value] = opCode;
+        }
+    }
 
     private final byte value;
 
-    OpCode(int value) {
+    /**
+     * Whether executing the operation more than once has the same effect as executing it once,
+     * which makes it safe to retransmit or duplicate without server-side deduplication.
+     */
+    private final boolean idempotent;
+
+    OpCode(int value, boolean idempotent) {
         this.value = (byte) value;
+        this.idempotent = idempotent;
     }
 
     public static OpCode fromByte(byte value) {
-        for (OpCode opCode : OpCode.values()) {
-            if (opCode.value == value) {
-                return opCode;
-            }
+        OpCode opCode = value >= 0 ? BY_VALUE[value] : null;
+        if (opCode != null) {
+            return opCode;
         }
         throw new IllegalArgumentException("Invalid OpCode value: " + value);
     }
@@ -0,0 +1,247 @@
+package com.chencraft.ntu.model;
+
+import com.chencraft.ntu.util.WireWriter;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Precompiled encoder for a {@link MySerializable} request class.
+ * <p>
+ * An encoder is built once per request class from the {@link FieldDefn} list returned by
+ * {@link MySerializable#getFieldDefs()} and cached for the lifetime of the JVM. Each field is bound
+ * to a getter lambda spun by {@link LambdaMetafactory} over the class's public accessor, falling back
+ * to a direct field {@link MethodHandle} when no accessor exists. Encoding an instance therefore does
+ * no reflective lookups and writes every field straight into a single output buffer through a
+ * {@link WireWriter}.
+ * <p>
+ * The field definitions of a request class are assumed to be constant across its instances.
+ */
+final class RequestEncoder {
+    /**
+     * Size of the message header: type (1 byte), request ID (4 bytes) and operation code (1 byte).
+     */
+    static final int HEADER_SIZE = 6;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ConcurrentMap<Class<?>, RequestEncoder> ENCODERS = new ConcurrentHashMap<>();
+
+    private final FieldEncoder[] fields;
+
+    private RequestEncoder(FieldEncoder[] fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Returns the cached encoder for the class of the given request, building it on first use.
+     */
+    static RequestEncoder of(MySerializable request) {
+        Class<? extends MySerializable> clazz = request.getClass();
+        RequestEncoder encoder = ENCODERS.get(clazz);
+        if (encoder == null) {
+            encoder = ENCODERS.computeIfAbsent(clazz, c -> build(c, request.getFieldDefs()));
+        }
+        return encoder;
+    }
+
+    /**
+     * Computes the number of bytes the request occupies on the wire, header included.
+     */
+    int size(MySerializable request) {
+        int size = HEADER_SIZE;
+        for (FieldEncoder field : fields) {
+            size += field.size(request);
+        }
+        return size;
+    }
+
+    /**
+     * Writes the header and body of the request at the cursor of {@code out}.
+     */
+    void encode(MySerializable request, int requestId, WireWriter out) {
+        out.writeEnum(MessageType.MsgRequest);
+        out.writeInt(requestId);
+        out.writeByte(request.getOpCode().getValue());
+        for (FieldEncoder field : fields) {
+            field.encode(request, out);
+        }
+    }
+
+    private static RequestEncoder build(Class<?> clazz, List<FieldDefn> fieldDefs) {
+        FieldEncoder[] fields = new FieldEncoder[fieldDefs.size()];
+        for (int i = 0; i < fields.length; i++) {
+            FieldDefn fieldDefn = fieldDefs.get(i);
+            Class<?> fieldType = fieldDefn.getFieldType();
+            Function<Object, Object> getter = getter(clazz, fieldDefn);
+
+            if (fieldType.equals(String.class)) {
+                fields[i] = new StringField(fieldDefn, getter);
+            } else if (fieldType.equals(Double.class)) {
+                fields[i] = new DoubleField(fieldDefn, getter);
+            } else if (fieldType.equals(Integer.class)) {
+                fields[i] = new IntField(fieldDefn, getter);
+            } else if (fieldType.equals(Long.class)) {
+                fields[i] = new LongField(fieldDefn, getter);
+            } else if (fieldType.equals(Currency.class)) {
+                fields[i] = new EnumField(fieldDefn, getter);
+            } else {
+                throw new UnsupportedOperationException("Unsupported type: " + fieldType.getSimpleName());
+            }
+        }
+        return new RequestEncoder(fields);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getter(Class<?> clazz, FieldDefn fieldDefn) {
+        String fieldName = fieldDefn.getFieldName();
+        Class<?> fieldType = fieldDefn.getFieldType();
+        String getterName = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+
+        try {
+            MethodHandle accessor = LOOKUP.findVirtual(clazz, getterName, MethodType.methodType(fieldType));
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply",
+                                                          MethodType.methodType(Function.class),
+                                                          MethodType.methodType(Object.class, Object.class),
+                                                          accessor,
+                                                          MethodType.methodType(fieldType, clazz));
+            return (Function<Object, Object>) site.getTarget().invokeExact();
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return fieldGetter(clazz, fieldDefn);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to marshall field: " + fieldName
+                                               + " for class: " + clazz.getSimpleName(), e);
+        }
+    }
+
+    private static Function<Object, Object> fieldGetter(Class<?> clazz, FieldDefn fieldDefn) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.privateLookupIn(clazz, LOOKUP)
+                                  .findGetter(clazz, fieldDefn.getFieldName(), fieldDefn.getFieldType())
+                                  .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException("Failed to marshall field: " + fieldDefn.getFieldName()
+                                               + " for class: " + clazz.getSimpleName(), e);
+        }
+        return target -> {
+            try {
+                return handle.invokeExact(target);
+            } catch (Throwable e) {
+                throw new RuntimeException("Failed to marshall field: " + fieldDefn.getFieldName()
+                                                   + " for class: " + clazz.getSimpleName(), e);
+            }
+        };
+    }
+
+    /**
+     * Encoder for a single field of a request class.
+     */
+    private abstract static class FieldEncoder {
+        private final FieldDefn fieldDefn;
+        private final Function<Object, Object> getter;
+
+        FieldEncoder(FieldDefn fieldDefn, Function<Object, Object> getter) {
+            this.fieldDefn = fieldDefn;
+            this.getter = getter;
+        }
+
+        final Object value(Object request) {
+            Object value = getter.apply(request);
+            if (value == null) {
+                throw new NullPointerException("Field not set: " + fieldDefn.getFieldName());
+            }
+            return value;
+        }
+
+        abstract int size(Object request);
+
+        abstract void encode(Object request, WireWriter out);
+    }
+
+    private static final class StringField extends FieldEncoder {
+        StringField(FieldDefn fieldDefn, Function<Object, Object> getter) {
+            super(fieldDefn, getter);
+        }
+
+        @Override
+        int size(Object request) {
+            return WireWriter.sizeOf((String) value(request));
+        }
+
+        @Override
+        void encode(Object request, WireWriter out) {
+            out.writeString((String) value(request));
+        }
+    }
+
+    private static final class IntField extends FieldEncoder {
+        IntField(FieldDefn fieldDefn, Function<Object, Object> getter) {
+            super(fieldDefn, getter);
+        }
+
+        @Override
+        int size(Object request) {
+            return 4;
+        }
+
+        @Override
+        void encode(Object request, WireWriter out) {
+            out.writeInt((Integer) value(request));
+        }
+    }
+
+    private static final class LongField extends FieldEncoder {
+        LongField(FieldDefn fieldDefn, Function<Object, Object> getter) {
+            super(fieldDefn, getter);
+        }
+
+        @Override
+        int size(Object request) {
+            return 8;
+        }
+
+        @Override
+        void encode(Object request, WireWriter out) {
+            out.writeLong((Long) value(request));
+        }
+    }
+
+    private static final class DoubleField extends FieldEncoder {
+        DoubleField(FieldDefn fieldDefn, Function<Object, Object> getter) {
+            super(fieldDefn, getter);
+        }
+
+        @Override
+        int size(Object request) {
+            return 8;
+        }
+
+        @Override
+        void encode(Object request, WireWriter out) {
+            out.writeDouble((Double) value(request));
+        }
+    }
+
+    private static final class EnumField extends FieldEncoder {
+        EnumField(FieldDefn fieldDefn, Function<Object, Object> getter) {
+            super(fieldDefn, getter);
+        }
+
+        @Override
+        int size(Object request) {
+            return 1;
+        }
+
+        @Override
+        void encode(Object request, WireWriter out) {
+            out.writeEnum((Enum<?>) value(request));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.chencraft.ntu.model.request;
 
+import com.chencraft.ntu.model.AccountScoped;
 import com.chencraft.ntu.model.FieldDefn;
 import com.chencraft.ntu.model.MySerializable;
 import com.chencraft.ntu.model.OpCode;
@@ -11,7 +12,7 @@ import java.util.List;
  * Data transfer object for an idempotent operation to retrieve the current balance of an account.
  */
 @Data
-public class GetBalanceRequest implements MySerializable {
+public class GetBalanceRequest implements MySerializable, AccountScoped {
     /**
      * Name of the account holder.
      */
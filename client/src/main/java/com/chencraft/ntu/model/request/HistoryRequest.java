@@ -0,0 +1,53 @@
+package com.chencraft.ntu.model.request;
+
+import com.chencraft.ntu.model.AccountScoped;
+import com.chencraft.ntu.model.FieldDefn;
+import com.chencraft.ntu.model.MySerializable;
+import com.chencraft.ntu.model.OpCode;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data transfer object for an idempotent operation to read one page of an account's transaction history.
+ * <p>
+ * Transactions are numbered from 1 per account, in the order they were applied; the page holds those
+ * numbered {@code since + 1} to {@code since + limit} that exist.
+ */
+@Data
+public class HistoryRequest implements MySerializable, AccountScoped {
+    /**
+     * Name of the account holder.
+     */
+    private String name;
+
+    /**
+     * The account whose history is read.
+     */
+    private Integer accountNumber;
+
+    /**
+     * Password to authenticate the history query.
+     */
+    private String password;
+
+    /**
+     * Sequence number of the last transaction already seen; 0 to start from the first.
+     */
+    private Long since;
+
+    /**
+     * Largest number of transactions in the page.
+     */
+    private Integer limit;
+
+    @Override
+    public OpCode getOpCode() {
+        return OpCode.OpHistory;
+    }
+
+    @Override
+    public List<FieldDefn> getFieldDefs() {
+        return List.of(FieldDefn.NAME, FieldDefn.PASSWORD, FieldDefn.ACCOUNT_NO, FieldDefn.SINCE, FieldDefn.LIMIT);
+    }
+}
@@ -1,5 +1,6 @@
 package com.chencraft.ntu.model.request;
 
+import com.chencraft.ntu.model.AccountScoped;
 import com.chencraft.ntu.model.Currency;
 import com.chencraft.ntu.model.FieldDefn;
 import com.chencraft.ntu.model.MySerializable;
@@ -12,7 +13,7 @@ import java.util.List;
  * Data transfer object for a non-idempotent operation to transfer funds between accounts.
  */
 @Data
-public class TransferRequest implements MySerializable {
+public class TransferRequest implements MySerializable, AccountScoped {
     /**
      * Name of the sender (account holder of the source account).
      */
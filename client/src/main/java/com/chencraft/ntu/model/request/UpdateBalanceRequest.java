@@ -1,5 +1,6 @@
 package com.chencraft.ntu.model.request;
 
+import com.chencraft.ntu.model.AccountScoped;
 import com.chencraft.ntu.model.Currency;
 import com.chencraft.ntu.model.FieldDefn;
 import com.chencraft.ntu.model.MySerializable;
@@ -13,7 +14,7 @@ import java.util.List;
  * This operation is non-idempotent as it modifies the account balance.
  */
 @Data
-public class UpdateBalanceRequest implements MySerializable {
+public class UpdateBalanceRequest implements MySerializable, AccountScoped {
     /**
      * Name of the account holder.
      */
@@ -53,6 +54,6 @@ public class UpdateBalanceRequest implements MySerializable {
 
     @Override
     public List<FieldDefn> getFieldDefs() {
-        return List.of(FieldDefn.NAME, FieldDefn.PASSWORD, FieldDefn.ACCOUNT_NO, FieldDefn.CURRENCY, FieldDefn.ACCOUNT_NO);
+        return List.of(FieldDefn.NAME, FieldDefn.PASSWORD, FieldDefn.ACCOUNT_NO, FieldDefn.CURRENCY, FieldDefn.AMOUNT);
     }
 }
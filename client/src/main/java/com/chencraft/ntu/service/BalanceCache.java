@@ -0,0 +1,214 @@
+package com.chencraft.ntu.service;
+
+import com.chencraft.ntu.model.AccountUpdateEvent;
+import com.chencraft.ntu.model.OpCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in read-through cache of account balances, keyed by account number.
+ * <p>
+ * Entries are written from the balance returned by every deposit, withdrawal, transfer (source
+ * account) and balance enquiry this client makes, and are dropped when a monitor callback reports
+ * an update to the account, or when the account is closed. Binary callbacks carry the new balance,
+ * which replaces that of an entry already cached. A response to a request sent before the account's
+ * entry was last written or invalidated is not cached, since it may predate the update.
+ * <p>
+ * A cached balance is served for at most {@code balance-cache.max-staleness} milliseconds after
+ * its request was sent, which bounds how stale it can be when updates by other clients go
+ * unnoticed because no monitor is registered or a callback is lost. At most
+ * {@code balance-cache.size} accounts are kept, least recently used first out.
+ * <p>
+ * Since the server authenticates every enquiry, an entry is only served to a request carrying the
+ * same name and password as the request that produced it; any other request is a miss.
+ * <p>
+ * Lookups are counted by {@code balance.cache.requests{result=hit|miss|stale}}, where {@code stale}
+ * means an entry was found but was older than the staleness bound.
+ */
+@Slf4j
+@Service
+public class BalanceCache {
+    private static final Pattern ACCOUNT = Pattern.compile("(?i)\\baccount (\\d+)");
+
+    private final boolean enabled;
+    private final long maxStalenessNanos;
+    private final Map<Integer, Entry> entries;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter stale;
+
+    private volatile boolean structuredUpdates;
+
+    /**
+     * @param maxStaleness longest time (ms) a balance is served from the cache after its request was sent
+     * @param size         maximum number of cached accounts
+     */
+    @Autowired
+    public BalanceCache(@Value("${balance-cache.enabled:false}") boolean enabled,
+                        @Value("${balance-cache.max-staleness:1000}") long maxStaleness,
+                        @Value("${balance-cache.size:10000}") int size,
+                        MeterRegistry meterRegistry) {
+        if (maxStaleness < 0 || size <= 0) {
+            throw new IllegalArgumentException("Require balance-cache.max-staleness >= 0 and balance-cache.size > 0");
+        }
+        this.enabled = enabled;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStaleness);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > size;
+            }
+        };
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+        this.stale = counter(meterRegistry, "stale");
+        Gauge.builder("balance.cache.size", this, BalanceCache::size)
+             .description("Accounts whose balance is cached")
+             .register(meterRegistry);
+        if (enabled) {
+            log.info("Balance cache enabled for up to {} accounts, max staleness {} ms", size, maxStaleness);
+        }
+    }
+
+    /**
+     * Creates a cache that never holds anything.
+     */
+    public static BalanceCache disabled(MeterRegistry meterRegistry) {
+        return new BalanceCache(false, 0, 1, meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached balance of an account if it is fresh and was obtained with the same credentials.
+     *
+     * @return the balance, or {@code null} on a miss
+     */
+    public Double get(int accountNumber, String name, String password) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(accountNumber);
+            if (entry != null && !entry.isInvalidation()
+                    && System.nanoTime() - entry.atNanos > maxStalenessNanos) {
+                entries.remove(accountNumber);
+                stale.increment();
+                return null;
+            }
+        }
+        if (entry == null || entry.isInvalidation() || !entry.name.equals(name) || !entry.password.equals(password)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.balance;
+    }
+
+    /**
+     * Records a balance returned by the server, unless the account's entry is newer: a balance
+     * from a request sent later, a callback or an invalidation.
+     *
+     * @param sentAtNanos when the request that returned it was sent, which bounds the balance's age
+     */
+    public void put(int accountNumber, String name, String password, double balance, long sentAtNanos) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            Entry previous = entries.get(accountNumber);
+            if (previous != null && previous.atNanos - sentAtNanos > 0) {
+                return;
+            }
+            entries.put(accountNumber, new Entry(name, password, balance, sentAtNanos));
+        }
+    }
+
+    /**
+     * Drops the cached balance of an account, and remembers when so that responses to requests sent
+     * earlier are not cached.
+     */
+    public void invalidate(int accountNumber) {
+        if (enabled) {
+            synchronized (this) {
+                entries.put(accountNumber, new Entry(null, null, Double.NaN, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Applies a binary monitor callback: the cached balance of the account is replaced by the
+     * reported one, keeping the credentials it was cached with. Accounts not cached are only marked
+     * as invalidated, since the event carries no credentials.
+     */
+    public void onUpdate(AccountUpdateEvent event) {
+        if (!enabled) {
+            return;
+        }
+        structuredUpdates = true;
+        synchronized (this) {
+            Entry entry = entries.get(event.accountNumber());
+            if (event.opCode() != OpCode.OpClose && entry != null && !entry.isInvalidation()) {
+                entries.put(event.accountNumber(),
+                            new Entry(entry.name(), entry.password(), event.balance(), System.nanoTime()));
+                return;
+            }
+        }
+        invalidate(event.accountNumber());
+    }
+
+    /**
+     * Drops every account mentioned in a legacy text callback, such as both sides of a transfer.
+     * Ignored once binary callbacks have been seen, whose text form is the same update.
+     */
+    public void onCallback(String callback) {
+        if (!enabled || callback == null || structuredUpdates) {
+            return;
+        }
+        Matcher matcher = ACCOUNT.matcher(callback);
+        while (matcher.find()) {
+            try {
+                invalidate(Integer.parseInt(matcher.group(1)));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring account number out of range in callback: {}", callback);
+            }
+        }
+    }
+
+    /**
+     * Number of entries, including recent invalidations.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("balance.cache.requests")
+                      .description("Balance enquiries looked up in the cache, by result")
+                      .tag("result", result)
+                      .register(meterRegistry);
+    }
+
+    /**
+     * A cached balance, or with a {@code null} name, the time at which the account was invalidated.
+     */
+    private record Entry(String name, String password, double balance, long atNanos) {
+        private boolean isInvalidation() {
+            return name == null;
+        }
+    }
+}
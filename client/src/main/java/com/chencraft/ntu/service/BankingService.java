@@ -1,10 +1,24 @@
 package com.chencraft.ntu.service;
 
+import com.chencraft.ntu.model.AccountTransaction;
+import com.chencraft.ntu.model.HistoryPage;
+import com.chencraft.ntu.model.MySerializable;
 import com.chencraft.ntu.model.request.*;
+import com.chencraft.ntu.util.ResponseDecoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
 /**
  * Service class that handles the core business logic for the Distributed Banking System.
  * It manages account storage, performs transactions, and handles client monitoring registrations.
@@ -14,10 +28,52 @@ import org.springframework.stereotype.Service;
 @Service
 public class BankingService {
     private final SocketService socketService;
+    private final RequestCoalescer coalescer;
+    private final BalanceCache balanceCache;
+    private final int historyPageSize;
+    private final int historyWindow;
+    private final Executor historyExecutor;
 
-    @Autowired
+    /**
+     * Creates a service that sends every request immediately, caches nothing and delivers history on
+     * virtual threads.
+     */
     public BankingService(SocketService socketService) {
+        this(socketService, RequestCoalescer.disabled(socketService, new SimpleMeterRegistry()),
+             BalanceCache.disabled(new SimpleMeterRegistry()), 256, 4, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * @param historyPageSize transactions read per {@code OpHistory} request by {@link #streamHistory}, at
+     *                        most what the server and {@code socket.fragment.max-message-size} allow in one page
+     * @param historyWindow   pages of history requested ahead of the subscriber
+     * @param historyExecutor runs the subscribers of {@link #streamHistory}; Spring's task executor,
+     *                        configured with {@code spring.task.execution.*}
+     */
+    @Autowired
+    public BankingService(SocketService socketService, RequestCoalescer coalescer, BalanceCache balanceCache,
+                          @Value("${history.page-size:256}") int historyPageSize,
+                          @Value("${history.window:4}") int historyWindow,
+                          @Qualifier("applicationTaskExecutor") Executor historyExecutor) {
+        if (historyPageSize <= 0 || historyWindow <= 0) {
+            throw new IllegalArgumentException("history.page-size and history.window must be positive");
+        }
+        int maxPageSize = Math.min(HistoryPage.MAX_TRANSACTIONS,
+                                   HistoryPage.maxTransactions(socketService.getMaxMessageSize()));
+        if (historyPageSize > maxPageSize) {
+            throw new IllegalArgumentException("history.page-size " + historyPageSize + " exceeds the " + maxPageSize
+                                                       + " transactions a page can hold");
+        }
         this.socketService = socketService;
+        this.coalescer = coalescer;
+        this.balanceCache = balanceCache;
+        this.historyPageSize = historyPageSize;
+        this.historyWindow = historyWindow;
+        this.historyExecutor = historyExecutor;
+        if (balanceCache.isEnabled()) {
+            socketService.addUpdateListener(balanceCache::onUpdate);
+            socketService.addCallbackListener(balanceCache::onCallback);
+        }
     }
 
     /**
@@ -28,7 +84,7 @@ public class BankingService {
      * @return the generated unique account number
      */
     public Integer openAccount(OpenAccountRequest request) {
-        return socketService.sendAndReceiveInt(request);
+        return coalescer.sendAndReceive(request, ResponseDecoder.INT);
     }
 
     /**
@@ -38,7 +94,10 @@ public class BankingService {
      * @param request the account closing details
      */
     public String closeAccount(CloseAccountRequest request) {
-        return socketService.sendAndReceiveString(request);
+        if (request.getAccountNumber() != null) {
+            balanceCache.invalidate(request.getAccountNumber());
+        }
+        return coalescer.sendAndReceive(request, ResponseDecoder.STRING);
     }
 
     /**
@@ -48,7 +107,7 @@ public class BankingService {
      * @return the updated balance
      */
     public Double deposit(UpdateBalanceRequest request) {
-        return socketService.sendAndReceiveDouble(request);
+        return updateBalance(request);
     }
 
     /**
@@ -58,18 +117,35 @@ public class BankingService {
      * @return the updated balance
      */
     public Double withdrawal(UpdateBalanceRequest request) {
-        return socketService.sendAndReceiveDouble(request);
+        return updateBalance(request);
+    }
+
+    private Double updateBalance(UpdateBalanceRequest request) {
+        long sentAt = System.nanoTime();
+        Double balance = coalescer.sendAndReceive(request, ResponseDecoder.DOUBLE);
+        cache(request.getAccountNumber(), request.getName(), request.getPassword(), balance, sentAt);
+        return balance;
     }
 
     /**
      * Retrieves the current balance of an account.
-     * This is an idempotent operation.
+     * This is an idempotent operation, answered from the {@link BalanceCache} when it is enabled
+     * and holds a fresh enough balance.
      *
      * @param request the inquiry details
      * @return the current balance
      */
     public Double getBalance(GetBalanceRequest request) {
-        return socketService.sendAndReceiveDouble(request);
+        if (request.getAccountNumber() != null) {
+            Double cached = balanceCache.get(request.getAccountNumber(), request.getName(), request.getPassword());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long sentAt = System.nanoTime();
+        Double balance = coalescer.sendAndReceive(request, ResponseDecoder.DOUBLE);
+        cache(request.getAccountNumber(), request.getName(), request.getPassword(), balance, sentAt);
+        return balance;
     }
 
     /**
@@ -80,7 +156,16 @@ public class BankingService {
      * @return a response containing updated balances for both accounts
      */
     public Double transfer(TransferRequest request) {
-        return socketService.sendAndReceiveDouble(request);
+        if (request.getDestAccountNumber() != null) {
+            balanceCache.invalidate(request.getDestAccountNumber());
+        }
+        long sentAt = System.nanoTime();
+        Double balance = coalescer.sendAndReceive(request, ResponseDecoder.DOUBLE);
+        cache(request.getAccountNumber(), request.getName(), request.getPassword(), balance, sentAt);
+        if (request.getDestAccountNumber() != null) {
+            balanceCache.invalidate(request.getDestAccountNumber());
+        }
+        return balance;
     }
 
     /**
@@ -89,7 +174,92 @@ public class BankingService {
      * @param request the monitor interval details
      */
     public String registerMonitor(MonitorRequest request) {
-        return socketService.sendAndReceiveString(request);
+        return coalescer.sendAndReceive(request, ResponseDecoder.STRING);
+    }
+
+    /**
+     * Streams the transaction history of an account, read in pages as the subscriber asks for it.
+     * This is an idempotent operation; see {@link HistoryPublisher} for how pages are read ahead.
+     *
+     * @param name          the account holder's name
+     * @param accountNumber the account to read
+     * @param password      the account's password
+     * @param since         sequence number of the last transaction already seen, 0 for the whole history
+     * @return a publisher that reads the history afresh for every subscriber
+     */
+    public Flow.Publisher<AccountTransaction> streamHistory(String name, Integer accountNumber, String password,
+                                                            long since) {
+        HistoryRequest request = new HistoryRequest();
+        request.setName(name);
+        request.setAccountNumber(accountNumber);
+        request.setPassword(password);
+        request.setSince(since);
+        return new HistoryPublisher(coalescer, request, historyPageSize, historyWindow, historyExecutor);
+    }
+
+    /**
+     * Sends several requests, packed into as few datagrams as possible, and returns as soon as
+     * they are on their way. Each request keeps its own request ID, retries and result: an
+     * {@code Integer} account number for opened accounts, a {@code String} for closed accounts and
+     * monitor registrations, and a {@code Double} balance otherwise. A failed request completes its
+     * future exceptionally without affecting the others. The {@link BalanceCache} sees every request
+     * as if it had been sent on its own.
+     *
+     * @param requests the requests, of any operation
+     * @return one future per request, in the same order
+     */
+    public List<CompletableFuture<?>> executeBatch(List<MySerializable> requests) {
+        List<ResponseDecoder<?>> decoders = new ArrayList<>(requests.size());
+        for (MySerializable request : requests) {
+            decoders.add(ResponseDecoder.forOpCode(request.getOpCode()));
+            switch (request) {
+                case CloseAccountRequest close when close.getAccountNumber() != null ->
+                        balanceCache.invalidate(close.getAccountNumber());
+                case TransferRequest transfer when transfer.getDestAccountNumber() != null ->
+                        balanceCache.invalidate(transfer.getDestAccountNumber());
+                default -> {
+                }
+            }
+        }
+        long sentAt = System.nanoTime();
+        List<CompletableFuture<?>> futures = socketService.sendBatchAsync(requests, decoders);
+        List<CompletableFuture<?>> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            results.add(cacheResult(requests.get(i), futures.get(i), sentAt));
+        }
+        return results;
+    }
+
+    /**
+     * Caches the balance a batched request returns, as {@link #updateBalance}, {@link #getBalance} and
+     * {@link #transfer} do for a single one.
+     */
+    private CompletableFuture<?> cacheResult(MySerializable request, CompletableFuture<?> future, long sentAt) {
+        return switch (request) {
+            case UpdateBalanceRequest update -> future.thenApply(balance -> {
+                cache(update.getAccountNumber(), update.getName(), update.getPassword(), (Double) balance, sentAt);
+                return balance;
+            });
+            case GetBalanceRequest enquiry -> future.thenApply(balance -> {
+                cache(enquiry.getAccountNumber(), enquiry.getName(), enquiry.getPassword(), (Double) balance, sentAt);
+                return balance;
+            });
+            case TransferRequest transfer -> future.thenApply(balance -> {
+                cache(transfer.getAccountNumber(), transfer.getName(), transfer.getPassword(), (Double) balance,
+                      sentAt);
+                if (transfer.getDestAccountNumber() != null) {
+                    balanceCache.invalidate(transfer.getDestAccountNumber());
+                }
+                return balance;
+            });
+            default -> future;
+        };
+    }
+
+    private void cache(Integer accountNumber, String name, String password, Double balance, long sentAt) {
+        if (accountNumber != null && balance != null) {
+            balanceCache.put(accountNumber, name, password, balance, sentAt);
+        }
     }
 
     /**
@@ -0,0 +1,223 @@
+package com.chencraft.ntu.service;
+
+import com.chencraft.ntu.model.AccountTransaction;
+import com.chencraft.ntu.model.HistoryPage;
+import com.chencraft.ntu.model.request.HistoryRequest;
+import com.chencraft.ntu.util.ResponseDecoder;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams an account's transaction history, read page by page with {@code OpHistory} requests.
+ * <p>
+ * Every subscription reads the history afresh, from the transaction after {@code since}. Up to
+ * {@code window} pages of {@code pageSize} transactions are requested ahead of the subscriber, so
+ * several round trips overlap; the first page is read alone, to learn how long the history is. Each
+ * page is asked for from where the one before it should end, so if a page comes back shorter than
+ * asked for without reaching the end, the server is capping pages: the pages requested after it are
+ * dropped and reading resumes after its last transaction, asking for pages of the size it had.
+ * Pages may arrive in any order but are delivered in sequence order, and a page is only requested
+ * once the subscriber has taken the one {@code window} pages before it, so a slow subscriber holds
+ * at most {@code window} pages beyond the one it is reading and stops the reading rather than being
+ * flooded.
+ * <p>
+ * The stream completes with the last transaction of the history as it stood when that page was
+ * read. A page that fails, after the usual retransmissions, fails the stream once the pages
+ * before it have been delivered.
+ * <p>
+ * Signals are delivered on {@code executor}, never on the thread that received the response.
+ */
+public final class HistoryPublisher implements Flow.Publisher<AccountTransaction> {
+    private final RequestCoalescer coalescer;
+    private final HistoryRequest request;
+    private final int pageSize;
+    private final int window;
+    private final Executor executor;
+
+    /**
+     * @param request  the account to read and where to start; its {@code limit} is ignored
+     * @param pageSize transactions asked for per page, until the server turns out to send fewer
+     * @param window   largest number of pages requested ahead of the subscriber
+     */
+    public HistoryPublisher(RequestCoalescer coalescer, HistoryRequest request, int pageSize, int window,
+                            Executor executor) {
+        if (pageSize <= 0 || window <= 0) {
+            throw new IllegalArgumentException("pageSize and window must be positive");
+        }
+        this.coalescer = coalescer;
+        this.request = request;
+        this.pageSize = pageSize;
+        this.window = window;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super AccountTransaction> subscriber) {
+        HistorySubscription subscription = new HistorySubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private record Page(long since, CompletableFuture<HistoryPage> future) {
+    }
+
+    private final class HistorySubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super AccountTransaction> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        // Only touched by drain(), which runs on one thread at a time
+        private final ArrayDeque<Page> pages = new ArrayDeque<>();
+        private long nextSince = request.getSince() == null ? 0 : request.getSince();
+        private int limit = pageSize;
+        private long latestSequence = -1;
+        private List<AccountTransaction> current = List.of();
+        private int currentIndex;
+        private boolean lastPage;
+        private boolean done;
+
+        private HistorySubscription(Flow.Subscriber<? super AccountTransaction> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " transactions");
+            } else {
+                requested.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!done) {
+                    drainOnce();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainOnce() {
+            if (cancelled) {
+                finish();
+                return;
+            }
+            if (invalidRequest != null) {
+                finish();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            if (requested.get() > 0) {
+                fill();
+            }
+            long emitted = 0;
+            long demand = requested.get();
+            while (!cancelled) {
+                if (currentIndex == current.size()) {
+                    if (lastPage) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    Page head = pages.peek();
+                    if (head == null || !head.future().isDone()) {
+                        break;
+                    }
+                    pages.poll();
+                    HistoryPage page;
+                    try {
+                        page = head.future().join();
+                    } catch (CompletionException e) {
+                        finish();
+                        subscriber.onError(e.getCause() == null ? e : e.getCause());
+                        return;
+                    }
+                    current = page.transactions();
+                    currentIndex = 0;
+                    lastPage = page.reachesEnd(head.since());
+                    latestSequence = Math.max(latestSequence, page.latestSequence());
+                    if (!lastPage && current.size() < limit) {
+                        if (current.isEmpty()) {
+                            finish();
+                            subscriber.onError(new IllegalStateException(
+                                    "Empty history page after " + head.since() + " of " + page.latestSequence()));
+                            return;
+                        }
+                        // The pages behind this one start where it should have ended
+                        limit = current.size();
+                        pages.clear();
+                        nextSince = head.since() + limit;
+                    }
+                    fill();
+                    continue;
+                }
+                if (emitted == demand) {
+                    break;
+                }
+                subscriber.onNext(current.get(currentIndex++));
+                emitted++;
+            }
+            if (emitted > 0 && demand != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+            if (cancelled) {
+                finish();
+            }
+        }
+
+        /**
+         * Requests pages until {@code window} are ahead of the subscriber, or one if the length of
+         * the history is not yet known, but none past the latest transaction any page has reported.
+         */
+        private void fill() {
+            int ahead = latestSequence < 0 ? 1 : window;
+            while (!lastPage && pages.size() < ahead && (latestSequence < 0 || nextSince < latestSequence)) {
+                long since = nextSince;
+                HistoryRequest page = new HistoryRequest();
+                page.setName(request.getName());
+                page.setAccountNumber(request.getAccountNumber());
+                page.setPassword(request.getPassword());
+                page.setSince(since);
+                page.setLimit(limit);
+                CompletableFuture<HistoryPage> future;
+                try {
+                    future = coalescer.sendAsync(page, ResponseDecoder.HISTORY);
+                } catch (RuntimeException e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                pages.add(new Page(since, future));
+                future.whenComplete((result, failure) -> signal());
+                nextSince += limit;
+            }
+        }
+
+        private void finish() {
+            done = true;
+            pages.clear();
+            current = List.of();
+        }
+    }
+}
@@ -1,16 +1,110 @@
 package com.chencraft.ntu.service;
 
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * IdGenerator is a thread-safe, self-incrementing ID generator.
- * It starts from 0 and increments every time getNextId() is called.
+ * IdGenerator is a thread-safe, self-incrementing request ID generator.
+ * <p>
+ * IDs are handed out from leases: contiguous blocks of {@code id-generator.lease-size} IDs. Taking
+ * the next ID from the current lease is lock-free (one volatile read and one atomic increment);
+ * only exhausting a lease takes a lock to reserve the next block.
+ * <p>
+ * When {@code id-generator.state-file} is set, leases are reserved from a small memory-mapped file
+ * that records the high-water mark of all IDs ever leased. The new mark is flushed to disk before
+ * any ID of the lease is used, so after a restart or crash the generator continues past every ID it
+ * may have sent, at the cost of skipping the unused rest of the last lease, and with one fsync per
+ * lease rather than per request. Reservations are made under a file lock, so several client
+ * processes sharing the file receive disjoint blocks. Without a state file the generator starts
+ * from 0 in memory.
+ * <p>
+ * With {@code id-generator.epoch-bits} greater than 0, the top bits of every ID hold an epoch that is
+ * incremented in the state file each time a generator starts, identifying the client instance.
  */
+@Slf4j
 @Service
 public class IdGenerator {
-    private final AtomicInteger counter = new AtomicInteger(0);
+    private static final int MAGIC = 0x49444C53;
+    private static final int FILE_SIZE = 16;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int EPOCH_OFFSET = 4;
+    private static final int HIGH_WATER_OFFSET = 8;
+
+    private final int leaseSize;
+    private final int sequenceMask;
+    private final int epochPrefix;
+    private final FileChannel channel;
+    private final MappedByteBuffer state;
+
+    private long inMemoryHighWater;
+    private volatile Lease lease = new Lease(0, 0);
+
+    /**
+     * Creates an in-memory generator starting from 0.
+     */
+    public IdGenerator() {
+        this(null, 10_000, 0);
+    }
+
+    /**
+     * @param stateFile path of the lease file; empty for an in-memory generator
+     * @param leaseSize number of IDs reserved per lease
+     * @param epochBits number of high-order ID bits holding the instance epoch (0 to disable)
+     */
+    @Autowired
+    public IdGenerator(@Value("${id-generator.state-file:}") String stateFile,
+                       @Value("${id-generator.lease-size:10000}") int leaseSize,
+                       @Value("${id-generator.epoch-bits:0}") int epochBits) {
+        if (leaseSize <= 0 || epochBits < 0 || epochBits > 16) {
+            throw new IllegalArgumentException("Require leaseSize > 0 and 0 <= epochBits <= 16");
+        }
+        this.leaseSize = leaseSize;
+        this.sequenceMask = epochBits == 0 ? -1 : (1 << (32 - epochBits)) - 1;
+
+        if (stateFile == null || stateFile.isBlank()) {
+            this.channel = null;
+            this.state = null;
+            this.epochPrefix = 0;
+            return;
+        }
+
+        try {
+            Path path = Path.of(stateFile).toAbsolutePath();
+            Files.createDirectories(path.getParent());
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE);
+            this.state = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            int epoch;
+            try (FileLock ignored = channel.lock()) {
+                if (state.getInt(MAGIC_OFFSET) != MAGIC) {
+                    state.putInt(EPOCH_OFFSET, 0);
+                    state.putLong(HIGH_WATER_OFFSET, 0);
+                    state.putInt(MAGIC_OFFSET, MAGIC);
+                }
+                epoch = state.getInt(EPOCH_OFFSET) + 1;
+                state.putInt(EPOCH_OFFSET, epoch);
+                state.force();
+            }
+            this.epochPrefix = epochBits == 0 ? 0 : (epoch & ((1 << epochBits) - 1)) << (32 - epochBits);
+            log.info("IdGenerator using state file {} (high-water mark {}, epoch {})",
+                     path, state.getLong(HIGH_WATER_OFFSET), epochBits == 0 ? "disabled" : epoch);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open ID state file: " + stateFile, e);
+        }
+    }
 
     /**
      * Returns the next ID and increments the counter.
@@ -18,13 +112,74 @@ public class IdGenerator {
      * @return next ID
      */
     public int getNextId() {
-        return counter.getAndIncrement();
+        while (true) {
+            Lease current = lease;
+            long sequence = current.next.getAndIncrement();
+            if (sequence < current.end) {
+                return epochPrefix | ((int) sequence & sequenceMask);
+            }
+            renew(current);
+        }
+    }
+
+    /**
+     * Resets the counter to 0, including the persisted high-water mark. (Mainly for testing purposes)
+     */
+    public synchronized void reset() {
+        if (state != null) {
+            try (FileLock ignored = channel.lock()) {
+                state.putLong(HIGH_WATER_OFFSET, 0);
+                state.force();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            inMemoryHighWater = 0;
+        }
+        lease = new Lease(0, 0);
+    }
+
+    private synchronized void renew(Lease exhausted) {
+        if (lease != exhausted) {
+            return; // Another thread already renewed it
+        }
+        long start;
+        if (state != null) {
+            try (FileLock ignored = channel.lock()) {
+                start = state.getLong(HIGH_WATER_OFFSET);
+                state.putLong(HIGH_WATER_OFFSET, start + leaseSize);
+                state.force();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to lease request IDs", e);
+            }
+        } else {
+            start = inMemoryHighWater;
+            inMemoryHighWater = start + leaseSize;
+        }
+        lease = new Lease(start, start + leaseSize);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close ID state file: {}", e.getMessage());
+            }
+        }
     }
 
     /**
-     * Resets the counter to 0. (Mainly for testing purposes)
+     * A block of IDs {@code [next, end)} reserved for this generator.
      */
-    public void reset() {
-        counter.set(0);
+    private static final class Lease {
+        private final AtomicLong next;
+        private final long end;
+
+        private Lease(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
     }
 }
@@ -0,0 +1,230 @@
+package com.chencraft.ntu.service;
+
+import com.chencraft.ntu.model.BatchMessage;
+import com.chencraft.ntu.model.MySerializable;
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.util.ResponseDecoder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent requests into {@link BatchMessage}s before they reach {@link SocketService}.
+ * <p>
+ * Requests of the operations listed in {@code coalescing.op-codes} are held back for up to
+ * {@code coalescing.delay-micros} after the first of them arrives, or until enough have arrived to
+ * fill a datagram, and are then sent together with {@link SocketService#sendBatchAsync(List, List)}.
+ * Each caller still gets its own future, completed by its own response. Other operations, and all
+ * operations when the list is empty, are sent immediately.
+ * <p>
+ * The number of requests per flushed batch is published as the {@code socket.coalescer.batch.size}
+ * distribution summary.
+ */
+@Slf4j
+@Service
+public class RequestCoalescer {
+    private final SocketService socketService;
+    private final Set<OpCode> opCodes;
+    private final long delayNanos;
+    private final DistributionSummary batchSize;
+    private final ScheduledExecutorService flusher;
+
+    private List<Entry<?>> queue = new ArrayList<>();
+    private int queuedBytes = BatchMessage.HEADER_SIZE;
+
+    /**
+     * @param opCodes     comma-separated operation codes to coalesce, e.g. {@code OpBalance}; empty to disable
+     * @param delayMicros maximum time a request waits for others to share its datagram
+     */
+    @Autowired
+    public RequestCoalescer(SocketService socketService,
+                            @Value("${coalescing.op-codes:}") String opCodes,
+                            @Value("${coalescing.delay-micros:200}") long delayMicros,
+                            MeterRegistry meterRegistry) {
+        if (delayMicros < 0) {
+            throw new IllegalArgumentException("coalescing.delay-micros must not be negative");
+        }
+        this.socketService = socketService;
+        this.opCodes = parse(opCodes);
+        this.delayNanos = TimeUnit.MICROSECONDS.toNanos(delayMicros);
+        this.batchSize = DistributionSummary.builder("socket.coalescer.batch.size")
+                                            .description("Requests sent per coalesced datagram")
+                                            .baseUnit("requests")
+                                            .publishPercentiles(0.5, 0.9, 0.99)
+                                            .register(meterRegistry);
+        this.flusher = this.opCodes.isEmpty() ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "request-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!this.opCodes.isEmpty()) {
+            log.info("Coalescing {} for up to {} µs", this.opCodes, delayMicros);
+        }
+    }
+
+    /**
+     * Creates a coalescer that sends every request immediately.
+     */
+    public static RequestCoalescer disabled(SocketService socketService, MeterRegistry meterRegistry) {
+        return new RequestCoalescer(socketService, "", 0, meterRegistry);
+    }
+
+    /**
+     * Whether requests of the operation are coalesced.
+     */
+    public boolean isEnabled(OpCode opCode) {
+        return opCodes.contains(opCode);
+    }
+
+    /**
+     * Sends a request, possibly together with others, and waits for its response.
+     *
+     * @see SocketService#sendAndReceiveInt(MySerializable)
+     */
+    public <T> T sendAndReceive(MySerializable request, ResponseDecoder<T> decoder) {
+        return SocketService.await(sendAsync(request, decoder));
+    }
+
+    /**
+     * Sends a request, possibly together with others, without waiting for its response.
+     *
+     * @see SocketService#sendAsync(MySerializable, ResponseDecoder)
+     */
+    public <T> CompletableFuture<T> sendAsync(MySerializable request, ResponseDecoder<T> decoder) {
+        if (!isEnabled(request.getOpCode())) {
+            return socketService.sendAsync(request, decoder);
+        }
+        Entry<T> entry = new Entry<>(request, decoder);
+        int size = BatchMessage.ITEM_OVERHEAD + request.marshalledSize();
+        List<Entry<?>> full = null;
+        boolean first;
+        synchronized (this) {
+            if (queuedBytes + size > SocketService.DATAGRAM_BUFFER_SIZE && !queue.isEmpty()) {
+                full = drain();
+            }
+            first = queue.isEmpty();
+            queue.add(entry);
+            queuedBytes += size;
+        }
+        if (full != null) {
+            send(full);
+        }
+        if (first) {
+            try {
+                flusher.schedule(this::flush, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+        return entry.future;
+    }
+
+    /**
+     * Sends whatever is queued. A scheduled flush that finds its batch already sent because the
+     * datagram filled up sends the requests queued since, which only shortens their wait.
+     */
+    private void flush() {
+        List<Entry<?>> batch;
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                return;
+            }
+            batch = drain();
+        }
+        send(batch);
+    }
+
+    private List<Entry<?>> drain() {
+        List<Entry<?>> batch = queue;
+        queue = new ArrayList<>();
+        queuedBytes = BatchMessage.HEADER_SIZE;
+        return batch;
+    }
+
+    private void send(List<Entry<?>> batch) {
+        batchSize.record(batch.size());
+        List<MySerializable> requests = new ArrayList<>(batch.size());
+        List<ResponseDecoder<?>> decoders = new ArrayList<>(batch.size());
+        for (Entry<?> entry : batch) {
+            requests.add(entry.request);
+            decoders.add(entry.decoder);
+        }
+        try {
+            List<CompletableFuture<?>> sent = socketService.sendBatchAsync(requests, decoders);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).completeFrom(sent.get(i));
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(entry -> entry.future.completeExceptionally(e));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flush();
+        }
+    }
+
+    private static Set<OpCode> parse(String opCodes) {
+        Set<OpCode> result = EnumSet.noneOf(OpCode.class);
+        for (String name : opCodes.split(",")) {
+            if (name.isBlank()) {
+                continue;
+            }
+            OpCode opCode = null;
+            for (OpCode candidate : OpCode.values()) {
+                if (candidate.name().toLowerCase(Locale.ROOT).equals(name.strip().toLowerCase(Locale.ROOT))) {
+                    opCode = candidate;
+                }
+            }
+            if (opCode == null || opCode == OpCode.OpBatch) {
+                throw new IllegalArgumentException("Invalid coalescing.op-codes entry: " + name);
+            }
+            result.add(opCode);
+        }
+        return result;
+    }
+
+    /**
+     * A queued request and the future handed to its caller.
+     */
+    private static final class Entry<T> {
+        private final MySerializable request;
+        private final ResponseDecoder<T> decoder;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Entry(MySerializable request, ResponseDecoder<T> decoder) {
+            this.request = request;
+            this.decoder = decoder;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void completeFrom(CompletableFuture<?> sent) {
+            // sendBatchAsync decoded the response with this entry's decoder, so the value is a T
+            ((CompletableFuture<T>) sent).whenComplete((value, failure) -> {
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(value);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.chencraft.ntu.service;
+
+/**
+ * How {@link SocketService} picks one of its {@code socket.shards} sockets for a request, selected
+ * with the {@code socket.shards.routing} property.
+ */
+public enum ShardRouting {
+    /**
+     * Spread requests evenly by request ID.
+     */
+    REQUEST_ID,
+    /**
+     * Keep all requests for an account on one socket, so they leave in the order they were made;
+     * requests without an account number fall back to their request ID.
+     */
+    ACCOUNT;
+
+    /**
+     * Parses a property value case-insensitively, accepting {@code -} in place of {@code _}.
+     */
+    public static ShardRouting fromProperty(String value) {
+        try {
+            return valueOf(value.trim().replace('-', '_').toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown socket.shards.routing: " + value
+                                                       + " (expected request-id or account)");
+        }
+    }
+}
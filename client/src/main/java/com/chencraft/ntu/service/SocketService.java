@@ -1,8 +1,37 @@
 package com.chencraft.ntu.service;
 
 import com.chencraft.ntu.exception.OperationFailedException;
+import com.chencraft.ntu.exception.OutcomeUnknownException;
+import com.chencraft.ntu.exception.RequestTimeoutException;
+import com.chencraft.ntu.model.AccountScoped;
+import com.chencraft.ntu.model.AccountUpdateEvent;
+import com.chencraft.ntu.model.BatchMessage;
+import com.chencraft.ntu.model.FragmentMessage;
+import com.chencraft.ntu.model.MessageType;
 import com.chencraft.ntu.model.MySerializable;
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.service.balancer.Endpoint;
+import com.chencraft.ntu.service.balancer.ServerPool;
+import com.chencraft.ntu.service.metrics.RequestMetrics;
+import com.chencraft.ntu.service.limit.ConcurrencyLimiter;
+import com.chencraft.ntu.service.resolver.HostResolver;
+import com.chencraft.ntu.service.retry.HedgePolicy;
+import com.chencraft.ntu.service.retry.RequestJournal;
+import com.chencraft.ntu.service.retry.RequestOutcome;
+import com.chencraft.ntu.service.retry.RetryBudget;
+import com.chencraft.ntu.service.retry.RttEstimator;
+import com.chencraft.ntu.service.transport.DatagramTransport;
+import com.chencraft.ntu.service.transport.TransportType;
+import com.chencraft.ntu.util.BufferPool;
 import com.chencraft.ntu.util.Converter;
+import com.chencraft.ntu.util.FragmentReassembler;
+import com.chencraft.ntu.util.ResponseDecoder;
+import com.chencraft.ntu.util.TimerWheel;
+import com.chencraft.ntu.util.WireWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,161 +40,1001 @@ import org.springframework.boot.ApplicationArguments;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketTimeoutException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Provides functionality for messaging with a server over a socket connection.
  * This service allows sending requests and receiving responses in various formats
  * such as integers, doubles, or custom deserializable objects.
  * <p>
- * The service manages the lifecycle of the socket connection, ensuring that it
- * is properly opened, used, and closed. It supports a variety of request/response
- * patterns, including "send and forget" and "send/request and response."
+ * Requests are pipelined: {@link #sendAsync(MySerializable, ResponseDecoder)} registers the
+ * request in a concurrent pending-request table keyed by its request ID, transmits it and returns
+ * immediately. A single receiver thread reads every datagram arriving on the socket and
+ * demultiplexes it by the request ID carried in bytes 1-4, completing the matching future.
+ * Unanswered requests are retransmitted from a {@link TimerWheel} until {@code socket.max-retries} is
+ * exhausted or the per-call {@code socket.deadline} passes; socket timeouts are never used. The wait
+ * before each retransmission is derived from the server's {@link RttEstimator}: one adaptive RTO for
+ * the first attempt, then exponential backoff with jitter. {@code socket.timeout} only seeds the RTO
+ * until the first round trip has been measured.
+ * <p>
+ * Requests are marshalled straight into heap buffers taken from a {@link BufferPool} and returned
+ * once the request settles, and responses are decoded in place from the transport's receive buffer,
+ * so a round trip copies no payload bytes and allocates little beyond the future itself.
+ * <p>
+ * A request is marshalled once, so every retransmission carries the same request ID and the server
+ * can filter duplicates. Every request is also recorded in a {@link RequestJournal} with its
+ * {@link RequestOutcome}. Late duplicate responses to settled requests are recognised from the
+ * header alone and discarded without decoding. A non-idempotent operation that runs out of
+ * retries fails with an {@link OutcomeUnknownException} rather than a plain timeout, because the
+ * server may have applied it.
+ * Idempotent operations can be hedged as configured by a {@link HedgePolicy}: a request still
+ * unanswered after the usual round trip is sent again under a second request ID, to another server
+ * if there is one, and the first response to either ID settles it.
+ * Several requests can also share a datagram on their first transmission with
+ * {@link #sendBatchAsync(List, List)}, which packs them into {@link BatchMessage}s.
+ * <p>
+ * Messages larger than a datagram travel as {@link FragmentMessage fragments} in both directions, up
+ * to {@code socket.fragment.max-message-size} bytes. Responses and callbacks are reassembled within
+ * {@code socket.fragment.reassembly-buffer} bytes; missing fragments are asked for again with a NACK
+ * once the rest have stopped arriving, and a message still incomplete after
+ * {@code socket.fragment.reassembly-timeout} milliseconds is dropped, leaving the request to its
+ * retransmissions. A NACK from the server for a request's fragments is answered from the request's
+ * own datagram.
+ * Any number of requests can therefore be outstanding on one socket; the blocking
+ * {@code sendAndReceive*} methods are thin wrappers that wait on the future.
+ * <p>
+ * With {@code socket.shards} above 1 the service opens that many sockets, each with its own local
+ * port, receiver thread and pending table, and routes every request to one of them by request ID or,
+ * with {@code socket.shards.routing=account}, by the {@link AccountScoped account} it touches. A
+ * response always arrives on the socket its request left from, so the shards never share state.
+ * Monitor registrations always leave from the first shard: the server sends callbacks to the address
+ * a registration came from, so registering from several ports would deliver every callback several times.
+ * <p>
+ * The number of requests outstanding at once is capped by a {@link ConcurrencyLimiter}, which adapts
+ * the cap to the round trips and timeouts observed; requests beyond it wait in a bounded queue, and
+ * fail with a {@link com.chencraft.ntu.exception.BackpressureException} if there is no room or no slot
+ * frees up in time. Retransmissions are paid for from a client-wide {@link RetryBudget}, and a request
+ * that finds the budget spent fails instead of adding to the load.
+ * <p>
+ * Latency and failures are recorded per operation code in {@link RequestMetrics} and published
+ * through the {@link MeterRegistry}.
+ * <p>
+ * Callback messages ({@code MsgCallback}) arriving on the same socket are decoded (binary callbacks
+ * as {@link AccountUpdateEvent}s, legacy ones as text), queued separately and handed out through
+ * {@link #receiveCallback(int)}, so they never steal responses from pending requests and vice versa.
+ * <p>
+ * The socket itself sits behind a {@link DatagramTransport}, chosen with the {@code socket.transport}
+ * property: {@code blocking} ({@link java.net.DatagramSocket}) or {@code nio}
+ * ({@link java.nio.channels.DatagramChannel} with a selector). Server hosts are resolved by a
+ * {@link com.chencraft.ntu.service.resolver.ServerAddressResolver} at startup and refreshed in the
+ * background every {@code socket.server.resolve-ttl} milliseconds, so sending never waits on name
+ * resolution.
+ * <p>
+ * Requests can be spread over several servers listed in {@code socket.servers} (by default only
+ * {@code socket.server.host}:{@code socket.server.port}). A {@link ServerPool} picks the server for
+ * each request by {@code socket.servers.policy} and ejects servers that stop answering; every
+ * server has its own socket in each shard and its own {@link RttEstimator}. The retransmission of
+ * an idempotent request goes to another server, while any other request keeps going to the server
+ * that can recognise it as a duplicate. Monitor registrations are the exception: the first one picks
+ * a server like any other request, and every later registration, renewal, retransmission and hedge
+ * goes to that same server, since a registration with a second server would start a second stream
+ * of callbacks.
  * <p>
  * This class is intended for use in Spring-based applications and is configured
- * with socket connection parameters via externalized properties.
+ * with socket connection parameters via externalized properties, read into {@link SocketSettings}.
  */
 @Slf4j
 @Service
 public class SocketService {
+    private static final int CALLBACK_QUEUE_CAPACITY = 1024;
+    private static final long TIMER_TICK_MILLIS = 5;
+    private static final int TIMER_WHEEL_SIZE = 1024;
+    private static final int DATAGRAM_POOL_CAPACITY = 256;
+    static final int DATAGRAM_BUFFER_SIZE = FragmentMessage.MAX_DATAGRAM_SIZE;
+    private static final long NACK_DELAY_MILLIS = 20;
+    private static final int MAX_NACKS = 5;
+
     private final IdGenerator idGenerator;
-    private final String host;
-    private final int port;
-    private final int timeout;
     private final int maxRetries;
+    private final long deadlineNanos;
+    private final int maxMessageSize;
+    private final TransportType transportType;
+    private final ServerPool servers;
+    private final HedgePolicy hedging;
+    private final ConcurrencyLimiter limiter;
+    private final RetryBudget retryBudget;
+    private final RequestJournal journal;
+    private final RequestMetrics metrics;
+    private final FragmentReassembler<DatagramTransport> reassembler;
+    private final Counter fragmentsResent;
+
+    private final Shard[] shards;
+    private final ShardRouting shardRouting;
+    private final BlockingQueue<String> callbacks = new ArrayBlockingQueue<>(CALLBACK_QUEUE_CAPACITY);
+    private final List<Consumer<String>> callbackListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<AccountUpdateEvent>> updateListeners = new CopyOnWriteArrayList<>();
+    private final TimerWheel timer;
+    private Endpoint monitorEndpoint;
+    private final BufferPool datagramPool = new BufferPool(DATAGRAM_POOL_CAPACITY, DATAGRAM_BUFFER_SIZE, false);
 
-    private DatagramSocket socket;
+    /**
+     * Creates a service with no hedging, concurrency limit or retry budget, resolving hosts through the system.
+     */
+    public SocketService(IdGenerator idGenerator, ApplicationArguments args, SocketSettings settings,
+                         MeterRegistry meterRegistry) {
+        this(idGenerator, args, settings, HostResolver.SYSTEM, HedgePolicy.disabled(),
+             ConcurrencyLimiter.unlimited(meterRegistry), RetryBudget.unlimited(meterRegistry), meterRegistry);
+    }
 
+    /**
+     * @param args command-line arguments; {@code --host}, {@code --port} and {@code --servers}
+     *             override the settings
+     */
     @Autowired
-    public SocketService(IdGenerator idGenerator, ApplicationArguments args,
-                         @Value("${socket.server.host}") String defaultHost,
-                         @Value("${socket.server.port}") int defaultPort,
-                         @Value("${socket.timeout:1000000}") int timeout,
-                         @Value("${socket.max-retries:0}") int maxRetries) {
+    public SocketService(IdGenerator idGenerator, ApplicationArguments args, SocketSettings settings,
+                         HostResolver hostResolver, HedgePolicy hedgePolicy, ConcurrencyLimiter limiter,
+                         RetryBudget retryBudget, MeterRegistry meterRegistry) {
         this.idGenerator = idGenerator;
-        this.host = args.containsOption("host") && !Objects.requireNonNull(args.getOptionValues("host")).isEmpty()
+        String host = args.containsOption("host") && !Objects.requireNonNull(args.getOptionValues("host")).isEmpty()
                 ? Objects.requireNonNull(args.getOptionValues("host")).getFirst()
-                : defaultHost;
+                : settings.getHost();
 
-        this.port = args.containsOption("port") && !Objects.requireNonNull(args.getOptionValues("port")).isEmpty()
+        int port = args.containsOption("port") && !Objects.requireNonNull(args.getOptionValues("port")).isEmpty()
                 ? Integer.parseInt(Objects.requireNonNull(args.getOptionValues("port")).getFirst())
-                : defaultPort;
+                : settings.getPort();
 
-        this.timeout = timeout;
-        this.maxRetries = maxRetries;
+        String servers = settings.getServers();
+        if (args.containsOption("servers") && !Objects.requireNonNull(args.getOptionValues("servers")).isEmpty()) {
+            servers = Objects.requireNonNull(args.getOptionValues("servers")).getFirst();
+        }
+        List<String> serverList = ServerPool.parse(servers);
+        if (serverList.isEmpty() || args.containsOption("host") || args.containsOption("port")) {
+            serverList = List.of(host + ":" + port);
+        }
+
+        this.maxRetries = settings.getMaxRetries();
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(settings.getDeadlineMillis());
+        this.maxMessageSize = settings.getMaxMessageSize();
+        this.reassembler = new FragmentReassembler<>(maxMessageSize, settings.getReassemblyBuffer(),
+                                                     TimeUnit.MILLISECONDS.toNanos(settings.getReassemblyTimeoutMillis()),
+                                                     TimeUnit.MILLISECONDS.toNanos(NACK_DELAY_MILLIS), MAX_NACKS);
+        this.transportType = settings.getTransport();
+        int shardCount = settings.getShards();
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("socket.shards must be positive");
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            this.shards[i] = new Shard(i, serverList.size());
+        }
+        this.shardRouting = settings.getShardRouting();
+        int timeout = settings.getTimeoutMillis();
+        this.servers = new ServerPool(serverList, settings.getPolicy(), settings.getEjectAfter(),
+                                      settings.getEjectDurationMillis(), hostResolver, settings.getResolveTtlMillis(),
+                                      server -> new RttEstimator(timeout, settings.getMinRtoMillis(),
+                                                                 settings.getMaxRtoMillis(), TIMER_TICK_MILLIS)
+                                              .bindTo(meterRegistry, server),
+                                      meterRegistry);
+        this.hedging = hedgePolicy;
+        this.limiter = limiter;
+        this.retryBudget = retryBudget;
+        this.journal = new RequestJournal(settings.getJournalCapacity(), meterRegistry);
+        this.metrics = new RequestMetrics(meterRegistry);
+        this.timer = new TimerWheel("socket-timer", TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE);
+        bindFragmentMetrics(meterRegistry);
+        this.fragmentsResent = Counter.builder("socket.fragments.resent")
+                                      .description("Request fragments sent again because the server asked for them")
+                                      .register(meterRegistry);
+        pollFragments();
 
-        log.info("SocketService initialized with host: {}, port: {}, timeout: {}, maxRetries: {}",
-                 host, port, timeout, maxRetries);
+        log.info("SocketService initialized with servers: {}, policy: {}, timeout: {}, maxRetries: {}, deadline: {}, transport: {}, shards: {}",
+                 serverList, this.servers.policy(), timeout, maxRetries, settings.getDeadlineMillis(), transportType,
+                 shardCount);
         this.ensureSocketConnectionEstablished();
     }
 
     public Integer sendAndReceiveInt(MySerializable request) {
-        byte[] responseData = sendAndReceiveWithRetry(request);
-        return Converter.toInt(responseData);
+        return await(sendAsync(request, ResponseDecoder.INT));
     }
 
     public Double sendAndReceiveDouble(MySerializable request) {
-        byte[] responseData = sendAndReceiveWithRetry(request);
-        return Converter.toDouble(responseData);
+        return await(sendAsync(request, ResponseDecoder.DOUBLE));
     }
 
     public String sendAndReceiveString(MySerializable request) {
-        byte[] responseData = sendAndReceiveWithRetry(request);
-        return Converter.toString(responseData);
+        return await(sendAsync(request, ResponseDecoder.STRING));
     }
 
-    public String receiveCallback(int timeoutMillis) {
+    /**
+     * Sends a request without waiting for its response.
+     * <p>
+     * The returned future completes with the decoded response, or exceptionally with an
+     * {@link OperationFailedException} if the server replies with an error, a
+     * {@link RequestTimeoutException} if no response arrives within {@code socket.max-retries}
+     * retransmissions and the {@code socket.deadline}, or a
+     * {@link com.chencraft.ntu.exception.BackpressureException} if the request could not be sent
+     * because too many are outstanding.
+     *
+     * @param request the request to send
+     * @param decoder decoder applied to the response on the receiver thread
+     * @return future of the decoded response
+     */
+    public <T> CompletableFuture<T> sendAsync(MySerializable request, ResponseDecoder<T> decoder) {
         this.ensureSocketConnectionEstablished();
+        return limiter.tryAcquire() ? send(request, decoder) : enqueue(request, decoder);
+    }
+
+    /**
+     * Sends a request that holds a slot from the limiter.
+     */
+    private <T> CompletableFuture<T> send(MySerializable request, ResponseDecoder<T> decoder) {
+        PendingRequest<T> pendingRequest;
         try {
-            socket.setSoTimeout(timeoutMillis);
-            byte[] receiveBuffer = new byte[1024];
-            DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-            socket.receive(receivePacket);
-
-            byte[] responseData = Arrays.copyOfRange(receivePacket.getData(), 0, receivePacket.getLength());
-            // Callback messages should have MessageType.MsgCallback (value 3)
-            if (responseData.length > 0 && responseData[0] == 3) {
-                return Converter.toString(responseData);
-            }
-            return null; // Not a callback or different message type
-        } catch (java.net.SocketTimeoutException e) {
-            return null; // Normal timeout
-        } catch (IOException e) {
-            log.error("Error receiving callback: {}", e.getMessage());
-            return null;
+            pendingRequest = register(request, decoder, null);
+        } catch (RuntimeException e) {
+            limiter.release();
+            throw e;
         }
+        transmit(pendingRequest);
+        scheduleHedge(pendingRequest);
+        return pendingRequest.future;
+    }
+
+    /**
+     * Queues a request for the limiter's next free slot. Queued requests are sent by whichever
+     * thread frees the slot, usually the receiver thread settling another request.
+     */
+    private <T> CompletableFuture<T> enqueue(MySerializable request, ResponseDecoder<T> decoder) {
+        return limiter.enqueue(() -> send(request, decoder));
     }
 
-    private byte[] sendAndReceiveWithRetry(MySerializable request) {
+    /**
+     * Sends several requests packed into as few {@link OpCode#OpBatch} datagrams as possible.
+     * <p>
+     * Every request keeps its own request ID, future, timeout and retransmissions, exactly as if it
+     * had been sent with {@link #sendAsync(MySerializable, ResponseDecoder)}; only the first
+     * transmission is batched. Retransmissions go out individually, so a server that does not
+     * understand batches still answers every request once the first timeout expires. Requests that
+     * find the concurrency limit reached are queued and sent individually instead. A request that
+     * cannot be sent, e.g. one larger than {@code socket.fragment.max-message-size}, fails its own
+     * future and the rest are sent regardless.
+     *
+     * @param requests the requests to send
+     * @param decoders decoder for each request's response, in the same order
+     * @return futures of the decoded responses, in request order
+     */
+    public List<CompletableFuture<?>> sendBatchAsync(List<? extends MySerializable> requests,
+                                                     List<? extends ResponseDecoder<?>> decoders) {
+        if (requests.size() != decoders.size()) {
+            throw new IllegalArgumentException("Expected one decoder per request");
+        }
         this.ensureSocketConnectionEstablished();
+        List<CompletableFuture<?>> futures = new ArrayList<>(requests.size());
+        List<PendingRequest<?>> batch = new ArrayList<>();
+        int batchSize = BatchMessage.HEADER_SIZE;
+        PendingRequest<?> first = null;
+        for (int i = 0; i < requests.size(); i++) {
+            if (!limiter.tryAcquire()) {
+                futures.add(enqueue(requests.get(i), decoders.get(i)));
+                continue;
+            }
+            // A batch is one datagram, so all of its items go through the shard and server of the first
+            PendingRequest<?> pendingRequest;
+            try {
+                pendingRequest = register(requests.get(i), decoders.get(i), first);
+            } catch (RuntimeException e) {
+                limiter.release();
+                futures.add(CompletableFuture.failedFuture(e));
+                continue;
+            }
+            if (first == null) {
+                first = pendingRequest;
+            }
+            futures.add(pendingRequest.future);
+            int itemSize = BatchMessage.ITEM_OVERHEAD + pendingRequest.datagram.remaining();
+            if (BatchMessage.HEADER_SIZE + itemSize > datagramPool.bufferSize()) {
+                transmit(pendingRequest); // Too large to share a datagram; sent in fragments
+                continue;
+            }
+            if (!batch.isEmpty() && batchSize + itemSize > datagramPool.bufferSize()) {
+                transmitBatch(batch);
+                batch.clear();
+                batchSize = BatchMessage.HEADER_SIZE;
+                first = pendingRequest;
+            }
+            batch.add(pendingRequest);
+            batchSize += itemSize;
+        }
+        if (!batch.isEmpty()) {
+            transmitBatch(batch);
+        }
+        return futures;
+    }
+
+    /**
+     * Marshals a request and enters it into the pending table and journal, without sending it.
+     *
+     * @param batchHead request whose shard and server to use, or {@code null} to route this one on its own
+     */
+    private <T> PendingRequest<T> register(MySerializable request, ResponseDecoder<T> decoder,
+                                           PendingRequest<?> batchHead) {
         int requestId = idGenerator.getNextId();
-        byte[] buffer = request.marshall(requestId);
-        int attempts = 0;
+        OpCode opCode = request.getOpCode();
+        int size = request.marshalledSize();
+        if (size > maxMessageSize) {
+            throw new IllegalArgumentException("Request of " + size + " bytes exceeds socket.fragment.max-message-size ("
+                                                       + maxMessageSize + ")");
+        }
+        ByteBuffer datagram = size <= datagramPool.bufferSize() ? datagramPool.acquire() : ByteBuffer.allocate(size);
+        try {
+            request.marshall(requestId, datagram);
+        } catch (RuntimeException e) {
+            if (datagram.capacity() == datagramPool.bufferSize()) {
+                datagramPool.release(datagram);
+            }
+            throw e;
+        }
+        datagram.flip();
+        retryBudget.onRequest();
+        long deadlineAt = deadlineNanos > 0 ? System.nanoTime() + deadlineNanos : Long.MAX_VALUE;
+        Integer account = request instanceof AccountScoped scoped ? scoped.getAccountNumber() : null;
+        Shard shard;
+        Endpoint endpoint;
+        if (batchHead == null) {
+            shard = route(opCode, account, requestId);
+            endpoint = opCode == OpCode.OpMonitor ? monitorServer() : servers.select(account, null);
+        } else {
+            shard = batchHead.shard;
+            endpoint = batchHead.endpoint;
+            servers.acquire(endpoint);
+        }
+        PendingRequest<T> pendingRequest = new PendingRequest<>(requestId, opCode, account, shard, endpoint, datagram,
+                                                                decoder, deadlineAt);
+        journal.begin(requestId, opCode);
+        shard.pending.put(requestId, pendingRequest);
+        return pendingRequest;
+    }
+
+    /**
+     * Returns what is known about whether the server executed a request, e.g. one that failed with
+     * an {@link OutcomeUnknownException}. A response arriving after the request was given up on
+     * still updates the outcome.
+     *
+     * @param requestId ID of the request
+     * @return the outcome, or {@code null} if the request is no longer remembered
+     */
+    public RequestOutcome getOutcome(int requestId) {
+        return journal.outcome(requestId);
+    }
+
+    /**
+     * Returns the largest message this service sends or reassembles, {@code socket.fragment.max-message-size}.
+     */
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
 
-        while (attempts <= maxRetries) {
+    /**
+     * Waits for the next callback message from the server.
+     *
+     * @param timeoutMillis maximum time to wait for a message
+     * @return the callback message string, or null if timeout or interrupted
+     */
+    public String receiveCallback(int timeoutMillis) {
+        this.ensureSocketConnectionEstablished();
+        try {
+            return callbacks.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Registers a listener that sees every callback message as it arrives, in addition to
+     * {@link #receiveCallback(int)}. Listeners run on the receiver thread and must not block.
+     */
+    public void addCallbackListener(Consumer<String> listener) {
+        callbackListeners.add(listener);
+    }
+
+    /**
+     * Registers a listener that sees every binary callback decoded as an {@link AccountUpdateEvent}.
+     * Listeners run on the receiver thread, before the callback's text form reaches the
+     * {@linkplain #addCallbackListener(Consumer) callback listeners}, and must not block.
+     */
+    public void addUpdateListener(Consumer<AccountUpdateEvent> listener) {
+        updateListeners.add(listener);
+    }
+
+    /**
+     * Returns the server monitor registrations go to, chosen by the first of them, and counts the
+     * request as outstanding there.
+     */
+    private synchronized Endpoint monitorServer() {
+        if (monitorEndpoint == null) {
+            monitorEndpoint = servers.select(null, null);
+        } else {
+            servers.acquire(monitorEndpoint);
+        }
+        return monitorEndpoint;
+    }
+
+    private Shard route(OpCode opCode, Integer account, int requestId) {
+        if (shards.length == 1 || opCode == OpCode.OpMonitor) {
+            return shards[0];
+        }
+        int key = shardRouting == ShardRouting.ACCOUNT && account != null ? account : requestId;
+        return shards[Math.floorMod(key, shards.length)];
+    }
+
+    private void transmit(PendingRequest<?> pendingRequest) {
+        long now = System.nanoTime();
+        synchronized (pendingRequest) {
+            if (pendingRequest.datagram == null) {
+                return; // Settled while waiting to retransmit; the buffer is back in the pool
+            }
+            pendingRequest.sentAtNanos = now;
             try {
-                return sendAndReceive(buffer, requestId);
-            } catch (OperationFailedException e) {
-                attempts++;
-                if (attempts > maxRetries) {
-                    throw new OperationFailedException("Request failed after " + maxRetries + " retries: " + e.getMessage());
-                }
-                log.warn("Attempt {} failed, retrying... ({})", attempts, e.getMessage());
+                sendDatagram(pendingRequest.shard.transports[pendingRequest.endpoint.index()],
+                             pendingRequest.datagram.rewind());
+            } catch (IOException e) {
+                // Treated like a lost datagram: the timeout below triggers the retry
+                log.warn("Failed to send request {}: {}", pendingRequest.requestId, e.getMessage());
             }
         }
-        throw new OperationFailedException("Request failed after max retries");
+        scheduleTimeout(pendingRequest, now);
     }
 
-    private synchronized byte[] sendAndReceive(byte[] buffer, int requestId) {
+    /**
+     * Sends the first transmission of several registered requests in one datagram, or on its own
+     * if there is only one.
+     */
+    private void transmitBatch(List<PendingRequest<?>> batch) {
+        if (batch.size() == 1) {
+            transmit(batch.getFirst());
+            return;
+        }
+        int size = BatchMessage.HEADER_SIZE;
+        for (PendingRequest<?> pendingRequest : batch) {
+            size += BatchMessage.ITEM_OVERHEAD + pendingRequest.datagram.remaining();
+        }
+        ByteBuffer envelope = size <= datagramPool.bufferSize() ? datagramPool.acquire() : ByteBuffer.allocate(size);
+        WireWriter writer = new WireWriter(envelope, 0);
+        BatchMessage.writeHeader(writer, MessageType.MsgRequest, idGenerator.getNextId(), batch.size());
+        // Nothing has been sent yet, so no item can have settled and released its datagram
+        long now = System.nanoTime();
+        for (PendingRequest<?> pendingRequest : batch) {
+            BatchMessage.writeItem(writer, pendingRequest.datagram.rewind());
+            pendingRequest.sentAtNanos = now;
+        }
         try {
-            InetAddress address = InetAddress.getByName(host);
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, address, port);
-            socket.setSoTimeout(timeout);
-            socket.send(packet);
-
-            while (true) {
-                byte[] receiveBuffer = new byte[1024];
-                DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-                socket.receive(receivePacket);
-
-                byte[] responseData = Arrays.copyOfRange(receivePacket.getData(), 0, receivePacket.getLength());
-
-                // Match response ID with request ID
-                int responseId = Converter.byteArrayToInt(responseData, 1);
-                if (responseId == requestId) {
-                    return responseData;
-                } else {
-                    log.debug("Received response with ID {}, but expected {}. Ignoring.", responseId, requestId);
+            PendingRequest<?> first = batch.getFirst();
+            first.shard.transports[first.endpoint.index()].send(envelope.limit(writer.position()).position(0));
+        } catch (IOException e) {
+            log.warn("Failed to send batch of {} requests: {}", batch.size(), e.getMessage());
+        } finally {
+            if (envelope.capacity() == datagramPool.bufferSize()) {
+                datagramPool.release(envelope);
+            }
+        }
+        for (PendingRequest<?> pendingRequest : batch) {
+            scheduleTimeout(pendingRequest, now);
+        }
+    }
+
+    private void scheduleTimeout(PendingRequest<?> pendingRequest, long now) {
+        long wait = Math.min(pendingRequest.endpoint.rttEstimator().timeoutNanos(pendingRequest.attempts),
+                             pendingRequest.deadlineAt - now);
+        try {
+            pendingRequest.timeout = timer.schedule(() -> onTimeout(pendingRequest), wait, TimeUnit.NANOSECONDS);
+        } catch (IllegalStateException e) {
+            fail(pendingRequest, "Socket service shut down");
+        }
+    }
+
+    private void scheduleHedge(PendingRequest<?> pendingRequest) {
+        long delay = hedging.onRequest(pendingRequest.opCode,
+                                       metrics.latency(pendingRequest.opCode, RequestMetrics.Phase.FIRST_ATTEMPT));
+        // From the first RTO on the retransmission takes over
+        if (delay <= 0 || delay >= pendingRequest.endpoint.rttEstimator().rtoNanos()) {
+            return;
+        }
+        try {
+            pendingRequest.hedgeTimeout = timer.schedule(() -> hedge(pendingRequest), delay, TimeUnit.NANOSECONDS);
+        } catch (IllegalStateException e) {
+            // Shutting down; the request is failed by the retransmission timer
+        }
+    }
+
+    /**
+     * Sends a copy of a slow request under a new request ID, to another server if there is one and
+     * the request is not a monitor registration.
+     * Both IDs lead to the same pending request, and the first response to either settles it.
+     */
+    private void hedge(PendingRequest<?> pendingRequest) {
+        if (pendingRequest.future.isDone() || pendingRequest.attempts > 0) {
+            return;
+        }
+        synchronized (pendingRequest) {
+            if (pendingRequest.datagram == null) {
+                return;
+            }
+            if (!hedging.tryHedge()) {
+                metrics.hedgeDenied(pendingRequest.opCode);
+                return;
+            }
+            int hedgeId = idGenerator.getNextId();
+            ByteBuffer original = pendingRequest.datagram.duplicate().rewind();
+            ByteBuffer copy = original.remaining() <= datagramPool.bufferSize()
+                    ? datagramPool.acquire()
+                    : ByteBuffer.allocate(original.remaining());
+            copy.put(original).flip();
+            copy.putInt(1, hedgeId);
+            Endpoint endpoint;
+            if (pendingRequest.opCode == OpCode.OpMonitor) {
+                endpoint = pendingRequest.endpoint;
+                servers.acquire(endpoint);
+            } else {
+                endpoint = servers.alternative(pendingRequest.account, pendingRequest.endpoint);
+            }
+            pendingRequest.hedgeEndpoint = endpoint;
+            pendingRequest.hedgeId = hedgeId;
+            journal.begin(hedgeId, pendingRequest.opCode);
+            pendingRequest.shard.pending.put(hedgeId, pendingRequest);
+            metrics.hedge(pendingRequest.opCode);
+            try {
+                sendDatagram(pendingRequest.shard.transports[endpoint.index()], copy);
+            } catch (IOException e) {
+                log.warn("Failed to send hedge of request {}: {}", pendingRequest.requestId, e.getMessage());
+            } finally {
+                if (copy.capacity() == datagramPool.bufferSize()) {
+                    datagramPool.release(copy);
                 }
             }
-        } catch (SocketTimeoutException e) {
-            throw new OperationFailedException("Timeout waiting for response");
-        } catch (IOException e) {
-            throw new OperationFailedException("IOException: " + e.getMessage());
         }
     }
 
-    private void ensureSocketConnectionEstablished() {
-        if (this.socket == null || this.socket.isClosed()) {
+    private void onTimeout(PendingRequest<?> pendingRequest) {
+        if (pendingRequest.future.isDone()) {
+            return;
+        }
+        servers.onTimeout(pendingRequest.endpoint);
+        limiter.onTimeout();
+        pendingRequest.attempts++;
+        if (pendingRequest.attempts > maxRetries) {
+            fail(pendingRequest, "Request failed after " + maxRetries + " retries: Timeout waiting for response");
+            return;
+        }
+        if (System.nanoTime() >= pendingRequest.deadlineAt) {
+            fail(pendingRequest, "Request failed after " + pendingRequest.attempts
+                    + " attempt(s): Deadline of " + TimeUnit.NANOSECONDS.toMillis(deadlineNanos) + " ms exceeded");
+            return;
+        }
+        if (!retryBudget.tryRetry()) {
+            fail(pendingRequest, "Request failed after " + pendingRequest.attempts
+                    + " attempt(s): Retry budget exhausted");
+            return;
+        }
+        log.warn("Attempt {} failed, retrying... (Timeout waiting for response)", pendingRequest.attempts);
+        metrics.retransmission(pendingRequest.opCode);
+        if (pendingRequest.opCode.isIdempotent() && pendingRequest.opCode != OpCode.OpMonitor) {
+            // A repeat elsewhere is harmless; anything else must go back to the server that can filter it,
+            // and a monitor registration to the server already sending this client its callbacks
+            pendingRequest.failover(servers);
+        }
+        transmit(pendingRequest);
+    }
+
+    private void fail(PendingRequest<?> pendingRequest, String message) {
+        if (!pendingRequest.claim()) {
+            return; // Answered in the meantime
+        }
+        pendingRequest.shard.pending.remove(pendingRequest.requestId, pendingRequest);
+        if (pendingRequest.hedgeId != 0) {
+            pendingRequest.shard.pending.remove(pendingRequest.hedgeId, pendingRequest);
+        }
+        journal.complete(pendingRequest.requestId, RequestOutcome.UNKNOWN);
+        metrics.timeout(pendingRequest.opCode);
+        OperationFailedException failure = pendingRequest.opCode.isIdempotent()
+                ? new RequestTimeoutException(message)
+                : new OutcomeUnknownException(message, pendingRequest.requestId, pendingRequest.opCode);
+        pendingRequest.future.completeExceptionally(failure);
+        if (pendingRequest.settle(datagramPool, servers)) {
+            limiter.release();
+        }
+        completeHedge(pendingRequest, RequestOutcome.UNKNOWN);
+    }
+
+    /**
+     * Gives the hedge of a settled request, if it sent one, the request's outcome in the journal.
+     * Called after {@code settle}, from when on no hedge can start.
+     */
+    private void completeHedge(PendingRequest<?> pendingRequest, RequestOutcome outcome) {
+        if (pendingRequest.hedgeId != 0) {
+            journal.completeHedge(pendingRequest.hedgeId, outcome);
+        }
+    }
+
+    private void dispatch(Shard shard, DatagramTransport source, ByteBuffer message) {
+        if (message.remaining() < Converter.HEADER_SIZE) {
+            log.debug("Received datagram of {} bytes, shorter than a header. Ignoring.", message.remaining());
+            return;
+        }
+
+        if (FragmentMessage.isFragment(message)) {
+            ByteBuffer whole = reassembler.accept(source, message, System.nanoTime());
+            if (whole != null) {
+                dispatch(shard, source, whole);
+            }
+            return;
+        }
+
+        if (FragmentMessage.isNack(message)) {
+            resendFragments(shard, source, message);
+            return;
+        }
+
+        if (BatchMessage.isBatch(message)) {
+            BatchMessage.forEachItem(message, item -> dispatch(shard, source, item));
+            return;
+        }
+
+        if (message.get(message.position()) == MessageType.MsgCallback.ordinal()) {
+            String callback;
+            if (AccountUpdateEvent.isBinary(message)) {
+                AccountUpdateEvent event = AccountUpdateEvent.decode(message);
+                for (Consumer<AccountUpdateEvent> listener : updateListeners) {
+                    try {
+                        listener.accept(event);
+                    } catch (RuntimeException e) {
+                        log.warn("Account update listener failed: {}", e.toString());
+                    }
+                }
+                callback = event.toString();
+            } else {
+                callback = Converter.toString(message);
+            }
+            for (Consumer<String> listener : callbackListeners) {
+                try {
+                    listener.accept(callback);
+                } catch (RuntimeException e) {
+                    log.warn("Callback listener failed: {}", e.toString());
+                }
+            }
+            while (!callbacks.offer(callback)) {
+                // Keep the most recent updates when nobody is draining the queue
+                callbacks.poll();
+            }
+            return;
+        }
+
+        int responseId = Converter.requestId(message);
+        RequestOutcome outcome = message.get(message.position()) == MessageType.MsgError.ordinal()
+                ? RequestOutcome.FAILED
+                : RequestOutcome.APPLIED;
+        PendingRequest<?> pendingRequest = shard.pending.remove(responseId);
+        if (pendingRequest == null || !pendingRequest.claim()) {
+            if (journal.complete(responseId, outcome) != null) {
+                metrics.duplicateResponse();
+                log.debug("Received duplicate response with ID {}. Ignoring.", responseId);
+            } else {
+                metrics.unsolicitedResponse();
+                log.debug("Received response with ID {}, but no such request is pending. Ignoring.", responseId);
+            }
+            return;
+        }
+        // The journal counts a hedged request by its original ID; the hedge ID only settles along with it
+        journal.complete(pendingRequest.requestId, outcome);
+        int hedgeId = pendingRequest.hedgeId;
+        boolean hedgeWon = hedgeId != 0 && responseId == hedgeId;
+        if (hedgeId != 0) {
+            shard.pending.remove(hedgeWon ? pendingRequest.requestId : hedgeId, pendingRequest);
+        }
+        if (hedgeWon) {
+            metrics.hedgeWon(pendingRequest.opCode);
+            servers.onResponse(pendingRequest.hedgeEndpoint);
+        } else {
+            servers.onResponse(pendingRequest.endpoint);
+        }
+        long now = System.nanoTime();
+        if (pendingRequest.attempts == 0 && !hedgeWon) {
+            // Karn's algorithm: only unambiguous round trips feed the estimator
+            long rtt = now - pendingRequest.sentAtNanos;
+            pendingRequest.endpoint.rttEstimator().sample(rtt);
+            metrics.recordFirstAttempt(pendingRequest.opCode, rtt);
+            limiter.onResponse(rtt);
+        }
+        metrics.recordEndToEnd(pendingRequest.opCode, now - pendingRequest.createdAtNanos);
+        if (outcome == RequestOutcome.FAILED) {
+            metrics.errorResponse(pendingRequest.opCode);
+        }
+        if (!pendingRequest.complete(message)) {
+            metrics.decodeError(pendingRequest.opCode);
+        }
+        if (pendingRequest.settle(datagramPool, servers)) {
+            limiter.release();
+        }
+        completeHedge(pendingRequest, outcome);
+    }
+
+    /**
+     * Sends a marshalled message, in fragments if it does not fit in one datagram.
+     */
+    private void sendDatagram(DatagramTransport transport, ByteBuffer message) throws IOException {
+        if (message.remaining() <= DATAGRAM_BUFFER_SIZE) {
+            transport.send(message);
+            return;
+        }
+        int count = FragmentMessage.fragmentCount(message.remaining());
+        for (int index = 0; index < count; index++) {
+            sendFragment(transport, message, index);
+        }
+        message.position(message.limit());
+    }
+
+    private void sendFragment(DatagramTransport transport, ByteBuffer message, int index) throws IOException {
+        ByteBuffer fragment = datagramPool.acquire();
+        try {
+            WireWriter writer = new WireWriter(fragment, 0);
+            FragmentMessage.writeFragment(writer, message, index);
+            transport.send(fragment.limit(writer.position()).position(0));
+        } finally {
+            datagramPool.release(fragment);
+        }
+    }
+
+    /**
+     * Answers the server's NACK for fragments of a request it is still reassembling, if the request
+     * is still pending. Hedges are not resent, since the pending request holds only the original.
+     */
+    private void resendFragments(Shard shard, DatagramTransport source, ByteBuffer nack) {
+        int requestId = Converter.requestId(nack);
+        PendingRequest<?> pendingRequest = shard.pending.get(requestId);
+        if (pendingRequest == null || pendingRequest.requestId != requestId) {
+            return;
+        }
+        synchronized (pendingRequest) {
+            ByteBuffer datagram = pendingRequest.datagram;
+            if (datagram == null) {
+                return;
+            }
+            ByteBuffer message = datagram.duplicate().rewind();
+            int count = FragmentMessage.fragmentCount(message.remaining());
+            FragmentMessage.forEachMissing(nack, index -> {
+                if (index < 0 || index >= count || count == 1) {
+                    return;
+                }
+                try {
+                    sendFragment(source, message, index);
+                    fragmentsResent.increment();
+                } catch (IOException e) {
+                    log.warn("Failed to resend fragment {} of request {}: {}", index, requestId, e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Asks for the missing fragments of stalled responses and drops those that have timed out, and
+     * schedules itself again while the service is running.
+     */
+    private void pollFragments() {
+        reassembler.poll(System.nanoTime(), (transport, nack) -> {
             try {
-                this.socket = new DatagramSocket();
-                log.info("UDP Socket initialized");
+                transport.send(nack);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                log.warn("Failed to send NACK: {}", e.getMessage());
+            }
+        });
+        try {
+            timer.schedule(this::pollFragments, NACK_DELAY_MILLIS / 2, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // Shut down
+        }
+    }
+
+    private void bindFragmentMetrics(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("socket.fragments.reassembled", reassembler, FragmentReassembler::reassembled)
+                       .description("Responses and callbacks reassembled from fragments")
+                       .register(meterRegistry);
+        FunctionCounter.builder("socket.fragments.dropped", reassembler, FragmentReassembler::expired)
+                       .tag("reason", "timeout")
+                       .register(meterRegistry);
+        FunctionCounter.builder("socket.fragments.dropped", reassembler, FragmentReassembler::evicted)
+                       .tag("reason", "buffer-full")
+                       .register(meterRegistry);
+        FunctionCounter.builder("socket.fragments.nacks", reassembler, FragmentReassembler::nacks)
+                       .description("NACKs sent for missing fragments")
+                       .register(meterRegistry);
+        Gauge.builder("socket.fragments.buffered", reassembler, FragmentReassembler::bufferedBytes)
+             .baseUnit("bytes")
+             .register(meterRegistry);
+    }
+
+    /**
+     * Waits for a response, rethrowing the failure it completed with.
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void ensureSocketConnectionEstablished() {
+        for (Shard shard : shards) {
+            for (Endpoint endpoint : servers.endpoints()) {
+                DatagramTransport transport = shard.transports[endpoint.index()];
+                if (transport == null || !transport.isOpen()) {
+                    try {
+                        DatagramTransport newTransport = transportType.open(endpoint::address);
+                        newTransport.start(message -> dispatch(shard, newTransport, message));
+                        shard.transports[endpoint.index()] = newTransport;
+                        log.info("UDP Socket {} to {} initialized", shard.index, endpoint);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
             }
         }
     }
 
     @PreDestroy
     public void shutdown() {
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
+        // Fail pending requests first so that timeouts still in flight find them completed
+        for (Shard shard : shards) {
+            shard.pending.values().forEach(pendingRequest -> fail(pendingRequest, "Socket service shut down"));
+        }
+        timer.close();
+        servers.close();
+        for (Shard shard : shards) {
+            for (DatagramTransport transport : shard.transports) {
+                if (transport != null && transport.isOpen()) {
+                    transport.close();
+                }
+            }
         }
         log.info("Disconnected from server");
     }
+
+    /**
+     * One socket per server, with its own receiver threads and table of the requests sent through it.
+     */
+    private static final class Shard {
+        private final int index;
+        private final ConcurrentMap<Integer, PendingRequest<?>> pending = new ConcurrentHashMap<>();
+        // Indexed by Endpoint.index(); written under the service's lock
+        private final DatagramTransport[] transports;
+
+        private Shard(int index, int servers) {
+            this.index = index;
+            this.transports = new DatagramTransport[servers];
+        }
+    }
+
+    /**
+     * A request awaiting its response, together with the state needed to retransmit it.
+     */
+    private static final class PendingRequest<T> {
+        private final int requestId;
+        private final OpCode opCode;
+        private final Integer account;
+        private final Shard shard;
+        private final ResponseDecoder<T> decoder;
+        private final long deadlineAt;
+        private final long createdAtNanos = System.nanoTime();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private volatile int attempts;
+        private volatile long sentAtNanos;
+        private volatile TimerWheel.Timeout timeout;
+        private volatile TimerWheel.Timeout hedgeTimeout;
+        // Written under this; 0 and null unless the request has been hedged
+        private volatile int hedgeId;
+        private volatile Endpoint hedgeEndpoint;
+        // Guarded by this; set by whichever of a response or a failure settles the request first
+        private boolean claimed;
+        // Written under this; the server the next transmission goes to
+        private volatile Endpoint endpoint;
+        // Guarded by this; null once the request has settled
+        private ByteBuffer datagram;
+
+        private PendingRequest(int requestId, OpCode opCode, Integer account, Shard shard, Endpoint endpoint,
+                               ByteBuffer datagram, ResponseDecoder<T> decoder, long deadlineAt) {
+            this.requestId = requestId;
+            this.opCode = opCode;
+            this.account = account;
+            this.shard = shard;
+            this.endpoint = endpoint;
+            this.datagram = datagram;
+            this.decoder = decoder;
+            this.deadlineAt = deadlineAt;
+        }
+
+        /**
+         * @return false if the response could not be decoded
+         */
+        private boolean complete(ByteBuffer message) {
+            TimerWheel.Timeout scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+            TimerWheel.Timeout hedge = hedgeTimeout;
+            if (hedge != null) {
+                hedge.cancel();
+            }
+            try {
+                future.complete(decoder.decode(message));
+                return true;
+            } catch (OperationFailedException e) {
+                future.completeExceptionally(e);
+                return true;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return false;
+            }
+        }
+
+        /**
+         * Claims the right to settle the request.
+         *
+         * @return false if a response or failure has already claimed it
+         */
+        private synchronized boolean claim() {
+            if (claimed) {
+                return false;
+            }
+            claimed = true;
+            return true;
+        }
+
+        /**
+         * Moves the request to the server its retransmission should go to, unless it has settled.
+         */
+        private synchronized void failover(ServerPool servers) {
+            if (datagram != null) {
+                Endpoint previous = endpoint;
+                endpoint = servers.alternative(account, previous);
+                servers.release(previous);
+            }
+        }
+
+        /**
+         * Returns the marshalled request to the pool and ends its claim on its server. Synchronized
+         * with {@code transmit} so that a buffer is never recycled while it is being sent.
+         *
+         * @return true the first time, when the caller must also give back the request's limiter slot
+         */
+        private synchronized boolean settle(BufferPool pool, ServerPool servers) {
+            if (datagram == null) {
+                return false;
+            }
+            if (datagram.capacity() == pool.bufferSize()) {
+                pool.release(datagram);
+            }
+            datagram = null;
+            servers.release(endpoint);
+            if (hedgeEndpoint != null) {
+                servers.release(hedgeEndpoint);
+            }
+            return true;
+        }
+    }
 }
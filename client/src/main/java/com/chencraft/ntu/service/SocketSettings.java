@@ -0,0 +1,175 @@
+package com.chencraft.ntu.service;
+
+import com.chencraft.ntu.service.balancer.LoadBalancingPolicy;
+import com.chencraft.ntu.service.transport.TransportType;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * The {@code socket.*} settings of a {@link SocketService}; see {@code application.properties} for
+ * what each one does. Defaults are those used when the property is not set, except that the server's
+ * host and port have to be given.
+ * <p>
+ * In the application they are read by {@link #fromProperties(PropertyResolver)}; elsewhere, e.g. in
+ * tests and benchmarks, they are built with {@link #builder()}, setting only what differs from the
+ * defaults.
+ */
+@Getter
+@Builder(toBuilder = true)
+@ToString
+public class SocketSettings {
+    /**
+     * {@code socket.server.host}
+     */
+    @Builder.Default
+    private final String host = "localhost";
+
+    /**
+     * {@code socket.server.port}
+     */
+    @Builder.Default
+    private final int port = 8866;
+
+    /**
+     * {@code socket.servers}: comma-separated {@code host:port} list used instead of host and port
+     */
+    @Builder.Default
+    private final String servers = "";
+
+    /**
+     * {@code socket.servers.policy}
+     */
+    @Builder.Default
+    private final LoadBalancingPolicy policy = LoadBalancingPolicy.ROUND_ROBIN;
+
+    /**
+     * {@code socket.servers.eject-after}
+     */
+    @Builder.Default
+    private final int ejectAfter = 3;
+
+    /**
+     * {@code socket.servers.eject-duration}
+     */
+    @Builder.Default
+    private final long ejectDurationMillis = 1000;
+
+    /**
+     * {@code socket.server.resolve-ttl}; 0 resolves the hosts once
+     */
+    @Builder.Default
+    private final long resolveTtlMillis = 60000;
+
+    /**
+     * {@code socket.timeout}: the retransmission timeout until a round trip has been measured
+     */
+    @Builder.Default
+    private final int timeoutMillis = 1000000;
+
+    /**
+     * {@code socket.max-retries}
+     */
+    @Builder.Default
+    private final int maxRetries = 0;
+
+    /**
+     * {@code socket.rto.min}
+     */
+    @Builder.Default
+    private final long minRtoMillis = 20;
+
+    /**
+     * {@code socket.rto.max}
+     */
+    @Builder.Default
+    private final long maxRtoMillis = 10000;
+
+    /**
+     * {@code socket.deadline}; 0 for none
+     */
+    @Builder.Default
+    private final long deadlineMillis = 0;
+
+    /**
+     * {@code socket.journal.capacity}
+     */
+    @Builder.Default
+    private final int journalCapacity = 65536;
+
+    /**
+     * {@code socket.fragment.max-message-size}
+     */
+    @Builder.Default
+    private final int maxMessageSize = 1 << 20;
+
+    /**
+     * {@code socket.fragment.reassembly-buffer}
+     */
+    @Builder.Default
+    private final long reassemblyBuffer = 8 << 20;
+
+    /**
+     * {@code socket.fragment.reassembly-timeout}
+     */
+    @Builder.Default
+    private final long reassemblyTimeoutMillis = 5000;
+
+    /**
+     * {@code socket.transport}
+     */
+    @Builder.Default
+    private final TransportType transport = TransportType.BLOCKING;
+
+    /**
+     * {@code socket.shards}
+     */
+    @Builder.Default
+    private final int shards = 1;
+
+    /**
+     * {@code socket.shards.routing}
+     */
+    @Builder.Default
+    private final ShardRouting shardRouting = ShardRouting.REQUEST_ID;
+
+    /**
+     * Reads the {@code socket.*} properties, falling back to the defaults for those not set.
+     *
+     * @throws IllegalStateException    if {@code socket.server.host} or {@code socket.server.port} is not set
+     * @throws IllegalArgumentException if an enumerated setting has an unknown value
+     */
+    public static SocketSettings fromProperties(PropertyResolver properties) {
+        SocketSettings defaults = builder().build();
+        return builder()
+                .host(properties.getRequiredProperty("socket.server.host"))
+                .port(properties.getRequiredProperty("socket.server.port", Integer.class))
+                .servers(properties.getProperty("socket.servers", defaults.servers))
+                .policy(LoadBalancingPolicy.fromProperty(
+                        properties.getProperty("socket.servers.policy", "round-robin")))
+                .ejectAfter(properties.getProperty("socket.servers.eject-after", Integer.class, defaults.ejectAfter))
+                .ejectDurationMillis(properties.getProperty("socket.servers.eject-duration", Long.class,
+                                                            defaults.ejectDurationMillis))
+                .resolveTtlMillis(properties.getProperty("socket.server.resolve-ttl", Long.class,
+                                                         defaults.resolveTtlMillis))
+                .timeoutMillis(properties.getProperty("socket.timeout", Integer.class, defaults.timeoutMillis))
+                .maxRetries(properties.getProperty("socket.max-retries", Integer.class, defaults.maxRetries))
+                .minRtoMillis(properties.getProperty("socket.rto.min", Long.class, defaults.minRtoMillis))
+                .maxRtoMillis(properties.getProperty("socket.rto.max", Long.class, defaults.maxRtoMillis))
+                .deadlineMillis(properties.getProperty("socket.deadline", Long.class, defaults.deadlineMillis))
+                .journalCapacity(properties.getProperty("socket.journal.capacity", Integer.class,
+                                                        defaults.journalCapacity))
+                .maxMessageSize(properties.getProperty("socket.fragment.max-message-size", Integer.class,
+                                                       defaults.maxMessageSize))
+                .reassemblyBuffer(properties.getProperty("socket.fragment.reassembly-buffer", Long.class,
+                                                         defaults.reassemblyBuffer))
+                .reassemblyTimeoutMillis(properties.getProperty("socket.fragment.reassembly-timeout", Long.class,
+                                                                defaults.reassemblyTimeoutMillis))
+                .transport(TransportType.fromProperty(properties.getProperty("socket.transport", "blocking")))
+                .shards(properties.getProperty("socket.shards", Integer.class, defaults.shards))
+                .shardRouting(ShardRouting.fromProperty(
+                        properties.getProperty("socket.shards.routing", "request-id")))
+                .build();
+    }
+}
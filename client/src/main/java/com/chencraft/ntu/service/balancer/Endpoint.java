@@ -0,0 +1,143 @@
+package com.chencraft.ntu.service.balancer;
+
+import com.chencraft.ntu.service.resolver.ServerAddressResolver;
+import com.chencraft.ntu.service.retry.RttEstimator;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One server of a {@link ServerPool}: its address, round-trip times, load and health.
+ * <p>
+ * Health is tracked passively from the requests sent to it. After {@code ejectAfter} consecutive
+ * timeouts the server is ejected and receives no requests for the ejection period. When the
+ * period is over a single request is let through as a probe: a response readmits the server,
+ * another timeout ejects it again for twice as long, up to {@link #MAX_BACKOFF_SHIFT} doublings.
+ */
+public final class Endpoint {
+    /**
+     * Most times the ejection period is doubled for a server that keeps failing its probes.
+     */
+    static final int MAX_BACKOFF_SHIFT = 5;
+
+    private final int index;
+    private final String label;
+    private final ServerAddressResolver address;
+    private final RttEstimator rttEstimator;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // Guarded by this
+    private int consecutiveTimeouts;
+    private int ejections;
+    private boolean probing;
+    // Non-zero while ejected or on probation; written under this
+    private volatile long ejectedUntilNanos;
+
+    Endpoint(int index, String label, ServerAddressResolver address, RttEstimator rttEstimator) {
+        this.index = index;
+        this.label = label;
+        this.address = address;
+        this.rttEstimator = rttEstimator;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    /**
+     * {@code host:port} as configured.
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * The server's most recently resolved address, or {@code null} if its host has never resolved.
+     */
+    public InetSocketAddress address() {
+        return address.current();
+    }
+
+    public RttEstimator rttEstimator() {
+        return rttEstimator;
+    }
+
+    /**
+     * Number of requests sent to this server and not yet settled.
+     */
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    void acquire() {
+        outstanding.incrementAndGet();
+    }
+
+    void release() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Whether the server takes requests normally, i.e. is neither ejected nor on probation.
+     */
+    public boolean isHealthy() {
+        return ejectedUntilNanos == 0;
+    }
+
+    /**
+     * Claims the single probe allowed once the ejection period is over.
+     *
+     * @return true if the caller should send its request here as the probe
+     */
+    synchronized boolean tryProbe(long now) {
+        if (ejectedUntilNanos == 0 || probing || now < ejectedUntilNanos) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    /**
+     * Records a response.
+     *
+     * @return true if this readmitted an ejected server
+     */
+    synchronized boolean onResponse() {
+        consecutiveTimeouts = 0;
+        probing = false;
+        if (ejectedUntilNanos == 0) {
+            return false;
+        }
+        ejectedUntilNanos = 0;
+        ejections = 0;
+        return true;
+    }
+
+    /**
+     * Records a request that went unanswered.
+     *
+     * @return true if this ejected the server
+     */
+    synchronized boolean onTimeout(long now, int ejectAfter, long ejectionNanos) {
+        consecutiveTimeouts++;
+        if (ejectedUntilNanos != 0 && !probing) {
+            return false; // Already ejected; requests sent before the ejection are still timing out
+        }
+        if (!probing && consecutiveTimeouts < ejectAfter) {
+            return false;
+        }
+        probing = false;
+        ejectedUntilNanos = now + (ejectionNanos << Math.min(ejections, MAX_BACKOFF_SHIFT));
+        ejections++;
+        return true;
+    }
+
+    void close() {
+        address.close();
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
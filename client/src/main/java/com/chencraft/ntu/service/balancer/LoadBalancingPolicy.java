@@ -0,0 +1,41 @@
+package com.chencraft.ntu.service.balancer;
+
+/**
+ * How a {@link ServerPool} picks a server for each request, selected with the
+ * {@code socket.servers.policy} property.
+ */
+public enum LoadBalancingPolicy {
+    /**
+     * Take the servers in turn.
+     */
+    ROUND_ROBIN,
+    /**
+     * Pick the server with the fewest requests awaiting a response.
+     */
+    LEAST_OUTSTANDING,
+    /**
+     * Pick two servers at random and take the one with the lower smoothed round-trip time, weighted
+     * by its outstanding requests. Adapts to a slow server almost as well as comparing all of them,
+     * without every client herding onto the same one.
+     */
+    POWER_OF_TWO_CHOICES,
+    /**
+     * Send every request for an account to the same server, chosen on a consistent-hash ring, for
+     * a backend partitioned by account. When a server is ejected only its accounts move, to the
+     * next server on the ring. Requests without an account are taken round-robin.
+     */
+    CONSISTENT_HASH;
+
+    /**
+     * Parses a property value case-insensitively, accepting {@code -} in place of {@code _}.
+     */
+    public static LoadBalancingPolicy fromProperty(String value) {
+        try {
+            return valueOf(value.trim().replace('-', '_').toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown socket.servers.policy: " + value
+                                                       + " (expected round-robin, least-outstanding,"
+                                                       + " power-of-two-choices or consistent-hash)");
+        }
+    }
+}
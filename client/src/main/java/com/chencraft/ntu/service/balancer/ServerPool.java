@@ -0,0 +1,310 @@
+package com.chencraft.ntu.service.balancer;
+
+import com.chencraft.ntu.service.resolver.HostResolver;
+import com.chencraft.ntu.service.resolver.ServerAddressResolver;
+import com.chencraft.ntu.service.retry.RttEstimator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The servers a client talks to, and the choice of server for each request.
+ * <p>
+ * Servers are picked by a {@link LoadBalancingPolicy} among the healthy ones; an {@link Endpoint}
+ * is ejected after consecutive timeouts and readmitted by a probe once its ejection period is over
+ * (see {@link Endpoint}). Under every policy but {@code consistent-hash} a server that is due for its
+ * probe gets the next request. If every eligible server is ejected the pool ignores health rather
+ * than refuse to send.
+ * <p>
+ * {@link #select(Integer, Endpoint)} counts the chosen server's request as outstanding until the
+ * caller hands it back with {@link #release(Endpoint)}.
+ * <p>
+ * Metrics, tagged with the server:
+ * - {@code socket.server.outstanding}: requests awaiting a response
+ * - {@code socket.server.healthy}: 1 while the server is neither ejected nor on probation, else 0
+ * - {@code socket.server.ejections}: number of times the server was ejected
+ */
+@Slf4j
+public class ServerPool implements AutoCloseable {
+    /**
+     * Points per server on the consistent-hash ring, to even out the share of accounts each gets.
+     */
+    private static final int VIRTUAL_NODES = 128;
+
+    private final Endpoint[] endpoints;
+    private final LoadBalancingPolicy policy;
+    private final int ejectAfter;
+    private final long ejectionNanos;
+    private final Counter[] ejectionCounters;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final long[] ringHashes;
+    private final Endpoint[] ringOwners;
+
+    /**
+     * @param servers        {@code host:port} of every server, in order
+     * @param ejectAfter     consecutive timeouts after which a server is ejected
+     * @param ejectionMillis length of a server's first ejection
+     * @param resolveTtl     interval (ms) between background re-resolutions of each host; 0 disables it
+     * @param rttEstimators  creates the RTT estimator of the server with the given label
+     */
+    public ServerPool(List<String> servers, LoadBalancingPolicy policy, int ejectAfter, long ejectionMillis,
+                      HostResolver hostResolver, long resolveTtl, Function<String, RttEstimator> rttEstimators,
+                      MeterRegistry meterRegistry) {
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one server is required");
+        }
+        if (ejectAfter <= 0 || ejectionMillis <= 0) {
+            throw new IllegalArgumentException("Require socket.servers.eject-after > 0 and socket.servers.eject-duration > 0");
+        }
+        this.policy = policy;
+        this.ejectAfter = ejectAfter;
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(ejectionMillis);
+        this.endpoints = new Endpoint[servers.size()];
+        this.ejectionCounters = new Counter[servers.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            String label = servers.get(i);
+            int colon = label.lastIndexOf(':');
+            if (colon <= 0 || colon == label.length() - 1) {
+                throw new IllegalArgumentException("Expected host:port but got: " + label);
+            }
+            ServerAddressResolver address = new ServerAddressResolver(
+                    label.substring(0, colon), Integer.parseInt(label.substring(colon + 1)), hostResolver, resolveTtl,
+                    meterRegistry);
+            Endpoint endpoint = new Endpoint(i, label, address, rttEstimators.apply(label));
+            endpoints[i] = endpoint;
+            Gauge.builder("socket.server.outstanding", endpoint, Endpoint::outstanding)
+                 .tag("server", label)
+                 .register(meterRegistry);
+            Gauge.builder("socket.server.healthy", endpoint, e -> e.isHealthy() ? 1 : 0)
+                 .tag("server", label)
+                 .register(meterRegistry);
+            ejectionCounters[i] = Counter.builder("socket.server.ejections")
+                                         .description("Times the server was ejected after consecutive timeouts")
+                                         .tag("server", label)
+                                         .register(meterRegistry);
+        }
+
+        this.ringHashes = new long[endpoints.length * VIRTUAL_NODES];
+        this.ringOwners = new Endpoint[ringHashes.length];
+        long[][] points = new long[ringHashes.length][];
+        for (int i = 0; i < endpoints.length; i++) {
+            long seed = mix(endpoints[i].label().hashCode());
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                points[i * VIRTUAL_NODES + v] = new long[]{mix(seed + v), i};
+            }
+        }
+        Arrays.sort(points, (a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < points.length; i++) {
+            ringHashes[i] = points[i][0];
+            ringOwners[i] = endpoints[(int) points[i][1]];
+        }
+    }
+
+    /**
+     * Splits a comma-separated list of {@code host:port} entries, ignoring blanks.
+     */
+    public static List<String> parse(String servers) {
+        List<String> result = new ArrayList<>();
+        for (String server : servers.split(",")) {
+            if (!server.isBlank()) {
+                result.add(server.trim());
+            }
+        }
+        return result;
+    }
+
+    public List<Endpoint> endpoints() {
+        return List.of(endpoints);
+    }
+
+    public LoadBalancingPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Picks the server for a request and counts the request as outstanding there.
+     *
+     * @param account account the request is for, or {@code null}; only used by {@code consistent-hash}
+     * @param exclude server to avoid if any other can take the request, or {@code null}
+     */
+    public Endpoint select(Integer account, Endpoint exclude) {
+        Endpoint chosen = endpoints.length == 1 ? endpoints[0] : choose(account, exclude, System.nanoTime());
+        chosen.acquire();
+        return chosen;
+    }
+
+    /**
+     * Picks the server to send a request to again, e.g. a retransmission or a hedge, when
+     * {@code previous} has not answered it yet. Under {@code consistent-hash} this is the account's
+     * server, which changes only if {@code previous} has been ejected in the meantime; otherwise it
+     * is any other server. Like {@link #select(Integer, Endpoint)} this counts the request as
+     * outstanding at the server returned.
+     */
+    public Endpoint alternative(Integer account, Endpoint previous) {
+        return select(account, policy == LoadBalancingPolicy.CONSISTENT_HASH && account != null ? null : previous);
+    }
+
+    /**
+     * Counts another request as outstanding at a server already chosen, e.g. one sharing a datagram
+     * with the request it was chosen for.
+     */
+    public void acquire(Endpoint endpoint) {
+        endpoint.acquire();
+    }
+
+    /**
+     * Ends a request's claim on the server returned by {@link #select(Integer, Endpoint)}.
+     */
+    public void release(Endpoint endpoint) {
+        endpoint.release();
+    }
+
+    /**
+     * Records that a server answered a request.
+     */
+    public void onResponse(Endpoint endpoint) {
+        if (endpoints.length > 1 && endpoint.onResponse()) {
+            log.info("Server {} readmitted", endpoint);
+        }
+    }
+
+    /**
+     * Records that a request to a server went unanswered, ejecting the server if it keeps happening.
+     */
+    public void onTimeout(Endpoint endpoint) {
+        if (endpoints.length > 1 && endpoint.onTimeout(System.nanoTime(), ejectAfter, ejectionNanos)) {
+            ejectionCounters[endpoint.index()].increment();
+            log.warn("Server {} ejected after {} consecutive timeouts", endpoint, ejectAfter);
+        }
+    }
+
+    private Endpoint choose(Integer account, Endpoint exclude, long now) {
+        if (policy == LoadBalancingPolicy.CONSISTENT_HASH && account != null) {
+            return onRing(account, exclude, now);
+        }
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint != exclude && endpoint.tryProbe(now)) {
+                return endpoint;
+            }
+        }
+        Endpoint chosen = switch (policy) {
+            case ROUND_ROBIN, CONSISTENT_HASH -> roundRobin(exclude, true);
+            case LEAST_OUTSTANDING -> leastOutstanding(exclude);
+            case POWER_OF_TWO_CHOICES -> powerOfTwoChoices(exclude);
+        };
+        if (chosen == null) {
+            // Every other server is ejected: spread the load over all of them rather than fail
+            chosen = roundRobin(exclude, false);
+        }
+        return chosen != null ? chosen : exclude;
+    }
+
+    private Endpoint roundRobin(Endpoint exclude, boolean healthyOnly) {
+        int start = nextIndex.getAndIncrement();
+        for (int i = 0; i < endpoints.length; i++) {
+            Endpoint endpoint = endpoints[Math.floorMod(start + i, endpoints.length)];
+            if (endpoint != exclude && (!healthyOnly || endpoint.isHealthy())) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private Endpoint leastOutstanding(Endpoint exclude) {
+        // Start the scan at a rotating offset so that ties do not all go to the first server
+        int start = nextIndex.getAndIncrement();
+        Endpoint best = null;
+        for (int i = 0; i < endpoints.length; i++) {
+            Endpoint endpoint = endpoints[Math.floorMod(start + i, endpoints.length)];
+            if (endpoint != exclude && endpoint.isHealthy()
+                    && (best == null || endpoint.outstanding() < best.outstanding())) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    private Endpoint powerOfTwoChoices(Endpoint exclude) {
+        int candidates = 0;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint != exclude && endpoint.isHealthy()) {
+                candidates++;
+            }
+        }
+        if (candidates <= 1) {
+            return candidates == 0 ? null : nthHealthy(0, exclude);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates);
+        int second = random.nextInt(candidates - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = nthHealthy(first, exclude);
+        Endpoint b = nthHealthy(second, exclude);
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    private Endpoint nthHealthy(int n, Endpoint exclude) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint != exclude && endpoint.isHealthy() && n-- == 0) {
+                return endpoint;
+            }
+        }
+        throw new IllegalStateException("Fewer than " + (n + 1) + " healthy servers");
+    }
+
+    /**
+     * Expected wait at a server: its smoothed RTT, or 1 ns before it has been measured, scaled by
+     * the requests queued ahead.
+     */
+    private static double cost(Endpoint endpoint) {
+        return (endpoint.rttEstimator().srttNanos() + 1.0) * (endpoint.outstanding() + 1);
+    }
+
+    /**
+     * Walks the ring clockwise from the account's point to the first server that can take it,
+     * falling back to the account's own server if none can.
+     */
+    private Endpoint onRing(int account, Endpoint exclude, long now) {
+        int start = Arrays.binarySearch(ringHashes, mix(account));
+        if (start < 0) {
+            start = -start - 1;
+        }
+        for (int i = 0; i < ringOwners.length; i++) {
+            Endpoint endpoint = ringOwners[(start + i) % ringOwners.length];
+            if (endpoint != exclude && (endpoint.isHealthy() || endpoint.tryProbe(now))) {
+                return endpoint;
+            }
+        }
+        return ringOwners[start % ringOwners.length];
+    }
+
+    /**
+     * MurmurHash3's 64-bit finalizer, to scatter nearby keys across the ring.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    @Override
+    public void close() {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.close();
+        }
+    }
+}
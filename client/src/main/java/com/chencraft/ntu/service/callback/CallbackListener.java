@@ -0,0 +1,281 @@
+package com.chencraft.ntu.service.callback;
+
+import com.chencraft.ntu.model.AccountUpdateEvent;
+import com.chencraft.ntu.model.request.MonitorRequest;
+import com.chencraft.ntu.service.SocketService;
+import com.chencraft.ntu.util.ResponseDecoder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Delivers monitor callbacks to any number of subscribers in the background, and keeps the monitor
+ * registration alive while monitoring.
+ * <p>
+ * Callbacks are demultiplexed from responses by the socket's receiver thread (see
+ * {@link SocketService}), so monitoring never blocks or steals responses from concurrent requests.
+ * Each subscriber gets its own queue of up to {@code callbacks.queue-capacity} callbacks, drained
+ * by its own virtual thread, and a subscriber that falls behind is handled according to
+ * {@code callbacks.overflow-policy} (see {@link OverflowPolicy}). Dropped callbacks are counted by
+ * {@code socket.callbacks.dropped{policy}}.
+ * <p>
+ * Every callback is published as text to {@link #subscribe(Flow.Subscriber)}. Binary callbacks are
+ * also published as {@link AccountUpdateEvent}s to {@link #subscribeUpdates(Flow.Subscriber)}, after
+ * their sequence numbers are checked for gaps by a {@link SequenceGapDetector}.
+ * <p>
+ * {@link #startMonitoring(int)} registers for callbacks and renews the registration shortly before
+ * each interval expires, until {@link #stopMonitoring()}.
+ */
+@Slf4j
+@Service
+public class CallbackListener implements Flow.Publisher<String> {
+    /**
+     * Fraction of the monitor interval after which the registration is renewed.
+     */
+    private static final double RENEWAL_FRACTION = 0.8;
+
+    private final SocketService socketService;
+    private final int queueCapacity;
+    private final OverflowPolicy defaultPolicy;
+    private final long blockTimeoutNanos;
+    private final MeterRegistry meterRegistry;
+    private final List<CallbackSubscription<String>> subscriptions = new CopyOnWriteArrayList<>();
+    private final List<CallbackSubscription<AccountUpdateEvent>> updateSubscriptions = new CopyOnWriteArrayList<>();
+    private final SequenceGapDetector gapDetector;
+    private final ScheduledExecutorService renewer;
+
+    private ScheduledFuture<?> renewal;
+
+    /**
+     * @param queueCapacity  callbacks queued per subscriber
+     * @param overflowPolicy what to do when a subscriber's queue is full
+     * @param blockTimeout   longest time (ms) the {@code block} policy holds up the receiver thread
+     */
+    @Autowired
+    public CallbackListener(SocketService socketService,
+                            @Value("${callbacks.queue-capacity:1024}") int queueCapacity,
+                            @Value("${callbacks.overflow-policy:drop-oldest}") String overflowPolicy,
+                            @Value("${callbacks.block-timeout:1000}") long blockTimeout,
+                            MeterRegistry meterRegistry) {
+        if (queueCapacity <= 0 || blockTimeout < 0) {
+            throw new IllegalArgumentException("Require callbacks.queue-capacity > 0 and callbacks.block-timeout >= 0");
+        }
+        this.socketService = socketService;
+        this.queueCapacity = queueCapacity;
+        this.defaultPolicy = OverflowPolicy.fromProperty(overflowPolicy);
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        this.meterRegistry = meterRegistry;
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "monitor-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.gapDetector = new SequenceGapDetector(meterRegistry);
+        socketService.addUpdateListener(this::publishUpdate);
+        socketService.addCallbackListener(this::publish);
+    }
+
+    /**
+     * Subscribes with the configured overflow policy.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        subscribe(subscriber, defaultPolicy);
+    }
+
+    public void subscribe(Flow.Subscriber<? super String> subscriber, OverflowPolicy policy) {
+        add(subscriptions, subscriber, policy);
+    }
+
+    /**
+     * Calls {@code consumer} with every callback on a dedicated thread, with the configured overflow policy.
+     *
+     * @return the subscription, to {@link Flow.Subscription#cancel() cancel} it
+     */
+    public Flow.Subscription subscribe(Consumer<? super String> consumer) {
+        return subscribe(consumer, defaultPolicy);
+    }
+
+    public Flow.Subscription subscribe(Consumer<? super String> consumer, OverflowPolicy policy) {
+        ConsumerSubscriber<String> subscriber = new ConsumerSubscriber<>(consumer);
+        subscribe(subscriber, policy);
+        return subscriber;
+    }
+
+    /**
+     * Subscribes to binary callbacks decoded as {@link AccountUpdateEvent}s, in the order they
+     * arrived, with the configured overflow policy. Legacy text callbacks are not delivered here.
+     */
+    public void subscribeUpdates(Flow.Subscriber<? super AccountUpdateEvent> subscriber) {
+        subscribeUpdates(subscriber, defaultPolicy);
+    }
+
+    public void subscribeUpdates(Flow.Subscriber<? super AccountUpdateEvent> subscriber, OverflowPolicy policy) {
+        add(updateSubscriptions, subscriber, policy);
+    }
+
+    /**
+     * Calls {@code consumer} with every account update on a dedicated thread, with the configured
+     * overflow policy.
+     *
+     * @return the subscription, to {@link Flow.Subscription#cancel() cancel} it
+     */
+    public Flow.Subscription subscribeUpdates(Consumer<? super AccountUpdateEvent> consumer) {
+        ConsumerSubscriber<AccountUpdateEvent> subscriber = new ConsumerSubscriber<>(consumer);
+        subscribeUpdates(subscriber, defaultPolicy);
+        return subscriber;
+    }
+
+    /**
+     * Number of callbacks presumed lost because their sequence numbers were skipped.
+     */
+    public long missedCallbacks() {
+        return gapDetector.missed();
+    }
+
+    private <T> void add(List<CallbackSubscription<T>> to, Flow.Subscriber<? super T> subscriber,
+                         OverflowPolicy policy) {
+        Counter dropped = Counter.builder("socket.callbacks.dropped")
+                                 .description("Callbacks discarded because a subscriber's queue was full")
+                                 .tag("policy", policy.name().toLowerCase(Locale.ROOT))
+                                 .register(meterRegistry);
+        CallbackSubscription<T> subscription = new CallbackSubscription<>(
+                subscriber, queueCapacity, policy, blockTimeoutNanos, dropped::increment, to::remove);
+        to.add(subscription);
+        subscription.start();
+    }
+
+    /**
+     * Registers for callbacks for {@code intervalSeconds} and keeps renewing the registration until
+     * {@link #stopMonitoring()}. Replaces any monitoring already in progress.
+     *
+     * @return the server's reply to the first registration
+     */
+    public synchronized String startMonitoring(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("Monitor interval must be positive");
+        }
+        stopMonitoring();
+        String reply = socketService.sendAndReceiveString(monitorRequest(intervalSeconds));
+        long period = Math.max(1, (long) (TimeUnit.SECONDS.toMillis(intervalSeconds) * RENEWAL_FRACTION));
+        renewal = renewer.scheduleAtFixedRate(() -> renew(intervalSeconds), period, period, TimeUnit.MILLISECONDS);
+        return reply;
+    }
+
+    /**
+     * Stops renewing the monitor registration; callbacks stop once the current interval expires.
+     */
+    public synchronized void stopMonitoring() {
+        if (renewal != null) {
+            renewal.cancel(false);
+            renewal = null;
+        }
+    }
+
+    public synchronized boolean isMonitoring() {
+        return renewal != null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopMonitoring();
+        renewer.shutdownNow();
+        subscriptions.forEach(CallbackSubscription::complete);
+        updateSubscriptions.forEach(CallbackSubscription::complete);
+    }
+
+    private void publish(String callback) {
+        for (CallbackSubscription<String> subscription : subscriptions) {
+            subscription.offer(callback);
+        }
+    }
+
+    private void publishUpdate(AccountUpdateEvent event) {
+        gapDetector.observe(event.sequence());
+        for (CallbackSubscription<AccountUpdateEvent> subscription : updateSubscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    private void renew(int intervalSeconds) {
+        socketService.sendAsync(monitorRequest(intervalSeconds), ResponseDecoder.STRING)
+                     .whenComplete((reply, failure) -> {
+                         if (failure != null) {
+                             log.warn("Failed to renew monitor registration: {}", failure.getMessage());
+                         } else {
+                             log.debug("Monitor registration renewed: {}", reply);
+                         }
+                     });
+    }
+
+    private static MonitorRequest monitorRequest(int intervalSeconds) {
+        MonitorRequest request = new MonitorRequest();
+        request.setMonitorInterval(intervalSeconds);
+        return request;
+    }
+
+    /**
+     * Adapts a {@link Consumer} to a subscriber with unbounded demand. Doubles as the handle returned
+     * to the caller, since the real subscription only exists once the delivery thread has started.
+     */
+    private static final class ConsumerSubscriber<T> implements Flow.Subscriber<T>, Flow.Subscription {
+        private final Consumer<? super T> consumer;
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled;
+
+        private ConsumerSubscriber(Consumer<? super T> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            consumer.accept(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.warn("Callback subscription failed: {}", throwable.toString());
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.chencraft.ntu.service.callback;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * One subscriber's bounded queue of callbacks and the virtual thread that delivers them.
+ * <p>
+ * Items are offered on the socket's receiver thread and delivered to the subscriber on its own
+ * thread, only as far as the subscriber has signalled demand with {@link #request(long)}.
+ *
+ * @param <T> type of the delivered items
+ */
+@Slf4j
+final class CallbackSubscription<T> implements Flow.Subscription {
+    private final Flow.Subscriber<? super T> subscriber;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+    private final Runnable onDrop;
+    private final Consumer<CallbackSubscription<T>> onClose;
+
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private long demand;
+    private boolean cancelled;
+    private boolean completed;
+
+    CallbackSubscription(Flow.Subscriber<? super T> subscriber, int capacity, OverflowPolicy policy,
+                         long blockTimeoutNanos, Runnable onDrop, Consumer<CallbackSubscription<T>> onClose) {
+        this.subscriber = subscriber;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+        this.onDrop = onDrop;
+        this.onClose = onClose;
+    }
+
+    void start() {
+        Thread.ofVirtual().name("callback-subscriber").start(this::deliver);
+    }
+
+    /**
+     * Queues an item according to the overflow policy.
+     */
+    void offer(T item) {
+        lock.lock();
+        try {
+            if (cancelled || completed) {
+                return;
+            }
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                    case DROP_OLDEST -> {
+                        queue.poll();
+                        onDrop.run();
+                    }
+                    case BLOCK -> {
+                        long remaining = blockTimeoutNanos;
+                        while (queue.size() >= capacity && !cancelled && remaining > 0) {
+                            remaining = changed.awaitNanos(remaining);
+                        }
+                        if (queue.size() >= capacity || cancelled) {
+                            onDrop.run();
+                            return;
+                        }
+                    }
+                    case SAMPLE -> {
+                        onDrop.run();
+                        return;
+                    }
+                }
+            } else if (policy == OverflowPolicy.SAMPLE
+                    && ThreadLocalRandom.current().nextInt(capacity) < queue.size()) {
+                onDrop.run();
+                return;
+            }
+            queue.add(item);
+            changed.signalAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onDrop.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delivers the items already queued, then completes the subscriber.
+     */
+    void complete() {
+        lock.lock();
+        try {
+            completed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void request(long n) {
+        lock.lock();
+        try {
+            if (n <= 0) {
+                cancelled = true;
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (n <= 0) {
+            subscriber.onError(new IllegalArgumentException("Requested " + n + " items; demand must be positive"));
+        }
+    }
+
+    @Override
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            queue.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver() {
+        try {
+            subscriber.onSubscribe(this);
+            while (true) {
+                T item;
+                lock.lock();
+                try {
+                    while (!cancelled && (queue.isEmpty() || demand == 0) && !(completed && queue.isEmpty())) {
+                        changed.await();
+                    }
+                    if (cancelled) {
+                        return;
+                    }
+                    if (queue.isEmpty()) {
+                        break; // Completed and drained
+                    }
+                    item = queue.poll();
+                    if (demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                subscriber.onNext(item);
+            }
+            subscriber.onComplete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Callback subscriber failed, cancelling its subscription: {}", e.toString());
+            cancel();
+        } finally {
+            onClose.accept(this);
+        }
+    }
+}
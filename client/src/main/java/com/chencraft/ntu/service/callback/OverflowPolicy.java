@@ -0,0 +1,36 @@
+package com.chencraft.ntu.service.callback;
+
+/**
+ * What a callback subscription does when its queue is full because the subscriber falls behind,
+ * selected with the {@code callbacks.overflow-policy} property.
+ */
+public enum OverflowPolicy {
+    /**
+     * Discard the oldest queued callback to make room, so the subscriber sees the most recent updates.
+     */
+    DROP_OLDEST,
+    /**
+     * Hold up the socket's receiver thread until there is room, or until {@code callbacks.block-timeout}
+     * passes and the callback is dropped. No callback is lost to a briefly slow subscriber, but
+     * responses to pending requests wait too.
+     */
+    BLOCK,
+    /**
+     * Admit each callback with a probability equal to the free fraction of the queue, so that a
+     * subscriber that cannot keep up sees a thinned-out stream spread over time rather than losing
+     * one contiguous run of updates.
+     */
+    SAMPLE;
+
+    /**
+     * Parses a property value case-insensitively, accepting {@code -} in place of {@code _}.
+     */
+    public static OverflowPolicy fromProperty(String value) {
+        try {
+            return valueOf(value.trim().replace('-', '_').toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown callbacks.overflow-policy: " + value
+                                                       + " (expected drop-oldest, block or sample)");
+        }
+    }
+}
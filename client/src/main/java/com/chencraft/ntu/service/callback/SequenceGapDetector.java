@@ -0,0 +1,60 @@
+package com.chencraft.ntu.service.callback;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Detects lost callbacks from gaps in their sequence numbers.
+ * <p>
+ * The server numbers callbacks consecutively, so a callback whose sequence number skips ahead of
+ * the highest seen so far means the ones in between were lost (or are still in flight and will
+ * arrive out of order). Skipped numbers are counted by {@code socket.callbacks.missed}; callbacks
+ * arriving at or below the highest number seen are counted by {@code socket.callbacks.late} and
+ * do not cancel the gap they fill. The first callback only sets the starting point, since a
+ * monitor registration starts wherever the server's sequence is.
+ * <p>
+ * Called from the single receiver thread only.
+ */
+@Slf4j
+public final class SequenceGapDetector {
+    private final Counter missed;
+    private final Counter late;
+    private long highest = -1;
+
+    public SequenceGapDetector(MeterRegistry meterRegistry) {
+        this.missed = Counter.builder("socket.callbacks.missed")
+                             .description("Callbacks skipped in the server's sequence and presumed lost")
+                             .register(meterRegistry);
+        this.late = Counter.builder("socket.callbacks.late")
+                           .description("Callbacks arriving after one with a higher sequence number")
+                           .register(meterRegistry);
+    }
+
+    /**
+     * Records a callback's sequence number.
+     *
+     * @return the number of callbacks skipped before this one
+     */
+    public long observe(long sequence) {
+        if (highest < 0) {
+            highest = sequence;
+            return 0;
+        }
+        if (sequence <= highest) {
+            late.increment();
+            return 0;
+        }
+        long gap = sequence - highest - 1;
+        if (gap > 0) {
+            missed.increment(gap);
+            log.warn("Missed {} callback(s) between #{} and #{}", gap, highest, sequence);
+        }
+        highest = sequence;
+        return gap;
+    }
+
+    public long missed() {
+        return (long) missed.count();
+    }
+}
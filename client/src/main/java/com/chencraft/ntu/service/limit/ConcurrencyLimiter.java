@@ -0,0 +1,383 @@
+package com.chencraft.ntu.service.limit;
+
+import com.chencraft.ntu.exception.BackpressureException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of requests {@code SocketService} has outstanding, adapting the limit to the
+ * round-trip times and timeouts observed, in the manner of TCP congestion control (see
+ * {@link LimitAlgorithm}). It is off ({@code socket.limit.algorithm=none}) unless configured.
+ * <p>
+ * A request that finds the limit reached waits in a FIFO queue of up to {@code socket.limit.queue-size}
+ * requests for a slot to free up. It fails with a {@link BackpressureException} if the queue is full,
+ * or once it has waited {@code socket.limit.queue-timeout} milliseconds; either way nothing was sent.
+ * <p>
+ * Metrics:
+ * - {@code socket.limit}: the current limit
+ * - {@code socket.limit.in-flight}: requests outstanding
+ * - {@code socket.limit.queue}: requests waiting for a slot
+ * - {@code socket.limit.rejected{reason=queue-full|queue-timeout}}: requests refused
+ * <p>
+ * Taking and freeing a slot and updating the limit are lock-free; only the queue is guarded by a
+ * lock, and it is only taken while requests are queued. With {@link LimitAlgorithm#NONE} a request
+ * costs one atomic increment and decrement.
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimiter {
+    /**
+     * Factor by which a timeout shrinks the limit.
+     */
+    static final double BACKOFF_RATIO = 0.9;
+    /**
+     * Weight of each new sample in the long-term average RTT of {@link LimitAlgorithm#GRADIENT}.
+     */
+    private static final double LONG_RTT_WEIGHT = 0.05;
+    /**
+     * How much longer than the long-term average an RTT may be before {@link LimitAlgorithm#GRADIENT}
+     * takes it as a sign of queueing.
+     */
+    private static final double RTT_TOLERANCE = 1.5;
+    /**
+     * Weight of each new target in the limit of {@link LimitAlgorithm#GRADIENT}, to smooth out noise.
+     */
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    private final LimitAlgorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long queueTimeoutNanos;
+    private final Counter rejectedFull;
+    private final Counter rejectedTimeout;
+    private final ScheduledThreadPoolExecutor expirer;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Doubles, as their raw long bits
+    private final AtomicLong limit;
+    private final AtomicLong longRttNanos = new AtomicLong();
+    private final AtomicLong smoothedRttNanos = new AtomicLong();
+    private final AtomicLong lastDecreaseNanos = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final ArrayDeque<Waiter<?>> queue = new ArrayDeque<>();
+    // Written under lock, so that slots can be taken and freed without it while nobody is queued
+    private volatile int queueLength;
+
+    /**
+     * @param initialLimit limit before any round trip has been observed
+     * @param queueTimeout longest time (ms) a request waits for a slot
+     */
+    @Autowired
+    public ConcurrencyLimiter(@Value("${socket.limit.algorithm:none}") String algorithm,
+                              @Value("${socket.limit.initial:20}") int initialLimit,
+                              @Value("${socket.limit.min:4}") int minLimit,
+                              @Value("${socket.limit.max:500}") int maxLimit,
+                              @Value("${socket.limit.queue-size:1000}") int queueSize,
+                              @Value("${socket.limit.queue-timeout:5000}") long queueTimeout,
+                              MeterRegistry meterRegistry) {
+        if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit
+                || queueSize < 0 || queueTimeout < 0) {
+            throw new IllegalArgumentException("Require 0 < socket.limit.min <= socket.limit.initial <= socket.limit.max,"
+                                                       + " and non-negative socket.limit.queue-size and queue-timeout");
+        }
+        this.algorithm = LimitAlgorithm.fromProperty(algorithm);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueSize = queueSize;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+        this.limit = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+        Gauge.builder("socket.limit", this, ConcurrencyLimiter::limit)
+             .description("Requests allowed to be outstanding at once")
+             .register(meterRegistry);
+        Gauge.builder("socket.limit.in-flight", this, ConcurrencyLimiter::inFlight)
+             .register(meterRegistry);
+        Gauge.builder("socket.limit.queue", this, ConcurrencyLimiter::queued)
+             .register(meterRegistry);
+        this.rejectedFull = Counter.builder("socket.limit.rejected")
+                                   .tag("reason", "queue-full")
+                                   .register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("socket.limit.rejected")
+                                      .tag("reason", "queue-timeout")
+                                      .register(meterRegistry);
+        if (this.algorithm == LimitAlgorithm.NONE) {
+            this.expirer = null;
+        } else {
+            this.expirer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "concurrency-limiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Most waiters are admitted long before they would expire
+            this.expirer.setRemoveOnCancelPolicy(true);
+            log.info("Limiting outstanding requests with {}, starting at {} within [{}, {}]",
+                     this.algorithm, initialLimit, minLimit, maxLimit);
+        }
+    }
+
+    /**
+     * Creates a limiter that never holds a request back.
+     */
+    public static ConcurrencyLimiter unlimited(MeterRegistry meterRegistry) {
+        return new ConcurrencyLimiter(LimitAlgorithm.NONE.name(), 1, 1, 1, 0, 0, meterRegistry);
+    }
+
+    /**
+     * Takes a slot if one is free and nobody is queued for it.
+     *
+     * @return false if the caller must {@linkplain #enqueue(Supplier) queue} instead
+     */
+    public boolean tryAcquire() {
+        if (algorithm == LimitAlgorithm.NONE) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        if (queueLength > 0) {
+            return false;
+        }
+        return acquireBelowLimit();
+    }
+
+    /**
+     * Queues a request for the next free slot.
+     *
+     * @param send sends the request once it has a slot, returning its future
+     * @return the request's future, failed with a {@link BackpressureException} if the request is refused
+     */
+    public <T> CompletableFuture<T> enqueue(Supplier<CompletableFuture<T>> send) {
+        Waiter<T> waiter = new Waiter<>(send);
+        lock.lock();
+        try {
+            if (queue.size() >= queueSize) {
+                rejectedFull.increment();
+                waiter.result.completeExceptionally(new BackpressureException(
+                        "Too many requests outstanding (" + inFlight.get() + ") and queued (" + queue.size() + ")"));
+                return waiter.result;
+            }
+            queue.add(waiter);
+            queueLength = queue.size();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            waiter.expiry = expirer.schedule(() -> expire(waiter), queueTimeoutNanos, TimeUnit.NANOSECONDS);
+            if (waiter.admitted) {
+                // Admitted before its expiry was set, so admitQueued() could not cancel it
+                waiter.expiry.cancel(false);
+            }
+        } catch (RejectedExecutionException e) {
+            expire(waiter);
+        }
+        admitQueued();
+        return waiter.result;
+    }
+
+    /**
+     * Frees the slot of a request that has settled.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        if (queueLength > 0) {
+            admitQueued();
+        }
+    }
+
+    /**
+     * Records the round trip of a request answered on its first transmission.
+     */
+    public void onResponse(long rttNanos) {
+        if (algorithm == LimitAlgorithm.NONE) {
+            return;
+        }
+        // Concurrent samples may overwrite each other's update of the averages, which loses no more
+        // than a sample's worth of smoothing
+        update(smoothedRttNanos, smoothed -> smoothed == 0 ? rttNanos : 0.875 * smoothed + 0.125 * rttNanos);
+        if (algorithm == LimitAlgorithm.AIMD) {
+            // Only grow a limit that is actually being used
+            int outstanding = inFlight.get();
+            update(limit, current -> outstanding * 2 >= current ? Math.min(maxLimit, current + 1 / current) : current);
+        } else {
+            double longRtt = update(longRttNanos, average -> {
+                double next = average == 0 ? rttNanos : (1 - LONG_RTT_WEIGHT) * average + LONG_RTT_WEIGHT * rttNanos;
+                // A baseline more than twice the sample is stale, e.g. after a congested period; let it catch up faster
+                return next > 2 * rttNanos ? 0.9 * next + 0.1 * rttNanos : next;
+            });
+            double gradient = Math.clamp(RTT_TOLERANCE * longRtt / rttNanos, 0.5, 1.0);
+            update(limit, current -> {
+                double target = current * gradient + Math.sqrt(current);
+                return Math.clamp((1 - LIMIT_SMOOTHING) * current + LIMIT_SMOOTHING * target, minLimit, maxLimit);
+            });
+        }
+        if (queueLength > 0) {
+            admitQueued();
+        }
+    }
+
+    /**
+     * Records that a request went unanswered until its retransmission timer fired. The limit shrinks
+     * at most once per smoothed round trip, since one burst of loss times out many requests at once.
+     */
+    public void onTimeout() {
+        if (algorithm == LimitAlgorithm.NONE) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastDecreaseNanos.get();
+        if (last != 0 && now - last < Double.longBitsToDouble(smoothedRttNanos.get())) {
+            return;
+        }
+        // Of the timeouts racing here, only the one that moves the clock shrinks the limit
+        if (lastDecreaseNanos.compareAndSet(last, now)) {
+            update(limit, current -> Math.max(minLimit, current * BACKOFF_RATIO));
+        }
+    }
+
+    public int limit() {
+        return algorithm == LimitAlgorithm.NONE ? Integer.MAX_VALUE : (int) Double.longBitsToDouble(limit.get());
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queued() {
+        return queueLength;
+    }
+
+    /**
+     * Stops expiring queued requests and fails those still waiting.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (expirer != null) {
+            expirer.shutdownNow();
+        }
+        ArrayDeque<Waiter<?>> waiting;
+        lock.lock();
+        try {
+            waiting = new ArrayDeque<>(queue);
+            queue.clear();
+            queueLength = 0;
+        } finally {
+            lock.unlock();
+        }
+        for (Waiter<?> waiter : waiting) {
+            waiter.result.completeExceptionally(new BackpressureException("Shut down while waiting for a request slot"));
+        }
+    }
+
+    /**
+     * Sends queued requests while there are free slots. Requests are sent outside the lock, since
+     * sending one may settle another and release its slot.
+     */
+    private void admitQueued() {
+        while (true) {
+            Waiter<?> waiter;
+            lock.lock();
+            try {
+                if (queue.isEmpty() || !acquireBelowLimit()) {
+                    return;
+                }
+                waiter = queue.poll();
+                queueLength = queue.size();
+            } finally {
+                lock.unlock();
+            }
+            waiter.admitted = true;
+            ScheduledFuture<?> expiry = waiter.expiry;
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            waiter.admit();
+        }
+    }
+
+    /**
+     * Takes a slot if fewer than the limit are taken. Slots freed concurrently are picked up by the
+     * caller of {@link #release()}, which checks the queue after freeing its slot.
+     */
+    private boolean acquireBelowLimit() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Atomically applies {@code function} to a double held as its raw long bits.
+     *
+     * @return the new value
+     */
+    private static double update(AtomicLong bits, DoubleUnaryOperator function) {
+        return Double.longBitsToDouble(bits.updateAndGet(
+                current -> Double.doubleToRawLongBits(function.applyAsDouble(Double.longBitsToDouble(current)))));
+    }
+
+    private void expire(Waiter<?> waiter) {
+        lock.lock();
+        try {
+            if (!queue.remove(waiter)) {
+                return; // Admitted in the meantime
+            }
+            queueLength = queue.size();
+        } finally {
+            lock.unlock();
+        }
+        rejectedTimeout.increment();
+        waiter.result.completeExceptionally(new BackpressureException(
+                "No request slot became free within " + TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos) + " ms"));
+    }
+
+    /**
+     * A request waiting for a slot, and the future handed to its caller in the meantime.
+     */
+    private static final class Waiter<T> {
+        private final Supplier<CompletableFuture<T>> send;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile ScheduledFuture<?> expiry;
+        private volatile boolean admitted;
+
+        private Waiter(Supplier<CompletableFuture<T>> send) {
+            this.send = send;
+        }
+
+        private void admit() {
+            try {
+                send.get().whenComplete((value, failure) -> {
+                    if (failure != null) {
+                        result.completeExceptionally(failure);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.chencraft.ntu.service.limit;
+
+/**
+ * How a {@link ConcurrencyLimiter} adjusts its limit, selected with the {@code socket.limit.algorithm}
+ * property.
+ */
+public enum LimitAlgorithm {
+    /**
+     * No limit: every request is sent at once.
+     */
+    NONE,
+    /**
+     * Additive increase, multiplicative decrease, as TCP's congestion window: the limit grows by one
+     * per round trip's worth of responses while it is being used, and shrinks by
+     * {@link ConcurrencyLimiter#BACKOFF_RATIO} on a timeout, at most once per round trip.
+     */
+    AIMD,
+    /**
+     * Tracks the ratio of the long-term average RTT to the latest one, and shrinks the limit as
+     * soon as round trips lengthen, i.e. as requests start to queue at the server, before any are
+     * lost. Timeouts shrink it as under {@code aimd}.
+     */
+    GRADIENT;
+
+    /**
+     * Parses a property value case-insensitively.
+     */
+    public static LimitAlgorithm fromProperty(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown socket.limit.algorithm: " + value
+                                                       + " (expected none, aimd or gradient)");
+        }
+    }
+}
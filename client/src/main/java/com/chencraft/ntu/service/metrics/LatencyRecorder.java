@@ -0,0 +1,74 @@
+package com.chencraft.ntu.service.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency distribution of one kind of request, backed by an HdrHistogram {@link Recorder}.
+ * <p>
+ * {@link #record(long)} is wait-free and allocation-free: the recorder writes into a pre-sized
+ * histogram and the count and total are {@link LongAdder}s. Readers rotate the recorder to obtain
+ * an interval histogram at most once per second; percentiles describe the latest interval, while
+ * {@link #cumulative()} covers everything recorded so far. Values are tracked in microseconds
+ * with three significant digits and clamped to one minute.
+ */
+public final class LatencyRecorder {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final long SNAPSHOT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Recorder recorder = new Recorder(1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    // Reader side, guarded by this
+    private final Histogram cumulative = new Histogram(1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private Histogram interval;
+    private long snapshotAtNanos;
+
+    public void record(long nanos) {
+        long micros = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 1), HIGHEST_TRACKABLE_MICROS);
+        recorder.recordValue(micros);
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Returns the given percentile of the latest interval in seconds, or 0 if nothing was recorded in it.
+     */
+    public synchronized double percentileSeconds(double percentile) {
+        return snapshot().getValueAtPercentile(percentile) / 1e6;
+    }
+
+    /**
+     * Returns a copy of everything recorded so far, in microseconds.
+     */
+    public synchronized Histogram cumulative() {
+        rotate();
+        return cumulative.copy();
+    }
+
+    private Histogram snapshot() {
+        if (interval == null || System.nanoTime() - snapshotAtNanos >= SNAPSHOT_INTERVAL_NANOS) {
+            rotate();
+        }
+        return interval;
+    }
+
+    private void rotate() {
+        interval = recorder.getIntervalHistogram(interval);
+        cumulative.add(interval);
+        snapshotAtNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,153 @@
+package com.chencraft.ntu.service.metrics;
+
+import com.chencraft.ntu.model.OpCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-{@link OpCode} request instrumentation of {@code SocketService}, published through Micrometer.
+ * <p>
+ * All recording methods index pre-registered meters by the operation code's ordinal, so the hot
+ * path neither allocates nor looks anything up, and never takes a lock.
+ * <p>
+ * Metrics, tagged with {@code op}:
+ * - {@code socket.request.latency{phase}}: count and total time of requests; {@code phase=first_attempt}
+ * is the round trip of requests answered without retransmission, {@code phase=end_to_end} the time
+ * from sending to completion including retries
+ * - {@code socket.request.latency.percentile{phase,quantile}}: p50, p90, p99 and p99.9 of the latest interval
+ * - {@code socket.requests.retransmitted}: retransmissions
+ * - {@code socket.requests.timeouts}: requests given up after their retries or deadline
+ * - {@code socket.requests.hedged}: duplicates sent because a response was slow, and
+ * {@code socket.requests.hedge-wins}: how many of those answered first
+ * - {@code socket.requests.hedges-denied}: hedges not sent because the hedge budget was spent
+ * - {@code socket.responses.errors}: {@code MsgError} responses
+ * - {@code socket.responses.decode-errors}: responses the decoder could not parse
+ * <p>
+ * And, without {@code op} since the request is no longer known:
+ * - {@code socket.responses.discarded{reason=duplicate|unsolicited}}: responses matching no pending request
+ */
+public final class RequestMetrics {
+    private static final OpCode[] OP_CODES = OpCode.values();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * Which part of a request's life a latency covers.
+     */
+    public enum Phase {
+        FIRST_ATTEMPT,
+        END_TO_END;
+
+        private String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final LatencyRecorder[][] latency = new LatencyRecorder[OP_CODES.length][Phase.values().length];
+    private final Counter[] retransmissions = new Counter[OP_CODES.length];
+    private final Counter[] timeouts = new Counter[OP_CODES.length];
+    private final Counter[] hedges = new Counter[OP_CODES.length];
+    private final Counter[] hedgeWins = new Counter[OP_CODES.length];
+    private final Counter[] hedgesDenied = new Counter[OP_CODES.length];
+    private final Counter[] errorResponses = new Counter[OP_CODES.length];
+    private final Counter[] decodeErrors = new Counter[OP_CODES.length];
+    private final Counter duplicateResponses;
+    private final Counter unsolicitedResponses;
+
+    public RequestMetrics(MeterRegistry meterRegistry) {
+        for (OpCode opCode : OP_CODES) {
+            String op = opCode.name();
+            int index = opCode.ordinal();
+            for (Phase phase : Phase.values()) {
+                LatencyRecorder recorder = new LatencyRecorder();
+                latency[index][phase.ordinal()] = recorder;
+                FunctionTimer.builder("socket.request.latency", recorder, LatencyRecorder::count,
+                                      LatencyRecorder::totalNanos, TimeUnit.NANOSECONDS)
+                             .tag("op", op)
+                             .tag("phase", phase.tag())
+                             .register(meterRegistry);
+                for (double quantile : QUANTILES) {
+                    Gauge.builder("socket.request.latency.percentile", recorder,
+                                  r -> r.percentileSeconds(quantile * 100))
+                         .tag("op", op)
+                         .tag("phase", phase.tag())
+                         .tag("quantile", Double.toString(quantile))
+                         .baseUnit("seconds")
+                         .register(meterRegistry);
+                }
+            }
+            retransmissions[index] = counter(meterRegistry, "socket.requests.retransmitted", op);
+            timeouts[index] = counter(meterRegistry, "socket.requests.timeouts", op);
+            hedges[index] = counter(meterRegistry, "socket.requests.hedged", op);
+            hedgeWins[index] = counter(meterRegistry, "socket.requests.hedge-wins", op);
+            hedgesDenied[index] = counter(meterRegistry, "socket.requests.hedges-denied", op);
+            errorResponses[index] = counter(meterRegistry, "socket.responses.errors", op);
+            decodeErrors[index] = counter(meterRegistry, "socket.responses.decode-errors", op);
+        }
+        this.duplicateResponses = Counter.builder("socket.responses.discarded")
+                                         .tag("reason", "duplicate")
+                                         .register(meterRegistry);
+        this.unsolicitedResponses = Counter.builder("socket.responses.discarded")
+                                           .tag("reason", "unsolicited")
+                                           .register(meterRegistry);
+    }
+
+    public void recordFirstAttempt(OpCode opCode, long nanos) {
+        latency[opCode.ordinal()][Phase.FIRST_ATTEMPT.ordinal()].record(nanos);
+    }
+
+    public void recordEndToEnd(OpCode opCode, long nanos) {
+        latency[opCode.ordinal()][Phase.END_TO_END.ordinal()].record(nanos);
+    }
+
+    public void retransmission(OpCode opCode) {
+        retransmissions[opCode.ordinal()].increment();
+    }
+
+    public void timeout(OpCode opCode) {
+        timeouts[opCode.ordinal()].increment();
+    }
+
+    public void hedge(OpCode opCode) {
+        hedges[opCode.ordinal()].increment();
+    }
+
+    public void hedgeWon(OpCode opCode) {
+        hedgeWins[opCode.ordinal()].increment();
+    }
+
+    public void hedgeDenied(OpCode opCode) {
+        hedgesDenied[opCode.ordinal()].increment();
+    }
+
+    public void errorResponse(OpCode opCode) {
+        errorResponses[opCode.ordinal()].increment();
+    }
+
+    public void decodeError(OpCode opCode) {
+        decodeErrors[opCode.ordinal()].increment();
+    }
+
+    public void duplicateResponse() {
+        duplicateResponses.increment();
+    }
+
+    public void unsolicitedResponse() {
+        unsolicitedResponses.increment();
+    }
+
+    /**
+     * Returns the latency recorder of an operation and phase, e.g. to read its histogram directly.
+     */
+    public LatencyRecorder latency(OpCode opCode, Phase phase) {
+        return latency[opCode.ordinal()][phase.ordinal()];
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String op) {
+        return Counter.builder(name).tag("op", op).register(meterRegistry);
+    }
+}
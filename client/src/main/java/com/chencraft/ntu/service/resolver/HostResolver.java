@@ -0,0 +1,17 @@
+package com.chencraft.ntu.service.resolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolves a host name to an address. Abstracted so that resolution can be stubbed in tests.
+ */
+@FunctionalInterface
+public interface HostResolver {
+    /**
+     * Resolver backed by the system's name service.
+     */
+    HostResolver SYSTEM = InetAddress::getByName;
+
+    InetAddress resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,92 @@
+package com.chencraft.ntu.service.resolver;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * {@link HostResolver} that consults an {@code /etc/hosts}-style override file before falling back
+ * to a delegate resolver (the system name service by default).
+ * <p>
+ * The file is configured with {@code socket.server.hosts-file} and read once at startup. Each line
+ * holds an IP address followed by one or more host names; everything after {@code #} is ignored.
+ */
+@Slf4j
+@Component
+public class HostsFileResolver implements HostResolver {
+    private static final Pattern LITERAL = Pattern.compile("[0-9.]+|[0-9a-fA-F:.%]*:[0-9a-fA-F:.%]*");
+
+    private final Map<String, InetAddress> overrides;
+    private final HostResolver delegate;
+
+    @Autowired
+    public HostsFileResolver(@Value("${socket.server.hosts-file:}") String hostsFile) {
+        this(hostsFile.isBlank() ? List.of() : readLines(Path.of(hostsFile)), SYSTEM);
+        if (!hostsFile.isBlank()) {
+            log.info("Loaded {} host override(s) from {}", overrides.size(), hostsFile);
+        }
+    }
+
+    public HostsFileResolver(List<String> lines, HostResolver delegate) {
+        this.overrides = parse(lines);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public InetAddress resolve(String host) throws UnknownHostException {
+        InetAddress override = overrides.get(host.toLowerCase(Locale.ROOT));
+        return override != null ? override : delegate.resolve(host);
+    }
+
+    private static List<String> readLines(Path path) {
+        try {
+            return Files.readAllLines(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read hosts file: " + path, e);
+        }
+    }
+
+    private static Map<String, InetAddress> parse(List<String> lines) {
+        Map<String, InetAddress> overrides = new HashMap<>();
+        for (String line : lines) {
+            int comment = line.indexOf('#');
+            String[] parts = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+            if (parts.length < 2) {
+                continue;
+            }
+            InetAddress address;
+            try {
+                if (!LITERAL.matcher(parts[0]).matches()) {
+                    throw new UnknownHostException(parts[0]);
+                }
+                // Literal addresses are parsed without any name service lookup
+                address = InetAddress.getByName(parts[0]);
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Invalid address in hosts file: " + parts[0], e);
+            }
+            for (int i = 1; i < parts.length; i++) {
+                InetAddress named;
+                try {
+                    named = InetAddress.getByAddress(parts[i], address.getAddress());
+                } catch (UnknownHostException e) {
+                    throw new IllegalStateException(e);
+                }
+                overrides.putIfAbsent(parts[i].toLowerCase(Locale.ROOT), named);
+            }
+        }
+        return Map.copyOf(overrides);
+    }
+}
@@ -0,0 +1,122 @@
+package com.chencraft.ntu.service.resolver;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the server's {@link InetSocketAddress} resolved off the request path.
+ * <p>
+ * The host is resolved once on construction and then refreshed in the background every
+ * {@code ttlMillis}. Senders read the cached address with {@link #current()}, a plain volatile
+ * read. When a refresh fails the last known good address stays in use; only if the host has never
+ * been resolved does {@link #current()} return {@code null}.
+ * <p>
+ * Metrics:
+ * - {@code socket.server.resolve}: resolution latency, tagged {@code outcome=success|failure}
+ * - {@code socket.server.resolve.age}: seconds since the address was last resolved successfully
+ */
+@Slf4j
+public class ServerAddressResolver implements AutoCloseable {
+    private final String host;
+    private final int port;
+    private final HostResolver resolver;
+    private final Timer successTimer;
+    private final Timer failureTimer;
+    private final ScheduledExecutorService refresher;
+
+    private volatile InetSocketAddress current;
+    private volatile long resolvedAtNanos;
+
+    /**
+     * @param ttlMillis interval between background refreshes; 0 disables refreshing
+     */
+    public ServerAddressResolver(String host, int port, HostResolver resolver, long ttlMillis,
+                                 MeterRegistry meterRegistry) {
+        this.host = host;
+        this.port = port;
+        this.resolver = resolver;
+        this.successTimer = Timer.builder("socket.server.resolve")
+                                 .tag("host", host)
+                                 .tag("outcome", "success")
+                                 .register(meterRegistry);
+        this.failureTimer = Timer.builder("socket.server.resolve")
+                                 .tag("host", host)
+                                 .tag("outcome", "failure")
+                                 .register(meterRegistry);
+        Gauge.builder("socket.server.resolve.age", this, ServerAddressResolver::ageSeconds)
+             .tag("host", host)
+             .baseUnit("seconds")
+             .register(meterRegistry);
+
+        refresh();
+
+        if (ttlMillis > 0) {
+            this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "server-address-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.refresher.scheduleWithFixedDelay(this::refresh, ttlMillis, ttlMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    /**
+     * Returns the most recently resolved server address, or {@code null} if the host has never resolved.
+     */
+    public InetSocketAddress current() {
+        return current;
+    }
+
+    /**
+     * Resolves the host now, keeping the previous address if resolution fails.
+     *
+     * @return true if the host resolved
+     */
+    public boolean refresh() {
+        long start = System.nanoTime();
+        try {
+            InetAddress address = resolver.resolve(host);
+            long end = System.nanoTime();
+            successTimer.record(end - start, TimeUnit.NANOSECONDS);
+
+            InetSocketAddress previous = current;
+            if (previous == null || !previous.getAddress().equals(address)) {
+                current = new InetSocketAddress(address, port);
+                log.info("Server {} resolved to {}", host, address.getHostAddress());
+            }
+            resolvedAtNanos = end;
+            return true;
+        } catch (UnknownHostException | RuntimeException e) {
+            failureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (current == null) {
+                log.warn("Failed to resolve server {}: {}", host, e.getMessage());
+            } else {
+                log.warn("Failed to re-resolve server {}, keeping last known address {}: {}",
+                         host, current.getAddress().getHostAddress(), e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    private double ageSeconds() {
+        return current == null ? Double.NaN : (System.nanoTime() - resolvedAtNanos) / 1e9;
+    }
+
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.chencraft.ntu.service.retry;
+
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.service.metrics.LatencyRecorder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides whether and when {@code SocketService} hedges a request: sends a duplicate if no response
+ * has arrived after the usual round trip, and takes whichever answer comes first.
+ * <p>
+ * Only the operations listed in {@code socket.hedging.op-codes} are hedged, and only idempotent
+ * ones may be listed, since a hedge carries a new request ID that the server cannot recognise as a
+ * duplicate. A request is hedged once it has waited for the {@code socket.hedging.percentile}
+ * first-attempt round trip of its operation, as measured over the latest second; until a round
+ * trip has been measured nothing is hedged.
+ * <p>
+ * Hedges are paid for from a budget: each eligible request adds {@code socket.hedging.budget}
+ * tokens, up to {@link #MAX_TOKENS}, and each hedge spends one, so hedges add at most that fraction
+ * of extra requests over time.
+ */
+@Slf4j
+@Component
+public class HedgePolicy {
+    /**
+     * Largest burst of hedges the budget allows, e.g. after a quiet period.
+     */
+    static final int MAX_TOKENS = 10;
+    private static final long MILLI_TOKENS = 1000;
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final OpCode[] OP_CODES = OpCode.values();
+
+    private final Set<OpCode> opCodes;
+    private final double percentile;
+    private final long depositMilliTokens;
+    private final AtomicLong milliTokens = new AtomicLong();
+    // Per operation: cached hedge delay and when it was computed
+    private final AtomicLongArray delayNanos = new AtomicLongArray(OP_CODES.length);
+    private final AtomicLongArray delayComputedAt = new AtomicLongArray(OP_CODES.length);
+
+    /**
+     * @param opCodes    comma-separated idempotent operation codes to hedge, e.g. {@code OpBalance}; empty to disable
+     * @param percentile percentile of the first-attempt round trip after which a request is hedged
+     * @param budget     largest fraction of extra requests hedging may add
+     */
+    @Autowired
+    public HedgePolicy(@Value("${socket.hedging.op-codes:}") String opCodes,
+                       @Value("${socket.hedging.percentile:95}") double percentile,
+                       @Value("${socket.hedging.budget:0.05}") double budget) {
+        if (percentile <= 0 || percentile >= 100 || budget < 0 || budget > 1) {
+            throw new IllegalArgumentException("Require 0 < socket.hedging.percentile < 100 and 0 <= socket.hedging.budget <= 1");
+        }
+        this.opCodes = parse(opCodes);
+        this.percentile = percentile;
+        this.depositMilliTokens = Math.round(budget * MILLI_TOKENS);
+        if (!this.opCodes.isEmpty()) {
+            log.info("Hedging {} after the p{} round trip, within {}% extra requests", this.opCodes, percentile,
+                     budget * 100);
+        }
+    }
+
+    /**
+     * Creates a policy that never hedges.
+     */
+    public static HedgePolicy disabled() {
+        return new HedgePolicy("", 95, 0);
+    }
+
+    /**
+     * Whether requests of the operation are hedged.
+     */
+    public boolean isEnabled(OpCode opCode) {
+        return opCodes.contains(opCode);
+    }
+
+    /**
+     * Returns how long a request may go unanswered before it is hedged, and adds its share to the
+     * budget.
+     *
+     * @param firstAttempt first-attempt round trips of the request's operation
+     * @return the delay, or 0 if the request should not be hedged
+     */
+    public long onRequest(OpCode opCode, LatencyRecorder firstAttempt) {
+        if (!isEnabled(opCode)) {
+            return 0;
+        }
+        milliTokens.getAndUpdate(tokens -> Math.min(tokens + depositMilliTokens, MAX_TOKENS * MILLI_TOKENS));
+        int index = opCode.ordinal();
+        long now = System.nanoTime();
+        long computedAt = delayComputedAt.get(index);
+        if (computedAt == 0 || now - computedAt >= DELAY_REFRESH_NANOS) {
+            if (delayComputedAt.compareAndSet(index, computedAt, now)) {
+                delayNanos.set(index, (long) (firstAttempt.percentileSeconds(percentile) * 1e9));
+            }
+        }
+        return delayNanos.get(index);
+    }
+
+    /**
+     * Spends a token on a hedge.
+     *
+     * @return false if the budget is exhausted and the request must not be hedged
+     */
+    public boolean tryHedge() {
+        while (true) {
+            long tokens = milliTokens.get();
+            if (tokens < MILLI_TOKENS) {
+                return false;
+            }
+            if (milliTokens.compareAndSet(tokens, tokens - MILLI_TOKENS)) {
+                return true;
+            }
+        }
+    }
+
+    private static Set<OpCode> parse(String opCodes) {
+        Set<OpCode> result = EnumSet.noneOf(OpCode.class);
+        for (String name : opCodes.split(",")) {
+            if (name.isBlank()) {
+                continue;
+            }
+            OpCode opCode = null;
+            for (OpCode candidate : OP_CODES) {
+                if (candidate.name().toLowerCase(Locale.ROOT).equals(name.strip().toLowerCase(Locale.ROOT))) {
+                    opCode = candidate;
+                }
+            }
+            if (opCode == null || !opCode.isIdempotent()) {
+                throw new IllegalArgumentException("Invalid socket.hedging.op-codes entry: " + name
+                                                           + " (only idempotent operations can be hedged)");
+            }
+            result.add(opCode);
+        }
+        return result;
+    }
+}
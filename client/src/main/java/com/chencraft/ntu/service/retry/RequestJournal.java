@@ -0,0 +1,127 @@
+package com.chencraft.ntu.service.retry;
+
+import com.chencraft.ntu.model.OpCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Client-side journal of recently sent requests and their {@link RequestOutcome}, keyed by request ID.
+ * <p>
+ * The journal is a fixed-size, direct-mapped table: a request ID occupies slot {@code id & (capacity - 1)},
+ * and the ID, operation code and outcome are packed into a single {@code long} updated with
+ * compare-and-set. Recording and looking up outcomes is therefore lock-free and allocation-free, and
+ * the journal remembers roughly the last {@code capacity} requests; older entries are overwritten.
+ * <p>
+ * Because the outcome of a request survives the removal of its pending entry, the receiver can tell
+ * a late duplicate of an already settled request from an unsolicited datagram by looking at the
+ * header alone. A late response also upgrades an {@link RequestOutcome#UNKNOWN} outcome to
+ * {@link RequestOutcome#APPLIED} or {@link RequestOutcome#FAILED}.
+ * <p>
+ * Metrics: {@code socket.requests.outcome} counts settled requests by {@code outcome}, once each: an
+ * outcome upgraded by a late response, or recorded for a hedge, is not counted again.
+ */
+public class RequestJournal {
+    private static final RequestOutcome[] OUTCOMES = RequestOutcome.values();
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final Counter[] outcomeCounters = new Counter[OUTCOMES.length];
+
+    /**
+     * @param capacity number of requests remembered, rounded up to a power of two
+     */
+    public RequestJournal(int capacity, MeterRegistry meterRegistry) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (RequestOutcome outcome : OUTCOMES) {
+            if (outcome != RequestOutcome.IN_FLIGHT) {
+                outcomeCounters[outcome.ordinal()] = Counter.builder("socket.requests.outcome")
+                                                            .tag("outcome", outcome.name().toLowerCase())
+                                                            .register(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * Records that a request has been sent.
+     */
+    public void begin(int requestId, OpCode opCode) {
+        slots.set(requestId & mask, pack(requestId, opCode.getValue(), RequestOutcome.IN_FLIGHT));
+    }
+
+    /**
+     * Settles a request. An {@link RequestOutcome#UNKNOWN} outcome is only recorded for requests that
+     * are still in flight, while a definite outcome overrides {@code UNKNOWN}.
+     *
+     * @return the outcome previously recorded, or {@code null} if the request is no longer in the journal
+     */
+    public RequestOutcome complete(int requestId, RequestOutcome outcome) {
+        int index = requestId & mask;
+        while (true) {
+            long slot = slots.get(index);
+            if (slot == 0 || id(slot) != requestId) {
+                return null;
+            }
+            RequestOutcome previous = outcome(slot);
+            boolean settles = previous == RequestOutcome.IN_FLIGHT
+                    || (previous == RequestOutcome.UNKNOWN && outcome != RequestOutcome.UNKNOWN);
+            if (!settles) {
+                return previous;
+            }
+            if (slots.compareAndSet(index, slot, pack(requestId, opCode(slot), outcome))) {
+                if (previous == RequestOutcome.IN_FLIGHT) {
+                    outcomeCounters[outcome.ordinal()].increment();
+                }
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Settles the hedge of a request with the outcome of the request, which has already been counted
+     * under its original ID. A late response to the hedge is then recognised as a duplicate.
+     */
+    public void completeHedge(int hedgeId, RequestOutcome outcome) {
+        int index = hedgeId & mask;
+        while (true) {
+            long slot = slots.get(index);
+            if (slot == 0 || id(slot) != hedgeId || outcome(slot) != RequestOutcome.IN_FLIGHT) {
+                return;
+            }
+            if (slots.compareAndSet(index, slot, pack(hedgeId, opCode(slot), outcome))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the recorded outcome of a request, or {@code null} if it is not (or no longer) in the journal.
+     */
+    public RequestOutcome outcome(int requestId) {
+        long slot = slots.get(requestId & mask);
+        return slot != 0 && id(slot) == requestId ? outcome(slot) : null;
+    }
+
+    private static long pack(int requestId, byte opCode, RequestOutcome outcome) {
+        // Outcome is stored off by one so that an empty slot (0) never matches
+        return ((long) requestId << 32) | ((opCode & 0xFFL) << 8) | (outcome.ordinal() + 1);
+    }
+
+    private static int id(long slot) {
+        return (int) (slot >>> 32);
+    }
+
+    private static byte opCode(long slot) {
+        return (byte) (slot >>> 8);
+    }
+
+    private static RequestOutcome outcome(long slot) {
+        return OUTCOMES[(int) (slot & 0xFF) - 1];
+    }
+}
@@ -0,0 +1,24 @@
+package com.chencraft.ntu.service.retry;
+
+/**
+ * What the client knows about whether the server executed a request.
+ */
+public enum RequestOutcome {
+    /**
+     * Sent and awaiting a response.
+     */
+    IN_FLIGHT,
+    /**
+     * The server answered with a response, so the operation was applied.
+     */
+    APPLIED,
+    /**
+     * The server answered with an error, so the operation was not applied.
+     */
+    FAILED,
+    /**
+     * No response arrived before retries or the deadline ran out. The server may or may not have
+     * applied the operation; for non-idempotent operations this must be reconciled before retrying.
+     */
+    UNKNOWN
+}
@@ -0,0 +1,107 @@
+package com.chencraft.ntu.service.retry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the retransmissions {@code SocketService} makes across all requests, so that a struggling
+ * server is not buried under retries on top of the load that overwhelmed it.
+ * <p>
+ * Each request adds {@code socket.retry-budget.ratio} tokens and each retransmission spends one, so
+ * retransmissions add at most that fraction of extra requests over time. So that a quiet client can
+ * still recover from occasional loss, the budget is also topped up to allow at least
+ * {@code socket.retry-budget.min-per-second} retransmissions per second. A request whose
+ * retransmission is refused fails straight away; refusals are counted by
+ * {@code socket.retry-budget.exhausted}.
+ * <p>
+ * Deposits are made on every request, so they go into a {@link LongAdder} without locking and are
+ * only moved into the budget, under its lock, when a retransmission asks for a token.
+ */
+@Slf4j
+@Component
+public class RetryBudget {
+    private static final long MILLI_TOKENS = 1000;
+
+    private final long depositMilliTokens;
+    private final long minPerSecond;
+    private final long maxMilliTokens;
+    private final Counter exhausted;
+    private final LongAdder deposited = new LongAdder();
+
+    // Guarded by this
+    private long milliTokens;
+    private long refilledAt = System.nanoTime();
+
+    /**
+     * @param ratio        largest fraction of extra requests retransmissions may add; negative for no limit
+     * @param minPerSecond retransmissions allowed per second regardless of the ratio
+     */
+    @Autowired
+    public RetryBudget(@Value("${socket.retry-budget.ratio:0.2}") double ratio,
+                       @Value("${socket.retry-budget.min-per-second:10}") int minPerSecond,
+                       MeterRegistry meterRegistry) {
+        if (minPerSecond < 0) {
+            throw new IllegalArgumentException("Require socket.retry-budget.min-per-second >= 0");
+        }
+        this.depositMilliTokens = ratio < 0 ? -1 : Math.round(ratio * MILLI_TOKENS);
+        this.minPerSecond = minPerSecond;
+        this.maxMilliTokens = Math.max(100, 10L * minPerSecond) * MILLI_TOKENS;
+        this.exhausted = Counter.builder("socket.retry-budget.exhausted")
+                                .description("Retransmissions refused because the retry budget was spent")
+                                .register(meterRegistry);
+        if (ratio >= 0) {
+            log.info("Retransmissions limited to {}% of requests, or {} per second", ratio * 100, minPerSecond);
+        }
+    }
+
+    /**
+     * Creates a budget that never refuses a retransmission.
+     */
+    public static RetryBudget unlimited(MeterRegistry meterRegistry) {
+        return new RetryBudget(-1, 0, meterRegistry);
+    }
+
+    /**
+     * Adds a request's share to the budget.
+     */
+    public void onRequest() {
+        if (depositMilliTokens > 0) {
+            deposited.add(depositMilliTokens);
+        }
+    }
+
+    /**
+     * Spends a token on a retransmission.
+     *
+     * @return false if the budget is exhausted and the request must not be retransmitted
+     */
+    public synchronized boolean tryRetry() {
+        if (depositMilliTokens < 0) {
+            return true;
+        }
+        // Capping the deposits together gives the same balance as capping each, as only retries spend
+        milliTokens = Math.min(milliTokens + deposited.sumThenReset(), maxMilliTokens);
+        long now = System.nanoTime();
+        long elapsed = Math.min(now - refilledAt, TimeUnit.SECONDS.toNanos(10));
+        if (elapsed > 0) {
+            long floor = minPerSecond * MILLI_TOKENS * elapsed / TimeUnit.SECONDS.toNanos(1);
+            if (floor > 0) {
+                milliTokens = Math.min(milliTokens + floor, maxMilliTokens);
+                refilledAt = now;
+            }
+        }
+        if (milliTokens < MILLI_TOKENS) {
+            exhausted.increment();
+            return false;
+        }
+        milliTokens -= MILLI_TOKENS;
+        return true;
+    }
+}
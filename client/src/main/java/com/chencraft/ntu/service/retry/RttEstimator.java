@@ -0,0 +1,123 @@
+package com.chencraft.ntu.service.retry;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip time estimator and retransmission timeout (RTO) calculator for one server,
+ * following Jacobson/Karels as specified in RFC 6298.
+ * <p>
+ * Each RTT sample updates a smoothed RTT and an RTT variance:
+ * <pre>
+ *   RTTVAR = 3/4 * RTTVAR + 1/4 * |SRTT - R|
+ *   SRTT   = 7/8 * SRTT   + 1/8 * R
+ *   RTO    = SRTT + max(G, 4 * RTTVAR)
+ * </pre>
+ * where {@code G} is the timer granularity, and the RTO is clamped to {@code [minRto, maxRto]}.
+ * Until the first sample arrives the configured initial RTO is used. Callers must only feed samples
+ * from requests that were never retransmitted (Karn's algorithm), as a response to a retransmitted
+ * request cannot be attributed to a particular attempt.
+ * <p>
+ * Retransmissions back off exponentially from the current RTO, with "equal jitter" (half of the
+ * delay fixed, half uniformly random) so that clients that lost datagrams together do not retry in
+ * lockstep.
+ * <p>
+ * Metrics (milliseconds, tagged with the server): {@code socket.rtt.srtt}, {@code socket.rtt.rttvar},
+ * {@code socket.rtt.rto}.
+ */
+public class RttEstimator {
+    private final long granularityNanos;
+    private final long minRtoNanos;
+    private final long maxRtoNanos;
+
+    private volatile long srttNanos;
+    private volatile long rttvarNanos;
+    private volatile long rtoNanos;
+
+    /**
+     * @param initialRtoMillis RTO used before the first sample
+     * @param minRtoMillis     lower bound of the RTO
+     * @param maxRtoMillis     upper bound of the RTO, including backed-off values
+     * @param granularityMillis resolution of the retransmission timer
+     */
+    public RttEstimator(long initialRtoMillis, long minRtoMillis, long maxRtoMillis, long granularityMillis) {
+        if (minRtoMillis <= 0 || maxRtoMillis < minRtoMillis) {
+            throw new IllegalArgumentException("Require 0 < minRto <= maxRto");
+        }
+        this.granularityNanos = TimeUnit.MILLISECONDS.toNanos(granularityMillis);
+        this.minRtoNanos = TimeUnit.MILLISECONDS.toNanos(minRtoMillis);
+        this.maxRtoNanos = TimeUnit.MILLISECONDS.toNanos(maxRtoMillis);
+        this.rtoNanos = clamp(TimeUnit.MILLISECONDS.toNanos(initialRtoMillis));
+    }
+
+    /**
+     * Registers the SRTT, RTTVAR and RTO gauges.
+     *
+     * @param server tag value identifying the server this estimator belongs to
+     */
+    public RttEstimator bindTo(MeterRegistry meterRegistry, String server) {
+        Gauge.builder("socket.rtt.srtt", this, e -> e.srttNanos / 1e6)
+             .tag("server", server).baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("socket.rtt.rttvar", this, e -> e.rttvarNanos / 1e6)
+             .tag("server", server).baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("socket.rtt.rto", this, e -> e.rtoNanos / 1e6)
+             .tag("server", server).baseUnit("milliseconds").register(meterRegistry);
+        return this;
+    }
+
+    /**
+     * Feeds one RTT measurement from a request that was answered on its first transmission.
+     */
+    public synchronized void sample(long rttNanos) {
+        if (srttNanos == 0) {
+            srttNanos = rttNanos;
+            rttvarNanos = rttNanos / 2;
+        } else {
+            rttvarNanos += (Math.abs(srttNanos - rttNanos) - rttvarNanos) / 4;
+            srttNanos += (rttNanos - srttNanos) / 8;
+        }
+        rtoNanos = clamp(srttNanos + Math.max(granularityNanos, 4 * rttvarNanos));
+    }
+
+    /**
+     * Returns the current retransmission timeout.
+     */
+    public long rtoNanos() {
+        return rtoNanos;
+    }
+
+    /**
+     * Returns how long to wait for a response to the given attempt before retransmitting.
+     * The first attempt waits exactly one RTO; attempt {@code n > 0} waits {@code RTO * 2^n} with
+     * equal jitter, capped at the maximum RTO.
+     *
+     * @param attempt zero-based attempt number
+     */
+    public long timeoutNanos(int attempt) {
+        long rto = rtoNanos;
+        if (attempt == 0) {
+            return rto;
+        }
+        // Saturate instead of shifting bits out of the long
+        long backedOff = attempt >= Long.numberOfLeadingZeros(rto) - 1
+                ? maxRtoNanos
+                : Math.min(maxRtoNanos, rto << attempt);
+        long half = backedOff / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    public long srttNanos() {
+        return srttNanos;
+    }
+
+    public long rttvarNanos() {
+        return rttvarNanos;
+    }
+
+    private long clamp(long nanos) {
+        return Math.max(minRtoNanos, Math.min(maxRtoNanos, nanos));
+    }
+}
@@ -0,0 +1,97 @@
+package com.chencraft.ntu.service.transport;
+
+import com.chencraft.ntu.model.FragmentMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link DatagramTransport} over a blocking {@link DatagramSocket}.
+ * <p>
+ * A dedicated receiver thread stays blocked in {@link DatagramSocket#receive(DatagramPacket)} with
+ * no socket timeout; request timeouts are handled by the caller. The socket is not connected, and
+ * each datagram is addressed to the server address current at the time of sending. Datagrams
+ * longer than {@link FragmentMessage#MAX_DATAGRAM_SIZE} are dropped rather than truncated.
+ */
+@Slf4j
+public class BlockingDatagramTransport implements DatagramTransport {
+    // One byte spare, to tell an oversized datagram from one that fills the buffer exactly
+    private static final int RECEIVE_BUFFER_SIZE = FragmentMessage.MAX_DATAGRAM_SIZE + 1;
+
+    private final Supplier<InetSocketAddress> server;
+    private final DatagramSocket socket;
+
+    public BlockingDatagramTransport(Supplier<InetSocketAddress> server) throws IOException {
+        this.server = server;
+        this.socket = new DatagramSocket();
+    }
+
+    @Override
+    public void start(Consumer<ByteBuffer> receiver) {
+        Thread thread = new Thread(() -> receiveLoop(receiver), "socket-receiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void send(ByteBuffer datagram) throws IOException {
+        InetSocketAddress target = server.get();
+        if (target == null) {
+            throw new IOException("Server address is unresolved");
+        }
+        byte[] bytes;
+        int offset;
+        int length = datagram.remaining();
+        if (datagram.hasArray()) {
+            bytes = datagram.array();
+            offset = datagram.arrayOffset() + datagram.position();
+        } else {
+            bytes = new byte[length];
+            datagram.get(datagram.position(), bytes);
+            offset = 0;
+        }
+        socket.send(new DatagramPacket(bytes, offset, length, target));
+        datagram.position(datagram.limit());
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+
+    private void receiveLoop(Consumer<ByteBuffer> receiver) {
+        byte[] receiveBuffer = new byte[RECEIVE_BUFFER_SIZE];
+        DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+        ByteBuffer message = ByteBuffer.wrap(receiveBuffer);
+
+        while (!socket.isClosed()) {
+            try {
+                receivePacket.setLength(receiveBuffer.length);
+                socket.receive(receivePacket);
+                if (receivePacket.getLength() > FragmentMessage.MAX_DATAGRAM_SIZE) {
+                    log.warn("Dropping datagram longer than {} bytes", FragmentMessage.MAX_DATAGRAM_SIZE);
+                    continue;
+                }
+                message.limit(receivePacket.getLength()).position(0);
+                receiver.accept(message);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.error("Error receiving datagram: {}", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Dropping malformed datagram: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.chencraft.ntu.service.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Datagram transport between the client and the server, underneath {@code SocketService}.
+ * <p>
+ * A transport owns one local socket and one I/O thread. Every datagram it receives is handed to
+ * the receiver passed to {@link #start(Consumer)} on that thread, with the message spanning the
+ * buffer's position to its limit. The buffer is recycled as soon as the receiver returns, so the
+ * receiver must copy out whatever it keeps.
+ */
+public interface DatagramTransport extends Closeable {
+    /**
+     * Starts the I/O thread.
+     *
+     * @param receiver callback invoked for every datagram received
+     */
+    void start(Consumer<ByteBuffer> receiver) throws IOException;
+
+    /**
+     * Sends the remaining bytes of the buffer as one datagram to the server.
+     * The buffer's position is advanced past the sent bytes.
+     *
+     * @throws IOException if the datagram could not be handed to the network stack
+     */
+    void send(ByteBuffer datagram) throws IOException;
+
+    boolean isOpen();
+
+    /**
+     * Closes the socket and stops the I/O thread.
+     */
+    @Override
+    void close();
+}
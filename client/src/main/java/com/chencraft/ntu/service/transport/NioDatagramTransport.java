@@ -0,0 +1,162 @@
+package com.chencraft.ntu.service.transport;
+
+import com.chencraft.ntu.model.FragmentMessage;
+import com.chencraft.ntu.util.BufferPool;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AlreadyConnectedException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link DatagramTransport} over a non-blocking {@link DatagramChannel}.
+ * <p>
+ * The channel is connected to the server address, so the kernel filters out datagrams from other
+ * peers and no address is passed per send. It is reconnected only if the supplied server address
+ * changes, e.g. after the host re-resolves to a different IP. A single I/O thread waits on a
+ * {@link Selector} and drains every readable datagram into direct buffers taken from a
+ * {@link BufferPool}. Sends are issued directly from the calling thread; a datagram the kernel
+ * cannot accept immediately, or one sent while another thread reconnects the channel, is dropped
+ * and recovered by the caller's retransmission timer.
+ * Datagrams longer than {@link FragmentMessage#MAX_DATAGRAM_SIZE} are dropped rather than truncated.
+ */
+@Slf4j
+public class NioDatagramTransport implements DatagramTransport {
+    // One byte spare, to tell an oversized datagram from one that fills the buffer exactly
+    private static final int RECEIVE_BUFFER_SIZE = FragmentMessage.MAX_DATAGRAM_SIZE + 1;
+    private static final int POOL_CAPACITY = 16;
+
+    private final Supplier<InetSocketAddress> server;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final BufferPool bufferPool = new BufferPool(POOL_CAPACITY, RECEIVE_BUFFER_SIZE, true);
+
+    private volatile InetSocketAddress connected;
+
+    public NioDatagramTransport(Supplier<InetSocketAddress> server) throws IOException {
+        this.server = server;
+        this.channel = DatagramChannel.open();
+        try {
+            this.channel.configureBlocking(false);
+            InetSocketAddress target = server.get();
+            if (target != null) {
+                connect(target);
+            }
+            this.selector = Selector.open();
+            this.channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void start(Consumer<ByteBuffer> receiver) {
+        Thread thread = new Thread(() -> selectLoop(receiver), "socket-selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void send(ByteBuffer datagram) throws IOException {
+        InetSocketAddress target = server.get();
+        if (target == null) {
+            throw new IOException("Server address is unresolved");
+        }
+        if (target != connected) {
+            connect(target);
+        }
+        try {
+            if (channel.write(datagram) == 0) {
+                throw new IOException("Send buffer full, datagram dropped");
+            }
+        } catch (NotYetConnectedException | AlreadyConnectedException e) {
+            // Another thread is reconnecting to a new server address; the caller retransmits
+            throw new IOException("Datagram channel reconnecting, datagram dropped", e);
+        }
+    }
+
+    private synchronized void connect(InetSocketAddress target) throws IOException {
+        if (target.equals(connected)) {
+            connected = target;
+            return;
+        }
+        if (channel.isConnected()) {
+            channel.disconnect();
+        }
+        channel.connect(target);
+        connected = target;
+        log.info("Datagram channel connected to {}", target);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error closing channel: {}", e.getMessage());
+        }
+    }
+
+    private void selectLoop(Consumer<ByteBuffer> receiver) {
+        while (channel.isOpen()) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        drain(receiver);
+                    }
+                }
+            } catch (ClosedChannelException | ClosedSelectorException e) {
+                return;
+            } catch (NotYetConnectedException e) {
+                // Reconnecting to a new server address; pending datagrams are picked up on the next select
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    log.error("Error receiving datagram: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void drain(Consumer<ByteBuffer> receiver) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                if (buffer.remaining() > FragmentMessage.MAX_DATAGRAM_SIZE) {
+                    log.warn("Dropping datagram longer than {} bytes", FragmentMessage.MAX_DATAGRAM_SIZE);
+                    buffer.clear();
+                    continue;
+                }
+                try {
+                    receiver.accept(buffer);
+                } catch (RuntimeException e) {
+                    log.warn("Dropping malformed datagram: {}", e.getMessage());
+                }
+                buffer.clear();
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+}
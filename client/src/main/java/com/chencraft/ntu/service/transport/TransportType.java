@@ -0,0 +1,42 @@
+package com.chencraft.ntu.service.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.function.Supplier;
+
+/**
+ * Available {@link DatagramTransport} implementations, selected with the {@code socket.transport} property.
+ */
+public enum TransportType {
+    /**
+     * {@link java.net.DatagramSocket} with a dedicated thread blocked in {@code receive}.
+     */
+    BLOCKING,
+    /**
+     * Non-blocking {@link java.nio.channels.DatagramChannel} driven by a {@link java.nio.channels.Selector}.
+     */
+    NIO;
+
+    /**
+     * Parses a property value case-insensitively.
+     */
+    public static TransportType fromProperty(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown socket.transport: " + value + " (expected blocking or nio)");
+        }
+    }
+
+    /**
+     * Opens a transport of this type.
+     *
+     * @param server supplies the current server address, or {@code null} while it is unresolved
+     */
+    public DatagramTransport open(Supplier<InetSocketAddress> server) throws IOException {
+        return switch (this) {
+            case BLOCKING -> new BlockingDatagramTransport(server);
+            case NIO -> new NioDatagramTransport(server);
+        };
+    }
+}
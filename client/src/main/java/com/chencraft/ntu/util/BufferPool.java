@@ -0,0 +1,74 @@
+package com.chencraft.ntu.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free pool of equally sized {@link ByteBuffer}s.
+ * <p>
+ * The pool is a ring of slots claimed and refilled with compare-and-set, so acquiring and releasing
+ * a buffer neither locks nor allocates in steady state. When every slot is empty a fresh buffer is
+ * allocated, and buffers released into a full pool are left to the garbage collector, which keeps
+ * the retained memory bounded by {@code capacity * bufferSize}.
+ */
+public final class BufferPool {
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final int bufferSize;
+    private final boolean direct;
+
+    /**
+     * @param capacity   maximum number of idle buffers retained
+     * @param bufferSize size of each buffer in bytes
+     * @param direct     whether to allocate direct (off-heap) buffers
+     */
+    public BufferPool(int capacity, int bufferSize, boolean direct) {
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating one if the pool is empty.
+     */
+    public ByteBuffer acquire() {
+        int length = slots.length();
+        int start = probe(length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            ByteBuffer buffer = slots.get(index);
+            if (buffer != null && slots.compareAndSet(index, buffer, null)) {
+                return buffer.clear();
+            }
+        }
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Returns a buffer previously obtained from {@link #acquire()} to the pool.
+     * The caller must not use the buffer afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            throw new IllegalArgumentException("Buffer does not belong to this pool");
+        }
+        int length = slots.length();
+        int start = probe(length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Spreads threads over the ring so they rarely contend on the same slot.
+     */
+    private static int probe(int length) {
+        return (int) (Thread.currentThread().threadId() % length);
+    }
+}
@@ -1,6 +1,7 @@
 package com.chencraft.ntu.util;
 
 import com.chencraft.ntu.exception.OperationFailedException;
+import com.chencraft.ntu.model.HistoryPage;
 import com.chencraft.ntu.model.MessageType;
 import com.chencraft.ntu.model.OpCode;
 import com.chencraft.ntu.model.response.DoubleResponse;
@@ -8,40 +9,33 @@ import com.chencraft.ntu.model.response.GenericResponse;
 import com.chencraft.ntu.model.response.IntResponse;
 import com.chencraft.ntu.model.response.StringResponse;
 
-import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
 
 /**
  * Utility class providing static methods for converting various data types
- * into byte array representations. This class is designed to support
+ * to and from their wire representation. This class is designed to support
  * serialization processes by handling the following data types:
  * - String
  * - Integer
  * - Double
+ * - Enum
  * <p>
- * Each method throws an {@code UnsupportedOperationException} by default,
- * indicating that the conversion logic needs to be implemented.
+ * All conversions are delegated to {@link WireWriter} and {@link WireReader}.
+ * The {@code byte[]} methods are convenience wrappers; hot paths should use
+ * the {@link ByteBuffer} overloads, which decode in place without copying.
  */
 public class Converter {
-    private static final ByteOrder endian = ByteOrder.BIG_ENDIAN;
+    /**
+     * Offset of the body within a message, after type, request ID and operation code.
+     */
+    public static final int HEADER_SIZE = 6;
 
     /**
      * Converts string to a byte array; prepends length
      */
     public static byte[] toByteArray(String str) {
-        byte[] bytes = new byte[str.length() + 4];
-
-        byte[] lengBytes = toByteArray(str.length());
-        System.arraycopy(lengBytes, 0, bytes, 0, lengBytes.length);
-
-        int i = 4;
-
-        for (char c : str.toCharArray()) {
-            if (c > 127) {
-                throw new IllegalArgumentException("String contains non-ASCII characters");
-            }
-            bytes[i++] = (byte) c;
-        }
-
+        byte[] bytes = new byte[WireWriter.sizeOf(str)];
+        new WireWriter(ByteBuffer.wrap(bytes)).writeString(str);
         return bytes;
     }
 
@@ -50,18 +44,7 @@ public class Converter {
      */
     public static byte[] toByteArray(Integer i) {
         byte[] bytes = new byte[4];
-        int offset = 0;
-        if (ByteOrder.BIG_ENDIAN.equals(endian)) {
-            bytes[offset] = (byte) (i >>> 24);
-            bytes[offset + 1] = (byte) (i >>> 16);
-            bytes[offset + 2] = (byte) (i >>> 8);
-            bytes[offset + 3] = (byte) i.intValue();
-        } else {
-            bytes[offset] = (byte) i.intValue();
-            bytes[offset + 1] = (byte) (i >>> 8);
-            bytes[offset + 2] = (byte) (i >>> 16);
-            bytes[offset + 3] = (byte) (i >>> 24);
-        }
+        new WireWriter(ByteBuffer.wrap(bytes)).writeInt(i);
         return bytes;
     }
 
@@ -69,29 +52,8 @@ public class Converter {
      * Converts double to a byte array.
      */
     public static byte[] toByteArray(Double d) {
-        long bits = Double.doubleToRawLongBits(d);
         byte[] bytes = new byte[8];
-
-        if (ByteOrder.BIG_ENDIAN.equals(endian)) {
-            bytes[0] = (byte) (bits >>> 56);
-            bytes[1] = (byte) (bits >>> 48);
-            bytes[2] = (byte) (bits >>> 40);
-            bytes[3] = (byte) (bits >>> 32);
-            bytes[4] = (byte) (bits >>> 24);
-            bytes[5] = (byte) (bits >>> 16);
-            bytes[6] = (byte) (bits >>> 8);
-            bytes[7] = (byte) bits;
-        } else {
-            bytes[0] = (byte) bits;
-            bytes[1] = (byte) (bits >>> 8);
-            bytes[2] = (byte) (bits >>> 16);
-            bytes[3] = (byte) (bits >>> 24);
-            bytes[4] = (byte) (bits >>> 32);
-            bytes[5] = (byte) (bits >>> 40);
-            bytes[6] = (byte) (bits >>> 48);
-            bytes[7] = (byte) (bits >>> 56);
-        }
-
+        new WireWriter(ByteBuffer.wrap(bytes)).writeDouble(d);
         return bytes;
     }
 
@@ -100,75 +62,58 @@ public class Converter {
     }
 
     public static int byteArrayToInt(byte[] bytes, int offset) {
-        if (endian == ByteOrder.BIG_ENDIAN) {
-            return (bytes[offset] << 24) | (bytes[offset + 1] << 16) | (bytes[offset + 2] << 8) | bytes[offset + 3];
-        } else {
-            return (bytes[offset + 3] << 24) | (bytes[offset + 2] << 16) | (bytes[offset + 1] << 8) | bytes[offset];
-        }
+        return (int) WireWriter.INT.get(ByteBuffer.wrap(bytes), offset);
     }
 
-    private static double byteArrayToDouble(byte[] bytes, int offset) {
-        if (endian == ByteOrder.BIG_ENDIAN) {
-            return Double.longBitsToDouble(((long) bytes[offset] << 56) | ((long) bytes[offset + 1] << 48) | ((long) bytes[offset + 2] << 40) | ((long) bytes[offset + 3] << 32) | (bytes[offset + 4] << 24) | (bytes[offset + 5] << 16) | (bytes[offset + 6] << 8) | bytes[offset + 7]);
-        } else {
-            return Double.longBitsToDouble(((long) bytes[offset + 7] << 56) | ((long) bytes[offset + 6] << 48) | ((long) bytes[offset + 5] << 40) | ((long) bytes[offset + 4] << 32) | (bytes[offset + 3] << 24) | (bytes[offset + 2] << 16) | (bytes[offset + 1] << 8) | bytes[offset]);
-        }
-    }
-
-    private static String byteArrayToString(byte[] bytes, int offset) {
-        int length = byteArrayToInt(bytes, offset);
-        StringBuilder sb = new StringBuilder();
-        for (int i = offset + 4; i < offset + 4 + length; i++) {
-            sb.append((char) bytes[i]);
-        }
-        return sb.toString();
+    /**
+     * Reads the request ID (bytes 1-4) of the message starting at the buffer's position.
+     */
+    public static int requestId(ByteBuffer message) {
+        return (int) WireWriter.INT.get(message, message.position() + 1);
     }
 
-    private static GenericResponse unmarshalResponse(byte[] responseData, Class<?> responseType) {
-        if (responseData == null || responseData.length < 6) {
-            throw new IllegalArgumentException("Invalid response data");
-        }
-
-        // Byte 0: Message Type
-        MessageType msgType = MessageType.values()[responseData[0]];
+    /**
+     * Decodes a response into the matching {@link GenericResponse} subtype.
+     *
+     * @param responseData the message, from its position to its limit
+     * @param responseType {@code Integer.class}, {@code Double.class} or {@code String.class}
+     * @throws OperationFailedException if the message is a {@code MsgError}
+     */
+    public static GenericResponse unmarshalResponse(ByteBuffer responseData, Class<?> responseType) {
+        WireReader reader = new WireReader(responseData);
+        MessageType msgType = readMessageType(reader);
 
         // Byte 1-4: Request ID
-        int reqId = byteArrayToInt(responseData, 1);
+        int reqId = reader.readInt();
 
         // Byte 5: Operation Code
-        OpCode opCode = OpCode.fromByte(responseData[5]);
+        OpCode opCode = OpCode.fromByte(reader.readByte());
 
         // ================================ Body ================================
-        if (msgType == MessageType.MsgRequest) {
-            throw new IllegalArgumentException("Invalid response data: Message Type is MsgRequest");
+        if (msgType == MessageType.MsgError) {
+            throw new OperationFailedException(reader.readString());
         }
 
-        if (msgType == MessageType.MsgError || responseType == String.class) {
-            String msg = byteArrayToString(responseData, 6);
-            if (msgType == MessageType.MsgError) {
-                throw new OperationFailedException(msg);
-            }
+        if (responseType == String.class) {
             return StringResponse.builder()
                                  .messageType(msgType)
                                  .requestId(reqId)
                                  .operationCode(opCode)
-                                 .value(msg)
+                                 .value(reader.readString())
                                  .build();
         } else if (responseType == Integer.class) {
-            int value = byteArrayToInt(responseData, 6);
             return IntResponse.builder()
                               .messageType(msgType)
                               .requestId(reqId)
                               .operationCode(opCode)
-                              .value(value)
+                              .value(reader.readInt())
                               .build();
         } else if (responseType == Double.class) {
-            double value = byteArrayToDouble(responseData, 6);
             return DoubleResponse.builder()
                                  .messageType(msgType)
                                  .requestId(reqId)
                                  .operationCode(opCode)
-                                 .value(value)
+                                 .value(reader.readDouble())
                                  .build();
         } else {
             throw new IllegalArgumentException("Unsupported response type: " + responseType);
@@ -176,14 +121,87 @@ public class Converter {
     }
 
     public static Integer toInt(byte[] responseData) {
-        return ((IntResponse) unmarshalResponse(responseData, Integer.class)).getValue();
+        return toInt(responseData, 0, responseData.length);
     }
 
     public static Double toDouble(byte[] responseData) {
-        return ((DoubleResponse) unmarshalResponse(responseData, Double.class)).getValue();
+        return toDouble(responseData, 0, responseData.length);
     }
 
     public static String toString(byte[] responseData) {
-        return ((StringResponse) unmarshalResponse(responseData, String.class)).getValue();
+        return toString(responseData, 0, responseData.length);
+    }
+
+    /**
+     * Decodes an int response occupying {@code length} bytes from {@code offset}, e.g. the data of
+     * a received {@link java.net.DatagramPacket}, without copying it out of the array.
+     */
+    public static Integer toInt(byte[] responseData, int offset, int length) {
+        return toInt(ByteBuffer.wrap(responseData, offset, length));
+    }
+
+    /**
+     * Decodes a double response occupying {@code length} bytes from {@code offset}.
+     */
+    public static Double toDouble(byte[] responseData, int offset, int length) {
+        return toDouble(ByteBuffer.wrap(responseData, offset, length));
+    }
+
+    /**
+     * Decodes a string response occupying {@code length} bytes from {@code offset}.
+     */
+    public static String toString(byte[] responseData, int offset, int length) {
+        return toString(ByteBuffer.wrap(responseData, offset, length));
+    }
+
+    public static Integer toInt(ByteBuffer responseData) {
+        return body(responseData).readInt();
+    }
+
+    public static Double toDouble(ByteBuffer responseData) {
+        return body(responseData).readDouble();
+    }
+
+    public static String toString(ByteBuffer responseData) {
+        return body(responseData).readString();
+    }
+
+    /**
+     * Decodes the reply to an {@code OpHistory} request.
+     *
+     * @throws OperationFailedException if the message is a {@code MsgError}
+     */
+    public static HistoryPage toHistoryPage(ByteBuffer responseData) {
+        return HistoryPage.read(body(responseData));
+    }
+
+    /**
+     * Validates the header of a response and returns a reader positioned at its body,
+     * without materialising a {@link GenericResponse}.
+     *
+     * @throws OperationFailedException if the message is a {@code MsgError}
+     */
+    private static WireReader body(ByteBuffer responseData) {
+        WireReader reader = new WireReader(responseData);
+        MessageType msgType = readMessageType(reader);
+        reader.skip(4);
+        OpCode.fromByte(reader.readByte());
+        if (msgType == MessageType.MsgError) {
+            throw new OperationFailedException(reader.readString());
+        }
+        return reader;
+    }
+
+    private static MessageType readMessageType(WireReader reader) {
+        if (reader.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid response data");
+        }
+
+        // Byte 0: Message Type
+        MessageType msgType = MessageType.fromByte(reader.readByte());
+        if (msgType == MessageType.MsgRequest) {
+            throw new IllegalArgumentException("Invalid response data: Message Type is MsgRequest");
+        }
+        return msgType;
     }
 }
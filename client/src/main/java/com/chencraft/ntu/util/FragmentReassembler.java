@@ -0,0 +1,230 @@
+package com.chencraft.ntu.util;
+
+import com.chencraft.ntu.model.FragmentMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Reassembles messages sent as {@link FragmentMessage fragments}, within a bounded amount of memory.
+ * <p>
+ * Fragments are collected per peer and message ID in a buffer the size of the whole message,
+ * allocated when the first fragment arrives. Messages larger than {@code maxMessageSize} are refused,
+ * and when the messages being reassembled would take more than {@code maxBufferedBytes} together, the
+ * oldest are discarded to make room. A message still incomplete {@code timeoutNanos} after its first
+ * fragment arrived is given up on.
+ * <p>
+ * Once no fragment of an incomplete message has arrived for {@code nackDelayNanos},
+ * {@link #poll(long, BiConsumer)} produces a NACK listing the missing fragments, up to
+ * {@code maxNacks} times per message, for the caller to send back to the peer.
+ * <p>
+ * Thread-safe; {@link #accept(Object, ByteBuffer, long)} is called from receiver threads and
+ * {@link #poll(long, BiConsumer)} from a timer.
+ *
+ * @param <P> identifies the peer a fragment came from and a NACK goes to
+ */
+public final class FragmentReassembler<P> {
+    private final int maxMessageSize;
+    private final long maxBufferedBytes;
+    private final long timeoutNanos;
+    private final long nackDelayNanos;
+    private final int maxNacks;
+
+    // Guarded by this; in order of the first fragment's arrival
+    private final LinkedHashMap<Key<P>, Partial> partials = new LinkedHashMap<>();
+    private long bufferedBytes;
+
+    private final AtomicLong reassembled = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong nacks = new AtomicLong();
+
+    /**
+     * @param maxMessageSize   largest message accepted, in bytes
+     * @param maxBufferedBytes largest total size of the messages being reassembled at once
+     * @param timeoutNanos     longest time a message may take to complete
+     * @param nackDelayNanos   time without progress after which missing fragments are asked for
+     * @param maxNacks         NACKs sent per message before waiting out its timeout
+     */
+    public FragmentReassembler(int maxMessageSize, long maxBufferedBytes, long timeoutNanos, long nackDelayNanos,
+                               int maxNacks) {
+        if (maxMessageSize <= 0 || maxBufferedBytes < maxMessageSize || timeoutNanos <= 0 || nackDelayNanos <= 0
+                || maxNacks < 0) {
+            throw new IllegalArgumentException("Require 0 < maxMessageSize <= maxBufferedBytes, positive timeouts"
+                                                       + " and maxNacks >= 0");
+        }
+        this.maxMessageSize = maxMessageSize;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.timeoutNanos = timeoutNanos;
+        this.nackDelayNanos = nackDelayNanos;
+        this.maxNacks = maxNacks;
+    }
+
+    /**
+     * Adds a fragment to its message.
+     *
+     * @param fragment a fragment spanning the buffer's position to its limit; copied, not retained
+     * @return the whole message once this fragment completes it, otherwise {@code null}
+     * @throws IllegalArgumentException if the fragment is inconsistent or its message too large
+     */
+    public synchronized ByteBuffer accept(P peer, ByteBuffer fragment, long now) {
+        int index = FragmentMessage.index(fragment);
+        int count = FragmentMessage.count(fragment);
+        int length = FragmentMessage.messageLength(fragment);
+        if (length > maxMessageSize) {
+            throw new IllegalArgumentException("Fragmented message of " + length + " bytes exceeds the limit of "
+                                                       + maxMessageSize);
+        }
+        if (length <= 0 || count != FragmentMessage.fragmentCount(length) || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid fragment " + index + " of " + count + " for a message of "
+                                                       + length + " bytes");
+        }
+        ByteBuffer payload = FragmentMessage.payload(fragment);
+        int offset = FragmentMessage.offset(fragment);
+        if (payload.remaining() != Math.min(FragmentMessage.PAYLOAD_SIZE, length - offset)) {
+            throw new IllegalArgumentException("Fragment " + index + " carries " + payload.remaining() + " bytes");
+        }
+
+        Key<P> key = new Key<>(peer, fragment.get(fragment.position()), Converter.requestId(fragment));
+        Partial partial = partials.get(key);
+        if (partial == null) {
+            makeRoom(length);
+            partial = new Partial(length, count, now);
+            partials.put(key, partial);
+            bufferedBytes += length;
+        } else if (partial.data.length != length) {
+            throw new IllegalArgumentException("Fragment " + index + " disagrees on the message length");
+        }
+        if (partial.received.get(index)) {
+            return null; // Duplicate
+        }
+        payload.get(0, partial.data, offset, payload.remaining());
+        partial.received.set(index);
+        partial.lastFragmentNanos = now;
+        if (partial.received.cardinality() < count) {
+            return null;
+        }
+        partials.remove(key);
+        bufferedBytes -= length;
+        reassembled.incrementAndGet();
+        return ByteBuffer.wrap(partial.data);
+    }
+
+    /**
+     * Gives up on messages that have timed out, and hands a NACK for each message that has stalled
+     * to {@code nackSender}, outside the lock.
+     */
+    public void poll(long now, BiConsumer<? super P, ByteBuffer> nackSender) {
+        List<P> peers = new ArrayList<>();
+        List<ByteBuffer> pending = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<Key<P>, Partial>> iterator = partials.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key<P>, Partial> entry = iterator.next();
+                Partial partial = entry.getValue();
+                if (now - partial.firstFragmentNanos >= timeoutNanos) {
+                    iterator.remove();
+                    bufferedBytes -= partial.data.length;
+                    expired.incrementAndGet();
+                } else if (partial.nacks < maxNacks && now - partial.lastFragmentNanos >= nackDelayNanos
+                        && now - partial.lastNackNanos >= nackDelayNanos) {
+                    partial.nacks++;
+                    partial.lastNackNanos = now;
+                    peers.add(entry.getKey().peer());
+                    pending.add(nack(entry.getKey(), partial));
+                }
+            }
+        }
+        for (int i = 0; i < peers.size(); i++) {
+            nacks.incrementAndGet();
+            nackSender.accept(peers.get(i), pending.get(i));
+        }
+    }
+
+    /**
+     * Number of messages being reassembled.
+     */
+    public synchronized int size() {
+        return partials.size();
+    }
+
+    public synchronized long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public long reassembled() {
+        return reassembled.get();
+    }
+
+    /**
+     * Number of messages given up on because they did not complete in time.
+     */
+    public long expired() {
+        return expired.get();
+    }
+
+    /**
+     * Number of incomplete messages discarded to make room for newer ones.
+     */
+    public long evicted() {
+        return evicted.get();
+    }
+
+    public long nacks() {
+        return nacks.get();
+    }
+
+    private void makeRoom(int length) {
+        Iterator<Partial> oldest = partials.values().iterator();
+        while (bufferedBytes + length > maxBufferedBytes && oldest.hasNext()) {
+            bufferedBytes -= oldest.next().data.length;
+            oldest.remove();
+            evicted.incrementAndGet();
+        }
+    }
+
+    private static ByteBuffer nack(Key<?> key, Partial partial) {
+        int[] missing = new int[Math.min(partial.count - partial.received.cardinality(),
+                                         FragmentMessage.MAX_NACK_INDICES)];
+        int n = 0;
+        for (int index = partial.received.nextClearBit(0); index < partial.count && n < missing.length;
+             index = partial.received.nextClearBit(index + 1)) {
+            missing[n++] = index;
+        }
+        ByteBuffer nack = ByteBuffer.allocate(Converter.HEADER_SIZE + 4 + 4 * n);
+        FragmentMessage.writeNack(new WireWriter(nack), key.type(), key.messageId(), missing, n);
+        return nack;
+    }
+
+    private record Key<P>(P peer, byte type, int messageId) {
+    }
+
+    /**
+     * A message with some of its fragments received.
+     */
+    private static final class Partial {
+        private final byte[] data;
+        private final int count;
+        private final BitSet received;
+        private final long firstFragmentNanos;
+        private long lastFragmentNanos;
+        private long lastNackNanos;
+        private int nacks;
+
+        private Partial(int length, int count, long now) {
+            this.data = new byte[length];
+            this.count = count;
+            this.received = new BitSet(count);
+            this.firstFragmentNanos = now;
+            this.lastFragmentNanos = now;
+            this.lastNackNanos = now;
+        }
+    }
+}
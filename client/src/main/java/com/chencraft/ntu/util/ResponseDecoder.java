@@ -0,0 +1,48 @@
+package com.chencraft.ntu.util;
+
+import com.chencraft.ntu.model.HistoryPage;
+import com.chencraft.ntu.model.OpCode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the value carried by a response message.
+ * <p>
+ * Decoders are invoked on the thread that received the datagram, with the message spanning the
+ * buffer's position to its limit. The buffer is only valid for the duration of the call, so
+ * implementations must copy out whatever they keep and must not retain the buffer itself.
+ *
+ * @param <T> type of the decoded value
+ */
+@FunctionalInterface
+public interface ResponseDecoder<T> {
+    ResponseDecoder<Integer> INT = Converter::toInt;
+    ResponseDecoder<Double> DOUBLE = Converter::toDouble;
+    ResponseDecoder<String> STRING = Converter::toString;
+    ResponseDecoder<HistoryPage> HISTORY = Converter::toHistoryPage;
+
+    /**
+     * Returns the decoder for the value that the server returns for an operation: the account
+     * number for {@code OpOpen}, a message for {@code OpClose} and {@code OpMonitor}, a
+     * {@link HistoryPage} for {@code OpHistory}, and a balance otherwise.
+     */
+    static ResponseDecoder<?> forOpCode(OpCode opCode) {
+        return switch (opCode) {
+            case OpOpen -> INT;
+            case OpClose, OpMonitor -> STRING;
+            case OpDeposit, OpWithdraw, OpBalance, OpTransfer -> DOUBLE;
+            case OpHistory -> HISTORY;
+            case OpBatch -> throw new IllegalArgumentException("Batches have no single response");
+            case OpFragment, OpNack -> throw new IllegalArgumentException("Fragments are reassembled before decoding");
+        };
+    }
+
+    /**
+     * Decodes a response.
+     *
+     * @param response the complete message, header included
+     * @return the decoded value
+     * @throws com.chencraft.ntu.exception.OperationFailedException if the message is a {@code MsgError}
+     */
+    T decode(ByteBuffer response);
+}
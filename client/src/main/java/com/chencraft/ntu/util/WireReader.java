@@ -0,0 +1,129 @@
+package com.chencraft.ntu.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor-based decoder for the big-endian wire protocol; the counterpart of {@link WireWriter}.
+ * <p>
+ * Values are read with absolute gets from a caller-supplied heap or direct {@link ByteBuffer},
+ * between a start offset and a limit, without touching the buffer's position or limit. Apart from
+ * decoded {@code String} values, reading allocates nothing.
+ */
+public final class WireReader {
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Creates a reader over the remaining bytes of the buffer.
+     */
+    public WireReader(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.limit());
+    }
+
+    /**
+     * Creates a reader over the bytes of the buffer between {@code offset} and {@code limit}.
+     */
+    public WireReader(ByteBuffer buffer, int offset, int limit) {
+        reset(buffer, offset, limit);
+    }
+
+    /**
+     * Re-targets this reader at the given slice of a buffer.
+     *
+     * @return this reader
+     */
+    public WireReader reset(ByteBuffer buffer, int offset, int limit) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Returns the absolute offset of the next value to be read.
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * Returns the number of bytes left before the limit.
+     */
+    public int remaining() {
+        return limit - position;
+    }
+
+    public WireReader skip(int n) {
+        require(n);
+        position += n;
+        return this;
+    }
+
+    public byte readByte() {
+        require(1);
+        return buffer.get(position++);
+    }
+
+    public int readInt() {
+        require(4);
+        int value = (int) WireWriter.INT.get(buffer, position);
+        position += 4;
+        return value;
+    }
+
+    public long readLong() {
+        require(8);
+        long value = (long) WireWriter.LONG.get(buffer, position);
+        position += 8;
+        return value;
+    }
+
+    public double readDouble() {
+        require(8);
+        double value = (double) WireWriter.DOUBLE.get(buffer, position);
+        position += 8;
+        return value;
+    }
+
+    /**
+     * Reads a length-prefixed ASCII string.
+     */
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+        require(length);
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.ISO_8859_1);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            value = new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads a one-byte ordinal and maps it onto the given enum constants.
+     *
+     * @param constants the constants of the enum, indexed by ordinal (callers should cache {@code values()})
+     */
+    public <E extends Enum<E>> E readEnum(E[] constants) {
+        int ordinal = readByte();
+        if (ordinal < 0 || ordinal >= constants.length) {
+            throw new IllegalArgumentException("Invalid ordinal: " + ordinal);
+        }
+        return constants[ordinal];
+    }
+
+    private void require(int n) {
+        if (limit - position < n) {
+            throw new IllegalArgumentException("Invalid response data: truncated at offset " + position);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.chencraft.ntu.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Cursor-based encoder for the big-endian wire protocol.
+ * <p>
+ * Values are written with absolute puts into a caller-supplied heap or direct {@link ByteBuffer},
+ * starting at an offset and advancing the writer's own cursor. The buffer's position, limit and byte
+ * order are left untouched, and no intermediate arrays are allocated. A writer can be re-targeted with
+ * {@link #reset(ByteBuffer, int)} so that hot paths can keep one instance per buffer.
+ * <p>
+ * Encoding rules:
+ * - {@code int}: 4 bytes, big-endian
+ * - {@code double}: 8 bytes, IEEE 754 big-endian
+ * - {@code String}: 4-byte length followed by one byte per (ASCII) character
+ * - {@code Enum}: 1 byte holding the ordinal
+ */
+public final class WireWriter {
+    static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    static final VarHandle DOUBLE = MethodHandles.byteBufferViewVarHandle(double[].class, ByteOrder.BIG_ENDIAN);
+
+    private ByteBuffer buffer;
+    private int position;
+
+    /**
+     * Creates a writer starting at the current position of the buffer.
+     */
+    public WireWriter(ByteBuffer buffer) {
+        this(buffer, buffer.position());
+    }
+
+    /**
+     * Creates a writer starting at the given absolute offset of the buffer.
+     */
+    public WireWriter(ByteBuffer buffer, int offset) {
+        reset(buffer, offset);
+    }
+
+    /**
+     * Re-targets this writer at the given buffer and absolute offset.
+     *
+     * @return this writer
+     */
+    public WireWriter reset(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.position = offset;
+        return this;
+    }
+
+    /**
+     * Returns the absolute offset at which the next value will be written.
+     */
+    public int position() {
+        return position;
+    }
+
+    public WireWriter writeByte(byte b) {
+        buffer.put(position, b);
+        position += 1;
+        return this;
+    }
+
+    public WireWriter writeInt(int i) {
+        INT.set(buffer, position, i);
+        position += 4;
+        return this;
+    }
+
+    public WireWriter writeLong(long l) {
+        LONG.set(buffer, position, l);
+        position += 8;
+        return this;
+    }
+
+    public WireWriter writeDouble(double d) {
+        DOUBLE.set(buffer, position, d);
+        position += 8;
+        return this;
+    }
+
+    /**
+     * Writes a length-prefixed ASCII string.
+     *
+     * @throws IllegalArgumentException if the string contains non-ASCII characters
+     */
+    public WireWriter writeString(String str) {
+        int length = str.length();
+        if (buffer.limit() - position < 4 + length) {
+            throw new IndexOutOfBoundsException("Not enough space for string of length " + length);
+        }
+        INT.set(buffer, position, length);
+        int offset = position + 4;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c > 127) {
+                throw new IllegalArgumentException("String contains non-ASCII characters");
+            }
+            buffer.put(offset + i, (byte) c);
+        }
+        position = offset + length;
+        return this;
+    }
+
+    public WireWriter writeEnum(Enum<?> e) {
+        return writeByte((byte) e.ordinal());
+    }
+
+    /**
+     * Copies the remaining bytes of {@code src} verbatim, leaving its position untouched.
+     */
+    public WireWriter writeBytes(ByteBuffer src) {
+        int length = src.remaining();
+        buffer.put(position, src, src.position(), length);
+        position += length;
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeString(String)} uses for the given string.
+     */
+    public static int sizeOf(String str) {
+        return 4 + str.length();
+    }
+}
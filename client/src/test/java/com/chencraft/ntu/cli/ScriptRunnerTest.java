@@ -0,0 +1,123 @@
+package com.chencraft.ntu.cli;
+
+import com.chencraft.ntu.exception.OperationFailedException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ScriptRunnerTest {
+    @Test
+    void testResultsAreWrittenInScriptOrder() throws IOException {
+        StringBuilder script = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            script.append("balance Alice ").append(i).append(" pw\n");
+            expected.add(i + ": " + i);
+        }
+        ScriptRunner runner = new ScriptRunner(parts -> {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            return parts[2];
+        }, 16);
+
+        StringWriter out = new StringWriter();
+        ScriptRunner.Summary summary = runner.run(reader(script.toString()), out);
+
+        Assertions.assertEquals(expected, out.toString().lines().toList());
+        Assertions.assertEquals(200, summary.commands());
+        Assertions.assertEquals(0, summary.failures());
+        Assertions.assertEquals(200, summary.latency().getTotalCount());
+    }
+
+    @Test
+    void testCommandsOnOneAccountRunInOrderAndOthersOverlap() throws IOException {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            int account = i % 4;
+            script.append(i % 10 == 9 ? "transfer Alice " + account + " pw " + (account + 1) % 4 + " SGD 1"
+                                      : "deposit Alice " + account + " pw SGD " + i).append('\n');
+        }
+        Map<Integer, AtomicInteger> running = new ConcurrentHashMap<>();
+        Map<Integer, List<Integer>> order = new ConcurrentHashMap<>();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        List<String> overlaps = new CopyOnWriteArrayList<>();
+        ScriptRunner runner = new ScriptRunner(parts -> {
+            List<Integer> accounts = ScriptRunner.accountsOf(parts);
+            for (int account : accounts) {
+                if (running.computeIfAbsent(account, a -> new AtomicInteger()).incrementAndGet() > 1) {
+                    overlaps.add(String.join(" ", parts));
+                }
+                order.computeIfAbsent(account, a -> new CopyOnWriteArrayList<>()).add(parts.length);
+            }
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            Thread.sleep(2);
+            concurrent.decrementAndGet();
+            for (int account : accounts) {
+                running.get(account).decrementAndGet();
+            }
+            return "ok";
+        }, 8);
+
+        ScriptRunner.Summary summary = runner.run(reader(script.toString()), new StringWriter());
+
+        Assertions.assertEquals(100, summary.commands());
+        Assertions.assertEquals(List.of(), overlaps, "Commands on one account overlapped");
+        Assertions.assertTrue(maxConcurrent.get() > 1, "Commands on different accounts never overlapped");
+        Assertions.assertTrue(maxConcurrent.get() <= 8, "Parallelism exceeded: " + maxConcurrent.get());
+        // Account 0 sees deposits, its own transfers (7 parts) and those from account 3, in script order
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            if (i % 4 == 0 || (i % 10 == 9 && i % 4 == 3)) {
+                expected.add(i % 10 == 9 ? 7 : 6);
+            }
+        }
+        Assertions.assertEquals(expected, order.get(0));
+    }
+
+    @Test
+    void testFailuresAreReportedInPlaceAndExitEndsTheScript() throws IOException {
+        String script = """
+                # set up
+                open Alice pw SGD 10
+
+                balance Alice 1 wrong
+                balance Alice x pw
+                exit
+                balance Alice 1 pw
+                """;
+        ScriptRunner runner = new ScriptRunner(parts -> {
+            if (parts[3].equals("wrong")) {
+                throw new OperationFailedException("Incorrect Password");
+            }
+            if (parts[2].equals("x")) {
+                throw new NumberFormatException("For input string: \"x\"");
+            }
+            return "[SUCCESS] Account opened successfully. Account Number: 1";
+        }, 4);
+
+        StringWriter out = new StringWriter();
+        ScriptRunner.Summary summary = runner.run(reader(script), out);
+
+        Assertions.assertEquals(List.of("2: [SUCCESS] Account opened successfully. Account Number: 1",
+                                        "4: [Operation Failed] Incorrect Password",
+                                        "5: [ERROR] For input string: \"x\""),
+                                out.toString().lines().toList());
+        Assertions.assertEquals(3, summary.commands());
+        Assertions.assertEquals(2, summary.failures());
+    }
+
+    private static BufferedReader reader(String script) {
+        return new BufferedReader(new StringReader(script));
+    }
+}
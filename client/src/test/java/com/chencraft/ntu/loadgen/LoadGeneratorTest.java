@@ -0,0 +1,69 @@
+package com.chencraft.ntu.loadgen;
+
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.server.BankServer;
+import com.chencraft.ntu.server.ServerOptions;
+import com.chencraft.ntu.service.BankingService;
+import com.chencraft.ntu.service.IdGenerator;
+import com.chencraft.ntu.service.SocketService;
+import com.chencraft.ntu.service.SocketSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class LoadGeneratorTest {
+    private BankServer server;
+    private SocketService socketService;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = BankServer.start(ServerOptions.builder().port(0).build());
+        meterRegistry = new SimpleMeterRegistry();
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().port(server.port()).timeoutMillis(1000)
+                                                        .maxRetries(3).build(),
+                                          meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        socketService.shutdown();
+        server.close();
+    }
+
+    @Test
+    void testClosedLoopWritesSummary(@TempDir Path dir) throws IOException {
+        Path summaryFile = dir.resolve("summary.json");
+        LoadSummary summary = loadGenerator("closed", 4, summaryFile).run();
+
+        Assertions.assertTrue(summary.completed() > 0);
+        Assertions.assertEquals(0, summary.timeouts());
+        Assertions.assertTrue(summary.histogram(OpCode.OpBalance).getTotalCount() > 0);
+        String json = Files.readString(summaryFile);
+        Assertions.assertTrue(json.contains("\"loop\": \"closed\""), json);
+        Assertions.assertTrue(json.contains("\"OpDeposit\": {\"count\": "), json);
+    }
+
+    @Test
+    void testOpenLoopIssuesTargetRate(@TempDir Path dir) {
+        LoadSummary summary = loadGenerator("open", 1, dir.resolve("summary.json")).run();
+
+        // 200 requests/s for one second, all of which the local server answers
+        Assertions.assertEquals(200, summary.completed(), 5);
+    }
+
+    private LoadGenerator loadGenerator(String loop, int concurrency, Path summaryFile) {
+        return new LoadGenerator(new BankingService(socketService), meterRegistry, loop, 200, concurrency, 1, 0, 10,
+                                 "open:1,deposit:1,withdraw:1,balance:1,transfer:1", summaryFile.toString());
+    }
+}
@@ -8,6 +8,8 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.nio.ByteBuffer;
+
 @SpringBootTest
 public class OpenAccountRequestTest {
     @Autowired
@@ -47,6 +49,35 @@ public class OpenAccountRequestTest {
         assertMarshallingSuccess(request, expected);
     }
 
+    @Test
+    public void marshallIntoBuffer() {
+        OpenAccountRequest request = new OpenAccountRequest();
+        request.setName("Jane");
+        request.setPassword("pw");
+        request.setCurrency(Currency.SGD);
+        request.setInitialBalance(-0.5);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put((byte) 0x7F); // Pre-existing content must be preserved
+        request.marshall(7, buffer);
+
+        Assertions.assertEquals(1 + request.marshalledSize(), buffer.position());
+        byte[] actual = new byte[request.marshalledSize()];
+        buffer.flip().position(1);
+        buffer.get(actual);
+        Assertions.assertArrayEquals(request.marshall(7), actual);
+    }
+
+    @Test
+    public void unsetFieldIsRejected() {
+        OpenAccountRequest request = new OpenAccountRequest();
+        request.setName("John Doe");
+        request.setCurrency(Currency.USD);
+        request.setInitialBalance(1000.0);
+
+        Assertions.assertThrows(NullPointerException.class, () -> request.marshall(0));
+    }
+
     private void assertMarshallingSuccess(OpenAccountRequest request, byte[] expectedBytes) {
         Assertions.assertNotNull(request);
         Assertions.assertNotNull(expectedBytes);
@@ -0,0 +1,209 @@
+package com.chencraft.ntu.server;
+
+import com.chencraft.ntu.exception.OperationFailedException;
+import com.chencraft.ntu.model.AccountTransaction;
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.HistoryPage;
+import com.chencraft.ntu.model.OpCode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Account state of the reference {@link BankServer}.
+ * <p>
+ * Accounts hold a single currency; deposits, withdrawals and transfers must be made in that
+ * currency. Every operation authenticates the account holder by name and password. Failures are
+ * reported as {@link OperationFailedException}s, whose message becomes the body of a
+ * {@code MsgError} reply. Not thread-safe: the server applies requests one at a time.
+ * <p>
+ * Every account keeps its history of transactions, numbered from 1. With {@code syntheticHistory}
+ * above 0, each account opened starts with that many made-up transactions after the opening one,
+ * which are generated when read rather than stored.
+ */
+final class Bank {
+    private final Map<Integer, Account> accounts = new HashMap<>();
+    private final int syntheticHistory;
+    private int nextAccountNumber = 1;
+
+    /**
+     * @param syntheticHistory made-up transactions each new account starts with, rounded down to an
+     *                         even number: deposits and withdrawals of the same amount in turn, so
+     *                         they leave the balance unchanged
+     */
+    Bank(int syntheticHistory) {
+        if (syntheticHistory < 0) {
+            throw new IllegalArgumentException("syntheticHistory must not be negative");
+        }
+        this.syntheticHistory = syntheticHistory & ~1;
+    }
+
+    int open(String name, String password, Currency currency, double initialBalance) {
+        if (initialBalance < 0) {
+            throw new OperationFailedException("Initial balance must not be negative");
+        }
+        int accountNumber = nextAccountNumber++;
+        Account account = new Account(name, password, currency, initialBalance, syntheticHistory);
+        account.record(OpCode.OpOpen, initialBalance);
+        accounts.put(accountNumber, account);
+        return accountNumber;
+    }
+
+    String close(String name, int accountNumber, String password) {
+        authenticate(name, accountNumber, password);
+        accounts.remove(accountNumber);
+        return "Account " + accountNumber + " closed";
+    }
+
+    double deposit(String name, int accountNumber, String password, Currency currency, double amount) {
+        Account account = authenticate(name, accountNumber, password);
+        checkAmount(account, currency, amount);
+        account.balance += amount;
+        account.record(OpCode.OpDeposit, amount);
+        return account.balance;
+    }
+
+    double withdraw(String name, int accountNumber, String password, Currency currency, double amount) {
+        Account account = authenticate(name, accountNumber, password);
+        checkAmount(account, currency, amount);
+        checkFunds(account, amount);
+        account.balance -= amount;
+        account.record(OpCode.OpWithdraw, -amount);
+        return account.balance;
+    }
+
+    double balance(String name, int accountNumber, String password) {
+        return authenticate(name, accountNumber, password).balance;
+    }
+
+    /**
+     * @return the balance of the source account after the transfer
+     */
+    double transfer(String name, int accountNumber, String password, int destAccountNumber, Currency currency,
+                    double amount) {
+        Account source = authenticate(name, accountNumber, password);
+        Account destination = accounts.get(destAccountNumber);
+        if (destination == null || destAccountNumber == accountNumber) {
+            throw new OperationFailedException("Invalid destination account " + destAccountNumber);
+        }
+        checkAmount(source, currency, amount);
+        if (destination.currency != currency) {
+            throw new OperationFailedException("Destination account holds " + destination.currency);
+        }
+        checkFunds(source, amount);
+        source.balance -= amount;
+        destination.balance += amount;
+        source.record(OpCode.OpTransfer, -amount);
+        destination.record(OpCode.OpTransfer, amount);
+        return source.balance;
+    }
+
+    /**
+     * Reads the transactions numbered {@code since + 1} to {@code since + limit} that exist.
+     *
+     * @param limit largest number of transactions returned; at most {@code maxLimit} are
+     */
+    HistoryPage history(String name, int accountNumber, String password, long since, int limit, int maxLimit) {
+        Account account = authenticate(name, accountNumber, password);
+        if (since < 0) {
+            throw new OperationFailedException("Since must not be negative");
+        }
+        if (limit <= 0) {
+            throw new OperationFailedException("Limit must be positive");
+        }
+        long latest = account.historySize();
+        long to = Math.min(latest, since + Math.min(limit, maxLimit));
+        List<AccountTransaction> transactions = new ArrayList<>((int) Math.max(0, to - since));
+        for (long sequence = since + 1; sequence <= to; sequence++) {
+            transactions.add(account.transaction(sequence));
+        }
+        return new HistoryPage(account.currency, latest, transactions);
+    }
+
+    Currency currency(int accountNumber) {
+        Account account = accounts.get(accountNumber);
+        return account == null ? null : account.currency;
+    }
+
+    /**
+     * Balance of an account without authentication, for reporting updates to monitoring clients.
+     */
+    double balanceOf(int accountNumber) {
+        Account account = accounts.get(accountNumber);
+        return account == null ? 0 : account.balance;
+    }
+
+    private Account authenticate(String name, int accountNumber, String password) {
+        Account account = accounts.get(accountNumber);
+        if (account == null || !account.name.equals(name)) {
+            throw new OperationFailedException("Account not found");
+        }
+        if (!account.password.equals(password)) {
+            throw new OperationFailedException("Incorrect Password");
+        }
+        return account;
+    }
+
+    private static void checkAmount(Account account, Currency currency, double amount) {
+        if (!(amount > 0)) {
+            throw new OperationFailedException("Amount must be positive");
+        }
+        if (account.currency != currency) {
+            throw new OperationFailedException("Account holds " + account.currency + ", not " + currency);
+        }
+    }
+
+    private static void checkFunds(Account account, double amount) {
+        if (account.balance < amount) {
+            throw new OperationFailedException("Insufficient funds");
+        }
+    }
+
+    private static final class Account {
+        private final String name;
+        private final String password;
+        private final Currency currency;
+        private double balance;
+        // The opening transaction, then every later one; the synthetic ones come in between
+        private final List<AccountTransaction> history = new ArrayList<>();
+        private final int synthetic;
+        private final double openingBalance;
+        private final long openedAt = System.currentTimeMillis();
+
+        private Account(String name, String password, Currency currency, double balance, int synthetic) {
+            this.name = name;
+            this.password = password;
+            this.currency = currency;
+            this.balance = balance;
+            this.synthetic = synthetic;
+            this.openingBalance = balance;
+        }
+
+        private void record(OpCode opCode, double amount) {
+            history.add(new AccountTransaction(historySize() + 1, opCode, currency, amount, balance,
+                                               System.currentTimeMillis()));
+        }
+
+        private long historySize() {
+            return (long) history.size() + (history.isEmpty() ? 0 : synthetic);
+        }
+
+        private AccountTransaction transaction(long sequence) {
+            if (sequence == 1) {
+                return history.getFirst();
+            }
+            if (sequence > synthetic + 1) {
+                return history.get((int) (sequence - synthetic - 1));
+            }
+            long k = sequence - 2;
+            double amount = k / 2 % 100 + 1;
+            return k % 2 == 0
+                    ? new AccountTransaction(sequence, OpCode.OpDeposit, currency, amount, openingBalance + amount,
+                                             openedAt)
+                    : new AccountTransaction(sequence, OpCode.OpWithdraw, currency, -amount, openingBalance,
+                                             openedAt);
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package com.chencraft.ntu.server;
+
+import com.chencraft.ntu.exception.OperationFailedException;
+import com.chencraft.ntu.model.AccountUpdateEvent;
+import com.chencraft.ntu.model.BatchMessage;
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.FieldDefn;
+import com.chencraft.ntu.model.FragmentMessage;
+import com.chencraft.ntu.model.HistoryPage;
+import com.chencraft.ntu.model.MessageType;
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.model.request.CloseAccountRequest;
+import com.chencraft.ntu.model.request.GetBalanceRequest;
+import com.chencraft.ntu.model.request.HistoryRequest;
+import com.chencraft.ntu.model.request.MonitorRequest;
+import com.chencraft.ntu.model.request.OpenAccountRequest;
+import com.chencraft.ntu.model.request.TransferRequest;
+import com.chencraft.ntu.model.request.UpdateBalanceRequest;
+import com.chencraft.ntu.util.Converter;
+import com.chencraft.ntu.util.FragmentReassembler;
+import com.chencraft.ntu.util.WireReader;
+import com.chencraft.ntu.util.WireWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reference implementation of the bank server side of the protocol, for tests, benchmarks and
+ * soak runs without the real backend.
+ * <p>
+ * Requests are parsed using the field layouts declared by the request DTOs
+ * ({@link com.chencraft.ntu.model.MySerializable#getFieldDefs()}), so the server always speaks the
+ * same wire format as the client. Replies carry the request ID and operation code of the request:
+ * an int for {@code OpOpen}, a double balance for deposits, withdrawals, balance enquiries and
+ * transfers, a string for {@code OpClose} and {@code OpMonitor}, and a {@link HistoryPage} of at most
+ * as many transactions as fit in the largest message for {@code OpHistory}. Failures are answered
+ * with a {@code MsgError} carrying the reason.
+ * <p>
+ * Clients that send {@code OpMonitor} receive a {@code MsgCallback} for every later account update
+ * until their interval expires, encoded as an {@link AccountUpdateEvent} (a transfer reports both
+ * accounts), or as a free-text description with {@link ServerOptions#isLegacyCallbacks()}.
+ * Callbacks are numbered by a server-wide sequence, so clients can detect lost ones.
+ * <p>
+ * An {@code OpBatch} request is unpacked and each item is processed as if it had arrived on its own;
+ * the replies are packed into as few {@code MsgResponse} batches as fit in a datagram
+ * (see {@link BatchMessage}).
+ * <p>
+ * Requests and replies larger than a datagram are sent as fragments (see {@link FragmentMessage}).
+ * The server reassembles fragmented requests and NACKs the fragments that stop arriving, and keeps
+ * its latest fragmented replies and callbacks to answer clients' NACKs from. NACKs themselves are
+ * exempt from injected faults.
+ * <p>
+ * Requests are handled one at a time on a single receiver thread. Retransmitted non-idempotent
+ * requests are answered from a reply cache rather than executed twice, unless
+ * {@link ServerOptions#isAtMostOnce()} is off. Latency, loss, duplication and reordering are
+ * injected as described in {@link ServerOptions}.
+ * <p>
+ * Run standalone with {@code main}, e.g. {@code --port=8866 --latency=2 --jitter=3 --loss=0.05}, or
+ * in-process with {@link #start(ServerOptions)}.
+ */
+@Slf4j
+public class BankServer implements AutoCloseable {
+    private static final int MAX_DATAGRAM_SIZE = FragmentMessage.MAX_DATAGRAM_SIZE;
+    private static final int MAX_MESSAGE_SIZE = 1 << 20;
+    private static final int FRAGMENTED_MESSAGE_CACHE_SIZE = 64;
+    private static final long NACK_DELAY_MILLIS = 20;
+    private static final int MAX_NACKS = 5;
+    private static final Currency[] CURRENCIES = Currency.values();
+    private static final Map<OpCode, List<FieldDefn>> LAYOUTS = new EnumMap<>(OpCode.class);
+
+    static {
+        LAYOUTS.put(OpCode.OpOpen, new OpenAccountRequest().getFieldDefs());
+        LAYOUTS.put(OpCode.OpClose, new CloseAccountRequest().getFieldDefs());
+        LAYOUTS.put(OpCode.OpDeposit, new UpdateBalanceRequest().getFieldDefs());
+        LAYOUTS.put(OpCode.OpWithdraw, new UpdateBalanceRequest().getFieldDefs());
+        LAYOUTS.put(OpCode.OpMonitor, new MonitorRequest().getFieldDefs());
+        LAYOUTS.put(OpCode.OpBalance, new GetBalanceRequest().getFieldDefs());
+        LAYOUTS.put(OpCode.OpTransfer, new TransferRequest().getFieldDefs());
+        LAYOUTS.put(OpCode.OpHistory, new HistoryRequest().getFieldDefs());
+    }
+
+    private final ServerOptions options;
+    private final DatagramSocket socket;
+    private final Thread receiver;
+    private final ScheduledExecutorService delayer;
+    private final SplittableRandom random;
+
+    private final Bank bank;
+    private final Map<SocketAddress, Long> monitors = new LinkedHashMap<>();
+    private final Map<ReplyKey, byte[]> replies;
+    private final ByteBuffer response = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
+    private final FragmentReassembler<SocketAddress> reassembler = new FragmentReassembler<>(
+            MAX_MESSAGE_SIZE, 8L * MAX_MESSAGE_SIZE, TimeUnit.SECONDS.toNanos(5),
+            TimeUnit.MILLISECONDS.toNanos(NACK_DELAY_MILLIS), MAX_NACKS);
+    // Latest messages sent in fragments, to resend fragments from; receiver thread only
+    private final Map<MessageKey, byte[]> fragmented = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MessageKey, byte[]> eldest) {
+            return size() > FRAGMENTED_MESSAGE_CACHE_SIZE;
+        }
+    };
+    private final WireWriter writer = new WireWriter(response);
+    private long callbackSequence;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong replayCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private BankServer(ServerOptions options) throws IOException {
+        this.options = options;
+        this.socket = new DatagramSocket(options.getPort());
+        this.random = new SplittableRandom(options.getSeed());
+        this.bank = new Bank(options.getSyntheticHistory());
+        this.replies = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ReplyKey, byte[]> eldest) {
+                return size() > options.getReplyCacheSize();
+            }
+        };
+        this.delayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bank-server-delayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.receiver = new Thread(this::receiveLoop, "bank-server");
+        this.receiver.setDaemon(true);
+    }
+
+    /**
+     * Binds the server socket and starts serving.
+     */
+    public static BankServer start(ServerOptions options) throws IOException {
+        BankServer server = new BankServer(options);
+        server.receiver.start();
+        server.delayer.scheduleAtFixedRate(server::pollFragments, NACK_DELAY_MILLIS / 2, NACK_DELAY_MILLIS / 2,
+                                           TimeUnit.MILLISECONDS);
+        log.info("Bank server listening on port {} with {}", server.port(), options);
+        return server;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BankServer server = start(ServerOptions.fromArgs(args));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.receiver.join();
+    }
+
+    public int port() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Number of requests received, including retransmissions but excluding injected losses.
+     */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Number of retransmitted non-idempotent requests answered from the reply cache.
+     */
+    public long replayCount() {
+        return replayCount.get();
+    }
+
+    /**
+     * Number of datagrams dropped in either direction by injected loss.
+     */
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+        delayer.shutdownNow();
+    }
+
+    private void receiveLoop() {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE + 1];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                if (packet.getLength() > MAX_DATAGRAM_SIZE) {
+                    log.warn("Dropping datagram longer than {} bytes", MAX_DATAGRAM_SIZE);
+                    continue;
+                }
+                if (lost()) {
+                    continue;
+                }
+                handle(ByteBuffer.wrap(buffer, 0, packet.getLength()), packet.getSocketAddress());
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.error("Error receiving datagram: {}", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Dropping malformed datagram: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void handle(ByteBuffer message, SocketAddress client) {
+        if (FragmentMessage.isFragment(message)) {
+            ByteBuffer whole = reassembler.accept(client, message, System.nanoTime());
+            if (whole != null) {
+                handle(whole, client);
+            }
+            return;
+        }
+        if (FragmentMessage.isNack(message)) {
+            resendFragments(message, client);
+            return;
+        }
+        if (message.remaining() < Converter.HEADER_SIZE
+                || MessageType.fromByte(message.get(0)) != MessageType.MsgRequest) {
+            return;
+        }
+        List<Update> updates = new ArrayList<>();
+        if (BatchMessage.isBatch(message)) {
+            List<byte[]> items = new ArrayList<>();
+            BatchMessage.forEachItem(message, item -> items.add(process(item, client, updates)));
+            sendBatch(items, client);
+        } else {
+            send(process(message, client, updates), client);
+        }
+        updates.forEach(this::publish);
+    }
+
+    /**
+     * Processes one request message, or replays its cached reply.
+     *
+     * @param updates collects descriptions of the account updates to publish once the reply is sent
+     * @return the reply datagram
+     */
+    private byte[] process(ByteBuffer message, SocketAddress client, List<Update> updates) {
+        requestCount.incrementAndGet();
+        WireReader reader = new WireReader(message).skip(1);
+        int requestId = reader.readInt();
+        OpCode opCode = OpCode.fromByte(reader.readByte());
+
+        ReplyKey key = options.isAtMostOnce() && !opCode.isIdempotent() ? new ReplyKey(client, requestId) : null;
+        if (key != null) {
+            byte[] cached = replies.get(key);
+            if (cached != null) {
+                replayCount.incrementAndGet();
+                return cached;
+            }
+        }
+
+        writer.reset(response, 0);
+        writer.writeEnum(MessageType.MsgResponse).writeInt(requestId).writeByte(opCode.getValue());
+        try {
+            if (message.get(message.position()) != MessageType.MsgRequest.ordinal() || opCode == OpCode.OpBatch
+                    || opCode == OpCode.OpFragment || opCode == OpCode.OpNack) {
+                throw new IllegalArgumentException("Batch items must be single requests");
+            }
+            execute(opCode, readFields(opCode, reader), client, updates);
+        } catch (OperationFailedException | IllegalArgumentException e) {
+            writer.reset(response, 0);
+            writer.writeEnum(MessageType.MsgError).writeInt(requestId).writeByte(opCode.getValue())
+                  .writeString(e.getMessage() == null ? "Malformed request" : e.getMessage());
+        }
+
+        byte[] reply = new byte[writer.position()];
+        response.get(0, reply);
+        if (key != null) {
+            replies.put(key, reply);
+        }
+        return reply;
+    }
+
+    /**
+     * Packs the replies to a batch request into as few {@code MsgResponse} batches as fit in a datagram.
+     */
+    private void sendBatch(List<byte[]> items, SocketAddress client) {
+        int from = 0;
+        while (from < items.size()) {
+            int to = from;
+            int size = BatchMessage.HEADER_SIZE;
+            while (to < items.size()
+                    && (to == from || size + BatchMessage.ITEM_OVERHEAD + items.get(to).length <= MAX_DATAGRAM_SIZE)) {
+                size += BatchMessage.ITEM_OVERHEAD + items.get(to++).length;
+            }
+            ByteBuffer batch = ByteBuffer.allocate(size);
+            WireWriter batchWriter = new WireWriter(batch);
+            BatchMessage.writeHeader(batchWriter, MessageType.MsgResponse, 0, to - from);
+            for (int i = from; i < to; i++) {
+                BatchMessage.writeItem(batchWriter, ByteBuffer.wrap(items.get(i)));
+            }
+            send(batch.array(), client);
+            from = to;
+        }
+    }
+
+    /**
+     * Executes a request and writes the reply body.
+     *
+     * @param updates receives the account updates to report to monitoring clients
+     */
+    private void execute(OpCode opCode, Map<FieldDefn, Object> fields, SocketAddress client, List<Update> updates) {
+        String name = (String) fields.get(FieldDefn.NAME);
+        String password = (String) fields.get(FieldDefn.PASSWORD);
+        Integer accountNumber = (Integer) fields.get(FieldDefn.ACCOUNT_NO);
+        Currency currency = (Currency) fields.get(FieldDefn.CURRENCY);
+        switch (opCode) {
+            case OpOpen -> {
+                double initialBalance = (Double) fields.get(FieldDefn.INITIAL_BALANCE);
+                int opened = bank.open(name, password, currency, initialBalance);
+                writer.writeInt(opened);
+                updates.add(new Update(opened, opCode, currency, initialBalance,
+                                       String.format("Account %d opened for %s, balance %.2f %s", opened, name,
+                                                     initialBalance, currency)));
+            }
+            case OpClose -> {
+                Currency held = bank.currency(accountNumber);
+                writer.writeString(bank.close(name, accountNumber, password));
+                updates.add(new Update(accountNumber, opCode, held, 0,
+                                       String.format("Account %d (%s, %s) closed", accountNumber, name, held)));
+            }
+            case OpDeposit, OpWithdraw -> {
+                double amount = (Double) fields.get(FieldDefn.AMOUNT);
+                double balance = opCode == OpCode.OpDeposit
+                        ? bank.deposit(name, accountNumber, password, currency, amount)
+                        : bank.withdraw(name, accountNumber, password, currency, amount);
+                writer.writeDouble(balance);
+                updates.add(new Update(accountNumber, opCode, currency, balance,
+                                       String.format("Account %d %s %.2f %s, balance %.2f %s", accountNumber,
+                                                     opCode == OpCode.OpDeposit ? "deposited" : "withdrew", amount,
+                                                     currency, balance, currency)));
+            }
+            case OpBalance -> writer.writeDouble(bank.balance(name, accountNumber, password));
+            case OpHistory -> bank.history(name, accountNumber, password, (Long) fields.get(FieldDefn.SINCE),
+                                           (Integer) fields.get(FieldDefn.LIMIT),
+                                           Math.min(options.getMaxHistoryPage(), HistoryPage.MAX_TRANSACTIONS))
+                                  .writeBody(writer);
+            case OpTransfer -> {
+                int destination = (Integer) fields.get(FieldDefn.DEST_ACCOUNT_NO);
+                double amount = (Double) fields.get(FieldDefn.AMOUNT);
+                double balance = bank.transfer(name, accountNumber, password, destination, currency, amount);
+                writer.writeDouble(balance);
+                updates.add(new Update(accountNumber, opCode, currency, balance,
+                                       String.format("Account %d transferred %.2f %s to account %d, balance %.2f %s",
+                                                     accountNumber, amount, currency, destination, balance,
+                                                     currency)));
+                updates.add(new Update(destination, opCode, currency, bank.balanceOf(destination), null));
+            }
+            case OpBatch, OpFragment, OpNack -> throw new IllegalStateException("Envelopes are unpacked before execution");
+            case OpMonitor -> {
+                int interval = (Integer) fields.get(FieldDefn.MONITOR_INTERVAL);
+                monitors.put(client, System.nanoTime() + TimeUnit.SECONDS.toNanos(interval));
+                writer.writeString("Monitoring registered for " + interval + " seconds");
+            }
+        }
+    }
+
+    private static Map<FieldDefn, Object> readFields(OpCode opCode, WireReader reader) {
+        Map<FieldDefn, Object> fields = new EnumMap<>(FieldDefn.class);
+        for (FieldDefn field : LAYOUTS.get(opCode)) {
+            Class<?> type = field.getFieldType();
+            Object value;
+            if (type == String.class) {
+                value = reader.readString();
+            } else if (type == Integer.class) {
+                value = reader.readInt();
+            } else if (type == Long.class) {
+                value = reader.readLong();
+            } else if (type == Double.class) {
+                value = reader.readDouble();
+            } else {
+                value = reader.readEnum(CURRENCIES);
+            }
+            fields.put(field, value);
+        }
+        return fields;
+    }
+
+    /**
+     * Sends an update to every client whose monitoring interval has not yet expired.
+     */
+    private void publish(Update update) {
+        if (options.isLegacyCallbacks() && update.description() == null) {
+            return; // Legacy callbacks describe a transfer once, from the source account's side
+        }
+        long now = System.nanoTime();
+        byte[] callback = null;
+        Iterator<Map.Entry<SocketAddress, Long>> iterator = monitors.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<SocketAddress, Long> monitor = iterator.next();
+            if (monitor.getValue() - now <= 0) {
+                iterator.remove();
+                continue;
+            }
+            if (callback == null) {
+                callback = encode(update, callbackSequence++);
+            }
+            send(callback, monitor.getKey());
+        }
+    }
+
+    private byte[] encode(Update update, long sequence) {
+        if (options.isLegacyCallbacks()) {
+            ByteBuffer buffer = ByteBuffer.allocate(Converter.HEADER_SIZE + WireWriter.sizeOf(update.description()));
+            new WireWriter(buffer).writeEnum(MessageType.MsgCallback)
+                                  .writeInt((int) sequence)
+                                  .writeByte(OpCode.OpMonitor.getValue())
+                                  .writeString(update.description());
+            return buffer.array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(AccountUpdateEvent.SIZE);
+        new AccountUpdateEvent(update.accountNumber(), update.opCode(), update.currency(), update.balance(),
+                               System.currentTimeMillis(), sequence).encode(new WireWriter(buffer));
+        return buffer.array();
+    }
+
+    /**
+     * Sends a message, in fragments if it does not fit in a datagram.
+     */
+    private void send(byte[] message, SocketAddress client) {
+        if (message.length <= MAX_DATAGRAM_SIZE) {
+            sendDatagram(message, client);
+            return;
+        }
+        fragmented.put(new MessageKey(client, message[0], ByteBuffer.wrap(message).getInt(1)), message);
+        for (int index = 0; index < FragmentMessage.fragmentCount(message.length); index++) {
+            sendDatagram(fragment(message, index), client);
+        }
+    }
+
+    private static byte[] fragment(byte[] message, int index) {
+        ByteBuffer fragment = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        WireWriter fragmentWriter = new WireWriter(fragment);
+        FragmentMessage.writeFragment(fragmentWriter, ByteBuffer.wrap(message), index);
+        byte[] datagram = new byte[fragmentWriter.position()];
+        fragment.get(0, datagram);
+        return datagram;
+    }
+
+    /**
+     * Answers a client's NACK for fragments of a reply or callback, if it is still cached.
+     */
+    private void resendFragments(ByteBuffer nack, SocketAddress client) {
+        byte[] message = fragmented.get(new MessageKey(client, nack.get(nack.position()), Converter.requestId(nack)));
+        if (message == null) {
+            return;
+        }
+        int count = FragmentMessage.fragmentCount(message.length);
+        FragmentMessage.forEachMissing(nack, index -> {
+            if (index >= 0 && index < count) {
+                sendDatagram(fragment(message, index), client);
+            }
+        });
+    }
+
+    /**
+     * Asks clients for the missing fragments of stalled requests; runs on the delayer thread.
+     */
+    private void pollFragments() {
+        reassembler.poll(System.nanoTime(), (client, nack) -> transmit(nack.array(), client));
+    }
+
+    /**
+     * Sends a datagram subject to the injected loss, duplication, latency and reordering.
+     */
+    private void sendDatagram(byte[] datagram, SocketAddress client) {
+        if (lost()) {
+            return;
+        }
+        int copies = options.getDuplicateRate() > 0 && random.nextDouble() < options.getDuplicateRate() ? 2 : 1;
+        long delay = options.getLatencyMillis();
+        if (options.getJitterMillis() > 0) {
+            delay += random.nextLong(options.getJitterMillis() + 1);
+        }
+        if (options.getReorderRate() > 0 && random.nextDouble() < options.getReorderRate()) {
+            delay += options.getReorderDelayMillis();
+        }
+        for (int i = 0; i < copies; i++) {
+            if (delay == 0) {
+                transmit(datagram, client);
+            } else {
+                delayer.schedule(() -> transmit(datagram, client), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void transmit(byte[] datagram, SocketAddress client) {
+        try {
+            socket.send(new DatagramPacket(datagram, datagram.length, client));
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                log.warn("Failed to send to {}: {}", client, e.getMessage());
+            }
+        }
+    }
+
+    private boolean lost() {
+        if (options.getLossRate() > 0 && random.nextDouble() < options.getLossRate()) {
+            droppedCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private record ReplyKey(SocketAddress client, int requestId) {
+    }
+
+    private record MessageKey(SocketAddress client, byte type, int messageId) {
+    }
+
+    /**
+     * A change to an account, reported to monitoring clients.
+     *
+     * @param description text of the legacy callback, or {@code null} if it has none
+     */
+    private record Update(int accountNumber, OpCode opCode, Currency currency, double balance, String description) {
+    }
+}
@@ -0,0 +1,469 @@
+package com.chencraft.ntu.server;
+
+import com.chencraft.ntu.exception.OperationFailedException;
+import com.chencraft.ntu.model.AccountTransaction;
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.HistoryPage;
+import com.chencraft.ntu.model.MySerializable;
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.model.request.CloseAccountRequest;
+import com.chencraft.ntu.model.request.GetBalanceRequest;
+import com.chencraft.ntu.model.request.HistoryRequest;
+import com.chencraft.ntu.model.request.MonitorRequest;
+import com.chencraft.ntu.model.request.OpenAccountRequest;
+import com.chencraft.ntu.model.request.TransferRequest;
+import com.chencraft.ntu.model.request.UpdateBalanceRequest;
+import com.chencraft.ntu.service.BalanceCache;
+import com.chencraft.ntu.service.BankingService;
+import com.chencraft.ntu.service.IdGenerator;
+import com.chencraft.ntu.service.RequestCoalescer;
+import com.chencraft.ntu.service.SocketService;
+import com.chencraft.ntu.service.SocketSettings;
+import com.chencraft.ntu.service.limit.ConcurrencyLimiter;
+import com.chencraft.ntu.service.resolver.HostResolver;
+import com.chencraft.ntu.service.retry.HedgePolicy;
+import com.chencraft.ntu.service.retry.RetryBudget;
+import com.chencraft.ntu.util.ResponseDecoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+class BankServerTest {
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable resource : resources.reversed()) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void testAccountLifecycle() throws IOException {
+        BankServer server = start(ServerOptions.builder().port(0).build());
+        BankingService bank = client(server, 1000, 0);
+
+        int alice = bank.openAccount(open("Alice", "pw", 100.0));
+        int bob = bank.openAccount(open("Bob", "pw", 10.0));
+        Assertions.assertNotEquals(alice, bob);
+
+        Assertions.assertEquals(150.0, bank.deposit(update("Alice", alice, "pw", 50.0, true)));
+        Assertions.assertEquals(120.0, bank.withdrawal(update("Alice", alice, "pw", 30.0, false)));
+        Assertions.assertEquals(100.0, bank.transfer(transfer("Alice", alice, "pw", bob, 20.0)));
+        Assertions.assertEquals(30.0, bank.getBalance(balance("Bob", bob, "pw")));
+
+        OperationFailedException e = Assertions.assertThrows(OperationFailedException.class,
+                                                             () -> bank.getBalance(balance("Alice", alice, "wrong")));
+        Assertions.assertEquals("Incorrect Password", e.getMessage());
+        Assertions.assertThrows(OperationFailedException.class,
+                                () -> bank.withdrawal(update("Bob", bob, "pw", 1000.0, false)));
+
+        CloseAccountRequest close = new CloseAccountRequest();
+        close.setName("Bob");
+        close.setAccountNumber(bob);
+        close.setPassword("pw");
+        bank.closeAccount(close);
+        Assertions.assertThrows(OperationFailedException.class, () -> bank.getBalance(balance("Bob", bob, "pw")));
+    }
+
+    @Test
+    void testMonitorReceivesUpdates() throws IOException {
+        BankServer server = start(ServerOptions.builder().port(0).build());
+        BankingService teller = client(server, 1000, 0);
+        BankingService monitor = client(server, 1000, 0);
+
+        MonitorRequest register = new MonitorRequest();
+        register.setMonitorInterval(10);
+        Assertions.assertTrue(monitor.registerMonitor(register).contains("10 seconds"));
+
+        int account = teller.openAccount(open("Alice", "pw", 5.0));
+        String callback = monitor.receiveCallback(5000);
+        Assertions.assertNotNull(callback);
+        Assertions.assertTrue(callback.contains("Account " + account), callback);
+    }
+
+    @Test
+    void testNonIdempotentRequestsApplyOnceUnderFaults() throws IOException {
+        BankServer server = start(ServerOptions.builder()
+                                               .port(0)
+                                               .lossRate(0.2)
+                                               .duplicateRate(0.2)
+                                               .reorderRate(0.2)
+                                               .jitterMillis(2)
+                                               .seed(42)
+                                               .build());
+        BankingService bank = client(server, 30, 20);
+
+        int account = bank.openAccount(open("Alice", "pw", 0.0));
+        int deposits = 50;
+        for (int i = 0; i < deposits; i++) {
+            bank.deposit(update("Alice", account, "pw", 1.0, true));
+        }
+
+        Assertions.assertEquals(deposits, bank.getBalance(balance("Alice", account, "pw")));
+        Assertions.assertTrue(server.droppedCount() > 0);
+        Assertions.assertTrue(server.replayCount() > 0, "Expected some retransmissions to be answered from the cache");
+    }
+
+    @Test
+    void testLargeMessagesAreFragmentedAndSurviveLoss() throws IOException {
+        BankServer server = start(ServerOptions.builder()
+                                               .port(0)
+                                               .lossRate(0.2)
+                                               .legacyCallbacks(true)
+                                               .seed(7)
+                                               .build());
+        BankingService teller = client(server, 200, 10);
+        BankingService monitor = client(server, 200, 10);
+        Assertions.assertTrue(monitor.registerMonitor(monitor(10)).contains("10 seconds"));
+
+        // Both the request and the callback describing it take several datagrams
+        String name = "A".repeat(5000);
+        int account = teller.openAccount(open(name, "pw", 5.0));
+        Assertions.assertEquals(5.0, teller.getBalance(balance(name, account, "pw")));
+
+        String callback = monitor.receiveCallback(5000);
+        Assertions.assertNotNull(callback);
+        Assertions.assertTrue(callback.contains("Account " + account + " opened for " + name), "Truncated callback");
+    }
+
+    @Test
+    void testBatchReturnsPerItemResults() throws Exception {
+        BankServer server = start(ServerOptions.builder().port(0).build());
+        BankingService bank = client(server, 1000, 0);
+        int alice = bank.openAccount(open("Alice", "pw", 100.0));
+
+        List<MySerializable> requests = new ArrayList<>();
+        requests.add(open("Bob", "pw", 10.0));
+        requests.add(update("Alice", alice, "pw", 50.0, true));
+        requests.add(balance("Alice", alice, "wrong"));
+        for (int i = 0; i < 40; i++) {
+            requests.add(balance("Alice", alice, "pw"));
+        }
+        List<CompletableFuture<?>> results = bank.executeBatch(requests);
+
+        Assertions.assertInstanceOf(Integer.class, results.get(0).get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(150.0, results.get(1).get(5, TimeUnit.SECONDS));
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                                                       () -> results.get(2).get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("Incorrect Password", e.getCause().getMessage());
+        for (int i = 3; i < results.size(); i++) {
+            Assertions.assertEquals(150.0, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(requests.size() + 1, server.requestCount());
+    }
+
+    @Test
+    void testBatchKeepsTheBalanceCacheCurrent() throws Exception {
+        BankServer server = start(ServerOptions.builder().port(0).build());
+        SocketService socketService = socket(server, 1000, 0);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BankingService bank = new BankingService(socketService,
+                                                 RequestCoalescer.disabled(socketService, meterRegistry),
+                                                 new BalanceCache(true, 60_000, 10, meterRegistry), 256, 4,
+                                                 Runnable::run);
+        int alice = bank.openAccount(open("Alice", "pw", 100.0));
+        int bob = bank.openAccount(open("Bob", "pw", 0.0));
+        Assertions.assertEquals(100.0, bank.getBalance(balance("Alice", alice, "pw")));
+        Assertions.assertEquals(0.0, bank.getBalance(balance("Bob", bob, "pw")));
+
+        List<CompletableFuture<?>> results = bank.executeBatch(List.of(update("Alice", alice, "pw", 50.0, true),
+                                                                       transfer("Alice", alice, "pw", bob, 30.0)));
+        Assertions.assertEquals(120.0, results.getLast().get(5, TimeUnit.SECONDS));
+
+        // Alice's balance comes from the transfer's response, Bob's from the server
+        long requests = server.requestCount();
+        Assertions.assertEquals(120.0, bank.getBalance(balance("Alice", alice, "pw")));
+        Assertions.assertEquals(requests, server.requestCount());
+        Assertions.assertEquals(30.0, bank.getBalance(balance("Bob", bob, "pw")));
+        Assertions.assertEquals(requests + 1, server.requestCount());
+
+        CloseAccountRequest close = new CloseAccountRequest();
+        close.setName("Alice");
+        close.setAccountNumber(alice);
+        close.setPassword("pw");
+        bank.executeBatch(List.of(close)).getFirst().get(5, TimeUnit.SECONDS);
+        Assertions.assertThrows(OperationFailedException.class, () -> bank.getBalance(balance("Alice", alice, "pw")));
+    }
+
+    @Test
+    void testBatchLargerThanTheLimiterQueueIsSentInFull() throws Exception {
+        BankServer server = start(ServerOptions.builder().port(0).build());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // The default algorithm, with a queue far smaller than the batch
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("none", 20, 4, 500, 10, 5000, meterRegistry);
+        SocketService socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                                        SocketSettings.builder().port(server.port())
+                                                                      .timeoutMillis(200).maxRetries(5).build(),
+                                                        HostResolver.SYSTEM, HedgePolicy.disabled(), limiter,
+                                                        RetryBudget.unlimited(meterRegistry), meterRegistry);
+        resources.add(socketService::shutdown);
+        BankingService bank = new BankingService(socketService);
+        int alice = bank.openAccount(open("Alice", "pw", 0.0));
+
+        List<MySerializable> requests = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            requests.add(update("Alice", alice, "pw", 1.0, true));
+        }
+        List<CompletableFuture<?>> results = bank.executeBatch(requests);
+
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        Assertions.assertEquals(1200.0, bank.getBalance(balance("Alice", alice, "pw")));
+    }
+
+    @Test
+    void testRequestsAreSpreadOverServersAndFailOverFromADeadOne() throws Exception {
+        BankServer first = start(ServerOptions.builder().port(0).build());
+        BankServer second = start(ServerOptions.builder().port(0).build());
+        BankServer dead = start(ServerOptions.builder().port(0).lossRate(1.0).build());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        String servers = "localhost:" + first.port() + ",localhost:" + second.port() + ",localhost:" + dead.port();
+        SocketService socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                                        SocketSettings.builder().servers(servers).ejectAfter(2)
+                                                                      .ejectDurationMillis(60_000).timeoutMillis(50)
+                                                                      .maxRetries(3).build(),
+                                                        meterRegistry);
+        resources.add(socketService::shutdown);
+
+        // Balance queries are idempotent, so the ones sent to the dead server are retried elsewhere. No
+        // server knows the account, but being told so shows that the query got through
+        for (int i = 0; i < 30; i++) {
+            ExecutionException e = Assertions.assertThrows(
+                    ExecutionException.class,
+                    () -> socketService.sendAsync(balance("Alice", 1000, "pw"), ResponseDecoder.DOUBLE)
+                                       .get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(OperationFailedException.class, e.getCause());
+        }
+        Assertions.assertTrue(first.requestCount() >= 10 && second.requestCount() >= 10);
+        Assertions.assertEquals(1, meterRegistry.get("socket.server.ejections")
+                                                .tag("server", "localhost:" + dead.port()).counter().count());
+        Assertions.assertEquals(2, dead.droppedCount());
+    }
+
+    @Test
+    void testMonitorRegistrationsStayWithOneServer() throws Exception {
+        BankServer first = start(ServerOptions.builder().port(0).build());
+        BankServer second = start(ServerOptions.builder().port(0).build());
+        String servers = "localhost:" + first.port() + ",localhost:" + second.port();
+        SocketService socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                                        SocketSettings.builder().servers(servers).timeoutMillis(1000)
+                                                                      .build(),
+                                                        new SimpleMeterRegistry());
+        resources.add(socketService::shutdown);
+
+        // Round robin alternates the balance queries, but a registration with the other server would
+        // double the callbacks
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertNotNull(socketService.sendAndReceiveString(monitor(1)));
+            socketService.sendAsync(balance("Alice", 1000, "pw"), ResponseDecoder.DOUBLE)
+                         .exceptionally(failure -> null).get(5, TimeUnit.SECONDS);
+        }
+        Assertions.assertEquals(Set.of(5L, 15L), Set.of(first.requestCount(), second.requestCount()));
+    }
+
+    @Test
+    void testHistoryStreamsEveryTransactionInOrder() throws Exception {
+        BankServer server = start(ServerOptions.builder().port(0).syntheticHistory(100_000).build());
+        BankingService bank = client(server, 1000, 3);
+        int alice = bank.openAccount(open("Alice", "pw", 100.0));
+        int bob = bank.openAccount(open("Bob", "pw", 0.0));
+        bank.transfer(transfer("Alice", alice, "pw", bob, 30.0));
+
+        HistoryCollector all = new HistoryCollector(Long.MAX_VALUE);
+        bank.streamHistory("Alice", alice, "pw", 0).subscribe(all);
+        List<AccountTransaction> transactions = all.done.get(30, TimeUnit.SECONDS);
+        Assertions.assertEquals(100_002, transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            Assertions.assertEquals(i + 1, transactions.get(i).sequence());
+        }
+        Assertions.assertEquals(OpCode.OpOpen, transactions.getFirst().opCode());
+        Assertions.assertEquals(new AccountTransaction(100_002, OpCode.OpTransfer, Currency.SGD, -30.0, 70.0,
+                                                       transactions.getLast().timestamp()), transactions.getLast());
+
+        HistoryCollector tail = new HistoryCollector(Long.MAX_VALUE);
+        bank.streamHistory("Bob", bob, "pw", 100_000).subscribe(tail);
+        Assertions.assertEquals(List.of(100_001L, 100_002L),
+                                tail.done.get(5, TimeUnit.SECONDS).stream().map(AccountTransaction::sequence).toList());
+
+        HistoryCollector denied = new HistoryCollector(Long.MAX_VALUE);
+        bank.streamHistory("Alice", alice, "wrong", 0).subscribe(denied);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                                                       () -> denied.done.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("Incorrect Password", e.getCause().getMessage());
+    }
+
+    @Test
+    void testHistoryIsReadNoFurtherAheadThanTheWindow() throws Exception {
+        BankServer server = start(ServerOptions.builder().port(0).syntheticHistory(100_000).build());
+        BankingService bank = client(server, 1000, 3);
+        int account = bank.openAccount(open("Alice", "pw", 100.0));
+
+        HistoryCollector slow = new HistoryCollector(1);
+        bank.streamHistory("Alice", account, "pw", 0).subscribe(slow);
+        slow.received.get(5, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        // The opening request, the first page, then a window of 4 pages ahead
+        Assertions.assertEquals(1 + 1 + 4, server.requestCount());
+
+        slow.subscription.request(256);
+        Thread.sleep(200);
+        Assertions.assertEquals(1 + 1 + 4 + 1, server.requestCount());
+        Assertions.assertEquals(257, slow.transactions.size());
+
+        slow.subscription.cancel();
+        slow.subscription.request(10_000);
+        Thread.sleep(200);
+        Assertions.assertEquals(257, slow.transactions.size());
+        Assertions.assertFalse(slow.done.isDone());
+    }
+
+    @Test
+    void testHistoryPagesCappedByTheServerAreReadWithoutGaps() throws Exception {
+        BankServer server = start(ServerOptions.builder().port(0).syntheticHistory(100_000).maxHistoryPage(100)
+                                               .build());
+        SocketService socketService = socket(server, 1000, 3);
+        // Pages of 256, the default, of which the server sends 100 at a time
+        BankingService bank = new BankingService(socketService);
+        int account = bank.openAccount(open("Alice", "pw", 100.0));
+
+        HistoryCollector all = new HistoryCollector(Long.MAX_VALUE);
+        bank.streamHistory("Alice", account, "pw", 0).subscribe(all);
+        List<AccountTransaction> transactions = all.done.get(30, TimeUnit.SECONDS);
+        Assertions.assertEquals(100_001, transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            Assertions.assertEquals(i + 1, transactions.get(i).sequence());
+        }
+
+        // No server sends more than a 1 MiB reply holds
+        RequestCoalescer coalescer = RequestCoalescer.disabled(socketService, new SimpleMeterRegistry());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                                () -> new BankingService(socketService, coalescer,
+                                                         BalanceCache.disabled(new SimpleMeterRegistry()),
+                                                         HistoryPage.MAX_TRANSACTIONS + 1, 4, Runnable::run));
+    }
+
+    private BankServer start(ServerOptions options) throws IOException {
+        BankServer server = BankServer.start(options);
+        resources.add(server);
+        return server;
+    }
+
+    private BankingService client(BankServer server, int timeout, int maxRetries) {
+        return new BankingService(socket(server, timeout, maxRetries));
+    }
+
+    private SocketService socket(BankServer server, int timeout, int maxRetries) {
+        SocketService socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                                        SocketSettings.builder().port(server.port())
+                                                                      .timeoutMillis(timeout).maxRetries(maxRetries)
+                                                                      .build(),
+                                                        new SimpleMeterRegistry());
+        resources.add(socketService::shutdown);
+        return socketService;
+    }
+
+    private static MonitorRequest monitor(int interval) {
+        MonitorRequest request = new MonitorRequest();
+        request.setMonitorInterval(interval);
+        return request;
+    }
+
+    private static OpenAccountRequest open(String name, String password, double initialBalance) {
+        OpenAccountRequest request = new OpenAccountRequest();
+        request.setName(name);
+        request.setPassword(password);
+        request.setCurrency(Currency.SGD);
+        request.setInitialBalance(initialBalance);
+        return request;
+    }
+
+    private static UpdateBalanceRequest update(String name, int account, String password, double amount,
+                                               boolean deposit) {
+        UpdateBalanceRequest request = new UpdateBalanceRequest();
+        request.setName(name);
+        request.setAccountNumber(account);
+        request.setPassword(password);
+        request.setCurrency(Currency.SGD);
+        request.setAmount(amount);
+        request.setDepositFlag(deposit);
+        return request;
+    }
+
+    private static TransferRequest transfer(String name, int account, String password, int destination,
+                                            double amount) {
+        TransferRequest request = new TransferRequest();
+        request.setName(name);
+        request.setAccountNumber(account);
+        request.setPassword(password);
+        request.setDestAccountNumber(destination);
+        request.setCurrency(Currency.SGD);
+        request.setAmount(amount);
+        return request;
+    }
+
+    private static HistoryRequest history(String name, int account, String password, long since) {
+        HistoryRequest request = new HistoryRequest();
+        request.setName(name);
+        request.setAccountNumber(account);
+        request.setPassword(password);
+        request.setSince(since);
+        return request;
+    }
+
+    private static GetBalanceRequest balance(String name, int account, String password) {
+        GetBalanceRequest request = new GetBalanceRequest();
+        request.setName(name);
+        request.setAccountNumber(account);
+        request.setPassword(password);
+        return request;
+    }
+
+    /**
+     * Collects a history stream, asking for {@code initialDemand} transactions to begin with.
+     */
+    private static final class HistoryCollector implements Flow.Subscriber<AccountTransaction> {
+        private final long initialDemand;
+        private final List<AccountTransaction> transactions = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<Void> received = new CompletableFuture<>();
+        private final CompletableFuture<List<AccountTransaction>> done = new CompletableFuture<>();
+        private volatile Flow.Subscription subscription;
+
+        private HistoryCollector(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialDemand);
+        }
+
+        @Override
+        public void onNext(AccountTransaction item) {
+            transactions.add(item);
+            received.complete(null);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(transactions);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.chencraft.ntu.server;
+
+import com.chencraft.ntu.model.HistoryPage;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Network behaviour of a {@link BankServer}, including the faults it injects.
+ * <p>
+ * Every datagram the server sends (responses and callbacks) is delayed by {@code latencyMillis} plus a
+ * uniformly random {@code jitterMillis}. With probability {@code reorderRate} it is held back a further
+ * {@code reorderDelayMillis}, so it overtakes nothing but is overtaken by later datagrams. Incoming
+ * requests and outgoing datagrams are each dropped with probability {@code lossRate}, and a datagram
+ * that is sent goes out twice with probability {@code duplicateRate}.
+ */
+@Getter
+@Builder
+@ToString
+public class ServerOptions {
+    /**
+     * UDP port to listen on; 0 picks an ephemeral port.
+     */
+    @Builder.Default
+    private final int port = 8866;
+
+    @Builder.Default
+    private final long latencyMillis = 0;
+
+    @Builder.Default
+    private final long jitterMillis = 0;
+
+    @Builder.Default
+    private final double lossRate = 0;
+
+    @Builder.Default
+    private final double duplicateRate = 0;
+
+    @Builder.Default
+    private final double reorderRate = 0;
+
+    @Builder.Default
+    private final long reorderDelayMillis = 5;
+
+    /**
+     * Whether replies to non-idempotent requests are cached and replayed for retransmissions
+     * instead of executing them again (at-most-once semantics).
+     */
+    @Builder.Default
+    private final boolean atMostOnce = true;
+
+    /**
+     * Number of replies remembered for {@code atMostOnce}.
+     */
+    @Builder.Default
+    private final int replyCacheSize = 65536;
+
+    /**
+     * Whether callbacks are sent as free-text descriptions (operation code {@code OpMonitor}) as by
+     * older servers, instead of binary {@link com.chencraft.ntu.model.AccountUpdateEvent}s.
+     */
+    @Builder.Default
+    private final boolean legacyCallbacks = false;
+
+    /**
+     * Number of made-up transactions every account opened starts its history with, so that long
+     * histories can be streamed without first making millions of requests; see {@link Bank}.
+     */
+    @Builder.Default
+    private final int syntheticHistory = 0;
+
+    /**
+     * Most transactions sent in one history page, however many are asked for; at most
+     * {@link HistoryPage#MAX_TRANSACTIONS}, the most a reply can hold.
+     */
+    @Builder.Default
+    private final int maxHistoryPage = HistoryPage.MAX_TRANSACTIONS;
+
+    /**
+     * Seed of the fault injection; fixed seeds make a run reproducible.
+     */
+    @Builder.Default
+    private final long seed = System.nanoTime();
+
+    /**
+     * Parses {@code --key=value} arguments, e.g. {@code --port=8866 --latency=2 --loss=0.05}.
+     */
+    public static ServerOptions fromArgs(String... args) {
+        ServerOptionsBuilder builder = ServerOptions.builder();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (key) {
+                case "port" -> builder.port(Integer.parseInt(value));
+                case "latency" -> builder.latencyMillis(Long.parseLong(value));
+                case "jitter" -> builder.jitterMillis(Long.parseLong(value));
+                case "loss" -> builder.lossRate(Double.parseDouble(value));
+                case "duplicate" -> builder.duplicateRate(Double.parseDouble(value));
+                case "reorder" -> builder.reorderRate(Double.parseDouble(value));
+                case "reorder-delay" -> builder.reorderDelayMillis(Long.parseLong(value));
+                case "at-most-once" -> builder.atMostOnce(Boolean.parseBoolean(value));
+                case "reply-cache-size" -> builder.replyCacheSize(Integer.parseInt(value));
+                case "legacy-callbacks" -> builder.legacyCallbacks(Boolean.parseBoolean(value));
+                case "synthetic-history" -> builder.syntheticHistory(Integer.parseInt(value));
+                case "max-history-page" -> builder.maxHistoryPage(Integer.parseInt(value));
+                case "seed" -> builder.seed(Long.parseLong(value));
+                default -> throw new IllegalArgumentException("Unknown option: --" + key);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,72 @@
+package com.chencraft.ntu.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BalanceCacheTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testHitRequiresSameCredentialsAndFreshness() throws InterruptedException {
+        BalanceCache cache = new BalanceCache(true, 50, 10, meterRegistry);
+        cache.put(1, "Alice", "pw", 42.0, System.nanoTime());
+
+        Assertions.assertEquals(42.0, cache.get(1, "Alice", "pw"));
+        Assertions.assertNull(cache.get(1, "Alice", "wrong"));
+        Assertions.assertNull(cache.get(2, "Alice", "pw"));
+        Thread.sleep(60);
+        Assertions.assertNull(cache.get(1, "Alice", "pw"));
+
+        Assertions.assertEquals(1, count("hit"));
+        Assertions.assertEquals(2, count("miss"));
+        Assertions.assertEquals(1, count("stale"));
+    }
+
+    @Test
+    void testCallbackInvalidatesMentionedAccounts() {
+        BalanceCache cache = new BalanceCache(true, 10_000, 10, meterRegistry);
+        long sentAt = System.nanoTime();
+        cache.put(1, "Alice", "pw", 100.0, sentAt);
+        cache.put(2, "Bob", "pw", 10.0, sentAt);
+        cache.put(3, "Carol", "pw", 5.0, sentAt);
+
+        cache.onCallback("Account 1 transferred 20.00 SGD to account 2, balance 80.00 SGD");
+        Assertions.assertNull(cache.get(1, "Alice", "pw"));
+        Assertions.assertNull(cache.get(2, "Bob", "pw"));
+        Assertions.assertEquals(5.0, cache.get(3, "Carol", "pw"));
+
+        // A response to a request sent before the update may predate it
+        cache.put(1, "Alice", "pw", 100.0, sentAt);
+        Assertions.assertNull(cache.get(1, "Alice", "pw"));
+        cache.put(1, "Alice", "pw", 80.0, System.nanoTime());
+        Assertions.assertEquals(80.0, cache.get(1, "Alice", "pw"));
+    }
+
+    @Test
+    void testOlderResponseDoesNotOverwriteNewerBalance() {
+        BalanceCache cache = new BalanceCache(true, 10_000, 10, meterRegistry);
+        long earlier = System.nanoTime();
+        long later = earlier + 1;
+
+        // Responses can arrive out of order, e.g. a deposit's after the balance enquiry sent after it
+        cache.put(1, "Alice", "pw", 150.0, later);
+        cache.put(1, "Alice", "pw", 100.0, earlier);
+        Assertions.assertEquals(150.0, cache.get(1, "Alice", "pw"));
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        BalanceCache cache = new BalanceCache(true, 10_000, 2, meterRegistry);
+        for (int account = 0; account < 5; account++) {
+            cache.put(account, "Alice", "pw", account, System.nanoTime());
+        }
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(4.0, cache.get(4, "Alice", "pw"));
+        Assertions.assertNull(cache.get(0, "Alice", "pw"));
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("balance.cache.requests").tag("result", result).counter().count();
+    }
+}
@@ -2,9 +2,11 @@ package com.chencraft.ntu.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.nio.file.Path;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -57,4 +59,40 @@ public class IdGeneratorTest {
             assertTrue(ids.contains(i), "Missing ID: " + i);
         }
     }
+
+    @Test
+    void testLeasedIdsAreNotReusedAfterRestart(@TempDir Path dir) {
+        String stateFile = dir.resolve("ids.dat").toString();
+
+        IdGenerator first = new IdGenerator(stateFile, 100, 0);
+        assertEquals(0, first.getNextId());
+        assertEquals(1, first.getNextId());
+        first.close();
+
+        // The rest of the first lease is skipped rather than reused
+        IdGenerator second = new IdGenerator(stateFile, 100, 0);
+        assertEquals(100, second.getNextId());
+        for (int i = 101; i < 200; i++) {
+            assertEquals(i, second.getNextId());
+        }
+        assertEquals(200, second.getNextId());
+        second.close();
+    }
+
+    @Test
+    void testEpochPrefixChangesPerStart(@TempDir Path dir) {
+        String stateFile = dir.resolve("ids.dat").toString();
+
+        IdGenerator first = new IdGenerator(stateFile, 100, 8);
+        int a = first.getNextId();
+        first.close();
+        IdGenerator second = new IdGenerator(stateFile, 100, 8);
+        int b = second.getNextId();
+        second.close();
+
+        assertEquals(1, a >>> 24);
+        assertEquals(2, b >>> 24);
+        assertEquals(0, a & 0xFFFFFF);
+        assertEquals(100, b & 0xFFFFFF);
+    }
 }
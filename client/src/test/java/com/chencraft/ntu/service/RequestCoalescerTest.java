@@ -0,0 +1,72 @@
+package com.chencraft.ntu.service;
+
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.model.request.GetBalanceRequest;
+import com.chencraft.ntu.model.request.OpenAccountRequest;
+import com.chencraft.ntu.server.BankServer;
+import com.chencraft.ntu.server.ServerOptions;
+import com.chencraft.ntu.util.ResponseDecoder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class RequestCoalescerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BankServer server;
+    private SocketService socketService;
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = BankServer.start(ServerOptions.builder().port(0).build());
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().port(server.port()).timeoutMillis(1000).build(),
+                                          meterRegistry);
+        coalescer = new RequestCoalescer(socketService, "OpBalance", 5000, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+        socketService.shutdown();
+        server.close();
+    }
+
+    @Test
+    void testConcurrentRequestsShareDatagrams() throws Exception {
+        OpenAccountRequest open = new OpenAccountRequest();
+        open.setName("Alice");
+        open.setPassword("pw");
+        open.setCurrency(Currency.SGD);
+        open.setInitialBalance(42.0);
+        int account = coalescer.sendAndReceive(open, ResponseDecoder.INT);
+        Assertions.assertFalse(coalescer.isEnabled(OpCode.OpOpen));
+
+        GetBalanceRequest balance = new GetBalanceRequest();
+        balance.setName("Alice");
+        balance.setAccountNumber(account);
+        balance.setPassword("pw");
+        List<CompletableFuture<Double>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(coalescer.sendAsync(balance, ResponseDecoder.DOUBLE));
+        }
+        for (CompletableFuture<Double> future : futures) {
+            Assertions.assertEquals(42.0, future.get(5, TimeUnit.SECONDS));
+        }
+
+        DistributionSummary batchSize = meterRegistry.get("socket.coalescer.batch.size").summary();
+        Assertions.assertEquals(100, (long) batchSize.totalAmount());
+        Assertions.assertTrue(batchSize.count() < 10, "Expected full datagrams, got " + batchSize.count() + " batches");
+        Assertions.assertTrue(batchSize.max() > 1);
+    }
+}
@@ -0,0 +1,589 @@
+package com.chencraft.ntu.service;
+
+import com.chencraft.ntu.exception.OperationFailedException;
+import com.chencraft.ntu.exception.OutcomeUnknownException;
+import com.chencraft.ntu.model.BatchMessage;
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.MessageType;
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.model.request.CloseAccountRequest;
+import com.chencraft.ntu.model.request.GetBalanceRequest;
+import com.chencraft.ntu.model.request.MonitorRequest;
+import com.chencraft.ntu.model.request.OpenAccountRequest;
+import com.chencraft.ntu.service.limit.ConcurrencyLimiter;
+import com.chencraft.ntu.service.resolver.HostResolver;
+import com.chencraft.ntu.service.retry.HedgePolicy;
+import com.chencraft.ntu.service.retry.RequestOutcome;
+import com.chencraft.ntu.service.retry.RetryBudget;
+import com.chencraft.ntu.service.transport.TransportType;
+import com.chencraft.ntu.util.ResponseDecoder;
+import com.chencraft.ntu.util.WireReader;
+import com.chencraft.ntu.util.WireWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class SocketServiceTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DatagramSocket server;
+    private SocketService socketService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new DatagramSocket(0);
+        server.setSoTimeout(5000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (socketService != null) {
+            socketService.shutdown();
+        }
+        server.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void testResponsesAreDemultiplexedById(TransportType transportType) throws Exception {
+        socketService = newSocketService(1000, 0, transportType);
+        int count = 50;
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(socketService.sendAsync(monitorRequest(i), ResponseDecoder.INT));
+        }
+
+        // Answer every request in reverse arrival order
+        List<DatagramPacket> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(receive());
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            reply(requests.get(i), MessageType.MsgResponse);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void testLostRequestIsRetransmitted(TransportType transportType) throws Exception {
+        socketService = newSocketService(100, 3, transportType);
+        CompletableFuture<Integer> future = socketService.sendAsync(monitorRequest(42), ResponseDecoder.INT);
+
+        DatagramPacket first = receive();
+        DatagramPacket second = receive();
+        Assertions.assertArrayEquals(payload(first), payload(second));
+
+        reply(second, MessageType.MsgResponse);
+        Assertions.assertEquals(42, future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testBatchIsSentAsOneDatagramAndRepliesAreDemultiplexed() throws Exception {
+        socketService = newSocketService(1000, 0);
+        List<CompletableFuture<?>> futures = socketService.sendBatchAsync(
+                List.of(monitorRequest(1), monitorRequest(2), monitorRequest(3)),
+                List.of(ResponseDecoder.INT, ResponseDecoder.INT, ResponseDecoder.INT));
+
+        DatagramPacket batch = receive();
+        ByteBuffer message = ByteBuffer.wrap(payload(batch));
+        Assertions.assertTrue(BatchMessage.isBatch(message));
+        List<byte[]> items = new ArrayList<>();
+        BatchMessage.forEachItem(message, item -> {
+            byte[] bytes = new byte[item.remaining()];
+            item.get(bytes);
+            items.add(bytes);
+        });
+        Assertions.assertEquals(3, items.size());
+
+        for (byte[] item : items.reversed()) {
+            reply(new DatagramPacket(item, item.length, batch.getSocketAddress()), MessageType.MsgResponse);
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Assertions.assertEquals(i + 1, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testOversizedBatchItemFailsAloneAndFreesItsSlot() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("aimd", 4, 1, 4, 0, 0, meterRegistry);
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().port(server.getLocalPort()).timeoutMillis(1000)
+                                                        .maxMessageSize(2048).build(),
+                                          HostResolver.SYSTEM, HedgePolicy.disabled(), limiter,
+                                          RetryBudget.unlimited(meterRegistry), meterRegistry);
+        OpenAccountRequest oversized = new OpenAccountRequest();
+        oversized.setName("x".repeat(4096));
+        oversized.setPassword("secret");
+        oversized.setCurrency(Currency.SGD);
+        oversized.setInitialBalance(1.0);
+
+        List<CompletableFuture<?>> futures = socketService.sendBatchAsync(
+                List.of(monitorRequest(1), oversized, monitorRequest(3)),
+                List.of(ResponseDecoder.INT, ResponseDecoder.INT, ResponseDecoder.INT));
+
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> futures.get(1).get());
+        Assertions.assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        // The others still go out, together
+        DatagramPacket batch = receive();
+        List<byte[]> items = new ArrayList<>();
+        BatchMessage.forEachItem(ByteBuffer.wrap(payload(batch)), item -> {
+            byte[] bytes = new byte[item.remaining()];
+            item.get(bytes);
+            items.add(bytes);
+        });
+        Assertions.assertEquals(2, items.size());
+        for (byte[] item : items) {
+            reply(new DatagramPacket(item, item.length, batch.getSocketAddress()), MessageType.MsgResponse);
+        }
+        Assertions.assertEquals(1, futures.get(0).get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, futures.get(2).get(5, TimeUnit.SECONDS));
+        // Slots are freed just after the futures complete
+        for (int i = 0; i < 100 && limiter.inFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void testRequestsAreSpreadAcrossShards() throws Exception {
+        socketService = newShardedSocketService(4, ShardRouting.REQUEST_ID);
+        int count = 40;
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(socketService.sendAsync(balanceRequest(1000), ResponseDecoder.INT));
+        }
+
+        List<DatagramPacket> requests = new ArrayList<>();
+        Set<Integer> ports = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            DatagramPacket request = receive();
+            requests.add(request);
+            ports.add(request.getPort());
+        }
+        Assertions.assertEquals(4, ports.size());
+
+        // Each response goes back to the socket its request left from
+        Set<Integer> expected = new HashSet<>();
+        for (DatagramPacket request : requests.reversed()) {
+            int requestId = ByteBuffer.wrap(payload(request)).getInt(1);
+            expected.add(requestId);
+            reply(request, MessageType.MsgResponse, requestId);
+        }
+        Set<Integer> answers = new HashSet<>();
+        for (CompletableFuture<Integer> future : futures) {
+            answers.add(future.get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(expected, answers);
+    }
+
+    @Test
+    void testMonitorRegistrationsLeaveFromOneShard() throws Exception {
+        socketService = newShardedSocketService(4, ShardRouting.REQUEST_ID);
+        int count = 12;
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(socketService.sendAsync(monitorRequest(i), ResponseDecoder.INT));
+        }
+
+        // The server sends callbacks to the address a registration came from, so there must be only one
+        Set<Integer> ports = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            DatagramPacket request = receive();
+            ports.add(request.getPort());
+            reply(request, MessageType.MsgResponse);
+        }
+        Assertions.assertEquals(1, ports.size());
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testAccountRoutingKeepsAnAccountOnOneShard() throws Exception {
+        socketService = newShardedSocketService(4, ShardRouting.ACCOUNT);
+        for (int i = 0; i < 8; i++) {
+            CloseAccountRequest request = new CloseAccountRequest();
+            request.setName("Alice");
+            request.setAccountNumber(1000 + i % 2);
+            request.setPassword("secret");
+            socketService.sendAsync(request, ResponseDecoder.STRING);
+        }
+
+        // Eight request IDs, but only two accounts and therefore two sockets
+        Set<Integer> ports = new HashSet<>();
+        for (int i = 0; i < 8; i++) {
+            ports.add(receive().getPort());
+        }
+        Assertions.assertEquals(2, ports.size());
+    }
+
+    @Test
+    void testSlowRequestIsHedgedAndFirstAnswerWins() throws Exception {
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().port(server.getLocalPort()).timeoutMillis(1000)
+                                                        .maxRetries(3).build(),
+                                          HostResolver.SYSTEM, new HedgePolicy("OpMonitor", 50, 1.0),
+                                          ConcurrencyLimiter.unlimited(meterRegistry), RetryBudget.unlimited(meterRegistry),
+                                          meterRegistry);
+        // Measure some round trips, then let the latency recorder roll over to include them
+        for (int i = 0; i < 20; i++) {
+            CompletableFuture<Integer> future = socketService.sendAsync(monitorRequest(i), ResponseDecoder.INT);
+            reply(receive(), MessageType.MsgResponse);
+            future.get(5, TimeUnit.SECONDS);
+        }
+        Thread.sleep(1100);
+
+        CompletableFuture<Integer> future = socketService.sendAsync(monitorRequest(42), ResponseDecoder.INT);
+        DatagramPacket late = receive();
+        byte[] original = payload(late);
+        DatagramPacket hedge = receive();
+        byte[] copy = payload(hedge);
+        Assertions.assertNotEquals(ByteBuffer.wrap(original).getInt(1), ByteBuffer.wrap(copy).getInt(1));
+        Assertions.assertArrayEquals(Arrays.copyOfRange(original, 5, original.length),
+                                     Arrays.copyOfRange(copy, 5, copy.length));
+
+        reply(hedge, MessageType.MsgResponse);
+        Assertions.assertEquals(42, future.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, meterRegistry.get("socket.requests.hedge-wins").tag("op", "OpMonitor")
+                                                .counter().count());
+
+        // Both IDs are settled, and the request is counted once however many answers arrive
+        reply(late, MessageType.MsgResponse);
+        for (int i = 0; i < 100 && discarded("duplicate") == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(1, discarded("duplicate"));
+        Assertions.assertEquals(RequestOutcome.APPLIED, socketService.getOutcome(ByteBuffer.wrap(original).getInt(1)));
+        Assertions.assertEquals(RequestOutcome.APPLIED, socketService.getOutcome(ByteBuffer.wrap(copy).getInt(1)));
+        Assertions.assertEquals(21, meterRegistry.get("socket.requests.outcome").tag("outcome", "applied")
+                                                 .counter().count());
+    }
+
+    @Test
+    void testRequestBeyondTheLimitIsSentWhenASlotFrees() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("aimd", 1, 1, 1, 10, 5000, meterRegistry);
+        socketService = newLimitedSocketService(1000, limiter, RetryBudget.unlimited(meterRegistry));
+        CompletableFuture<Integer> first = socketService.sendAsync(monitorRequest(1), ResponseDecoder.INT);
+        CompletableFuture<Integer> second = socketService.sendAsync(monitorRequest(2), ResponseDecoder.INT);
+
+        DatagramPacket request = receive();
+        server.setSoTimeout(200);
+        Assertions.assertThrows(SocketTimeoutException.class, this::receive, "Second request sent over the limit");
+        server.setSoTimeout(5000);
+        Assertions.assertEquals(1.0, meterRegistry.get("socket.limit.queue").gauge().value());
+
+        reply(request, MessageType.MsgResponse);
+        reply(receive(), MessageType.MsgResponse);
+        Assertions.assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testExhaustedRetryBudgetFailsInsteadOfRetransmitting() throws Exception {
+        socketService = newLimitedSocketService(50, ConcurrencyLimiter.unlimited(meterRegistry),
+                                                new RetryBudget(0, 0, meterRegistry));
+
+        OperationFailedException e = Assertions.assertThrows(OperationFailedException.class,
+                                                             () -> socketService.sendAndReceiveInt(monitorRequest(1)));
+        Assertions.assertTrue(e.getMessage().contains("Retry budget"), e.getMessage());
+        receive();
+        server.setSoTimeout(200);
+        Assertions.assertThrows(SocketTimeoutException.class, this::receive, "Request was retransmitted");
+    }
+
+    @Test
+    void testTimeoutAfterMaxRetries() {
+        socketService = newSocketService(50, 1);
+
+        OperationFailedException e = Assertions.assertThrows(OperationFailedException.class,
+                                                             () -> socketService.sendAndReceiveInt(monitorRequest(1)));
+        Assertions.assertTrue(e.getMessage().contains("Timeout"));
+    }
+
+    @Test
+    void testDeadlineCutsRetriesShort() {
+        socketService = newSocketService(50, 100, 300, TransportType.BLOCKING);
+
+        long start = System.nanoTime();
+        OperationFailedException e = Assertions.assertThrows(OperationFailedException.class,
+                                                             () -> socketService.sendAndReceiveInt(monitorRequest(1)));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assertions.assertTrue(e.getMessage().contains("Deadline"), e.getMessage());
+        Assertions.assertTrue(elapsedMillis >= 300 && elapsedMillis < 2000, "Elapsed " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void testNonIdempotentTimeoutHasUnknownOutcome() throws Exception {
+        socketService = newSocketService(50, 1);
+        CloseAccountRequest request = new CloseAccountRequest();
+        request.setName("John Doe");
+        request.setPassword("qwer1234");
+        request.setAccountNumber(1);
+
+        CompletableFuture<String> future = socketService.sendAsync(request, ResponseDecoder.STRING);
+        DatagramPacket first = receive();
+        DatagramPacket second = receive();
+        Assertions.assertArrayEquals(payload(first), payload(second), "Retransmission must reuse the request ID");
+
+        Exception e = Assertions.assertThrows(Exception.class, () -> future.get(5, TimeUnit.SECONDS));
+        OutcomeUnknownException unknown = Assertions.assertInstanceOf(OutcomeUnknownException.class, e.getCause());
+        Assertions.assertEquals(OpCode.OpClose, unknown.getOpCode());
+        Assertions.assertEquals(RequestOutcome.UNKNOWN, socketService.getOutcome(unknown.getRequestId()));
+
+        // A late response settles the outcome without completing anything
+        ByteBuffer response = ByteBuffer.allocate(32);
+        WireWriter writer = new WireWriter(response).writeEnum(MessageType.MsgResponse)
+                                                    .writeInt(unknown.getRequestId())
+                                                    .writeByte(OpCode.OpClose.getValue())
+                                                    .writeString("Closed");
+        server.send(new DatagramPacket(response.array(), writer.position(), first.getSocketAddress()));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (socketService.getOutcome(unknown.getRequestId()) != RequestOutcome.APPLIED
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(RequestOutcome.APPLIED, socketService.getOutcome(unknown.getRequestId()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(TransportType.class)
+    void testCallbacksDoNotStealResponses(TransportType transportType) throws Exception {
+        socketService = newSocketService(1000, 0, transportType);
+        CompletableFuture<Integer> future = socketService.sendAsync(monitorRequest(7), ResponseDecoder.INT);
+
+        DatagramPacket request = receive();
+        ByteBuffer callback = ByteBuffer.allocate(64);
+        WireWriter writer = new WireWriter(callback).writeEnum(MessageType.MsgCallback)
+                                                    .writeInt(-1)
+                                                    .writeByte((byte) 0x05)
+                                                    .writeString("Account 1 updated");
+        server.send(new DatagramPacket(callback.array(), writer.position(), request.getSocketAddress()));
+        reply(request, MessageType.MsgResponse);
+
+        Assertions.assertEquals(7, future.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("Account 1 updated", socketService.receiveCallback(5000));
+    }
+
+    @Test
+    void testMetricsArePublishedPerOpCode() throws Exception {
+        socketService = newSocketService(100, 3);
+        CompletableFuture<Integer> retried = socketService.sendAsync(monitorRequest(1), ResponseDecoder.INT);
+        receive(); // Lost
+        reply(receive(), MessageType.MsgResponse);
+        retried.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Integer> rejected = socketService.sendAsync(monitorRequest(2), ResponseDecoder.INT);
+        DatagramPacket request = receive();
+        ByteBuffer error = ByteBuffer.allocate(32);
+        WireWriter writer = new WireWriter(error).writeEnum(MessageType.MsgError)
+                                                 .writeInt(new WireReader(ByteBuffer.wrap(payload(request))).skip(1).readInt())
+                                                 .writeByte(OpCode.OpMonitor.getValue())
+                                                 .writeString("Rejected");
+        server.send(new DatagramPacket(error.array(), writer.position(), request.getSocketAddress()));
+        Assertions.assertThrows(Exception.class, () -> rejected.get(5, TimeUnit.SECONDS));
+
+        String op = OpCode.OpMonitor.name();
+        Assertions.assertEquals(1, meterRegistry.get("socket.request.latency").tag("op", op)
+                                                .tag("phase", "first_attempt").functionTimer().count());
+        Assertions.assertEquals(2, meterRegistry.get("socket.request.latency").tag("op", op)
+                                                .tag("phase", "end_to_end").functionTimer().count());
+        Assertions.assertEquals(1, meterRegistry.get("socket.requests.retransmitted").tag("op", op).counter().count());
+        Assertions.assertEquals(1, meterRegistry.get("socket.responses.errors").tag("op", op).counter().count());
+        Assertions.assertTrue(meterRegistry.get("socket.request.latency.percentile").tag("op", op)
+                                           .tag("phase", "end_to_end").tag("quantile", "0.99").gauge().value() > 0);
+    }
+
+    @Test
+    void testConcurrentBlockingCallers() throws Exception {
+        socketService = newSocketService(1000, 0);
+        int count = 20;
+
+        Thread responder = new Thread(() -> {
+            Set<Integer> seen = new HashSet<>();
+            try {
+                while (seen.size() < count) {
+                    DatagramPacket request = receive();
+                    seen.add(new WireReader(ByteBuffer.wrap(payload(request))).skip(1).readInt());
+                    reply(request, MessageType.MsgResponse);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        responder.start();
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int interval = i;
+            results.add(CompletableFuture.supplyAsync(() -> socketService.sendAndReceiveInt(monitorRequest(interval))));
+        }
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        responder.join(5000);
+    }
+
+    @Test
+    void testRoundTripAllocationStaysBounded() throws Exception {
+        socketService = newSocketService(1000, 0);
+        Thread responder = new Thread(() -> {
+            byte[] buffer = new byte[1024];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                while (!server.isClosed()) {
+                    packet.setLength(buffer.length);
+                    server.receive(packet);
+                    // Echo the request back as a response carrying its monitor interval
+                    buffer[0] = (byte) MessageType.MsgResponse.ordinal();
+                    packet.setLength(10);
+                    server.send(packet);
+                }
+            } catch (IOException e) {
+                // Socket closed by tearDown
+            }
+        });
+        responder.setDaemon(true);
+        responder.start();
+
+        MonitorRequest request = monitorRequest(3);
+        for (int i = 0; i < 20_000; i++) {
+            socketService.sendAndReceiveInt(request);
+        }
+
+        int roundTrips = 20_000;
+        long before = allocatedBytes();
+        for (int i = 0; i < roundTrips; i++) {
+            socketService.sendAndReceiveInt(request);
+        }
+        long perRoundTrip = (allocatedBytes() - before) / roundTrips;
+
+        // About 450 bytes: the future, pending entry, timer task and socket internals of both ends,
+        // but no per-datagram buffers
+        Assertions.assertTrue(perRoundTrip < 1024, "Allocated " + perRoundTrip + " bytes per round trip");
+    }
+
+    private double discarded(String reason) {
+        return meterRegistry.get("socket.responses.discarded").tag("reason", reason).counter().count();
+    }
+
+    /**
+     * Total bytes allocated so far by all live threads of this JVM.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(allocated, 0);
+        }
+        return total;
+    }
+
+    private SocketService newSocketService(int timeout, int maxRetries) {
+        return newSocketService(timeout, maxRetries, TransportType.BLOCKING);
+    }
+
+    private SocketService newSocketService(int timeout, int maxRetries, TransportType transportType) {
+        return newSocketService(timeout, maxRetries, 0, transportType);
+    }
+
+    private SocketService newSocketService(int timeout, int maxRetries, long deadline, TransportType transportType) {
+        return new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                 SocketSettings.builder().port(server.getLocalPort()).timeoutMillis(timeout)
+                                               .maxRetries(maxRetries).deadlineMillis(deadline)
+                                               .transport(transportType).build(),
+                                 meterRegistry);
+    }
+
+    private SocketService newLimitedSocketService(int timeout, ConcurrencyLimiter limiter, RetryBudget retryBudget) {
+        return new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                 SocketSettings.builder().port(server.getLocalPort()).timeoutMillis(timeout)
+                                               .maxRetries(3).build(),
+                                 HostResolver.SYSTEM, HedgePolicy.disabled(), limiter, retryBudget, meterRegistry);
+    }
+
+    private SocketService newShardedSocketService(int shards, ShardRouting routing) {
+        return new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                 SocketSettings.builder().port(server.getLocalPort()).timeoutMillis(1000)
+                                               .shards(shards).shardRouting(routing).build(),
+                                 meterRegistry);
+    }
+
+    private static MonitorRequest monitorRequest(int interval) {
+        MonitorRequest request = new MonitorRequest();
+        request.setMonitorInterval(interval);
+        return request;
+    }
+
+    private static GetBalanceRequest balanceRequest(int accountNumber) {
+        GetBalanceRequest request = new GetBalanceRequest();
+        request.setName("Alice");
+        request.setAccountNumber(accountNumber);
+        request.setPassword("secret");
+        return request;
+    }
+
+    private DatagramPacket receive() throws IOException {
+        byte[] buffer = new byte[1024];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        server.receive(packet);
+        return packet;
+    }
+
+    private static byte[] payload(DatagramPacket packet) {
+        byte[] bytes = new byte[packet.getLength()];
+        System.arraycopy(packet.getData(), packet.getOffset(), bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Echoes the monitor interval of a {@link MonitorRequest} back as an int response.
+     */
+    private void reply(DatagramPacket request, MessageType type) throws IOException {
+        reply(request, type, ByteBuffer.wrap(payload(request)).getInt(6));
+    }
+
+    /**
+     * Answers any request with an int response.
+     */
+    private void reply(DatagramPacket request, MessageType type, int value) throws IOException {
+        WireReader reader = new WireReader(ByteBuffer.wrap(payload(request)));
+        reader.skip(1);
+        int requestId = reader.readInt();
+        byte opCode = reader.readByte();
+
+        ByteBuffer response = ByteBuffer.allocate(10);
+        new WireWriter(response).writeEnum(type).writeInt(requestId).writeByte(opCode).writeInt(value);
+        SocketAddress client = request.getSocketAddress();
+        server.send(new DatagramPacket(response.array(), response.capacity(), client));
+    }
+}
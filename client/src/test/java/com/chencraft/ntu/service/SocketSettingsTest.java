@@ -0,0 +1,45 @@
+package com.chencraft.ntu.service;
+
+import com.chencraft.ntu.service.balancer.LoadBalancingPolicy;
+import com.chencraft.ntu.service.transport.TransportType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+class SocketSettingsTest {
+    @Test
+    void testPropertiesOverrideTheDefaults() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("socket.server.host", "bank.example")
+                .withProperty("socket.server.port", "9000")
+                .withProperty("socket.servers.policy", "least-outstanding")
+                .withProperty("socket.max-retries", "5")
+                .withProperty("socket.transport", "nio")
+                .withProperty("socket.shards", "4");
+
+        SocketSettings settings = SocketSettings.fromProperties(environment);
+
+        Assertions.assertEquals("bank.example", settings.getHost());
+        Assertions.assertEquals(9000, settings.getPort());
+        Assertions.assertEquals(LoadBalancingPolicy.LEAST_OUTSTANDING, settings.getPolicy());
+        Assertions.assertEquals(5, settings.getMaxRetries());
+        Assertions.assertEquals(TransportType.NIO, settings.getTransport());
+        Assertions.assertEquals(4, settings.getShards());
+        // Everything else keeps its default
+        Assertions.assertEquals(SocketSettings.builder().host("bank.example").port(9000)
+                                              .policy(LoadBalancingPolicy.LEAST_OUTSTANDING).maxRetries(5)
+                                              .transport(TransportType.NIO).shards(4).build().toString(),
+                                settings.toString());
+    }
+
+    @Test
+    void testServerMustBeGiven() {
+        Assertions.assertThrows(IllegalStateException.class,
+                                () -> SocketSettings.fromProperties(new MockEnvironment()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                                () -> SocketSettings.fromProperties(new MockEnvironment()
+                                        .withProperty("socket.server.host", "localhost")
+                                        .withProperty("socket.server.port", "8866")
+                                        .withProperty("socket.shards.routing", "random")));
+    }
+}
@@ -0,0 +1,110 @@
+package com.chencraft.ntu.service.balancer;
+
+import com.chencraft.ntu.service.resolver.HostResolver;
+import com.chencraft.ntu.service.retry.RttEstimator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class ServerPoolTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ServerPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testRoundRobinTakesServersInTurn() {
+        pool = newPool(LoadBalancingPolicy.ROUND_ROBIN, 3, 1000);
+        Map<Endpoint, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            counts.merge(pool.select(null, null), 1, Integer::sum);
+        }
+        Assertions.assertEquals(3, counts.size());
+        counts.values().forEach(count -> Assertions.assertEquals(10, count));
+    }
+
+    @Test
+    void testLeastOutstandingAvoidsBusyServer() {
+        pool = newPool(LoadBalancingPolicy.LEAST_OUTSTANDING, 3, 1000);
+        Endpoint busy = pool.endpoints().getFirst();
+        for (int i = 0; i < 5; i++) {
+            pool.acquire(busy);
+        }
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertNotSame(busy, pool.select(null, null));
+        }
+    }
+
+    @Test
+    void testServerIsEjectedProbedAndReadmitted() throws InterruptedException {
+        pool = newPool(LoadBalancingPolicy.ROUND_ROBIN, 2, 50);
+        Endpoint bad = pool.endpoints().getFirst();
+        pool.onTimeout(bad);
+        Assertions.assertTrue(bad.isHealthy());
+        pool.onTimeout(bad);
+        Assertions.assertFalse(bad.isHealthy());
+        Assertions.assertEquals(1, meterRegistry.get("socket.server.ejections").tag("server", bad.label())
+                                                .counter().count());
+
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertNotSame(bad, pool.select(null, null));
+        }
+
+        // After the ejection period exactly one request probes the server
+        Thread.sleep(80);
+        Assertions.assertSame(bad, pool.select(null, null));
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertNotSame(bad, pool.select(null, null));
+        }
+
+        pool.onResponse(bad);
+        Assertions.assertTrue(bad.isHealthy());
+    }
+
+    @Test
+    void testEveryServerEjectedStillSelectsOne() {
+        pool = newPool(LoadBalancingPolicy.POWER_OF_TWO_CHOICES, 1, 60_000);
+        pool.endpoints().forEach(pool::onTimeout);
+        Assertions.assertNotNull(pool.select(null, null));
+    }
+
+    @Test
+    void testConsistentHashMovesOnlyTheEjectedServersAccounts() {
+        pool = newPool(LoadBalancingPolicy.CONSISTENT_HASH, 1, 60_000);
+        Map<Integer, Endpoint> before = new HashMap<>();
+        for (int account = 1; account <= 1000; account++) {
+            Endpoint endpoint = pool.select(account, null);
+            Assertions.assertSame(endpoint, pool.select(account, null));
+            before.put(account, endpoint);
+        }
+        Endpoint ejected = pool.endpoints().get(1);
+        long owned = before.values().stream().filter(e -> e == ejected).count();
+        Assertions.assertTrue(owned > 200 && owned < 470, "Server owns " + owned + " of 1000 accounts");
+
+        pool.onTimeout(ejected);
+        for (int account = 1; account <= 1000; account++) {
+            Endpoint after = pool.select(account, null);
+            if (before.get(account) == ejected) {
+                Assertions.assertNotSame(ejected, after);
+            } else {
+                Assertions.assertSame(before.get(account), after);
+            }
+        }
+    }
+
+    private ServerPool newPool(LoadBalancingPolicy policy, int ejectAfter, long ejectionMillis) {
+        return new ServerPool(List.of("localhost:9001", "localhost:9002", "localhost:9003"), policy, ejectAfter,
+                              ejectionMillis, HostResolver.SYSTEM, 0, server -> new RttEstimator(100, 20, 1000, 5),
+                              meterRegistry);
+    }
+}
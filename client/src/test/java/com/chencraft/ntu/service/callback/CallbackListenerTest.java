@@ -0,0 +1,157 @@
+package com.chencraft.ntu.service.callback;
+
+import com.chencraft.ntu.model.AccountUpdateEvent;
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.model.request.OpenAccountRequest;
+import com.chencraft.ntu.model.request.TransferRequest;
+import com.chencraft.ntu.server.BankServer;
+import com.chencraft.ntu.server.ServerOptions;
+import com.chencraft.ntu.service.IdGenerator;
+import com.chencraft.ntu.service.SocketService;
+import com.chencraft.ntu.service.SocketSettings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class CallbackListenerTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BankServer server;
+    private SocketService socketService;
+    private CallbackListener callbackListener;
+
+    @AfterEach
+    void tearDown() {
+        if (callbackListener != null) {
+            callbackListener.shutdown();
+        }
+        if (socketService != null) {
+            socketService.shutdown();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void testMonitoringIsRenewedWhileRequestsContinue() throws Exception {
+        server = BankServer.start(ServerOptions.builder().port(0).build());
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().port(server.port()).timeoutMillis(1000).build(),
+                                          meterRegistry);
+        callbackListener = new CallbackListener(socketService, 16, "drop-oldest", 1000, meterRegistry);
+        BlockingQueue<String> updates = new LinkedBlockingQueue<>();
+        callbackListener.subscribe(updates::add);
+
+        callbackListener.startMonitoring(1);
+        Assertions.assertTrue(callbackListener.isMonitoring());
+        // Past the first interval, so updates only arrive if the registration was renewed
+        Thread.sleep(1500);
+        int account = socketService.sendAndReceiveInt(open("Alice"));
+
+        String update = updates.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(update);
+        Assertions.assertTrue(update.contains("Account " + account), update);
+    }
+
+    @Test
+    void testBinaryCallbacksAreDecodedAsAccountUpdates() throws Exception {
+        server = BankServer.start(ServerOptions.builder().port(0).build());
+        socketService = new SocketService(new IdGenerator(), new DefaultApplicationArguments(),
+                                          SocketSettings.builder().port(server.port()).timeoutMillis(1000).build(),
+                                          meterRegistry);
+        callbackListener = new CallbackListener(socketService, 16, "drop-oldest", 1000, meterRegistry);
+        BlockingQueue<AccountUpdateEvent> updates = new LinkedBlockingQueue<>();
+        callbackListener.subscribeUpdates(updates::add);
+        callbackListener.startMonitoring(10);
+
+        int alice = socketService.sendAndReceiveInt(open("Alice"));
+        int bob = socketService.sendAndReceiveInt(open("Bob"));
+        TransferRequest transfer = new TransferRequest();
+        transfer.setName("Alice");
+        transfer.setAccountNumber(alice);
+        transfer.setPassword("pw");
+        transfer.setDestAccountNumber(bob);
+        transfer.setCurrency(Currency.SGD);
+        transfer.setAmount(0.25);
+        socketService.sendAndReceiveDouble(transfer);
+
+        AccountUpdateEvent opened = updates.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(opened);
+        Assertions.assertEquals(alice, opened.accountNumber());
+        Assertions.assertEquals(OpCode.OpOpen, opened.opCode());
+        Assertions.assertEquals(Currency.SGD, opened.currency());
+        Assertions.assertNotNull(updates.poll(5, TimeUnit.SECONDS));
+        AccountUpdateEvent source = updates.poll(5, TimeUnit.SECONDS);
+        AccountUpdateEvent destination = updates.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(destination);
+        Assertions.assertEquals(OpCode.OpTransfer, source.opCode());
+        Assertions.assertEquals(0.75, source.balance());
+        Assertions.assertEquals(bob, destination.accountNumber());
+        Assertions.assertEquals(1.25, destination.balance());
+        Assertions.assertEquals(opened.sequence() + 3, destination.sequence());
+        Assertions.assertEquals(0, callbackListener.missedCallbacks());
+    }
+
+    @Test
+    void testDropOldestKeepsMostRecentUntilDemand() throws Exception {
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        int[] dropped = new int[1];
+        CallbackSubscription<Integer> queue = new CallbackSubscription<>(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        }, 2, OverflowPolicy.DROP_OLDEST, 0, () -> dropped[0]++, ignored -> {
+        });
+        queue.start();
+        Assertions.assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i <= 5; i++) {
+            queue.offer(i);
+        }
+        queue.complete();
+        subscription[0].request(Long.MAX_VALUE);
+
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of(4, 5), received);
+        Assertions.assertEquals(3, dropped[0]);
+    }
+
+    private static OpenAccountRequest open(String name) {
+        OpenAccountRequest request = new OpenAccountRequest();
+        request.setName(name);
+        request.setPassword("pw");
+        request.setCurrency(Currency.SGD);
+        request.setInitialBalance(1.0);
+        return request;
+    }
+}
@@ -0,0 +1,22 @@
+package com.chencraft.ntu.service.callback;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SequenceGapDetectorTest {
+    @Test
+    void testGapsAreCountedAndLateArrivalsDoNotCancelThem() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SequenceGapDetector detector = new SequenceGapDetector(meterRegistry);
+
+        Assertions.assertEquals(0, detector.observe(100));
+        Assertions.assertEquals(0, detector.observe(101));
+        Assertions.assertEquals(2, detector.observe(104));
+        Assertions.assertEquals(0, detector.observe(102));
+        Assertions.assertEquals(0, detector.observe(105));
+
+        Assertions.assertEquals(2, detector.missed());
+        Assertions.assertEquals(1, meterRegistry.get("socket.callbacks.late").counter().count());
+    }
+}
@@ -0,0 +1,96 @@
+package com.chencraft.ntu.service.limit;
+
+import com.chencraft.ntu.exception.BackpressureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class ConcurrencyLimiterTest {
+    private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testAimdGrowsWhileBusyAndBacksOffOncePerRoundTrip() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("aimd", 10, 4, 100, 0, 0, meterRegistry);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+        Assertions.assertFalse(limiter.tryAcquire());
+
+        // One round trip's worth of responses raises the limit by one
+        for (int i = 0; i < 11; i++) {
+            limiter.onResponse(TimeUnit.SECONDS.toNanos(1));
+        }
+        Assertions.assertEquals(11, limiter.limit());
+
+        limiter.onTimeout();
+        Assertions.assertEquals(9, limiter.limit());
+        // The rest of the same burst of loss does not shrink it again within the round trip
+        limiter.onTimeout();
+        Assertions.assertEquals(9, limiter.limit());
+    }
+
+    @Test
+    void testGradientShrinksWhenRoundTripsLengthen() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("gradient", 20, 4, 500, 0, 0, meterRegistry);
+        for (int i = 0; i < 20; i++) {
+            limiter.onResponse(RTT_NANOS);
+        }
+        int grown = limiter.limit();
+        Assertions.assertTrue(grown > 20, "Limit " + grown);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.onResponse(10 * RTT_NANOS);
+        }
+        Assertions.assertTrue(limiter.limit() < grown, "Limit " + limiter.limit());
+    }
+
+    @Test
+    void testQueuedRequestIsSentWhenASlotFrees() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("aimd", 1, 1, 1, 10, 5000, meterRegistry);
+        Assertions.assertTrue(limiter.tryAcquire());
+        CompletableFuture<String> queued = limiter.enqueue(() -> CompletableFuture.completedFuture("sent"));
+        Assertions.assertFalse(queued.isDone());
+        Assertions.assertEquals(1, limiter.queued());
+
+        limiter.release();
+        Assertions.assertEquals("sent", queued.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, limiter.queued());
+        Assertions.assertEquals(1, limiter.inFlight());
+        limiter.shutdown();
+    }
+
+    @Test
+    void testRequestsAreRejectedWhenTheQueueIsFullOrTheWaitTooLong() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("aimd", 1, 1, 1, 1, 50, meterRegistry);
+        Assertions.assertTrue(limiter.tryAcquire());
+        CompletableFuture<String> waiting = limiter.enqueue(() -> CompletableFuture.completedFuture("sent"));
+        CompletableFuture<String> overflow = limiter.enqueue(() -> CompletableFuture.completedFuture("sent"));
+
+        ExecutionException full = Assertions.assertThrows(ExecutionException.class, overflow::get);
+        Assertions.assertInstanceOf(BackpressureException.class, full.getCause());
+        ExecutionException expired = Assertions.assertThrows(ExecutionException.class,
+                                                             () -> waiting.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(BackpressureException.class, expired.getCause());
+        Assertions.assertEquals(1, meterRegistry.get("socket.limit.rejected").tag("reason", "queue-full")
+                                                .counter().count());
+        Assertions.assertEquals(1, meterRegistry.get("socket.limit.rejected").tag("reason", "queue-timeout")
+                                                .counter().count());
+        limiter.shutdown();
+    }
+
+    @Test
+    void testUnlimitedNeverHoldsBack() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.unlimited(meterRegistry);
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+        limiter.onTimeout();
+        Assertions.assertEquals(Integer.MAX_VALUE, limiter.limit());
+    }
+}
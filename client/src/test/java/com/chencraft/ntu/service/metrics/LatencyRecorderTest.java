@@ -0,0 +1,35 @@
+package com.chencraft.ntu.service.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class LatencyRecorderTest {
+    @Test
+    void testPercentilesAndTotals() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (int i = 1; i <= 1000; i++) {
+            recorder.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        Assertions.assertEquals(1000, recorder.count());
+        Assertions.assertEquals(TimeUnit.MICROSECONDS.toNanos(500_500), recorder.totalNanos());
+        Assertions.assertEquals(500e-6, recorder.percentileSeconds(50), 1e-6);
+        Assertions.assertEquals(990e-6, recorder.percentileSeconds(99), 1e-6);
+    }
+
+    @Test
+    void testCumulativeSpansIntervals() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        recorder.record(TimeUnit.MILLISECONDS.toNanos(1));
+        Assertions.assertEquals(1, recorder.cumulative().getTotalCount());
+
+        recorder.record(TimeUnit.MILLISECONDS.toNanos(2));
+        recorder.record(TimeUnit.HOURS.toNanos(1)); // Clamped to the trackable range
+        Histogram cumulative = recorder.cumulative();
+        Assertions.assertEquals(3, cumulative.getTotalCount());
+        Assertions.assertEquals(TimeUnit.MINUTES.toMicros(1), cumulative.getMaxValue(), 100_000);
+    }
+}
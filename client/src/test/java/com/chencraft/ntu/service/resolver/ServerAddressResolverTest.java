@@ -0,0 +1,90 @@
+package com.chencraft.ntu.service.resolver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+class ServerAddressResolverTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testResolvesOnceUntilRefreshed() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        InetAddress address = InetAddress.getByAddress("bank", new byte[]{10, 0, 0, 1});
+        HostResolver stub = host -> {
+            lookups.incrementAndGet();
+            return address;
+        };
+
+        try (ServerAddressResolver resolver = new ServerAddressResolver("bank", 8866, stub, 0, meterRegistry)) {
+            for (int i = 0; i < 100; i++) {
+                Assertions.assertEquals(new InetSocketAddress(address, 8866), resolver.current());
+            }
+            Assertions.assertEquals(1, lookups.get());
+            Assertions.assertEquals(1, meterRegistry.get("socket.server.resolve").tag("outcome", "success").timer().count());
+        }
+    }
+
+    @Test
+    void testKeepsLastKnownGoodAddressOnFailure() throws Exception {
+        InetAddress first = InetAddress.getByAddress("bank", new byte[]{10, 0, 0, 1});
+        InetAddress second = InetAddress.getByAddress("bank", new byte[]{10, 0, 0, 2});
+        AtomicReference<InetAddress> answer = new AtomicReference<>(first);
+        HostResolver stub = host -> {
+            InetAddress address = answer.get();
+            if (address == null) {
+                throw new UnknownHostException(host);
+            }
+            return address;
+        };
+
+        try (ServerAddressResolver resolver = new ServerAddressResolver("bank", 8866, stub, 0, meterRegistry)) {
+            InetSocketAddress resolved = resolver.current();
+
+            answer.set(null);
+            Assertions.assertFalse(resolver.refresh());
+            Assertions.assertSame(resolved, resolver.current());
+            Assertions.assertEquals(1, meterRegistry.get("socket.server.resolve").tag("outcome", "failure").timer().count());
+
+            answer.set(second);
+            Assertions.assertTrue(resolver.refresh());
+            Assertions.assertEquals(new InetSocketAddress(second, 8866), resolver.current());
+        }
+    }
+
+    @Test
+    void testUnresolvableHostYieldsNoAddress() {
+        HostResolver stub = host -> {
+            throw new UnknownHostException(host);
+        };
+
+        try (ServerAddressResolver resolver = new ServerAddressResolver("bank", 8866, stub, 0, meterRegistry)) {
+            Assertions.assertNull(resolver.current());
+        }
+    }
+
+    @Test
+    void testHostsFileOverridesDelegate() throws Exception {
+        HostResolver delegate = host -> {
+            throw new UnknownHostException(host);
+        };
+        HostsFileResolver resolver = new HostsFileResolver(List.of(
+                "# Local stand-ins",
+                "127.0.0.1   kr1.chencraft.com  bank   # primary",
+                "::1         bank-v6",
+                ""), delegate);
+
+        Assertions.assertEquals("127.0.0.1", resolver.resolve("KR1.chencraft.com").getHostAddress());
+        Assertions.assertEquals("127.0.0.1", resolver.resolve("bank").getHostAddress());
+        Assertions.assertTrue(resolver.resolve("bank-v6").isLoopbackAddress());
+        Assertions.assertThrows(UnknownHostException.class, () -> resolver.resolve("elsewhere"));
+    }
+}
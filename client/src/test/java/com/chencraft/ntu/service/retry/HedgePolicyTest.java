@@ -0,0 +1,55 @@
+package com.chencraft.ntu.service.retry;
+
+import com.chencraft.ntu.model.OpCode;
+import com.chencraft.ntu.service.metrics.LatencyRecorder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class HedgePolicyTest {
+    @Test
+    void testOnlyIdempotentOperationsCanBeHedged() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HedgePolicy("OpBalance,OpDeposit", 95, 0.05));
+        Assertions.assertTrue(new HedgePolicy("opbalance", 95, 0.05).isEnabled(OpCode.OpBalance));
+        Assertions.assertFalse(HedgePolicy.disabled().isEnabled(OpCode.OpBalance));
+    }
+
+    @Test
+    void testHedgeDelayIsTheObservedPercentile() {
+        LatencyRecorder firstAttempt = new LatencyRecorder();
+        HedgePolicy policy = new HedgePolicy("OpBalance", 95, 0.05);
+        Assertions.assertEquals(0, policy.onRequest(OpCode.OpBalance, new LatencyRecorder()));
+
+        for (int millis = 1; millis <= 100; millis++) {
+            firstAttempt.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        policy = new HedgePolicy("OpBalance", 95, 0.05);
+        Assertions.assertEquals(95, TimeUnit.NANOSECONDS.toMillis(policy.onRequest(OpCode.OpBalance, firstAttempt)));
+        Assertions.assertEquals(0, policy.onRequest(OpCode.OpMonitor, firstAttempt));
+    }
+
+    @Test
+    void testBudgetLimitsExtraRequests() {
+        HedgePolicy policy = new HedgePolicy("OpBalance", 95, 0.05);
+        LatencyRecorder firstAttempt = new LatencyRecorder();
+        int hedges = 0;
+        for (int i = 0; i < 1000; i++) {
+            policy.onRequest(OpCode.OpBalance, firstAttempt);
+            if (policy.tryHedge()) {
+                hedges++;
+            }
+        }
+        Assertions.assertEquals(50, hedges);
+
+        // Unused budget accumulates only up to a small burst
+        for (int i = 0; i < 1000; i++) {
+            policy.onRequest(OpCode.OpBalance, firstAttempt);
+        }
+        hedges = 0;
+        while (policy.tryHedge()) {
+            hedges++;
+        }
+        Assertions.assertEquals(HedgePolicy.MAX_TOKENS, hedges);
+    }
+}
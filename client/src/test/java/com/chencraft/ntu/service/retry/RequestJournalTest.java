@@ -0,0 +1,48 @@
+package com.chencraft.ntu.service.retry;
+
+import com.chencraft.ntu.model.OpCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RequestJournalTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testLateResponseUpgradesAnUnknownOutcomeWithoutCountingItAgain() {
+        RequestJournal journal = new RequestJournal(16, meterRegistry);
+        journal.begin(1, OpCode.OpTransfer);
+
+        Assertions.assertEquals(RequestOutcome.IN_FLIGHT, journal.complete(1, RequestOutcome.UNKNOWN));
+        Assertions.assertEquals(RequestOutcome.UNKNOWN, journal.complete(1, RequestOutcome.APPLIED));
+        Assertions.assertEquals(RequestOutcome.APPLIED, journal.complete(1, RequestOutcome.APPLIED));
+        Assertions.assertEquals(RequestOutcome.APPLIED, journal.outcome(1));
+
+        Assertions.assertEquals(1, count("unknown"));
+        Assertions.assertEquals(0, count("applied"));
+    }
+
+    @Test
+    void testHedgeSettlesWithItsRequestAndIsCountedOnce() {
+        RequestJournal journal = new RequestJournal(16, meterRegistry);
+        journal.begin(1, OpCode.OpBalance);
+        journal.begin(2, OpCode.OpBalance);
+
+        journal.complete(1, RequestOutcome.APPLIED);
+        journal.completeHedge(2, RequestOutcome.APPLIED);
+        Assertions.assertEquals(RequestOutcome.APPLIED, journal.outcome(2));
+
+        // The losing copy's response is a duplicate
+        Assertions.assertEquals(RequestOutcome.APPLIED, journal.complete(2, RequestOutcome.APPLIED));
+        Assertions.assertEquals(1, count("applied"));
+
+        // A slot since taken by another request is left alone
+        journal.begin(18, OpCode.OpBalance);
+        journal.completeHedge(2, RequestOutcome.APPLIED);
+        Assertions.assertEquals(RequestOutcome.IN_FLIGHT, journal.outcome(18));
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("socket.requests.outcome").tag("outcome", outcome).counter().count();
+    }
+}
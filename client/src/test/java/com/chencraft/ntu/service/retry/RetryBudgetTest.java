@@ -0,0 +1,39 @@
+package com.chencraft.ntu.service.retry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RetryBudgetTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testRetriesAreLimitedToAFractionOfRequests() {
+        RetryBudget budget = new RetryBudget(0.2, 0, meterRegistry);
+        int retries = 0;
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+            if (budget.tryRetry()) {
+                retries++;
+            }
+        }
+        Assertions.assertEquals(20, retries);
+        Assertions.assertFalse(budget.tryRetry());
+        Assertions.assertEquals(81, meterRegistry.get("socket.retry-budget.exhausted").counter().count());
+    }
+
+    @Test
+    void testMinimumRateAllowsRetriesWithoutTraffic() throws InterruptedException {
+        RetryBudget budget = new RetryBudget(0.2, 100, meterRegistry);
+        Thread.sleep(50);
+        Assertions.assertTrue(budget.tryRetry());
+    }
+
+    @Test
+    void testUnlimitedNeverRefuses() {
+        RetryBudget budget = RetryBudget.unlimited(meterRegistry);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertTrue(budget.tryRetry());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.chencraft.ntu.service.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class RttEstimatorTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void testInitialRtoUntilFirstSample() {
+        RttEstimator estimator = new RttEstimator(2000, 20, 10000, 5);
+        Assertions.assertEquals(2000 * MS, estimator.rtoNanos());
+    }
+
+    @Test
+    void testJacobsonKarelsUpdate() {
+        RttEstimator estimator = new RttEstimator(2000, 1, 10000, 5);
+
+        estimator.sample(100 * MS);
+        Assertions.assertEquals(100 * MS, estimator.srttNanos());
+        Assertions.assertEquals(50 * MS, estimator.rttvarNanos());
+        Assertions.assertEquals(300 * MS, estimator.rtoNanos());
+
+        estimator.sample(60 * MS);
+        // RTTVAR = 3/4 * 50 + 1/4 * |100 - 60| = 47.5, SRTT = 7/8 * 100 + 1/8 * 60 = 95
+        Assertions.assertEquals(47_500_000, estimator.rttvarNanos());
+        Assertions.assertEquals(95 * MS, estimator.srttNanos());
+        Assertions.assertEquals(285 * MS, estimator.rtoNanos());
+    }
+
+    @Test
+    void testRtoIsClamped() {
+        RttEstimator estimator = new RttEstimator(2000, 20, 10000, 5);
+
+        estimator.sample(MS / 10);
+        Assertions.assertEquals(20 * MS, estimator.rtoNanos());
+
+        for (int i = 0; i < 10; i++) {
+            estimator.sample(60_000 * MS);
+        }
+        Assertions.assertEquals(10_000 * MS, estimator.rtoNanos());
+    }
+
+    @Test
+    void testBackoffIsExponentialWithJitter() {
+        RttEstimator estimator = new RttEstimator(100, 20, 10000, 5);
+
+        Assertions.assertEquals(100 * MS, estimator.timeoutNanos(0));
+        for (int attempt = 1; attempt < 100; attempt++) {
+            long ceiling = Math.min(10_000 * MS, (100 * MS) << Math.min(attempt, 20));
+            long timeout = estimator.timeoutNanos(attempt);
+            Assertions.assertTrue(timeout >= ceiling / 2 && timeout <= ceiling,
+                                  "Attempt " + attempt + " waited " + timeout);
+        }
+    }
+
+    @Test
+    void testGaugesAreRegistered() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RttEstimator estimator = new RttEstimator(2000, 1, 10000, 5).bindTo(meterRegistry, "bank:8866");
+        estimator.sample(100 * MS);
+
+        Assertions.assertEquals(100.0, meterRegistry.get("socket.rtt.srtt").tag("server", "bank:8866").gauge().value());
+        Assertions.assertEquals(300.0, meterRegistry.get("socket.rtt.rto").gauge().value());
+    }
+}
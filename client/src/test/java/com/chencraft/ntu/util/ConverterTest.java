@@ -136,4 +136,19 @@ class ConverterTest {
             Assertions.assertEquals(expected, msg);
         }
     }
+
+    @Test
+    public void testUnmarshallingSlice() {
+        byte[] data = new byte[]{
+                0x7F, 0x7F,             // Unrelated leading bytes
+                0x01,                   // Message Type: MsgResponse
+                0x00, 0x00, 0x00, 0x05, // Request ID: 5
+                0x01,                   // Operation Code: Open Account
+                0x0A, 0x0B, 0x0C, 0x0D, // Account ID: 168496141
+                0x7F                    // Unrelated trailing byte
+        };
+
+        Assertions.assertEquals(168496141, Converter.toInt(data, 2, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Converter.toInt(data, 2, 8));
+    }
 }
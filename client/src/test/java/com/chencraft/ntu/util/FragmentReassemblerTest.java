@@ -0,0 +1,113 @@
+package com.chencraft.ntu.util;
+
+import com.chencraft.ntu.model.FragmentMessage;
+import com.chencraft.ntu.model.MessageType;
+import com.chencraft.ntu.model.OpCode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class FragmentReassemblerTest {
+    private static final long NACK_DELAY = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testFragmentsAreReassembledInAnyOrder() {
+        ByteBuffer message = message(42, 3000);
+        List<ByteBuffer> fragments = fragments(message);
+        Assertions.assertEquals(3, fragments.size());
+        for (ByteBuffer fragment : fragments) {
+            Assertions.assertTrue(fragment.remaining() <= FragmentMessage.MAX_DATAGRAM_SIZE);
+            Assertions.assertTrue(FragmentMessage.isFragment(fragment));
+        }
+
+        FragmentReassembler<String> reassembler = new FragmentReassembler<>(1 << 20, 1 << 20, TIMEOUT, NACK_DELAY, 3);
+        Assertions.assertNull(reassembler.accept("peer", fragments.get(2), 0));
+        Assertions.assertNull(reassembler.accept("peer", fragments.get(0), 0));
+        Assertions.assertNull(reassembler.accept("peer", fragments.get(0), 0), "Duplicate completed the message");
+        ByteBuffer whole = reassembler.accept("peer", fragments.get(1), 0);
+
+        Assertions.assertEquals(message.rewind(), whole);
+        Assertions.assertEquals(0, reassembler.size());
+        Assertions.assertEquals(0, reassembler.bufferedBytes());
+    }
+
+    @Test
+    void testStalledMessageIsNackedForItsMissingFragmentsThenDropped() {
+        List<ByteBuffer> fragments = fragments(message(7, 5000));
+        FragmentReassembler<String> reassembler = new FragmentReassembler<>(1 << 20, 1 << 20, TIMEOUT, NACK_DELAY, 2);
+        reassembler.accept("peer", fragments.get(0), 0);
+        reassembler.accept("peer", fragments.get(3), 0);
+
+        List<ByteBuffer> nacks = new ArrayList<>();
+        reassembler.poll(NACK_DELAY / 2, (peer, nack) -> nacks.add(nack));
+        Assertions.assertTrue(nacks.isEmpty(), "NACK sent before the fragments stopped arriving");
+
+        reassembler.poll(NACK_DELAY, (peer, nack) -> nacks.add(nack));
+        Assertions.assertEquals(1, nacks.size());
+        ByteBuffer nack = nacks.getFirst();
+        Assertions.assertTrue(FragmentMessage.isNack(nack));
+        Assertions.assertEquals(7, Converter.requestId(nack));
+        List<Integer> missing = new ArrayList<>();
+        FragmentMessage.forEachMissing(nack, missing::add);
+        Assertions.assertEquals(List.of(1, 2, 4), missing);
+
+        // At most maxNacks, then the message times out
+        reassembler.poll(2 * NACK_DELAY, (peer, n) -> nacks.add(n));
+        reassembler.poll(3 * NACK_DELAY, (peer, n) -> nacks.add(n));
+        Assertions.assertEquals(2, nacks.size());
+        reassembler.poll(TIMEOUT, (peer, n) -> nacks.add(n));
+        Assertions.assertEquals(0, reassembler.size());
+        Assertions.assertEquals(1, reassembler.expired());
+    }
+
+    @Test
+    void testMemoryIsBounded() {
+        FragmentReassembler<String> reassembler = new FragmentReassembler<>(4096, 8192, TIMEOUT, NACK_DELAY, 0);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                                () -> reassembler.accept("peer", fragments(message(1, 5000)).getFirst(), 0));
+
+        reassembler.accept("peer", fragments(message(2, 4000)).getFirst(), 0);
+        reassembler.accept("peer", fragments(message(3, 4000)).getFirst(), 0);
+        reassembler.accept("peer", fragments(message(4, 4000)).getFirst(), 0);
+        Assertions.assertEquals(2, reassembler.size());
+        Assertions.assertEquals(8000, reassembler.bufferedBytes());
+        Assertions.assertEquals(1, reassembler.evicted());
+    }
+
+    @Test
+    void testFragmentsOfDifferentPeersAreKeptApart() {
+        List<ByteBuffer> fragments = fragments(message(9, 2000));
+        FragmentReassembler<String> reassembler = new FragmentReassembler<>(1 << 20, 1 << 20, TIMEOUT, NACK_DELAY, 3);
+        Assertions.assertNull(reassembler.accept("first", fragments.get(0), 0));
+        Assertions.assertNull(reassembler.accept("second", fragments.get(1), 0));
+        Assertions.assertEquals(2, reassembler.size());
+    }
+
+    /**
+     * A response whose body is {@code length - 6} bytes counting up from 0.
+     */
+    private static ByteBuffer message(int requestId, int length) {
+        ByteBuffer message = ByteBuffer.allocate(length);
+        new WireWriter(message).writeEnum(MessageType.MsgResponse).writeInt(requestId).writeByte(OpCode.OpClose.getValue());
+        for (int i = Converter.HEADER_SIZE; i < length; i++) {
+            message.put(i, (byte) i);
+        }
+        return message;
+    }
+
+    private static List<ByteBuffer> fragments(ByteBuffer message) {
+        List<ByteBuffer> fragments = new ArrayList<>();
+        for (int i = 0; i < FragmentMessage.fragmentCount(message.remaining()); i++) {
+            ByteBuffer fragment = ByteBuffer.allocate(FragmentMessage.MAX_DATAGRAM_SIZE);
+            WireWriter writer = new WireWriter(fragment);
+            FragmentMessage.writeFragment(writer, message, i);
+            fragments.add(fragment.limit(writer.position()));
+        }
+        return fragments;
+    }
+}
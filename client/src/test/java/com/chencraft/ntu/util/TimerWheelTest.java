@@ -0,0 +1,61 @@
+package com.chencraft.ntu.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+class TimerWheelTest {
+    private final TimerWheel timerWheel = new TimerWheel("test-timer", 1, TimeUnit.MILLISECONDS, 8);
+
+    @AfterEach
+    void tearDown() {
+        timerWheel.close();
+    }
+
+    @Test
+    void testTimeoutNeverFiresEarly() throws InterruptedException {
+        int count = 100;
+        CountDownLatch latch = new CountDownLatch(count);
+        AtomicLong early = new AtomicLong();
+
+        for (int i = 0; i < count; i++) {
+            long delayMillis = i % 30; // Spans several rotations of the 8-bucket wheel
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            timerWheel.schedule(() -> {
+                if (System.nanoTime() < deadline) {
+                    early.incrementAndGet();
+                }
+                latch.countDown();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, early.get());
+    }
+
+    @Test
+    void testCancelledTimeoutDoesNotFire() throws InterruptedException {
+        AtomicBoolean fired = new AtomicBoolean();
+        TimerWheel.Timeout timeout = timerWheel.schedule(() -> fired.set(true), 20, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(timeout.cancel());
+        Thread.sleep(60);
+        Assertions.assertFalse(fired.get());
+        Assertions.assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    void testExpiredTimeoutCannotBeCancelled() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        TimerWheel.Timeout timeout = timerWheel.schedule(latch::countDown, 1, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Assertions.assertFalse(timeout.cancel());
+        Assertions.assertTrue(timeout.isExpired());
+    }
+}
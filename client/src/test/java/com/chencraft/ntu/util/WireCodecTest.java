@@ -0,0 +1,109 @@
+package com.chencraft.ntu.util;
+
+import com.chencraft.ntu.exception.OperationFailedException;
+import com.chencraft.ntu.model.Currency;
+import com.chencraft.ntu.model.MessageType;
+import com.chencraft.ntu.model.OpCode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+class WireCodecTest {
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    @Test
+    public void testRoundTripHeap() {
+        assertRoundTrip(ByteBuffer.allocate(64));
+    }
+
+    @Test
+    public void testRoundTripDirect() {
+        assertRoundTrip(ByteBuffer.allocateDirect(64));
+    }
+
+    @Test
+    public void testWriterLeavesBufferPositionUntouched() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.position(3);
+        WireWriter writer = new WireWriter(buffer).writeInt(0x0a0b0c0d);
+
+        Assertions.assertEquals(3, buffer.position());
+        Assertions.assertEquals(7, writer.position());
+        Assertions.assertEquals(0x0a0b0c0d, buffer.getInt(3));
+    }
+
+    @Test
+    public void testUnmarshallingNegativeBytes() {
+        // Values whose low-order bytes have the sign bit set
+        byte[] data = new byte[]{
+                0x01,                   // Message Type: MsgResponse
+                0x00, 0x00, 0x00, 0x05, // Request ID: 5
+                0x06,                   // Operation Code: Balance
+                0x40, (byte) 0x8f, 0x40, (byte) 0x80,
+                (byte) 0x80, (byte) 0xff, (byte) 0xff, (byte) 0xf0
+        };
+        double expected = Double.longBitsToDouble(0x408f408080fffff0L);
+
+        Assertions.assertEquals(expected, Converter.toDouble(data));
+        Assertions.assertEquals(0x408f4080, Converter.byteArrayToInt(data, 6));
+    }
+
+    @Test
+    public void testDecodeSliceOfLargerBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        new WireWriter(buffer, 10).writeEnum(MessageType.MsgResponse)
+                                  .writeInt(9)
+                                  .writeByte(OpCode.OpOpen.getValue())
+                                  .writeInt(1234);
+        buffer.position(10).limit(20);
+
+        Assertions.assertEquals(9, Converter.requestId(buffer));
+        Assertions.assertEquals(1234, Converter.toInt(buffer));
+        Assertions.assertEquals(10, buffer.position());
+    }
+
+    @Test
+    public void testErrorResponseThrows() {
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        WireWriter writer = new WireWriter(buffer).writeEnum(MessageType.MsgError)
+                                                  .writeInt(1)
+                                                  .writeByte(OpCode.OpClose.getValue())
+                                                  .writeString("No such account");
+        buffer.limit(writer.position());
+
+        OperationFailedException e = Assertions.assertThrows(OperationFailedException.class,
+                                                             () -> Converter.toString(buffer));
+        Assertions.assertEquals("No such account", e.getMessage());
+    }
+
+    @Test
+    public void testTruncatedStringIsRejected() {
+        byte[] data = new byte[]{
+                0x01, 0x00, 0x00, 0x00, 0x01, 0x02,
+                0x00, 0x00, 0x00, 0x10, // Claims 16 characters
+                0x48, 0x69
+        };
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Converter.toString(data));
+    }
+
+    private void assertRoundTrip(ByteBuffer buffer) {
+        WireWriter writer = new WireWriter(buffer);
+        writer.writeByte((byte) -1)
+              .writeInt(Integer.MIN_VALUE)
+              .writeLong(-2L)
+              .writeDouble(-1234.5678)
+              .writeString("Hi 5!")
+              .writeEnum(Currency.CNY);
+
+        WireReader reader = new WireReader(buffer, 0, writer.position());
+        Assertions.assertEquals((byte) -1, reader.readByte());
+        Assertions.assertEquals(Integer.MIN_VALUE, reader.readInt());
+        Assertions.assertEquals(-2L, reader.readLong());
+        Assertions.assertEquals(-1234.5678, reader.readDouble());
+        Assertions.assertEquals("Hi 5!", reader.readString());
+        Assertions.assertEquals(Currency.CNY, reader.readEnum(CURRENCIES));
+        Assertions.assertEquals(0, reader.remaining());
+    }
+}